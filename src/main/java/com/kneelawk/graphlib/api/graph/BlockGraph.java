@@ -17,6 +17,7 @@ import com.kneelawk.graphlib.api.graph.user.LinkKey;
 import com.kneelawk.graphlib.api.graph.user.NodeEntity;
 import com.kneelawk.graphlib.api.graph.user.SidedBlockNode;
 import com.kneelawk.graphlib.api.util.CacheCategory;
+import com.kneelawk.graphlib.api.util.ConnectivityCategory;
 import com.kneelawk.graphlib.api.util.LinkPos;
 import com.kneelawk.graphlib.api.util.NodePos;
 import com.kneelawk.graphlib.api.util.SidedPos;
@@ -87,6 +88,28 @@ public interface BlockGraph {
      */
     @Nullable LinkHolder<LinkKey> getLinkAt(@NotNull LinkPos pos);
 
+    /**
+     * Gets the node holder referred to by the given handle, if it is still valid.
+     *
+     * @param handle the handle of the node to get.
+     * @return the node holder referred to by the given handle, or <code>null</code> if the handle is stale or refers
+     * to a different graph.
+     * @see com.kneelawk.graphlib.api.util.NodeHandle
+     */
+    @Nullable NodeHolder<BlockNode> getNodeByHandle(long handle);
+
+    /**
+     * Gets the link holder between the two nodes referred to by the given handles, if it exists.
+     *
+     * @param first  the handle of the first node.
+     * @param second the handle of the second node.
+     * @param key    the key of the link.
+     * @return the link holder between the two nodes, or <code>null</code> if either handle is stale or no such link
+     * exists.
+     * @see com.kneelawk.graphlib.api.util.NodeHandle
+     */
+    @Nullable LinkHolder<LinkKey> getLinkByHandles(long first, long second, @NotNull LinkKey key);
+
     /**
      * Gets the node entity at a given pos, if it exists.
      *
@@ -141,6 +164,17 @@ public interface BlockGraph {
      */
     @NotNull <T extends BlockNode> Collection<NodeHolder<T>> getCachedNodes(@NotNull CacheCategory<T> category);
 
+    /**
+     * Gets a view of this graph's connectivity, only considering links whose keys match the given category.
+     * <p>
+     * Views are cached per category and kept up to date as this graph changes, so checking whether two nodes are
+     * connected via matching links is amortized constant time.
+     *
+     * @param category the category of links to consider.
+     * @return a view of this graph's connectivity when only considering links matching the given category.
+     */
+    @NotNull ConnectivityView getConnectivity(@NotNull ConnectivityCategory<?> category);
+
     /**
      * Gets all the chunk sections that this graph currently has nodes in.
      *
@@ -0,0 +1,62 @@
+package com.kneelawk.graphlib.api.graph;
+
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.kneelawk.graphlib.api.graph.user.BlockNode;
+import com.kneelawk.graphlib.api.util.ConnectivityCategory;
+import com.kneelawk.graphlib.api.util.NodePos;
+
+/**
+ * A view of a graph's connectivity, only considering links matching a {@link ConnectivityCategory}.
+ * <p>
+ * Views are maintained by their graph as it changes. Adding nodes and links is handled incrementally in near-constant
+ * time. Removing a link or node searches the component it was in, taking time proportional to that component's size.
+ * Merging and splitting graphs causes the view to be rebuilt the next time it is queried.
+ * <p>
+ * Note: a view only covers the nodes in the graph it was retrieved from. Once that graph has been merged into another
+ * graph, its views are no longer updated.
+ */
+public interface ConnectivityView {
+    /**
+     * Gets the category this view filters links by.
+     *
+     * @return the category this view filters links by.
+     */
+    @NotNull ConnectivityCategory<?> getCategory();
+
+    /**
+     * Checks whether the two given nodes are connected via links matching this view's category.
+     *
+     * @param a the first node.
+     * @param b the second node.
+     * @return <code>true</code> if both nodes exist in this view's graph and are connected via matching links.
+     */
+    boolean areConnected(@NotNull NodePos a, @NotNull NodePos b);
+
+    /**
+     * Gets the id of the component the given node is in.
+     * <p>
+     * Component ids are only valid until the graph is next modified.
+     *
+     * @param pos the node to get the component id of.
+     * @return the id of the given node's component, or <code>-1</code> if the node is not in this view's graph.
+     */
+    int getComponentId(@NotNull NodePos pos);
+
+    /**
+     * Gets all the nodes connected to the given node via links matching this view's category.
+     *
+     * @param pos the node to get the component of.
+     * @return a stream of all nodes in the given node's component, including the given node itself.
+     */
+    @NotNull Stream<NodeHolder<BlockNode>> getComponent(@NotNull NodePos pos);
+
+    /**
+     * Gets the number of separate components in this view.
+     *
+     * @return the number of separate components in this view.
+     */
+    int getComponentCount();
+}
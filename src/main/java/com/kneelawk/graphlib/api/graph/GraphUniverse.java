@@ -451,5 +451,33 @@ public interface GraphUniverse {
          * @return this builder for call chaining.
          */
         @NotNull Builder synchronizeToClient(@NotNull SyncProfile profile);
+
+        /**
+         * Sets how many block-nodes each world in this universe should try to keep loaded.
+         * <p>
+         * By default, there is no budget and graphs are unloaded once all the chunk sections they are in have gone
+         * unused for a minute. With a budget, graphs stay loaded for as long as the budget allows. Once the budget is
+         * exceeded, the least recently used graphs that are not in any loaded chunk are saved and unloaded.
+         *
+         * @param maxNodes the number of block-nodes to try to keep loaded in each world.
+         * @return this builder for call chaining.
+         */
+        @NotNull Builder residencyBudget(long maxNodes);
+
+        /**
+         * Sets whether this universe should keep its chunk data in region files shared with the other universes that
+         * enable this.
+         * <p>
+         * By default, each universe has its own region files, so loading a chunk reads from the region files of every
+         * universe. Universes sharing region files keep their data for a chunk side by side in a single record, so
+         * loading a chunk only reads that record once for all of them.
+         * <p>
+         * Chunk data is not moved when this is changed for an existing world. Use the
+         * <code>/graphlib &lt;universe&gt; rebuildchunks</code> command to rebuild it afterwards.
+         *
+         * @param shared whether to keep chunk data in shared region files.
+         * @return this builder for call chaining.
+         */
+        @NotNull Builder sharedRegionStorage(boolean shared);
     }
 }
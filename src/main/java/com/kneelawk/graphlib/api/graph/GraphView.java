@@ -18,6 +18,7 @@ import com.kneelawk.graphlib.api.graph.user.LinkKey;
 import com.kneelawk.graphlib.api.graph.user.NodeEntity;
 import com.kneelawk.graphlib.api.graph.user.SidedBlockNode;
 import com.kneelawk.graphlib.api.util.LinkPos;
+import com.kneelawk.graphlib.api.util.NodeHandle;
 import com.kneelawk.graphlib.api.util.NodePos;
 import com.kneelawk.graphlib.api.util.SidedPos;
 
@@ -152,6 +153,40 @@ public interface GraphView {
     @Nullable
     BlockGraph getGraph(long id);
 
+    /**
+     * Gets the node referred to by the given node handle.
+     * <p>
+     * Note: this <b>may</b> involve loading the node's graph from the filesystem.
+     *
+     * @param handle the handle of the node to get.
+     * @return the node referred to by the given handle, or <code>null</code> if the handle is stale.
+     * @see NodeHandle
+     */
+    default @Nullable NodeHolder<BlockNode> getNodeByHandle(long handle) {
+        if (!NodeHandle.isValid(handle)) return null;
+        BlockGraph graph = getGraph(NodeHandle.getGraphId(handle));
+        if (graph == null) return null;
+        return graph.getNodeByHandle(handle);
+    }
+
+    /**
+     * Gets the link between the two nodes referred to by the given node handles.
+     * <p>
+     * Note: this <b>may</b> involve loading the nodes' graph from the filesystem.
+     *
+     * @param first  the handle of the first node.
+     * @param second the handle of the second node.
+     * @param key    the key of the link.
+     * @return the link between the two nodes, or <code>null</code> if either handle is stale or no such link exists.
+     * @see NodeHandle
+     */
+    default @Nullable LinkHolder<LinkKey> getLinkByHandles(long first, long second, @NotNull LinkKey key) {
+        if (!NodeHandle.isValid(first) || NodeHandle.getGraphId(first) != NodeHandle.getGraphId(second)) return null;
+        BlockGraph graph = getGraph(NodeHandle.getGraphId(first));
+        if (graph == null) return null;
+        return graph.getLinkByHandles(first, second, key);
+    }
+
     /**
      * Gets all graph ids in the given chunk section.
      * <p>
@@ -232,7 +267,7 @@ public interface GraphView {
      * This filters out all the null graphs.
      * <p>
      * Because this loads all graphs in the graph world, it can cause significant lag. Chances are, you actually want
-     * {@link #getLoadedGraphs()}.
+     * {@link #getLoadedGraphs()}, or {@link GraphWorld#getAllGraphSnapshots(boolean)} when scanning every graph.
      *
      * @return a stream of all the graphs in this graph world.
      */
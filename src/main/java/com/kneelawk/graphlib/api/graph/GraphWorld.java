@@ -6,6 +6,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 
 import com.kneelawk.graphlib.api.graph.user.BlockNode;
 import com.kneelawk.graphlib.api.graph.user.LinkEntity;
@@ -184,4 +185,30 @@ public interface GraphWorld extends GraphView {
      * @param pos the sided block-position of the nodes to update connections for.
      */
     void updateConnections(@NotNull SidedPos pos);
+
+    /**
+     * Hints that nodes in the given chunk pillar are going to be looked up soon.
+     * <p>
+     * Looking up nodes in a chunk pillar that is not loaded blocks until the pillar has been read. This starts reading
+     * it in the background instead, so that callers that can wait a few ticks don't block the server.
+     *
+     * @param pos the position of the chunk pillar.
+     */
+    void prefetchChunk(@NotNull ChunkPos pos);
+
+    /**
+     * Gets detached copies of all graphs in this graph world, without loading them. <b>Use with care.</b>
+     * <p>
+     * Unlike {@link #getAllGraphs()}, graphs that are not loaded are decoded straight from storage a batch at a time
+     * and are never added to the loaded graphs, so memory use stays bounded while the whole world is scanned. Graphs
+     * that are already loaded are copied as they are when their batch is reached.
+     * <p>
+     * The returned stream is lazy and must be consumed on the server thread. Changes made while consuming it may or may
+     * not be reflected in graphs that have not been reached yet.
+     *
+     * @param parallel whether stored graphs should be read and parsed on worker threads ahead of being decoded. Block
+     *                 nodes and link keys are always decoded on the thread consuming the stream.
+     * @return a stream of detached copies of all the graphs in this graph world.
+     */
+    @NotNull Stream<SnapshotGraph> getAllGraphSnapshots(boolean parallel);
 }
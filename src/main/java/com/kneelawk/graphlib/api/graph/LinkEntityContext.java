@@ -9,6 +9,7 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
 import com.kneelawk.graphlib.api.graph.user.BlockNode;
+import com.kneelawk.graphlib.api.graph.user.LinkEntity;
 import com.kneelawk.graphlib.api.graph.user.LinkKey;
 import com.kneelawk.graphlib.api.graph.user.NodeEntity;
 import com.kneelawk.graphlib.api.util.LinkPos;
@@ -25,6 +26,26 @@ public interface LinkEntityContext {
      */
     void markDirty();
 
+    /**
+     * Schedules a call to this link entity's {@link LinkEntity#onScheduledTick()} after the given number of ticks.
+     * <p>
+     * If a tick is already scheduled for this link entity, whichever tick comes first is kept. Scheduled ticks are
+     * saved along with this link entity's graph. While the graph is unloaded, its scheduled ticks do not count down.
+     * <p>
+     * This does nothing on the client.
+     *
+     * @param delay the number of ticks to wait before calling {@link LinkEntity#onScheduledTick()}. Must be at least
+     *              <code>1</code>.
+     */
+    void scheduleTick(int delay);
+
+    /**
+     * Checks whether a tick is currently scheduled for this link entity.
+     *
+     * @return <code>true</code> if a tick is currently scheduled for this link entity.
+     */
+    boolean isTickScheduled();
+
     /**
      * Gets the link holder associated with this link entity.
      *
@@ -9,6 +9,7 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
 import com.kneelawk.graphlib.api.graph.user.BlockNode;
+import com.kneelawk.graphlib.api.graph.user.NodeEntity;
 import com.kneelawk.graphlib.api.util.NodePos;
 
 /**
@@ -23,6 +24,26 @@ public interface NodeEntityContext {
      */
     void markDirty();
 
+    /**
+     * Schedules a call to this node entity's {@link NodeEntity#onScheduledTick()} after the given number of ticks.
+     * <p>
+     * If a tick is already scheduled for this node entity, whichever tick comes first is kept. Scheduled ticks are
+     * saved along with this node entity's graph. While the graph is unloaded, its scheduled ticks do not count down.
+     * <p>
+     * This does nothing on the client.
+     *
+     * @param delay the number of ticks to wait before calling {@link NodeEntity#onScheduledTick()}. Must be at least
+     *              <code>1</code>.
+     */
+    void scheduleTick(int delay);
+
+    /**
+     * Checks whether a tick is currently scheduled for this node entity.
+     *
+     * @return <code>true</code> if a tick is currently scheduled for this node entity.
+     */
+    boolean isTickScheduled();
+
     /**
      * Gets the block node holder associated with this node entity.
      *
@@ -15,6 +15,7 @@ import net.minecraft.world.World;
 import com.kneelawk.graphlib.api.graph.user.BlockNode;
 import com.kneelawk.graphlib.api.graph.user.LinkKey;
 import com.kneelawk.graphlib.api.graph.user.NodeEntity;
+import com.kneelawk.graphlib.api.util.NodeHandle;
 import com.kneelawk.graphlib.api.util.NodePos;
 
 /**
@@ -54,6 +55,18 @@ public interface NodeHolder<N extends BlockNode> {
      */
     long getGraphId();
 
+    /**
+     * Gets a handle that can be used to look this node up again in constant time.
+     * <p>
+     * The handle becomes stale when this node is removed or moved to another graph.
+     *
+     * @return a handle to this node, or {@link NodeHandle#NONE} if this node cannot be represented by a handle.
+     * @see NodeHandle
+     */
+    default long getHandle() {
+        return NodeHandle.NONE;
+    }
+
     /**
      * Gets the world of blocks that this node holder is associated with.
      *
@@ -0,0 +1,42 @@
+package com.kneelawk.graphlib.api.graph;
+
+import java.util.List;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import net.minecraft.util.math.ChunkSectionPos;
+
+import com.kneelawk.graphlib.api.graph.user.BlockNode;
+import com.kneelawk.graphlib.api.util.LinkPos;
+
+/**
+ * Immutable, detached copy of a {@link BlockGraph}'s structure, holding only its nodes, links, and chunk sections.
+ * <p>
+ * Snapshot graphs are not kept up to date with the graph they were copied from, and holding onto one does not keep
+ * anything loaded. Node entities, link entities, and graph entities are not included.
+ *
+ * @param id     the id of the graph this was copied from.
+ * @param nodes  the graph's nodes.
+ * @param links  the graph's links.
+ * @param chunks the chunk sections the graph has nodes in.
+ */
+public record SnapshotGraph(long id, @NotNull List<SnapshotNode<BlockNode>> nodes, @NotNull List<LinkPos> links,
+                            @NotNull List<ChunkSectionPos> chunks) {
+    /**
+     * Creates a SnapshotGraph.
+     *
+     * @param id     the id of the graph this was copied from.
+     * @param nodes  the graph's nodes.
+     * @param links  the graph's links.
+     * @param chunks the chunk sections the graph has nodes in.
+     */
+    @ApiStatus.Internal
+    public SnapshotGraph(long id, @NotNull List<SnapshotNode<BlockNode>> nodes, @NotNull List<LinkPos> links,
+                         @NotNull List<ChunkSectionPos> chunks) {
+        this.id = id;
+        this.nodes = List.copyOf(nodes);
+        this.links = List.copyOf(links);
+        this.chunks = List.copyOf(chunks);
+    }
+}
@@ -1,5 +1,7 @@
 package com.kneelawk.graphlib.api.graph.user;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Collection;
 
 import org.jetbrains.annotations.NotNull;
@@ -63,6 +65,18 @@ public interface BlockNode {
      */
     default void toPacket(@NotNull NetByteBuf buf, @NotNull IMsgWriteCtx ctx) {}
 
+    /**
+     * Encodes this block node's data as raw bytes for saving.
+     * <p>
+     * This is only used if this block node's type has a {@link BlockNodeBinaryDecoder}, in which case it is used instead
+     * of {@link #toTag()} when saving graphs. This does not need to write anything if this block node's type is all the
+     * data that needs to be saved.
+     *
+     * @param out the output to write this block node's data to.
+     * @throws IOException if an error occurs while writing.
+     */
+    default void toBinary(@NotNull DataOutput out) throws IOException {}
+
     /**
      * Checks if this block node should be automatically removed.
      * <p>
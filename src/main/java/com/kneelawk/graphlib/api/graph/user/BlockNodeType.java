@@ -42,12 +42,15 @@ public class BlockNodeType implements ObjectType {
     private final @NotNull Identifier id;
     private final @NotNull BlockNodeDecoder decoder;
     private final @Nullable BlockNodePacketDecoder packetDecoder;
+    private final @Nullable BlockNodeBinaryDecoder binaryDecoder;
 
     private BlockNodeType(@NotNull Identifier id, @NotNull BlockNodeDecoder decoder,
-                          @Nullable BlockNodePacketDecoder packetDecoder) {
+                          @Nullable BlockNodePacketDecoder packetDecoder,
+                          @Nullable BlockNodeBinaryDecoder binaryDecoder) {
         this.id = id;
         this.decoder = decoder;
         this.packetDecoder = packetDecoder;
+        this.binaryDecoder = binaryDecoder;
     }
 
     /**
@@ -78,6 +81,17 @@ public class BlockNodeType implements ObjectType {
         return packetDecoder;
     }
 
+    /**
+     * Gets this type's binary decoder.
+     * <p>
+     * Types without a binary decoder are saved as NBT.
+     *
+     * @return this type's binary decoder.
+     */
+    public @Nullable BlockNodeBinaryDecoder getBinaryDecoder() {
+        return binaryDecoder;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -111,7 +125,23 @@ public class BlockNodeType implements ObjectType {
     @Contract(value = "_, _, _ -> new", pure = true)
     public static @NotNull BlockNodeType of(@NotNull Identifier id, @NotNull BlockNodeDecoder decoder,
                                             @Nullable BlockNodePacketDecoder packetDecoder) {
-        return new BlockNodeType(id, decoder, packetDecoder);
+        return new BlockNodeType(id, decoder, packetDecoder, null);
+    }
+
+    /**
+     * Creates a new block node type that can be saved as raw bytes.
+     *
+     * @param id            the id of the new type.
+     * @param decoder       the decoder for the new type.
+     * @param packetDecoder the packet decoder for the new type.
+     * @param binaryDecoder the binary decoder for the new type.
+     * @return a new block node type.
+     */
+    @Contract(value = "_, _, _, _ -> new", pure = true)
+    public static @NotNull BlockNodeType of(@NotNull Identifier id, @NotNull BlockNodeDecoder decoder,
+                                            @Nullable BlockNodePacketDecoder packetDecoder,
+                                            @Nullable BlockNodeBinaryDecoder binaryDecoder) {
+        return new BlockNodeType(id, decoder, packetDecoder, binaryDecoder);
     }
 
     /**
@@ -123,7 +153,7 @@ public class BlockNodeType implements ObjectType {
      */
     @Contract(value = "_, _ -> new", pure = true)
     public static @NotNull BlockNodeType of(@NotNull Identifier id, @NotNull BlockNodeDecoder decoder) {
-        return new BlockNodeType(id, decoder, null);
+        return new BlockNodeType(id, decoder, null, null);
     }
 
     /**
@@ -135,6 +165,6 @@ public class BlockNodeType implements ObjectType {
      */
     @Contract(value = "_, _ -> new", pure = true)
     public static @NotNull BlockNodeType of(@NotNull Identifier id, @NotNull Supplier<BlockNode> supplier) {
-        return new BlockNodeType(id, nbt -> supplier.get(), (buf, ctx) -> supplier.get());
+        return new BlockNodeType(id, nbt -> supplier.get(), (buf, ctx) -> supplier.get(), in -> supplier.get());
     }
 }
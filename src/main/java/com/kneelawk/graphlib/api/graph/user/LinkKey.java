@@ -1,5 +1,8 @@
 package com.kneelawk.graphlib.api.graph.user;
 
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -41,6 +44,17 @@ public interface LinkKey {
      */
     default void toPacket(@NotNull NetByteBuf buf, @NotNull IMsgWriteCtx ctx) {}
 
+    /**
+     * Encodes this link key as raw bytes for saving.
+     * <p>
+     * This is only used if this link key's type has a {@link LinkKeyBinaryDecoder}, in which case it is used instead of
+     * {@link #toTag()} when saving graphs.
+     *
+     * @param out the output to write to.
+     * @throws IOException if an error occurs while writing.
+     */
+    default void toBinary(@NotNull DataOutput out) throws IOException {}
+
     /**
      * Checks whether this specific link should have a link entity associated with it.
      * <p>
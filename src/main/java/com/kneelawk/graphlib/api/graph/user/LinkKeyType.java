@@ -42,12 +42,15 @@ public class LinkKeyType implements ObjectType {
     private final @NotNull Identifier id;
     private final @NotNull LinkKeyDecoder decoder;
     private final @Nullable LinkKeyPacketDecoder packetDecoder;
+    private final @Nullable LinkKeyBinaryDecoder binaryDecoder;
 
     private LinkKeyType(@NotNull Identifier id, @NotNull LinkKeyDecoder decoder,
-                        @Nullable LinkKeyPacketDecoder packetDecoder) {
+                        @Nullable LinkKeyPacketDecoder packetDecoder,
+                        @Nullable LinkKeyBinaryDecoder binaryDecoder) {
         this.id = id;
         this.decoder = decoder;
         this.packetDecoder = packetDecoder;
+        this.binaryDecoder = binaryDecoder;
     }
 
     /**
@@ -78,6 +81,17 @@ public class LinkKeyType implements ObjectType {
         return packetDecoder;
     }
 
+    /**
+     * Gets this type's binary decoder.
+     * <p>
+     * Types without a binary decoder are saved as NBT.
+     *
+     * @return this type's binary decoder.
+     */
+    public @Nullable LinkKeyBinaryDecoder getBinaryDecoder() {
+        return binaryDecoder;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -111,7 +125,23 @@ public class LinkKeyType implements ObjectType {
     @Contract(value = "_, _, _ -> new", pure = true)
     public static @NotNull LinkKeyType of(@NotNull Identifier id, @NotNull LinkKeyDecoder decoder,
                                           @Nullable LinkKeyPacketDecoder packetDecoder) {
-        return new LinkKeyType(id, decoder, packetDecoder);
+        return new LinkKeyType(id, decoder, packetDecoder, null);
+    }
+
+    /**
+     * Creates a new link key type that can be saved as raw bytes.
+     *
+     * @param id            the id of the type.
+     * @param decoder       the decoder of the type.
+     * @param packetDecoder the packet decoder of the type.
+     * @param binaryDecoder the binary decoder of the type.
+     * @return a new link key type.
+     */
+    @Contract(value = "_, _, _, _ -> new", pure = true)
+    public static @NotNull LinkKeyType of(@NotNull Identifier id, @NotNull LinkKeyDecoder decoder,
+                                          @Nullable LinkKeyPacketDecoder packetDecoder,
+                                          @Nullable LinkKeyBinaryDecoder binaryDecoder) {
+        return new LinkKeyType(id, decoder, packetDecoder, binaryDecoder);
     }
 
     /**
@@ -123,7 +153,7 @@ public class LinkKeyType implements ObjectType {
      */
     @Contract(value = "_, _ -> new", pure = true)
     public static @NotNull LinkKeyType of(@NotNull Identifier id, @NotNull LinkKeyDecoder decoder) {
-        return new LinkKeyType(id, decoder, null);
+        return new LinkKeyType(id, decoder, null, null);
     }
 
     /**
@@ -135,6 +165,6 @@ public class LinkKeyType implements ObjectType {
      */
     @Contract(value = "_, _ -> new", pure = true)
     public static @NotNull LinkKeyType of(@NotNull Identifier id, @NotNull Supplier<LinkKey> supplier) {
-        return new LinkKeyType(id, nbt -> supplier.get(), (buf, ctx) -> supplier.get());
+        return new LinkKeyType(id, nbt -> supplier.get(), (buf, ctx) -> supplier.get(), in -> supplier.get());
     }
 }
@@ -85,6 +85,13 @@ public interface NodeEntity {
      */
     default void onDelete() {}
 
+    /**
+     * Called when a tick scheduled via {@link NodeEntityContext#scheduleTick(int)} is reached.
+     * <p>
+     * This is only ever called on the server.
+     */
+    default void onScheduledTick() {}
+
     /**
      * Called when this entity has been created, but it is discovered that another instance of this entity has already
      * been created previously and that this instance should be discarded.
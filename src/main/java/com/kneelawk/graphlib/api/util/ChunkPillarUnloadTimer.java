@@ -1,12 +1,12 @@
 package com.kneelawk.graphlib.api.util;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import org.jetbrains.annotations.NotNull;
 
-import it.unimi.dsi.fastutil.longs.Long2LongLinkedOpenHashMap;
-import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
 
 import net.minecraft.util.math.ChunkPos;
 
@@ -14,8 +14,6 @@ import net.minecraft.util.math.ChunkPos;
  * Chunk-Pillar variant of {@link ChunkUnloadTimer}, for keeping track of chunk-pillars.
  */
 public class ChunkPillarUnloadTimer extends ChunkUnloadTimer {
-    private final Long2LongMap toUnload = new Long2LongLinkedOpenHashMap();
-
     /**
      * Constructs a chunk-pillar unload timer.
      *
@@ -27,12 +25,12 @@ public class ChunkPillarUnloadTimer extends ChunkUnloadTimer {
 
     @Override
     protected void removeUnloadMark(@NotNull ChunkPos pos) {
-        toUnload.remove(pos.toLong());
+        stopCountdown(pos.toLong());
     }
 
     @Override
     protected void markForUnloading(@NotNull ChunkPos pos) {
-        toUnload.put(pos.toLong(), tickAge + maxAge);
+        startCountdown(pos.toLong());
     }
 
     /**
@@ -43,7 +41,7 @@ public class ChunkPillarUnloadTimer extends ChunkUnloadTimer {
     public void onChunkUse(@NotNull ChunkPos pos) {
         long longPos = pos.toLong();
         if (!worldLoadedChunks.contains(longPos)) {
-            toUnload.put(longPos, tickAge + maxAge);
+            startCountdown(longPos);
         }
     }
 
@@ -53,7 +51,7 @@ public class ChunkPillarUnloadTimer extends ChunkUnloadTimer {
      * @param pos the position of the unloaded chunk.
      */
     public void onChunkUnload(@NotNull ChunkPos pos) {
-        toUnload.remove(pos.toLong());
+        stopCountdown(pos.toLong());
     }
 
     /**
@@ -62,10 +60,13 @@ public class ChunkPillarUnloadTimer extends ChunkUnloadTimer {
      * @return a list of the chunks to unload.
      */
     public @NotNull List<ChunkPos> chunksToUnload() {
-        return toUnload.keySet()
-            .longStream()
-            .filter((longPos) -> toUnload.get(longPos) < tickAge)
-            .mapToObj(ChunkPos::new)
-            .collect(Collectors.toList());
+        LongSet expired = getExpired();
+        if (expired.isEmpty()) return List.of();
+
+        List<ChunkPos> chunks = new ArrayList<>(expired.size());
+        for (LongIterator iter = expired.iterator(); iter.hasNext(); ) {
+            chunks.add(new ChunkPos(iter.nextLong()));
+        }
+        return chunks;
     }
 }
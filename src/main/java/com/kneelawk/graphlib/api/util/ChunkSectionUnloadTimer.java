@@ -1,12 +1,11 @@
 package com.kneelawk.graphlib.api.util;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import org.jetbrains.annotations.NotNull;
 
-import it.unimi.dsi.fastutil.longs.Long2LongLinkedOpenHashMap;
-import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
 
@@ -22,7 +21,6 @@ public class ChunkSectionUnloadTimer extends ChunkUnloadTimer {
     private final int topSectionCoord;
 
     private final LongSet loadedChunks = new LongOpenHashSet();
-    private final Long2LongMap toUnload = new Long2LongLinkedOpenHashMap();
 
     /**
      * Constructs a chunk section unload timer.
@@ -40,7 +38,7 @@ public class ChunkSectionUnloadTimer extends ChunkUnloadTimer {
     @Override
     protected void removeUnloadMark(@NotNull ChunkPos pos) {
         for (int y = bottomSectionCoord; y < topSectionCoord; y++) {
-            toUnload.remove(ChunkSectionPos.asLong(pos.x, y, pos.z));
+            stopCountdown(ChunkSectionPos.asLong(pos.x, y, pos.z));
         }
     }
 
@@ -49,7 +47,7 @@ public class ChunkSectionUnloadTimer extends ChunkUnloadTimer {
         for (int y = bottomSectionCoord; y < topSectionCoord; y++) {
             long longPos = ChunkSectionPos.asLong(pos.x, y, pos.z);
             if (loadedChunks.contains(longPos)) {
-                toUnload.put(longPos, tickAge + maxAge);
+                startCountdown(longPos);
             }
         }
     }
@@ -72,7 +70,7 @@ public class ChunkSectionUnloadTimer extends ChunkUnloadTimer {
     public void onChunkUse(@NotNull ChunkSectionPos pos) {
         loadedChunks.add(pos.asLong());
         if (!worldLoadedChunks.contains(pos.toChunkPos().toLong())) {
-            toUnload.put(pos.asLong(), tickAge + maxAge);
+            startCountdown(pos.asLong());
         }
     }
 
@@ -84,7 +82,7 @@ public class ChunkSectionUnloadTimer extends ChunkUnloadTimer {
      */
     public void onChunkUnload(@NotNull ChunkSectionPos pos) {
         loadedChunks.remove(pos.asLong());
-        toUnload.remove(pos.asLong());
+        stopCountdown(pos.asLong());
     }
 
     /**
@@ -93,10 +91,13 @@ public class ChunkSectionUnloadTimer extends ChunkUnloadTimer {
      * @return a list of chunk sections to unload.
      */
     public List<ChunkSectionPos> chunksToUnload() {
-        return toUnload.keySet()
-            .longStream()
-            .filter((longPos) -> toUnload.get(longPos) < tickAge)
-            .mapToObj(ChunkSectionPos::from)
-            .collect(Collectors.toList());
+        LongSet expired = getExpired();
+        if (expired.isEmpty()) return List.of();
+
+        List<ChunkSectionPos> chunks = new ArrayList<>(expired.size());
+        for (LongIterator iter = expired.iterator(); iter.hasNext(); ) {
+            chunks.add(ChunkSectionPos.from(iter.nextLong()));
+        }
+        return chunks;
     }
 }
@@ -2,11 +2,16 @@ package com.kneelawk.graphlib.api.util;
 
 import org.jetbrains.annotations.NotNull;
 
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
 
 import net.minecraft.util.math.ChunkPos;
 
+import com.kneelawk.graphlib.impl.util.TimingWheel;
+
 /**
  * An abstract tickable timer that alerts you when a chunk should unload.
  */
@@ -25,6 +30,12 @@ public abstract class ChunkUnloadTimer {
      */
     protected final LongSet worldLoadedChunks = new LongOpenHashSet();
 
+    // position -> deadline, only for countdowns that have not expired yet
+    private final Long2LongMap deadlines = new Long2LongOpenHashMap();
+    // re-touched positions keep their wheel entry and are re-scheduled when it fires
+    private final TimingWheel<Long> wheel = new TimingWheel<>(0);
+    private final LongSet expired = new LongLinkedOpenHashSet();
+
     /**
      * Constructs a chunk-unload-timer.
      *
@@ -33,6 +44,7 @@ public abstract class ChunkUnloadTimer {
     public ChunkUnloadTimer(long maxAge) {
         this.maxAge = maxAge;
         tickAge = 0;
+        deadlines.defaultReturnValue(-1);
     }
 
     /**
@@ -86,5 +98,53 @@ public abstract class ChunkUnloadTimer {
      */
     public void tick() {
         tickAge++;
+        wheel.advance(tickAge, this::onWheelExpire);
+    }
+
+    /**
+     * Starts or restarts the unload countdown for the given position.
+     * <p>
+     * Restarting a countdown that is already running only updates its deadline.
+     *
+     * @param pos the chunk or chunk section position to count down.
+     */
+    protected void startCountdown(long pos) {
+        expired.remove(pos);
+        if (deadlines.put(pos, tickAge + maxAge) == -1) {
+            // countdowns expire once the tick age has passed their deadline
+            wheel.schedule(pos, tickAge + maxAge + 1);
+        }
+    }
+
+    /**
+     * Stops the unload countdown for the given position, whether it has expired or not.
+     *
+     * @param pos the chunk or chunk section position to stop counting down.
+     */
+    protected void stopCountdown(long pos) {
+        deadlines.remove(pos);
+        expired.remove(pos);
+    }
+
+    /**
+     * Gets the positions whose countdowns have expired and that have not been stopped or restarted since.
+     *
+     * @return the positions whose countdowns have expired. This must not be modified.
+     */
+    protected @NotNull LongSet getExpired() {
+        return expired;
+    }
+
+    private void onWheelExpire(Long pos) {
+        long deadline = deadlines.get(pos.longValue());
+        // stopped countdowns leave stale wheel entries behind
+        if (deadline == -1) return;
+
+        if (deadline < tickAge) {
+            deadlines.remove(pos.longValue());
+            expired.add(pos.longValue());
+        } else {
+            wheel.schedule(pos, deadline + 1);
+        }
     }
 }
@@ -0,0 +1,94 @@
+package com.kneelawk.graphlib.api.util;
+
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import com.kneelawk.graphlib.api.graph.user.LinkKey;
+
+/**
+ * Acts as both key and predicate for graphs' filtered connectivity views.
+ * <p>
+ * Only links whose keys match a connectivity category are considered when determining which nodes are connected
+ * within that category. This is useful for things like colored or bundled cables, where each color is represented by a
+ * different link key.
+ * <p>
+ * Note: connectivity categories should be kept around and re-used. Views are cached per category, so creating a new
+ * category every time a lookup is needed means the view must be rebuilt every time.
+ *
+ * @param <K> the type of link key this category operates on.
+ */
+public class ConnectivityCategory<K extends LinkKey> {
+    private final Class<K> keyClass;
+    private final Predicate<K> predicate;
+
+    private ConnectivityCategory(Class<K> keyClass, Predicate<K> predicate) {
+        this.keyClass = keyClass;
+        this.predicate = predicate;
+    }
+
+    /**
+     * Gets the class of the link keys this filters for.
+     *
+     * @return the class of the link keys this filters for.
+     */
+    public @NotNull Class<K> getKeyClass() {
+        return keyClass;
+    }
+
+    /**
+     * Checks whether a given link key matches this connectivity category.
+     *
+     * @param key the link key to check.
+     * @return <code>true</code> if links with the given key should connect nodes in this category.
+     */
+    public boolean matches(@NotNull LinkKey key) {
+        return keyClass.isInstance(key) && predicate.test(keyClass.cast(key));
+    }
+
+    /**
+     * Creates a new connectivity category.
+     * <p>
+     * Note: connectivity categories should be kept around and re-used. Views are cached per category, so creating a
+     * new category every time a lookup is needed means the view must be rebuilt every time.
+     *
+     * @param keyClass  the class of link key that connects nodes in this category.
+     * @param predicate the filter that all link keys connecting nodes in this category match.
+     * @param <K>       the type of link key in this connectivity category.
+     * @return a new connectivity category.
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    public static <K extends LinkKey> @NotNull ConnectivityCategory<K> of(Class<K> keyClass, Predicate<K> predicate) {
+        return new ConnectivityCategory<>(keyClass, predicate);
+    }
+
+    /**
+     * Creates a new connectivity category, with only a type as its filter.
+     * <p>
+     * Note: connectivity categories should be kept around and re-used. Views are cached per category, so creating a
+     * new category every time a lookup is needed means the view must be rebuilt every time.
+     *
+     * @param keyClass the class of link key to filter by.
+     * @param <K>      the type of link key in this connectivity category.
+     * @return a new connectivity category.
+     */
+    @Contract(value = "_ -> new", pure = true)
+    public static <K extends LinkKey> @NotNull ConnectivityCategory<K> of(Class<K> keyClass) {
+        return new ConnectivityCategory<>(keyClass, key -> true);
+    }
+
+    /**
+     * Creates a new connectivity category, with only a predicate as its filter.
+     * <p>
+     * Note: connectivity categories should be kept around and re-used. Views are cached per category, so creating a
+     * new category every time a lookup is needed means the view must be rebuilt every time.
+     *
+     * @param predicate the filter that all link keys connecting nodes in this category match.
+     * @return a new connectivity category.
+     */
+    @Contract(value = "_ -> new", pure = true)
+    public static @NotNull ConnectivityCategory<LinkKey> of(Predicate<LinkKey> predicate) {
+        return new ConnectivityCategory<>(LinkKey.class, predicate);
+    }
+}
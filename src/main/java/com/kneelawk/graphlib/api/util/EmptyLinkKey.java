@@ -7,6 +7,7 @@ import net.minecraft.nbt.NbtElement;
 import net.minecraft.util.Identifier;
 
 import com.kneelawk.graphlib.api.graph.user.LinkKey;
+import com.kneelawk.graphlib.api.graph.user.LinkKeyBinaryDecoder;
 import com.kneelawk.graphlib.api.graph.user.LinkKeyDecoder;
 import com.kneelawk.graphlib.api.graph.user.LinkKeyPacketDecoder;
 import com.kneelawk.graphlib.api.graph.user.LinkKeyType;
@@ -39,6 +40,11 @@ public class EmptyLinkKey implements LinkKey {
      */
     public static final LinkKeyPacketDecoder PACKET_DECODER = (buf, ctx) -> INSTANCE;
 
+    /**
+     * Binary decoder for the empty link key. Always returns this singleton's instance.
+     */
+    public static final LinkKeyBinaryDecoder BINARY_DECODER = in -> INSTANCE;
+
     /**
      * Always returns this singleton's link key instance.
      */
@@ -47,7 +53,7 @@ public class EmptyLinkKey implements LinkKey {
     /**
      * The link key type for the empty link key.
      */
-    public static final LinkKeyType TYPE = LinkKeyType.of(TYPE_ID, DECODER, PACKET_DECODER);
+    public static final LinkKeyType TYPE = LinkKeyType.of(TYPE_ID, DECODER, PACKET_DECODER, BINARY_DECODER);
 
     private EmptyLinkKey() {}
 
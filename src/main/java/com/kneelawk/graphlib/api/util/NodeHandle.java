@@ -0,0 +1,129 @@
+package com.kneelawk.graphlib.api.util;
+
+/**
+ * Utilities for working with node handles.
+ * <p>
+ * A node handle is a packed <code>long</code> that identifies a node by its graph id, its slot within that graph, and
+ * the generation of that slot. Handles can be stored (e.g. in block entities) and later dereferenced in constant time
+ * using {@link com.kneelawk.graphlib.api.graph.GraphView#getNodeByHandle(long)}. Once a node is removed or moved to
+ * another graph (e.g. by a merge or split), its old handle becomes stale and dereferences to <code>null</code>.
+ * <p>
+ * Handles are persisted along with their graphs, but are only meaningful on the logical side that created them. Client
+ * handles do not correspond to server handles.
+ * <p>
+ * Layout: the upper 32 bits hold the graph id, the next 24 bits hold the slot, and the lowest 8 bits hold the
+ * generation. Generations are never <code>0</code>, so <code>0</code> can be used as a 'no handle' value.
+ * <p>
+ * Generations never wrap around. A slot that has used up its generations is retired instead of being reused, so that
+ * old handles to it can never resolve to an unrelated node.
+ */
+public final class NodeHandle {
+    private NodeHandle() {
+    }
+
+    /**
+     * A value that never refers to any node.
+     */
+    public static final long NONE = 0L;
+
+    /**
+     * The largest graph id that can be represented in a node handle.
+     */
+    public static final long MAX_GRAPH_ID = 0xFFFFFFFFL;
+
+    /**
+     * The largest slot that can be represented in a node handle.
+     */
+    public static final int MAX_SLOT = 0xFFFFFF;
+
+    /**
+     * The largest generation that can be represented in a node handle.
+     */
+    public static final int MAX_GENERATION = 0xFF;
+
+    /**
+     * The generation of a slot that has used up all its generations. Retired slots are never reused, and no handle
+     * to a node is ever given this generation.
+     */
+    public static final int RETIRED_GENERATION = MAX_GENERATION;
+
+    /**
+     * Packs a graph id, slot, and generation into a node handle.
+     *
+     * @param graphId    the id of the graph the node is in.
+     * @param slot       the node's slot within its graph.
+     * @param generation the generation of the node's slot.
+     * @return the packed node handle.
+     * @throws IllegalArgumentException if any component is out of range.
+     */
+    public static long pack(long graphId, int slot, int generation) {
+        if (graphId < 0 || graphId > MAX_GRAPH_ID)
+            throw new IllegalArgumentException("Graph id out of range for a node handle: " + graphId);
+        if (slot < 0 || slot > MAX_SLOT)
+            throw new IllegalArgumentException("Slot out of range for a node handle: " + slot);
+        if (generation < 1 || generation > MAX_GENERATION)
+            throw new IllegalArgumentException("Generation out of range for a node handle: " + generation);
+
+        return (graphId << 32) | ((long) slot << 8) | generation;
+    }
+
+    /**
+     * Gets the graph id component of a node handle.
+     *
+     * @param handle the node handle.
+     * @return the id of the graph the handle refers to.
+     */
+    public static long getGraphId(long handle) {
+        return handle >>> 32;
+    }
+
+    /**
+     * Gets the slot component of a node handle.
+     *
+     * @param handle the node handle.
+     * @return the slot within its graph the handle refers to.
+     */
+    public static int getSlot(long handle) {
+        return (int) (handle >>> 8) & MAX_SLOT;
+    }
+
+    /**
+     * Gets the generation component of a node handle.
+     *
+     * @param handle the node handle.
+     * @return the generation of the slot the handle refers to.
+     */
+    public static int getGeneration(long handle) {
+        return (int) handle & MAX_GENERATION;
+    }
+
+    /**
+     * Gets the generation that comes after the given generation.
+     *
+     * @param generation the current generation.
+     * @return the next generation, or {@link #RETIRED_GENERATION} if the slot has used up all its generations.
+     */
+    public static int nextGeneration(int generation) {
+        return generation >= RETIRED_GENERATION - 1 ? RETIRED_GENERATION : generation + 1;
+    }
+
+    /**
+     * Checks whether a slot with the given generation has been retired and must not be reused.
+     *
+     * @param generation the slot's generation.
+     * @return <code>true</code> if the slot is retired.
+     */
+    public static boolean isRetired(int generation) {
+        return generation >= RETIRED_GENERATION;
+    }
+
+    /**
+     * Checks whether the given handle could refer to a node.
+     *
+     * @param handle the handle to check.
+     * @return <code>true</code> if the handle has a valid generation.
+     */
+    public static boolean isValid(long handle) {
+        return getGeneration(handle) != 0;
+    }
+}
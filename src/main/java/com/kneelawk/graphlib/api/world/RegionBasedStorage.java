@@ -1,5 +1,7 @@
 package com.kneelawk.graphlib.api.world;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -46,6 +48,35 @@ public interface RegionBasedStorage<R extends StorageChunk> extends AutoCloseabl
      */
     @Nullable R getIfExists(@NotNull ChunkSectionPos pos);
 
+    /**
+     * Gets a chunk section at the given location without blocking on disk, or <code>null</code> if one does not exist
+     * there.
+     *
+     * @param pos the position of the chunk section.
+     * @return a future that completes with the retrieved chunk section, or with <code>null</code> if none could be
+     * retrieved.
+     */
+    default @NotNull CompletableFuture<@Nullable R> getIfExistsAsync(@NotNull ChunkSectionPos pos) {
+        return CompletableFuture.completedFuture(getIfExists(pos));
+    }
+
+    /**
+     * Hints that a chunk pillar is likely to be used soon, so that it can be loaded in the background.
+     *
+     * @param pos the position of the chunk pillar.
+     */
+    default void prefetch(@NotNull ChunkPos pos) {
+    }
+
+    /**
+     * Finds out whether a chunk pillar has any data, without loading it, so that loading it later can skip reading it
+     * if it has none.
+     *
+     * @param pos the position of the chunk pillar.
+     */
+    default void scanPresence(@NotNull ChunkPos pos) {
+    }
+
     /**
      * Ticks this storage, unloading and saving any chunks that need it.
      */
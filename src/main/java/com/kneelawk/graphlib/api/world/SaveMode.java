@@ -11,7 +11,7 @@ public enum SaveMode {
      */
     UNLOAD,
     /**
-     * Save some things every tick.
+     * Save some things every tick, within a per-tick time budget.
      * <p>
      * This is best for graphs that are updated less-frequently, and where graph corruption is to be avoided.
      */
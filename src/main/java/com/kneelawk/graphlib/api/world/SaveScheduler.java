@@ -0,0 +1,277 @@
+package com.kneelawk.graphlib.api.world;
+
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+import org.jetbrains.annotations.NotNull;
+
+import it.unimi.dsi.fastutil.longs.Long2LongLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import com.kneelawk.graphlib.impl.GLLog;
+
+/**
+ * Saves dirty objects a few at a time, within a per-tick time budget.
+ * <p>
+ * Each kind of object gets its own {@link Queue}, and all queues of a scheduler share its budget. Queues with
+ * {@link SaveMode#INCREMENTAL} are saved within the budget, favoring objects that have been waiting the longest and
+ * that are cheapest to save. How long each object takes to save is measured, so that objects that are expensive to save
+ * wait until they have been dirty for long enough, instead of all being saved in the same tick. Only the objects that
+ * have been dirty the longest in each queue are considered each tick, so that queues with many dirty objects don't
+ * spend the budget on choosing between them.
+ * <p>
+ * Queues with {@link SaveMode#IMMEDIATE} are saved in full every tick, and queues with {@link SaveMode#UNLOAD} are
+ * never saved by the scheduler.
+ */
+public final class SaveScheduler {
+    /**
+     * The default per-tick budget, in milliseconds.
+     */
+    public static final double DEFAULT_BUDGET_MILLIS = 2.0;
+
+    /**
+     * The smallest cost an object is assumed to have, so that very cheap objects cannot take priority forever.
+     */
+    private static final long MIN_COST_NANOS = 10_000L;
+
+    /**
+     * The number of each queue's oldest dirty objects considered for saving each tick.
+     */
+    private static final int MAX_CANDIDATES_PER_QUEUE = 256;
+
+    private final long budgetNanos;
+    private final LongSupplier clock;
+
+    private final List<Queue> queues = new ObjectArrayList<>();
+    private long tickCount = 0;
+
+    /**
+     * Creates a new save scheduler.
+     *
+     * @param budgetMillis how many milliseconds each tick may spend saving incrementally-saved objects.
+     */
+    public SaveScheduler(double budgetMillis) {
+        this((long) (budgetMillis * 1_000_000.0), System::nanoTime);
+    }
+
+    SaveScheduler(long budgetNanos, @NotNull LongSupplier clock) {
+        this.budgetNanos = budgetNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a new queue of dirty objects saved by this scheduler.
+     *
+     * @param saveMode how the queue's objects should be saved.
+     * @param saver    saves the object with the given key.
+     * @return the new queue.
+     */
+    public @NotNull Queue createQueue(@NotNull SaveMode saveMode, @NotNull LongConsumer saver) {
+        Queue queue = new Queue(saveMode, saver);
+        queues.add(queue);
+        return queue;
+    }
+
+    /**
+     * Saves dirty objects. This should be called once per tick, after everything that marks objects dirty.
+     */
+    public void tick() {
+        tickCount++;
+
+        // choosing what to save is part of saving, so it comes out of the budget too
+        long start = clock.getAsLong();
+
+        List<Candidate> candidates = new ObjectArrayList<>();
+        for (Queue queue : queues.toArray(Queue[]::new)) {
+            if (queue.dirty.isEmpty()) continue;
+
+            switch (queue.saveMode) {
+                case IMMEDIATE -> queue.saveAll();
+                case INCREMENTAL -> {
+                    // dirty objects are kept oldest first
+                    int scanned = 0;
+                    for (var iter = queue.dirty.long2LongEntrySet().iterator();
+                         iter.hasNext() && scanned < MAX_CANDIDATES_PER_QUEUE; scanned++) {
+                        Long2LongMap.Entry entry = iter.next();
+                        long key = entry.getLongKey();
+                        long cost = queue.estimateCost(key);
+                        long age = tickCount - entry.getLongValue();
+                        candidates.add(new Candidate(queue, key, cost, (double) (age + 1) / (double) cost));
+                    }
+                }
+                case UNLOAD -> {
+                }
+            }
+        }
+
+        if (candidates.isEmpty()) return;
+
+        candidates.sort((a, b) -> Double.compare(b.priority, a.priority));
+
+        boolean savedAny = false;
+        for (Candidate candidate : candidates) {
+            // always save something, so that objects more expensive than the whole budget still get saved eventually
+            if (savedAny) {
+                long remaining = budgetNanos - (clock.getAsLong() - start);
+                if (remaining <= 0) break;
+                if (candidate.cost > remaining) continue;
+            }
+
+            // an earlier save may have saved this object as well
+            if (!candidate.queue.dirty.containsKey(candidate.key)) continue;
+
+            candidate.queue.save(candidate.key);
+            savedAny = true;
+        }
+    }
+
+    private record Candidate(Queue queue, long key, long cost, double priority) {}
+
+    /**
+     * A set of dirty objects saved by a {@link SaveScheduler}, keyed by <code>long</code>s.
+     * <p>
+     * Owners also save objects themselves, when their chunks unload for example, and should {@link #remove(long)}
+     * them from the queue when they do.
+     */
+    public final class Queue {
+        private final SaveMode saveMode;
+        private final LongConsumer saver;
+
+        // key -> tick it was marked dirty, in the order objects were marked dirty
+        private final Long2LongLinkedOpenHashMap dirty = new Long2LongLinkedOpenHashMap();
+        // key -> moving average of how long saving the object takes
+        private final Long2LongOpenHashMap costs = new Long2LongOpenHashMap();
+        private long averageCost = MIN_COST_NANOS;
+
+        private Queue(@NotNull SaveMode saveMode, @NotNull LongConsumer saver) {
+            this.saveMode = saveMode;
+            this.saver = saver;
+        }
+
+        /**
+         * Marks an object as dirty. Objects that are already dirty keep their age.
+         *
+         * @param key the object's key.
+         * @return <code>true</code> if the object was not already dirty.
+         */
+        public boolean add(long key) {
+            if (dirty.containsKey(key)) return false;
+            dirty.put(key, tickCount);
+            return true;
+        }
+
+        /**
+         * Marks an object as no longer dirty, usually because it has been saved.
+         *
+         * @param key the object's key.
+         * @return <code>true</code> if the object was dirty.
+         */
+        public boolean remove(long key) {
+            if (!dirty.containsKey(key)) return false;
+            dirty.remove(key);
+            return true;
+        }
+
+        /**
+         * Marks an object as no longer dirty and forgets how long it takes to save, usually because it has been
+         * unloaded.
+         *
+         * @param key the object's key.
+         * @return <code>true</code> if the object was dirty.
+         */
+        public boolean forget(long key) {
+            costs.remove(key);
+            return remove(key);
+        }
+
+        /**
+         * Checks whether an object is dirty.
+         *
+         * @param key the object's key.
+         * @return <code>true</code> if the object is dirty.
+         */
+        public boolean contains(long key) {
+            return dirty.containsKey(key);
+        }
+
+        /**
+         * @return <code>true</code> if no objects are dirty.
+         */
+        public boolean isEmpty() {
+            return dirty.isEmpty();
+        }
+
+        /**
+         * @return the number of dirty objects.
+         */
+        public int size() {
+            return dirty.size();
+        }
+
+        /**
+         * Saves all dirty objects now, regardless of the budget.
+         */
+        public void saveAll() {
+            LongList keys = new LongArrayList(dirty.keySet());
+            for (LongIterator iter = keys.iterator(); iter.hasNext(); ) {
+                long key = iter.nextLong();
+                if (dirty.containsKey(key)) {
+                    save(key);
+                }
+            }
+        }
+
+        /**
+         * Marks all objects as no longer dirty and returns them, for owners that save many objects together.
+         *
+         * @return the keys of all the objects that were dirty, oldest first.
+         */
+        public @NotNull LongList takeAll() {
+            LongList keys = new LongArrayList(dirty.keySet());
+            dirty.clear();
+            return keys;
+        }
+
+        /**
+         * Marks all objects as no longer dirty.
+         */
+        public void clear() {
+            dirty.clear();
+        }
+
+        /**
+         * Removes this queue from its scheduler. Its objects will no longer be saved by the scheduler.
+         */
+        public void close() {
+            queues.remove(this);
+            dirty.clear();
+            costs.clear();
+        }
+
+        private long estimateCost(long key) {
+            return Math.max(costs.getOrDefault(key, averageCost), MIN_COST_NANOS);
+        }
+
+        private void save(long key) {
+            dirty.remove(key);
+
+            long start = clock.getAsLong();
+            try {
+                saver.accept(key);
+            } catch (Exception e) {
+                GLLog.error("Error saving object {}", key, e);
+            }
+            long cost = clock.getAsLong() - start;
+
+            long previous = costs.get(key);
+            costs.put(key, previous == 0 ? cost : (previous + cost) / 2);
+            averageCost = (averageCost * 7 + cost) / 8;
+        }
+    }
+}
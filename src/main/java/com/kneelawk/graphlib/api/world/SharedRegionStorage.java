@@ -0,0 +1,380 @@
+package com.kneelawk.graphlib.api.world;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.storage.RegionFile;
+import net.minecraft.world.storage.StorageIoWorker;
+
+import com.kneelawk.graphlib.impl.GLLog;
+import com.kneelawk.graphlib.impl.mixin.api.StorageHelper;
+import com.kneelawk.graphlib.impl.util.PillarPresence;
+
+/**
+ * Region files shared by several {@link UnloadingRegionBasedStorage}s, so that loading a chunk pillar takes one read
+ * instead of one read per storage.
+ * <p>
+ * Each chunk pillar has a single record, holding each storage's data for that pillar side by side under the storage's
+ * key. While any storage has a pillar loaded, the pillar's record is kept in memory, so that storages can write their
+ * part of it without reading it first.
+ * <p>
+ * This must only be used from the server thread. The owner is responsible for closing this once all the storages using
+ * it have been closed.
+ */
+public class SharedRegionStorage implements AutoCloseable {
+    private static final Pattern REGION_PATTERN = Pattern.compile("^r\\.(?<x>-?\\d+)\\.(?<z>-?\\d+)\\.mca$");
+    private static final int REGION_SHIFT = 5;
+    private static final int REGION_SIZE = 1 << REGION_SHIFT;
+
+    private final Path path;
+    private final StorageIoWorker worker;
+    private final PillarPresence presence;
+
+    /**
+     * The latest record of every chunk pillar a storage is using.
+     */
+    private final Long2ObjectMap<NbtCompound> records = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * The number of storages using each chunk pillar.
+     */
+    private final Long2IntMap users = new Long2IntOpenHashMap();
+
+    /**
+     * Reads of pillars that are not in {@link #records} yet. These are shared by every storage loading the pillar.
+     */
+    private final Long2ObjectMap<CompletableFuture<Optional<NbtCompound>>> reads = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * Records held back while a snapshot is being exported. <code>null</code> values delete their records.
+     */
+    private final Long2ObjectMap<NbtCompound> heldWrites = new Long2ObjectOpenHashMap<>();
+    private int snapshots = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Creates a new shared region storage.
+     *
+     * @param path            the path to where region files should be saved.
+     * @param syncChunkWrites whether chunk writes should be written synchronously, corresponding to
+     *                        {@link java.nio.file.StandardOpenOption#DSYNC}.
+     */
+    public SharedRegionStorage(@NotNull Path path, boolean syncChunkWrites) {
+        this.path = path;
+        worker = StorageHelper.newWorker(path, syncChunkWrites, path.getFileName().toString());
+        presence = new PillarPresence(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        endSnapshot();
+        worker.close();
+    }
+
+    /**
+     * Starts using a chunk pillar, reading its record if no other storage is using it.
+     * <p>
+     * Every call must be matched by a call to {@link #release(long)}.
+     */
+    @NotNull CompletableFuture<Optional<NbtCompound>> reserve(long pos) {
+        users.put(pos, users.get(pos) + 1);
+
+        NbtCompound record = records.get(pos);
+        if (record != null) return CompletableFuture.completedFuture(Optional.of(record));
+
+        CompletableFuture<Optional<NbtCompound>> read = reads.get(pos);
+        if (read == null) {
+            if (heldWrites.containsKey(pos)) {
+                read = CompletableFuture.completedFuture(Optional.ofNullable(heldWrites.get(pos)));
+            } else if (presence.isKnownAbsent(ChunkPos.getPackedX(pos), ChunkPos.getPackedZ(pos))) {
+                read = CompletableFuture.completedFuture(Optional.empty());
+            } else {
+                read = worker.readChunkData(new ChunkPos(pos));
+            }
+            reads.put(pos, read);
+        }
+        return read;
+    }
+
+    /**
+     * Checks whether a chunk pillar is known to have no record, without reading anything.
+     */
+    boolean isKnownAbsent(long pos) {
+        if (records.containsKey(pos)) return false;
+        return presence.isKnownAbsent(ChunkPos.getPackedX(pos), ChunkPos.getPackedZ(pos));
+    }
+
+    /**
+     * Checks whether a chunk pillar has no record, reading at most its region file's header.
+     */
+    boolean isAbsent(long pos) {
+        if (records.containsKey(pos)) return false;
+        return presence.isAbsent(ChunkPos.getPackedX(pos), ChunkPos.getPackedZ(pos));
+    }
+
+    /**
+     * Gets a storage's part of a chunk pillar's record, once the read returned by {@link #reserve(long)} has finished.
+     * <p>
+     * Reads can be out of date by the time they finish, so this prefers the record in memory.
+     *
+     * @return the storage's part of the record, or <code>null</code> if it has none.
+     */
+    @Nullable NbtCompound install(long pos, @NotNull CompletableFuture<Optional<NbtCompound>> read,
+                                  @NotNull String key) {
+        NbtCompound record = records.get(pos);
+        if (record == null) {
+            // a read that was replaced by a write or whose pillar was released in the meantime is out of date
+            record = reads.get(pos) == read ? read.join().orElseGet(NbtCompound::new) : readNow(pos);
+            reads.remove(pos);
+            if (users.get(pos) > 0) {
+                records.put(pos, record);
+            }
+        }
+
+        return record.contains(key, NbtElement.COMPOUND_TYPE) ? record.getCompound(key) : null;
+    }
+
+    /**
+     * Stops using a chunk pillar, dropping its record from memory once no storage is using it.
+     */
+    void release(long pos) {
+        int count = users.get(pos);
+        if (count > 1) {
+            users.put(pos, count - 1);
+        } else {
+            users.remove(pos);
+            records.remove(pos);
+            reads.remove(pos);
+        }
+    }
+
+    /**
+     * Replaces a storage's part of a chunk pillar's record.
+     *
+     * @param part the storage's new part, or <code>null</code> to remove it.
+     */
+    void write(long pos, @NotNull String key, @Nullable NbtCompound part) {
+        NbtCompound record = records.get(pos);
+        if (record == null) {
+            try {
+                record = readNow(pos);
+            } catch (Exception e) {
+                GLLog.error("Error reading shared chunk pillar {} to merge into. Discarding write.", new ChunkPos(pos),
+                    e);
+                return;
+            }
+            // any read still in flight won't include this write
+            reads.remove(pos);
+        }
+
+        // records are never modified once written, as the I/O worker may still be encoding them
+        NbtCompound updated = new NbtCompound();
+        for (String otherKey : record.getKeys()) {
+            if (!otherKey.equals(key)) {
+                updated.put(otherKey, record.get(otherKey));
+            }
+        }
+        if (part != null) {
+            updated.put(key, part);
+        }
+
+        if (users.get(pos) > 0) {
+            records.put(pos, updated);
+        }
+
+        NbtCompound result = updated.isEmpty() ? null : updated;
+        presence.markWritten(ChunkPos.getPackedX(pos), ChunkPos.getPackedZ(pos), result != null);
+        if (snapshots > 0) {
+            heldWrites.put(pos, result);
+        } else {
+            worker.setResult(new ChunkPos(pos), result);
+        }
+    }
+
+    /**
+     * Holds back all further writes, so that the region files stay exactly as they are until every snapshot has ended.
+     *
+     * @return a future that completes once all earlier writes have reached the region files.
+     */
+    @NotNull CompletableFuture<Void> beginSnapshot() {
+        snapshots++;
+        return worker.completeAll(true);
+    }
+
+    /**
+     * Ends a snapshot, passing held-back writes on to the region files once no snapshots are left.
+     */
+    void endSnapshot() {
+        if (snapshots == 0) return;
+        snapshots--;
+        if (snapshots > 0) return;
+
+        for (Long2ObjectMap.Entry<NbtCompound> entry : heldWrites.long2ObjectEntrySet()) {
+            worker.setResult(new ChunkPos(entry.getLongKey()), entry.getValue());
+        }
+        heldWrites.clear();
+    }
+
+    /**
+     * Writes a storage's part of every chunk pillar record to ordinary region files in another directory, the same as
+     * a storage with its own region files would have saved them. This can be called from any thread while a snapshot
+     * is being held.
+     * <p>
+     * Only the storage's own part is exported, so that restoring it can't roll back the other storages.
+     */
+    void exportRegions(@NotNull Path target, @NotNull String key) throws IOException {
+        Files.createDirectories(target);
+
+        for (Path file : listRegionFiles(path)) {
+            // the shared region files are only ever opened by the I/O worker, so a copy of each is read instead
+            Path copy = target.resolve(file.getFileName() + ".tmp");
+            Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                RegionFile exported = null;
+                try (RegionFile region = new RegionFile(copy, target, false)) {
+                    for (ChunkPos pos : regionPillars(file)) {
+                        NbtCompound record = readRecord(region, pos);
+                        if (record == null || !record.contains(key, NbtElement.COMPOUND_TYPE)) continue;
+
+                        if (exported == null) {
+                            exported = new RegionFile(target.resolve(file.getFileName()), target, false);
+                        }
+                        try (DataOutputStream out = exported.getChunkOutputStream(pos)) {
+                            NbtIo.write(record.getCompound(key), out);
+                        }
+                    }
+                } finally {
+                    if (exported != null) exported.close();
+                }
+            } finally {
+                Files.delete(copy);
+            }
+        }
+    }
+
+    /**
+     * Replaces a storage's part of every chunk pillar record with the records in a directory of ordinary region files,
+     * like the ones written by {@link #exportRegions(Path, String)}, and then deletes those region files. Pillars that
+     * have no record there lose the storage's part. Nothing is changed if there are no region files to import.
+     * <p>
+     * This blocks on reading every shared region file, so it is only meant for restoring snapshots.
+     *
+     * @return <code>true</code> if there were any region files to import.
+     */
+    boolean importRegions(@NotNull Path from, @NotNull String key) throws IOException {
+        List<Path> files = listRegionFiles(from);
+        if (files.isEmpty()) return false;
+
+        LongSet imported = new LongOpenHashSet();
+        for (Path file : files) {
+            try (RegionFile region = new RegionFile(file, from, false)) {
+                for (ChunkPos pos : regionPillars(file)) {
+                    NbtCompound part = readRecord(region, pos);
+                    if (part != null) {
+                        write(pos.toLong(), key, part);
+                        imported.add(pos.toLong());
+                    }
+                }
+            }
+        }
+
+        for (Path file : listRegionFiles(path)) {
+            for (ChunkPos pos : regionPillars(file)) {
+                long packed = pos.toLong();
+                if (imported.contains(packed) || isAbsent(packed)) continue;
+
+                NbtCompound record = records.get(packed);
+                if (record == null) record = readNow(packed);
+                if (record.contains(key, NbtElement.COMPOUND_TYPE)) {
+                    write(packed, key, null);
+                }
+            }
+        }
+
+        // the imported region files are all that's left of the storage's part until the writes have been made
+        worker.completeAll(true).join();
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        try {
+            Files.delete(from);
+        } catch (DirectoryNotEmptyException e) {
+            // anything else in there isn't ours to delete
+        }
+        return true;
+    }
+
+    private @NotNull NbtCompound readNow(long pos) {
+        if (heldWrites.containsKey(pos)) {
+            NbtCompound held = heldWrites.get(pos);
+            return held != null ? held : new NbtCompound();
+        }
+
+        // blocking here isn't great, but it only happens when writing to a pillar no storage has loaded
+        return worker.readChunkData(new ChunkPos(pos)).join().orElseGet(NbtCompound::new);
+    }
+
+    private static @NotNull List<Path> listRegionFiles(@NotNull Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return List.of();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> REGION_PATTERN.matcher(file.getFileName().toString()).matches()).toList();
+        }
+    }
+
+    private static @NotNull List<ChunkPos> regionPillars(@NotNull Path file) {
+        Matcher matcher = REGION_PATTERN.matcher(file.getFileName().toString());
+        if (!matcher.matches()) return List.of();
+        int regionX = Integer.parseInt(matcher.group("x"));
+        int regionZ = Integer.parseInt(matcher.group("z"));
+
+        ChunkPos[] pillars = new ChunkPos[REGION_SIZE * REGION_SIZE];
+        for (int localZ = 0; localZ < REGION_SIZE; localZ++) {
+            for (int localX = 0; localX < REGION_SIZE; localX++) {
+                pillars[localZ * REGION_SIZE + localX] =
+                    new ChunkPos((regionX << REGION_SHIFT) + localX, (regionZ << REGION_SHIFT) + localZ);
+            }
+        }
+        return List.of(pillars);
+    }
+
+    private static @Nullable NbtCompound readRecord(@NotNull RegionFile region, @NotNull ChunkPos pos)
+        throws IOException {
+        try (DataInputStream in = region.getChunkInputStream(pos)) {
+            if (in == null) return null;
+            return NbtIo.read(in);
+        }
+    }
+}
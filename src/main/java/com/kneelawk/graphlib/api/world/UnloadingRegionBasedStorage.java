@@ -1,9 +1,12 @@
 package com.kneelawk.graphlib.api.world;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -12,9 +15,6 @@ import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.longs.LongIterator;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
-import it.unimi.dsi.fastutil.longs.LongSet;
 
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
@@ -26,6 +26,7 @@ import net.minecraft.world.storage.StorageIoWorker;
 import com.kneelawk.graphlib.api.util.ChunkPillarUnloadTimer;
 import com.kneelawk.graphlib.impl.GLLog;
 import com.kneelawk.graphlib.impl.mixin.api.StorageHelper;
+import com.kneelawk.graphlib.impl.util.PillarPresence;
 
 /**
  * A region-based storage that unloads chunks after a set time.
@@ -38,21 +39,41 @@ public class UnloadingRegionBasedStorage<R extends StorageChunk> implements Regi
      * The max chunk age is 1 minute.
      */
     private static final int MAX_CHUNK_AGE = 20 * 60;
-    private static final int INCREMENTAL_SAVE_FACTOR = 10;
 
     private final ServerWorld world;
 
     private final TrackingChunkDecoder<R> loadFromNbt;
     private final TrackingChunkFactory<R> createNew;
 
-    private final SaveMode saveMode;
+    private final SaveScheduler saveScheduler;
+    private final boolean ownsSaveScheduler;
 
-    private final StorageIoWorker worker;
+    // only one of these is set, depending on whether this storage has its own region files
+    private final @Nullable Path path;
+    private final @Nullable StorageIoWorker worker;
+    private final @Nullable SharedRegionStorage shared;
+    private final @Nullable String sharedKey;
+
+    /**
+     * Which chunk pillars have data in this storage's own region files. Shared region files track this themselves.
+     */
+    private final @Nullable PillarPresence presence;
 
     private final ChunkPillarUnloadTimer timer = new ChunkPillarUnloadTimer(MAX_CHUNK_AGE);
 
     private final Long2ObjectMap<Int2ObjectMap<R>> loadedChunks = new Long2ObjectOpenHashMap<>();
-    private final LongSet unsavedPillars = new LongOpenHashSet();
+    private final SaveScheduler.Queue unsavedPillars;
+
+    /**
+     * Chunk pillars being loaded in the background, so that a pillar is only read once however often it is asked for.
+     */
+    private final Long2ObjectMap<CompletableFuture<Void>> pendingLoads = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * Chunk writes held back while a snapshot is being exported. <code>null</code> values delete their chunks.
+     */
+    private final Long2ObjectMap<NbtCompound> heldWrites = new Long2ObjectOpenHashMap<>();
+    private boolean holdingWrites = false;
 
     private boolean closed = false;
 
@@ -71,11 +92,74 @@ public class UnloadingRegionBasedStorage<R extends StorageChunk> implements Regi
                                        @NotNull TrackingChunkDecoder<@NotNull R> loadFromNbt,
                                        @NotNull TrackingChunkFactory<@NotNull R> createNew,
                                        @NotNull SaveMode saveMode) {
+        this(world, path, syncChunkWrites, loadFromNbt, createNew, saveMode, null);
+    }
+
+    /**
+     * Constructs an unloading region-based-storage that saves chunks with a shared save scheduler.
+     * <p>
+     * The owner of a shared save scheduler is responsible for ticking it.
+     *
+     * @param world           the server world this storage is associated with.
+     * @param path            the path to where region files should be saved.
+     * @param syncChunkWrites whether chunk writes should be written synchronously, corresponding to
+     *                        {@link java.nio.file.StandardOpenOption#DSYNC}.
+     * @param loadFromNbt     the function for loading a chunk section from NBT.
+     * @param createNew       the function for creating a new, empty chunk section.
+     * @param saveMode        how often storage chunks should be saved.
+     * @param saveScheduler   the save scheduler to save chunks with, or <code>null</code> to use one owned by this
+     *                        storage.
+     */
+    public UnloadingRegionBasedStorage(@NotNull ServerWorld world, @NotNull Path path, boolean syncChunkWrites,
+                                       @NotNull TrackingChunkDecoder<@NotNull R> loadFromNbt,
+                                       @NotNull TrackingChunkFactory<@NotNull R> createNew,
+                                       @NotNull SaveMode saveMode, @Nullable SaveScheduler saveScheduler) {
+        this(world, path, StorageHelper.newWorker(path, syncChunkWrites, path.getFileName().toString()), null, null,
+            loadFromNbt, createNew, saveMode, saveScheduler);
+    }
+
+    /**
+     * Constructs an unloading region-based-storage that keeps its data in shared region files.
+     * <p>
+     * Loading a chunk pillar then only takes one read for all the storages sharing the region files.
+     *
+     * @param world         the server world this storage is associated with.
+     * @param shared        the region files to share.
+     * @param key           the key this storage's data is kept under in the shared region files. This must be different
+     *                      for every storage using the same shared region files.
+     * @param loadFromNbt   the function for loading a chunk section from NBT.
+     * @param createNew     the function for creating a new, empty chunk section.
+     * @param saveMode      how often storage chunks should be saved.
+     * @param saveScheduler the save scheduler to save chunks with, or <code>null</code> to use one owned by this
+     *                      storage.
+     */
+    public UnloadingRegionBasedStorage(@NotNull ServerWorld world, @NotNull SharedRegionStorage shared,
+                                       @NotNull String key, @NotNull TrackingChunkDecoder<@NotNull R> loadFromNbt,
+                                       @NotNull TrackingChunkFactory<@NotNull R> createNew,
+                                       @NotNull SaveMode saveMode, @Nullable SaveScheduler saveScheduler) {
+        this(world, null, null, shared, key, loadFromNbt, createNew, saveMode, saveScheduler);
+    }
+
+    private UnloadingRegionBasedStorage(@NotNull ServerWorld world, @Nullable Path path,
+                                        @Nullable StorageIoWorker worker, @Nullable SharedRegionStorage shared,
+                                        @Nullable String sharedKey,
+                                        @NotNull TrackingChunkDecoder<@NotNull R> loadFromNbt,
+                                        @NotNull TrackingChunkFactory<@NotNull R> createNew,
+                                        @NotNull SaveMode saveMode, @Nullable SaveScheduler saveScheduler) {
         this.world = world;
+        this.path = path;
+        this.worker = worker;
+        this.shared = shared;
+        this.sharedKey = sharedKey;
+        presence = path != null ? new PillarPresence(path) : null;
         this.loadFromNbt = loadFromNbt;
         this.createNew = createNew;
-        this.saveMode = saveMode;
-        worker = StorageHelper.newWorker(path, syncChunkWrites, path.getFileName().toString());
+        ownsSaveScheduler = saveScheduler == null;
+        if (ownsSaveScheduler) {
+            saveScheduler = new SaveScheduler(SaveScheduler.DEFAULT_BUDGET_MILLIS);
+        }
+        this.saveScheduler = saveScheduler;
+        unsavedPillars = this.saveScheduler.createQueue(saveMode, key -> saveChunk(new ChunkPos(key)));
     }
 
     @Override
@@ -87,8 +171,16 @@ public class UnloadingRegionBasedStorage<R extends StorageChunk> implements Regi
         closed = true;
 
         saveAll();
+        unsavedPillars.close();
+        endSnapshot();
 
-        worker.close();
+        if (shared != null) {
+            for (long key : loadedChunks.keySet()) {
+                shared.release(key);
+            }
+        } else {
+            worker.close();
+        }
     }
 
     @Override
@@ -119,9 +211,12 @@ public class UnloadingRegionBasedStorage<R extends StorageChunk> implements Regi
         } else {
             // try and load the pillar
             pillar = new Int2ObjectOpenHashMap<>();
+            // finds out whether the pillar has data, so that the read can be skipped if it doesn't
+            isAbsent(chunkPos);
+            CompletableFuture<Optional<NbtCompound>> read = readChunkData(chunkPos);
             try {
                 // blocking here isn't great, but often we *need* this data in order to continue
-                Optional<NbtCompound> root = worker.readChunkData(chunkPos).join();
+                Optional<NbtCompound> root = installChunkData(chunkPos, read);
                 if (root.isPresent()) {
                     loadChunkPillar(chunkPos, pillar, root.get());
 
@@ -160,10 +255,14 @@ public class UnloadingRegionBasedStorage<R extends StorageChunk> implements Regi
         if (pillar != null) {
             timer.onChunkUse(chunkPos);
             return pillar.get(pos.getY());
+        } else if (isAbsent(chunkPos)) {
+            // nothing to load, and nothing to keep loaded
+            return null;
         } else {
             // try and load the pillar
+            CompletableFuture<Optional<NbtCompound>> read = readChunkData(chunkPos);
             try {
-                Optional<NbtCompound> root = worker.readChunkData(chunkPos).join();
+                Optional<NbtCompound> root = installChunkData(chunkPos, read);
                 if (root.isPresent()) {
                     timer.onChunkUse(chunkPos);
                     pillar = new Int2ObjectOpenHashMap<>();
@@ -177,19 +276,98 @@ public class UnloadingRegionBasedStorage<R extends StorageChunk> implements Regi
                 }
             } catch (Exception e) {
                 GLLog.error("Error loading chunk pillar {}.", chunkPos, e);
+                releaseChunkData(chunkPos);
+
+                return null;
+            }
+        }
+    }
 
+    /**
+     * Gets a chunk section at the given location without blocking, loading its chunk pillar in the background if it
+     * is not loaded.
+     * <p>
+     * The returned future completes on the server thread.
+     *
+     * @param pos the position of the chunk section.
+     * @return a future that completes with the chunk section, or with <code>null</code> if none could be retrieved.
+     */
+    @Override
+    public @NotNull CompletableFuture<@Nullable R> getIfExistsAsync(@NotNull ChunkSectionPos pos) {
+        ChunkPos chunkPos = pos.toChunkPos();
+        Int2ObjectMap<R> pillar = loadedChunks.get(chunkPos.toLong());
+        if (pillar != null) {
+            timer.onChunkUse(chunkPos);
+            return CompletableFuture.completedFuture(pillar.get(pos.getY()));
+        }
+
+        if (closed || isKnownAbsent(chunkPos)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return loadChunkPillar(chunkPos).thenApply(ignored -> {
+            Int2ObjectMap<R> loaded = loadedChunks.get(chunkPos.toLong());
+            if (loaded == null) {
+                // the pillar failed to load
                 return null;
             }
+
+            timer.onChunkUse(chunkPos);
+            return loaded.get(pos.getY());
+        });
+    }
+
+    /**
+     * Hints that a chunk pillar is likely to be used soon, starting to load it in the background.
+     * <p>
+     * Pillars loaded this way stay loaded for as long as if they had been used.
+     *
+     * @param pos the position of the chunk pillar.
+     */
+    @Override
+    public void prefetch(@NotNull ChunkPos pos) {
+        if (closed || isKnownAbsent(pos)) {
+            return;
         }
+
+        loadChunkPillar(pos);
+    }
+
+    /**
+     * Finds out whether a chunk pillar has any data, reading at most its region file's header.
+     *
+     * @param pos the position of the chunk pillar.
+     */
+    @Override
+    public void scanPresence(@NotNull ChunkPos pos) {
+        if (closed || loadedChunks.containsKey(pos.toLong())) {
+            return;
+        }
+
+        isAbsent(pos);
     }
 
     private CompletableFuture<Void> loadChunkPillar(@NotNull ChunkPos chunkPos) {
-        if (!loadedChunks.containsKey(chunkPos.toLong())) {
+        long longPos = chunkPos.toLong();
+        CompletableFuture<Void> pending = pendingLoads.get(longPos);
+        if (pending != null) {
+            return pending;
+        }
+
+        if (!loadedChunks.containsKey(longPos)) {
             // try and load the pillar
-            return worker.readChunkData(chunkPos).thenAcceptAsync(root -> {
+            CompletableFuture<Optional<NbtCompound>> read = readChunkData(chunkPos);
+            CompletableFuture<Void> load = read.handleAsync((ignored, readError) -> {
+                pendingLoads.remove(longPos);
                 try {
-                    // double check that the chunk hasn't already been loaded
-                    if (!loadedChunks.containsKey(chunkPos.toLong())) {
+                    if (readError != null) {
+                        GLLog.error("Error loading chunk pillar {}.", chunkPos, readError);
+                        releaseChunkData(chunkPos);
+                    } else if (loadedChunks.containsKey(chunkPos.toLong()) || closed) {
+                        // the chunk has already been loaded
+                        releaseChunkData(chunkPos);
+                    } else {
+                        Optional<NbtCompound> root = installChunkData(chunkPos, read);
                         if (root.isPresent()) {
                             timer.onChunkUse(chunkPos);
                             Int2ObjectMap<R> pillar = new Int2ObjectOpenHashMap<>();
@@ -202,7 +380,14 @@ public class UnloadingRegionBasedStorage<R extends StorageChunk> implements Regi
                 } catch (Exception e) {
                     GLLog.error("Error loading chunk pillar {}.", chunkPos, e);
                 }
+                return null;
             }, world.getServer());
+
+            // the server runs the load right away if the read has already finished
+            if (!load.isDone()) {
+                pendingLoads.put(longPos, load);
+            }
+            return load;
         }
         return CompletableFuture.completedFuture(null);
     }
@@ -238,26 +423,15 @@ public class UnloadingRegionBasedStorage<R extends StorageChunk> implements Regi
             if (unsavedPillars.contains(pos.toLong())) {
                 saveChunk(pos);
             }
-            unsavedPillars.remove(pos.toLong());
-            loadedChunks.remove(pos.toLong());
+            unsavedPillars.forget(pos.toLong());
+            if (loadedChunks.remove(pos.toLong()) != null) {
+                releaseChunkData(pos);
+            }
             timer.onChunkUnload(pos);
         }
 
-        if (!unsavedPillars.isEmpty() && (saveMode == SaveMode.INCREMENTAL || saveMode == SaveMode.IMMEDIATE)) {
-            int saveCount;
-            if (saveMode == SaveMode.IMMEDIATE) {
-                saveCount = unsavedPillars.size();
-            } else {
-                saveCount = (unsavedPillars.size() + INCREMENTAL_SAVE_FACTOR - 1) / INCREMENTAL_SAVE_FACTOR;
-            }
-
-            LongIterator iter = unsavedPillars.longIterator();
-            while (iter.hasNext() && saveCount > 0) {
-                ChunkPos pos = new ChunkPos(iter.nextLong());
-                saveChunk(pos);
-                iter.remove();
-                saveCount--;
-            }
+        if (ownsSaveScheduler) {
+            saveScheduler.tick();
         }
     }
 
@@ -266,10 +440,13 @@ public class UnloadingRegionBasedStorage<R extends StorageChunk> implements Regi
         for (long key : loadedChunks.keySet()) {
             saveChunk(new ChunkPos(key));
         }
+        unsavedPillars.clear();
     }
 
     @Override
     public void saveChunk(@NotNull ChunkPos pos) {
+        unsavedPillars.remove(pos.toLong());
+
         Int2ObjectMap<R> sections = loadedChunks.get(pos.toLong());
         if (sections != null && !sections.isEmpty()) {
             NbtCompound root = new NbtCompound();
@@ -289,9 +466,156 @@ public class UnloadingRegionBasedStorage<R extends StorageChunk> implements Regi
             }
             root.put("Sections", sectionsTag);
 
-            worker.setResult(pos, root);
+            writeChunkData(pos, root);
+        } else {
+            writeChunkData(pos, null);
+        }
+    }
+
+    /**
+     * Saves all chunks and then holds back all further chunk writes, so that the region files stay exactly as they are
+     * until {@link #endSnapshot()} is called.
+     * <p>
+     * Held-back writes are kept in memory and are still visible to reads. With shared region files, the writes of all
+     * the storages sharing them are held back.
+     *
+     * @return a future that completes once the saved chunks have been written to the region files.
+     */
+    public @NotNull CompletableFuture<Void> beginSnapshot() {
+        saveAll();
+        holdingWrites = true;
+        return shared != null ? shared.beginSnapshot() : worker.completeAll(true);
+    }
+
+    /**
+     * Copies this storage's region files to another directory.
+     * <p>
+     * This can be called from any thread, but only while a snapshot is being held, after the future returned by
+     * {@link #beginSnapshot()} has completed. With shared region files, only this storage's part of them is exported,
+     * as ordinary region files.
+     *
+     * @param target the directory to copy region files to.
+     * @throws IOException if an error occurs while copying.
+     */
+    public void exportRegions(@NotNull Path target) throws IOException {
+        if (shared != null) {
+            shared.exportRegions(target, sharedKey);
+        } else {
+            copyRegionFiles(path, target);
+        }
+    }
+
+    /**
+     * Replaces this storage's part of its shared region files with region files exported by
+     * {@link #exportRegions(Path)}, deleting the exported region files afterwards.
+     * <p>
+     * This blocks until every shared region file has been read and must be called before this storage loads anything.
+     *
+     * @param from the directory holding the exported region files.
+     * @return <code>true</code> if there were any region files to import.
+     * @throws IOException if an error occurs while reading the exported region files.
+     * @throws IllegalStateException if this storage does not use shared region files.
+     */
+    public boolean importRegions(@NotNull Path from) throws IOException {
+        if (shared == null) {
+            throw new IllegalStateException("Only storages using shared region files can import region files");
+        }
+
+        return shared.importRegions(from, sharedKey);
+    }
+
+    /**
+     * Stops holding back chunk writes, passing every write that was held back on to the region files.
+     */
+    public void endSnapshot() {
+        if (!holdingWrites) return;
+        holdingWrites = false;
+
+        if (shared != null) {
+            shared.endSnapshot();
+            return;
+        }
+
+        for (Long2ObjectMap.Entry<NbtCompound> entry : heldWrites.long2ObjectEntrySet()) {
+            worker.setResult(new ChunkPos(entry.getLongKey()), entry.getValue());
+        }
+        heldWrites.clear();
+    }
+
+    static void copyRegionFiles(@NotNull Path from, @NotNull Path to) throws IOException {
+        Files.createDirectories(to);
+        if (!Files.isDirectory(from)) return;
+
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(".mca")) {
+                    Files.copy(file, to.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts reading a chunk pillar's data. Every read must be followed by either
+     * {@link #installChunkData(ChunkPos, CompletableFuture)} or {@link #releaseChunkData(ChunkPos)}.
+     */
+    private @NotNull CompletableFuture<Optional<NbtCompound>> readChunkData(@NotNull ChunkPos pos) {
+        if (shared != null) return shared.reserve(pos.toLong());
+
+        if (heldWrites.containsKey(pos.toLong())) {
+            NbtCompound root = heldWrites.get(pos.toLong());
+            return CompletableFuture.completedFuture(Optional.ofNullable(root != null ? root.copy() : null));
+        }
+        if (presence.isKnownAbsent(pos.x, pos.z)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return worker.readChunkData(pos);
+    }
+
+    /**
+     * Checks whether a chunk pillar is known to have no data, without reading anything.
+     */
+    private boolean isKnownAbsent(@NotNull ChunkPos pos) {
+        if (shared != null) return shared.isKnownAbsent(pos.toLong());
+        return presence.isKnownAbsent(pos.x, pos.z);
+    }
+
+    /**
+     * Checks whether a chunk pillar has no data, reading at most its region file's header. Afterwards,
+     * {@link #readChunkData(ChunkPos)} skips reading the pillar if it has no data.
+     */
+    private boolean isAbsent(@NotNull ChunkPos pos) {
+        if (shared != null) return shared.isAbsent(pos.toLong());
+        return presence.isAbsent(pos.x, pos.z);
+    }
+
+    /**
+     * Gets the data read by {@link #readChunkData(ChunkPos)}, for a pillar that is being loaded.
+     */
+    private @NotNull Optional<NbtCompound> installChunkData(@NotNull ChunkPos pos,
+                                                            @NotNull CompletableFuture<Optional<NbtCompound>> read) {
+        if (shared != null) return Optional.ofNullable(shared.install(pos.toLong(), read, sharedKey));
+        return read.join();
+    }
+
+    /**
+     * Called when a pillar is unloaded, or when data read by {@link #readChunkData(ChunkPos)} is not going to be used.
+     */
+    private void releaseChunkData(@NotNull ChunkPos pos) {
+        if (shared != null) shared.release(pos.toLong());
+    }
+
+    private void writeChunkData(@NotNull ChunkPos pos, @Nullable NbtCompound root) {
+        if (shared != null) {
+            shared.write(pos.toLong(), sharedKey, root);
+            return;
+        }
+
+        presence.markWritten(pos.x, pos.z, root != null);
+        if (holdingWrites) {
+            heldWrites.put(pos.toLong(), root);
         } else {
-            worker.setResult(pos, null);
+            worker.setResult(pos, root);
         }
     }
 }
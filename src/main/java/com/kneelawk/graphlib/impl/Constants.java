@@ -16,6 +16,10 @@ public final class Constants {
     public static final String REGION_DIRNAME = "region";
     public static final String GRAPHS_DIRNAME = "graphs";
     public static final String STATE_FILENAME = "state.dat";
+    public static final String GRAPH_JOURNAL_FILENAME = "journal.log";
+    public static final String GRAPH_INDEX_FILENAME = "index.dat";
+    public static final String SNAPSHOTS_DIRNAME = "graphlib-snapshots";
+    public static final String SHARED_REGION_DIRNAME = "graphlib-shared-region";
     public static final String UNIVERSE_MODIFY_INITIALIZER = MOD_ID + ":universe_modify";
 
     @Contract(value = "_ -> new", pure = true)
@@ -1,10 +1,13 @@
 package com.kneelawk.graphlib.impl.command;
 
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletionException;
 
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.LiteralMessage;
+import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.exceptions.DynamicCommandExceptionType;
 
@@ -22,6 +25,7 @@ import net.minecraft.text.Text;
 import net.minecraft.text.Texts;
 import net.minecraft.util.Formatting;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkSectionPos;
 
@@ -37,6 +41,8 @@ import static net.minecraft.server.command.CommandManager.literal;
 public class GraphLibCommand {
     private static final DynamicCommandExceptionType UNKNOWN_UNIVERSE =
         new DynamicCommandExceptionType(arg -> new LiteralMessage("Unknown universe: " + arg));
+    private static final DynamicCommandExceptionType INVALID_SNAPSHOT_NAME =
+        new DynamicCommandExceptionType(arg -> new LiteralMessage("Invalid snapshot name: " + arg));
 
     public static void register(CommandDispatcher<ServerCommandSource> dispatcher, CommandBuildContext buildContext) {
         dispatcher.register(literal("graphlib")
@@ -73,6 +79,13 @@ public class GraphLibCommand {
                         )
                     )
                 )
+                .then(literal("snapshot")
+                    .then(argument("name", StringArgumentType.word())
+                        .executes(context -> snapshot(context.getSource(),
+                            IdentifierArgumentType.getIdentifier(context, "universe"),
+                            StringArgumentType.getString(context, "name")))
+                    )
+                )
                 .then(literal("debugrender")
                     .then(literal("start")
                         .executes(context -> startDebugRender(context.getSource(),
@@ -183,6 +196,36 @@ public class GraphLibCommand {
         return toRebuild.size();
     }
 
+    private static int snapshot(ServerCommandSource source, Identifier universeId, String name)
+        throws CommandSyntaxException {
+        // words can still contain dots, which must not be able to escape the snapshots directory
+        if (name.equals(".") || name.equals("..")) throw INVALID_SNAPSHOT_NAME.create(name);
+
+        ServerWorld world = source.getWorld();
+
+        GraphUniverseImpl universe = GraphLibImpl.UNIVERSE.get(universeId);
+        if (universe == null) throw UNKNOWN_UNIVERSE.create(universeId);
+
+        Identifier worldId = world.getRegistryKey().getValue();
+        Path target = source.getServer().getSavePath(WorldSavePath.ROOT).resolve(Constants.SNAPSHOTS_DIRNAME)
+            .resolve(name).resolve(worldId.getNamespace()).resolve(worldId.getPath())
+            .resolve(universeId.getNamespace()).resolve(universeId.getPath());
+
+        source.sendFeedback(() -> Constants.command("graphlib.snapshot.starting", universeId, name), true);
+
+        universe.getServerGraphWorld(world).exportSnapshot(target).whenCompleteAsync((result, e) -> {
+            if (e == null) {
+                source.sendFeedback(() -> Constants.command("graphlib.snapshot.success", universeId, name), true);
+            } else {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                source.sendError(Constants.command("graphlib.snapshot.failure", universeId, name,
+                    String.valueOf(cause.getMessage())));
+            }
+        }, source.getServer());
+
+        return 15;
+    }
+
     private static int startDebugRender(ServerCommandSource source, Identifier universeId)
         throws CommandSyntaxException {
         GraphUniverseImpl universe = GraphLibImpl.UNIVERSE.get(universeId);
@@ -12,6 +12,8 @@ import net.minecraft.world.World;
 
 import com.kneelawk.graphlib.api.graph.GraphUniverse;
 import com.kneelawk.graphlib.api.graph.user.BlockNode;
+import com.kneelawk.graphlib.api.world.SaveScheduler;
+import com.kneelawk.graphlib.api.world.SharedRegionStorage;
 
 public interface GraphUniverseImpl extends GraphUniverse {
     @Override
@@ -20,7 +22,10 @@ public interface GraphUniverseImpl extends GraphUniverse {
     @Override
     @Nullable ClientGraphWorldImpl getClientGraphView();
 
-    ServerGraphWorldImpl createGraphWorld(ServerWorld world, Path path, boolean syncChunkWrites);
+    boolean isRegionStorageShared();
+
+    ServerGraphWorldImpl createGraphWorld(ServerWorld world, Path path, boolean syncChunkWrites,
+                                          SaveScheduler saveScheduler, @Nullable SharedRegionStorage sharedRegions);
 
     ClientGraphWorldImpl createClientGraphWorld(World world, int loadDistance);
 
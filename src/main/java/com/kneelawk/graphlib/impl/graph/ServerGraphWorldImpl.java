@@ -1,6 +1,8 @@
 package com.kneelawk.graphlib.impl.graph;
 
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.jetbrains.annotations.NotNull;
 
@@ -24,12 +26,43 @@ public interface ServerGraphWorldImpl extends GraphWorld, AutoCloseable {
 
     void onWorldChunkUnload(@NotNull ChunkPos pos);
 
+    /**
+     * Finds out whether a chunk pillar has any graph data, reading at most its region file's header, so that
+     * {@link #onWorldChunkLoad(ChunkPos)} can skip reading it if it has none.
+     *
+     * @param pos the position of the chunk pillar.
+     */
+    void scanChunkPresence(@NotNull ChunkPos pos);
+
     void tick();
 
     void saveChunk(@NotNull ChunkPos pos);
 
     void saveAll(boolean flush);
 
+    /**
+     * Waits for all the writes that have been queued so far to finish.
+     */
+    void flushWrites();
+
+    /**
+     * Takes the final snapshots of this world's graphs and queues them to be written, without waiting for the writes.
+     * <p>
+     * This is called on every world before any of them are closed, so that their writes happen in parallel.
+     */
+    void prepareClose();
+
+    /**
+     * Called by the <code>/graphlib snapshot</code> command.
+     * <p>
+     * Freezes a consistent view of this world's graph storage and copies it to a directory in the background. The
+     * world keeps ticking normally while the copy is made.
+     *
+     * @param target the directory to write the snapshot to, laid out like this world's own storage directory.
+     * @return a future that completes once the snapshot has been written.
+     */
+    @NotNull CompletableFuture<Void> exportSnapshot(@NotNull Path target);
+
     /**
      * Called by the <code>/graphlib removeemptygraphs</code> command.
      * <p>
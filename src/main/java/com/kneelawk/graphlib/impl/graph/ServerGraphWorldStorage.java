@@ -1,11 +1,17 @@
 package com.kneelawk.graphlib.impl.graph;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 
 import org.jetbrains.annotations.NotNull;
 
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
@@ -13,24 +19,67 @@ import net.minecraft.util.Identifier;
 import net.minecraft.util.math.ChunkPos;
 
 import com.kneelawk.graphlib.api.graph.GraphUniverse;
+import com.kneelawk.graphlib.api.world.SaveScheduler;
+import com.kneelawk.graphlib.api.world.SharedRegionStorage;
+import com.kneelawk.graphlib.impl.Constants;
 import com.kneelawk.graphlib.impl.GLLog;
 import com.kneelawk.graphlib.impl.GraphLibImpl;
 import com.kneelawk.graphlib.impl.net.GLNet;
 
 public class ServerGraphWorldStorage implements GraphWorldStorage, AutoCloseable {
     private final Map<Identifier, ServerGraphWorldImpl> worlds = new Object2ObjectLinkedOpenHashMap<>();
+
+    /**
+     * The graph worlds that have been created, in the order they were created. Events are only dispatched to these.
+     * <p>
+     * Worlds created while an event is being dispatched are appended, so dispatching goes by index and stops at the
+     * size it started with.
+     */
+    private final List<ServerGraphWorldImpl> activeWorlds = new ObjectArrayList<>();
+
+    /**
+     * Universes without a graph world in this world yet. These get their graph world the first time they are used.
+     */
+    private final Map<Identifier, DormantUniverse> dormantUniverses = new Object2ObjectLinkedOpenHashMap<>();
+
+    /**
+     * The world chunks that are currently loaded, so that graph worlds created later can be told about them.
+     */
+    private final LongSet loadedChunks = new LongOpenHashSet();
+
+    /**
+     * The region files shared by the universes that enable shared region storage. Created once the first of them needs
+     * it.
+     */
+    private SharedRegionStorage sharedRegions = null;
+
     private final ServerWorld serverWorld;
+    private final Path dataDir;
+    private final boolean syncChunkWrites;
     private final boolean synchronizationRequired;
+    private boolean closed = false;
+
+    /**
+     * Saves graphs and chunks of all universes in this world within a single per-tick budget.
+     */
+    private final SaveScheduler saveScheduler = new SaveScheduler(SaveScheduler.DEFAULT_BUDGET_MILLIS);
 
     public ServerGraphWorldStorage(ServerWorld world, Path dataDir, boolean syncChunkWrites) {
         this.serverWorld = world;
+        this.dataDir = dataDir;
+        this.syncChunkWrites = syncChunkWrites;
 
         boolean synced = false;
         for (GraphUniverseImpl universe : GraphLibImpl.UNIVERSE) {
             Identifier universeId = universe.getId();
             Path path = dataDir.resolve(universeId.getNamespace()).resolve(universeId.getPath());
 
-            worlds.put(universeId, universe.createGraphWorld(world, path, syncChunkWrites));
+            // universes with existing data may have graphs in chunks that are about to load, so they start right away
+            if (Files.isDirectory(path)) {
+                createWorld(universe, path);
+            } else {
+                dormantUniverses.put(universeId, new DormantUniverse(universe, path));
+            }
 
             if (universe.getSyncProfile().isEnabled()) {
                 synced = true;
@@ -42,13 +91,53 @@ public class ServerGraphWorldStorage implements GraphWorldStorage, AutoCloseable
 
     @Override
     public @NotNull ServerGraphWorldImpl get(@NotNull Identifier universe) {
-        if (!worlds.containsKey(universe)) {
+        ServerGraphWorldImpl world = worlds.get(universe);
+        if (world != null) return world;
+
+        DormantUniverse dormant = dormantUniverses.remove(universe);
+        if (dormant == null) {
             throw new IllegalStateException(
                 "Attempted to get a graph world for a universe that has not been registered. Make sure to call the universe's register() function in your mod's init. Universe: " +
                     universe);
         }
 
-        return worlds.get(universe);
+        world = createWorld(dormant.universe, dormant.path);
+
+        if (closed) {
+            // behave like the graph worlds that were closed with this storage
+            closeWorld(world);
+            return world;
+        }
+
+        // reading every region header up front lets the chunk loads below skip the pillars without data, instead of
+        // each one waiting on a read
+        for (LongIterator iter = loadedChunks.iterator(); iter.hasNext(); ) {
+            world.scanChunkPresence(new ChunkPos(iter.nextLong()));
+        }
+
+        for (LongIterator iter = loadedChunks.iterator(); iter.hasNext(); ) {
+            ChunkPos pos = new ChunkPos(iter.nextLong());
+            try {
+                world.onWorldChunkLoad(pos);
+            } catch (Exception e) {
+                GLLog.error("Error loading chunk in GraphWorld. World: '{}'/{}, Chunk: {}", serverWorld,
+                    serverWorld.getRegistryKey().getValue(), pos, e);
+            }
+        }
+
+        return world;
+    }
+
+    private @NotNull ServerGraphWorldImpl createWorld(@NotNull GraphUniverseImpl universe, @NotNull Path path) {
+        if (universe.isRegionStorageShared() && sharedRegions == null) {
+            sharedRegions = new SharedRegionStorage(dataDir.resolve(Constants.SHARED_REGION_DIRNAME), syncChunkWrites);
+        }
+
+        ServerGraphWorldImpl world = universe.createGraphWorld(serverWorld, path, syncChunkWrites, saveScheduler,
+            universe.isRegionStorageShared() ? sharedRegions : null);
+        worlds.put(universe.getId(), world);
+        activeWorlds.add(world);
+        return world;
     }
 
     public boolean isSynchronizationRequired() {
@@ -56,7 +145,10 @@ public class ServerGraphWorldStorage implements GraphWorldStorage, AutoCloseable
     }
 
     public void onWorldChunkLoad(ChunkPos pos) {
-        for (ServerGraphWorldImpl world : worlds.values()) {
+        loadedChunks.add(pos.toLong());
+
+        for (int i = 0, count = activeWorlds.size(); i < count; i++) {
+            ServerGraphWorldImpl world = activeWorlds.get(i);
             // Prevent worlds from interfering with each other
             try {
                 world.onWorldChunkLoad(pos);
@@ -68,7 +160,10 @@ public class ServerGraphWorldStorage implements GraphWorldStorage, AutoCloseable
     }
 
     public void onWorldChunkUnload(ChunkPos pos) {
-        for (ServerGraphWorldImpl world : worlds.values()) {
+        loadedChunks.remove(pos.toLong());
+
+        for (int i = 0, count = activeWorlds.size(); i < count; i++) {
+            ServerGraphWorldImpl world = activeWorlds.get(i);
             try {
                 world.onWorldChunkUnload(pos);
             } catch (Exception e) {
@@ -79,7 +174,8 @@ public class ServerGraphWorldStorage implements GraphWorldStorage, AutoCloseable
     }
 
     public void tick() {
-        for (ServerGraphWorldImpl world : worlds.values()) {
+        for (int i = 0, count = activeWorlds.size(); i < count; i++) {
+            ServerGraphWorldImpl world = activeWorlds.get(i);
             try {
                 world.tick();
             } catch (Exception e) {
@@ -87,10 +183,13 @@ public class ServerGraphWorldStorage implements GraphWorldStorage, AutoCloseable
                     serverWorld.getRegistryKey().getValue(), e);
             }
         }
+
+        saveScheduler.tick();
     }
 
     public void saveChunk(ChunkPos pos) {
-        for (ServerGraphWorldImpl world : worlds.values()) {
+        for (int i = 0, count = activeWorlds.size(); i < count; i++) {
+            ServerGraphWorldImpl world = activeWorlds.get(i);
             try {
                 world.saveChunk(pos);
             } catch (Exception e) {
@@ -101,30 +200,71 @@ public class ServerGraphWorldStorage implements GraphWorldStorage, AutoCloseable
     }
 
     public void saveAll(boolean flush) {
-        for (ServerGraphWorldImpl world : worlds.values()) {
+        // queue everything first, so that every universe's writes happen at the same time
+        for (int i = 0, count = activeWorlds.size(); i < count; i++) {
+            ServerGraphWorldImpl world = activeWorlds.get(i);
             try {
-                world.saveAll(flush);
+                world.saveAll(false);
             } catch (Exception e) {
                 GLLog.error("Error saving all chunks in GraphWorld. World: '{}'/{}", serverWorld,
                     serverWorld.getRegistryKey().getValue(), e);
             }
         }
+
+        if (flush) {
+            for (int i = 0, count = activeWorlds.size(); i < count; i++) {
+                ServerGraphWorldImpl world = activeWorlds.get(i);
+                try {
+                    world.flushWrites();
+                } catch (Exception e) {
+                    GLLog.error("Error flushing GraphWorld. World: '{}'/{}", serverWorld,
+                        serverWorld.getRegistryKey().getValue(), e);
+                }
+            }
+        }
     }
 
     @Override
     public void close() {
-        for (ServerGraphWorldImpl world : worlds.values()) {
+        closed = true;
+
+        for (int i = 0, count = activeWorlds.size(); i < count; i++) {
+            ServerGraphWorldImpl world = activeWorlds.get(i);
             try {
-                world.close();
+                world.prepareClose();
             } catch (Exception e) {
-                GLLog.error("Error closing GraphWorld. World: '{}'/{}", serverWorld,
+                GLLog.error("Error saving GraphWorld before closing. World: '{}'/{}", serverWorld,
+                    serverWorld.getRegistryKey().getValue(), e);
+            }
+        }
+
+        for (int i = 0, count = activeWorlds.size(); i < count; i++) {
+            closeWorld(activeWorlds.get(i));
+        }
+
+        // only once every universe using them has written its chunks
+        if (sharedRegions != null) {
+            try {
+                sharedRegions.close();
+            } catch (Exception e) {
+                GLLog.error("Error closing shared graph region storage. World: '{}'/{}", serverWorld,
                     serverWorld.getRegistryKey().getValue(), e);
             }
         }
     }
 
+    private void closeWorld(ServerGraphWorldImpl world) {
+        try {
+            world.close();
+        } catch (Exception e) {
+            GLLog.error("Error closing GraphWorld. World: '{}'/{}", serverWorld,
+                serverWorld.getRegistryKey().getValue(), e);
+        }
+    }
+
     public void sendChunkDataPackets(ServerPlayerEntity player, ChunkPos pos) {
-        for (ServerGraphWorldImpl world : worlds.values()) {
+        for (int i = 0, count = activeWorlds.size(); i < count; i++) {
+            ServerGraphWorldImpl world = activeWorlds.get(i);
             GraphUniverse universe = world.getUniverse();
             if (universe.getSyncProfile().isEnabled() &&
                 universe.getSyncProfile().getPlayerFilter().shouldSync(player)) {
@@ -137,4 +277,6 @@ public class ServerGraphWorldStorage implements GraphWorldStorage, AutoCloseable
             }
         }
     }
+
+    private record DormantUniverse(GraphUniverseImpl universe, Path path) {}
 }
@@ -0,0 +1,305 @@
+package com.kneelawk.graphlib.impl.graph.simple;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.shorts.Short2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.shorts.Short2ObjectMap;
+
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.util.Identifier;
+
+import com.kneelawk.graphlib.impl.util.VarInts;
+
+/**
+ * The binary format chunk sections' graph indexes are saved in.
+ * <p>
+ * A palette of node types and a palette of graph ids come first, which everything after refers to by varint index.
+ * Next come the graphs in the chunk section, followed by each occupied position within the section, packed into 12
+ * bits, along with either the graphs at that position or the nodes there and the graph each one is in.
+ * <p>
+ * Block nodes are kept as the raw bytes or NBT they were saved as, so that sections can be read and rewritten without
+ * decoding any.
+ */
+public final class ChunkSectionBinaryFormat {
+    /**
+     * The key encoded chunk sections are kept under in their NBT.
+     */
+    public static final String KEY = "binary";
+
+    private static final int VERSION = 1;
+
+    // how the graphs at a position are saved
+    private static final int POS_GRAPHS = 0;
+    private static final int POS_NODES = 1;
+
+    private ChunkSectionBinaryFormat() {}
+
+    /**
+     * Encodes a chunk section.
+     *
+     * @param section the chunk section to encode.
+     * @return the encoded chunk section.
+     */
+    public static @NotNull byte[] encode(@NotNull Section section) {
+        Object2IntMap<Identifier> typeIndices = new Object2IntOpenHashMap<>();
+        typeIndices.defaultReturnValue(-1);
+        List<Identifier> types = new ObjectArrayList<>();
+        Long2IntMap graphIndices = new Long2IntOpenHashMap();
+        graphIndices.defaultReturnValue(-1);
+        LongList graphs = new LongArrayList();
+
+        // the palettes are only complete once everything else has been written
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bodyBytes)) {
+            writeGraphs(out, section.inChunk, graphIndices, graphs);
+
+            VarInts.writeUnsignedInt(out, section.graphsAt.size() + section.nodesAt.size());
+            for (Short2ObjectMap.Entry<LongSet> entry : section.graphsAt.short2ObjectEntrySet()) {
+                out.writeShort(entry.getShortKey());
+                out.writeByte(POS_GRAPHS);
+                writeGraphs(out, entry.getValue(), graphIndices, graphs);
+            }
+            for (Short2ObjectMap.Entry<List<NodeEntry>> entry : section.nodesAt.short2ObjectEntrySet()) {
+                out.writeShort(entry.getShortKey());
+                out.writeByte(POS_NODES);
+                VarInts.writeUnsignedInt(out, entry.getValue().size());
+                for (NodeEntry node : entry.getValue()) {
+                    int typeIndex = typeIndices.getInt(node.type());
+                    if (typeIndex < 0) {
+                        typeIndex = types.size();
+                        types.add(node.type());
+                        typeIndices.put(node.type(), typeIndex);
+                    }
+
+                    VarInts.writeUnsignedInt(out, typeIndex);
+                    VarInts.writeUnsignedInt(out, paletteIndex(graphIndices, graphs, node.graphId()));
+                    GraphBinaryFormat.writePayload(out, node.raw(), node.tag());
+                }
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStreams don't throw
+            throw new AssertionError(e);
+        }
+
+        ByteArrayOutputStream bytes =
+            new ByteArrayOutputStream(16 + types.size() * 32 + graphs.size() * 8 + bodyBytes.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+
+            VarInts.writeUnsignedInt(out, types.size());
+            for (Identifier type : types) {
+                out.writeUTF(type.toString());
+            }
+
+            VarInts.writeUnsignedInt(out, graphs.size());
+            for (int i = 0; i < graphs.size(); i++) {
+                out.writeLong(graphs.getLong(i));
+            }
+
+            bodyBytes.writeTo(out);
+        } catch (IOException e) {
+            // ByteArrayOutputStreams don't throw
+            throw new AssertionError(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a chunk section.
+     *
+     * @param bytes the encoded chunk section.
+     * @return the decoded chunk section.
+     * @throws IOException if the bytes do not hold a chunk section in a supported version of this format.
+     */
+    public static @NotNull Section decode(@NotNull byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unrecognized chunk section format version: " + version);
+        }
+
+        Identifier[] types = new Identifier[VarInts.readUnsignedInt(in)];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = new Identifier(in.readUTF());
+        }
+
+        long[] graphs = new long[VarInts.readUnsignedInt(in)];
+        for (int i = 0; i < graphs.length; i++) {
+            graphs[i] = in.readLong();
+        }
+
+        Section section = new Section();
+        readGraphs(in, graphs, section.inChunk);
+
+        int posCount = VarInts.readUnsignedInt(in);
+        for (int i = 0; i < posCount; i++) {
+            short pos = in.readShort();
+            int kind = in.readUnsignedByte();
+            if (kind == POS_GRAPHS) {
+                readGraphs(in, graphs, section.graphsAt.computeIfAbsent(pos, s -> new LongLinkedOpenHashSet()));
+            } else if (kind == POS_NODES) {
+                int count = VarInts.readUnsignedInt(in);
+                List<NodeEntry> nodes = section.nodesAt.computeIfAbsent(pos, s -> new ObjectArrayList<>());
+                for (int j = 0; j < count; j++) {
+                    int typeIndex = VarInts.readUnsignedInt(in);
+                    if (typeIndex >= types.length) {
+                        throw new IOException("Node type index out of bounds: " + typeIndex);
+                    }
+                    long graphId = paletteEntry(graphs, VarInts.readUnsignedInt(in));
+                    int payload = GraphBinaryFormat.readPayloadKind(in);
+                    byte[] raw = GraphBinaryFormat.readRaw(in, payload);
+                    NbtElement tag = GraphBinaryFormat.readTag(in, payload);
+
+                    nodes.add(new NodeEntry(types[typeIndex], graphId, raw, tag));
+                }
+            } else {
+                throw new IOException("Unknown position kind: " + kind);
+            }
+        }
+
+        return section;
+    }
+
+    private static void writeGraphs(@NotNull DataOutputStream out, @NotNull LongSet ids,
+                                    @NotNull Long2IntMap graphIndices, @NotNull LongList graphs) throws IOException {
+        VarInts.writeUnsignedInt(out, ids.size());
+        for (LongIterator iter = ids.iterator(); iter.hasNext(); ) {
+            VarInts.writeUnsignedInt(out, paletteIndex(graphIndices, graphs, iter.nextLong()));
+        }
+    }
+
+    private static void readGraphs(@NotNull DataInputStream in, @NotNull long[] graphs, @NotNull LongSet into)
+        throws IOException {
+        int count = VarInts.readUnsignedInt(in);
+        for (int i = 0; i < count; i++) {
+            into.add(paletteEntry(graphs, VarInts.readUnsignedInt(in)));
+        }
+    }
+
+    private static int paletteIndex(@NotNull Long2IntMap indices, @NotNull LongList palette, long graphId) {
+        int index = indices.get(graphId);
+        if (index < 0) {
+            index = palette.size();
+            palette.add(graphId);
+            indices.put(graphId, index);
+        }
+        return index;
+    }
+
+    private static long paletteEntry(@NotNull long[] palette, int index) throws IOException {
+        if (index >= palette.length) {
+            throw new IOException("Graph palette index out of bounds: " + index);
+        }
+        return palette[index];
+    }
+
+    /**
+     * A chunk section's graph index.
+     * <p>
+     * Each position is in either {@link #graphsAt} or {@link #nodesAt}, depending on whether its block node -> graph
+     * lookups have been built.
+     */
+    public static final class Section {
+        /**
+         * The graphs in the chunk section.
+         */
+        public final LongSet inChunk = new LongLinkedOpenHashSet();
+
+        /**
+         * The graphs at each position whose block node -> graph lookups have not been built, by packed local position.
+         */
+        public final Short2ObjectMap<LongSet> graphsAt = new Short2ObjectLinkedOpenHashMap<>();
+
+        /**
+         * The nodes at each position, by packed local position.
+         */
+        public final Short2ObjectMap<List<NodeEntry>> nodesAt = new Short2ObjectLinkedOpenHashMap<>();
+
+        /**
+         * Adds the ids of the graphs at a position to a set.
+         *
+         * @param pos  the packed local position.
+         * @param into the set to add the graph ids to.
+         */
+        public void collectGraphsAt(short pos, @NotNull LongSet into) {
+            LongSet graphs = graphsAt.get(pos);
+            if (graphs != null) {
+                into.addAll(graphs);
+            }
+
+            List<NodeEntry> nodes = nodesAt.get(pos);
+            if (nodes != null) {
+                for (NodeEntry node : nodes) {
+                    into.add(node.graphId());
+                }
+            }
+        }
+
+        /**
+         * Removes graphs from this chunk section.
+         *
+         * @param ids the graphs to remove.
+         * @return <code>true</code> if anything was removed.
+         */
+        public boolean removeGraphs(@NotNull LongSet ids) {
+            boolean changed = inChunk.removeAll(ids);
+
+            for (var iter = graphsAt.values().iterator(); iter.hasNext(); ) {
+                LongSet graphs = iter.next();
+                changed |= graphs.removeAll(ids);
+                if (graphs.isEmpty()) {
+                    iter.remove();
+                }
+            }
+
+            for (var iter = nodesAt.values().iterator(); iter.hasNext(); ) {
+                List<NodeEntry> nodes = iter.next();
+                changed |= nodes.removeIf(node -> ids.contains(node.graphId()));
+                if (nodes.isEmpty()) {
+                    iter.remove();
+                }
+            }
+
+            return changed;
+        }
+
+        /**
+         * Checks whether this chunk section has no graphs.
+         *
+         * @return <code>true</code> if this chunk section has no graphs.
+         */
+        public boolean isEmpty() {
+            return inChunk.isEmpty() && graphsAt.isEmpty() && nodesAt.isEmpty();
+        }
+    }
+
+    /**
+     * A block node in a chunk section, as it was saved.
+     *
+     * @param type    the block node's type.
+     * @param graphId the graph the block node is in.
+     * @param raw     the block node's raw bytes, if it was saved as raw bytes.
+     * @param tag     the block node's NBT, if it was saved as NBT.
+     */
+    public record NodeEntry(@NotNull Identifier type, long graphId, @Nullable byte[] raw, @Nullable NbtElement tag) {}
+}
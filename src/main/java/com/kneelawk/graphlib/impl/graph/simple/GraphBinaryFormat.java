@@ -0,0 +1,1117 @@
+package com.kneelawk.graphlib.impl.graph.simple;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterable;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtLong;
+import net.minecraft.nbt.NbtTagSizeTracker;
+import net.minecraft.nbt.NbtTypes;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+import com.kneelawk.graphlib.api.graph.GraphUniverse;
+import com.kneelawk.graphlib.api.graph.user.BlockNode;
+import com.kneelawk.graphlib.api.graph.user.BlockNodeBinaryDecoder;
+import com.kneelawk.graphlib.api.graph.user.BlockNodeType;
+import com.kneelawk.graphlib.api.graph.user.LinkEntity;
+import com.kneelawk.graphlib.api.graph.user.LinkEntityType;
+import com.kneelawk.graphlib.api.graph.user.LinkKey;
+import com.kneelawk.graphlib.api.graph.user.LinkKeyBinaryDecoder;
+import com.kneelawk.graphlib.api.graph.user.LinkKeyType;
+import com.kneelawk.graphlib.api.graph.user.NodeEntity;
+import com.kneelawk.graphlib.api.graph.user.NodeEntityType;
+import com.kneelawk.graphlib.api.util.EmptyLinkKey;
+import com.kneelawk.graphlib.impl.GLLog;
+import com.kneelawk.graphlib.impl.util.VarInts;
+
+/**
+ * The binary format graphs are saved in.
+ * <p>
+ * Every type id used by a graph is written once to a palette at the start and referred to by index after that. Block
+ * nodes and link keys whose types have binary decoders are written as raw bytes, everything else is written as NBT.
+ * <p>
+ * Nodes are stored in one segment per chunk section, holding their positions within the section, along with the links
+ * between nodes in that section. Links between sections are stored separately, as stubs referring to their ends by
+ * section and index within the section. A directory of how many nodes and links each segment holds and how long it is
+ * comes before the segments, so that readers can skip the sections they don't need.
+ * <p>
+ * Encoded graphs are not compressed, that is left to the store. Graphs in version 1 of this format, which had no
+ * segments, can still be read but are always read whole.
+ */
+final class GraphBinaryFormat {
+    private static final int MAGIC = 0x474C4742; // GLGB
+    private static final int VERSION = 2;
+    // version 1 had no segments, with every node and link in one stream
+    private static final int LEGACY_VERSION = 1;
+
+    private static final int PAYLOAD_NONE = 0;
+    private static final int PAYLOAD_NBT = 1;
+    private static final int PAYLOAD_RAW = 2;
+
+    private GraphBinaryFormat() {}
+
+    /**
+     * Checks whether the given bytes hold a graph in this format, as opposed to a legacy NBT graph.
+     *
+     * @param bytes the uncompressed bytes to check.
+     * @return <code>true</code> if the bytes hold a graph in this format.
+     */
+    static boolean isBinary(@NotNull byte[] bytes) {
+        return bytes.length >= 4 &&
+            ((bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF)) == MAGIC;
+    }
+
+    /**
+     * Encodes graph data in the NBT form produced by {@link SimpleBlockGraph#toTag()}.
+     *
+     * @param data       the graph data to encode.
+     * @param journalSeq the sequence number of the last journal operation included in the data.
+     * @return the encoded graph.
+     */
+    static @NotNull byte[] fromTag(@NotNull NbtCompound data, long journalSeq) {
+        LongList chunks = new LongArrayList();
+        for (NbtElement chunk : data.getList("chunks", NbtElement.LONG_TYPE)) {
+            chunks.add(((NbtLong) chunk).longValue());
+        }
+
+        Writer writer = new Writer(journalSeq, chunks, data.getByteArray("slotGenerations"));
+
+        for (NbtElement node : data.getList("nodes", NbtElement.COMPOUND_TYPE)) {
+            writer.writeNodeTag((NbtCompound) node);
+        }
+
+        for (NbtElement link : data.getList("links", NbtElement.COMPOUND_TYPE)) {
+            writer.writeLinkTag((NbtCompound) link);
+        }
+
+        return writer.finish(data.getCompound("graphEntities"));
+    }
+
+    /**
+     * Decodes a graph into the NBT form read by
+     * {@link SimpleBlockGraph#fromTag(SimpleServerGraphWorld, long, NbtCompound)}.
+     * <p>
+     * Raw node and link key data that cannot be decoded is kept as byte arrays, so that re-encoding the NBT form does
+     * not lose it.
+     *
+     * @param reader the reader holding the graph to decode.
+     * @return the decoded graph data.
+     * @throws IOException if an error occurs while reading.
+     */
+    static @NotNull NbtCompound toTag(@NotNull Reader reader) throws IOException {
+        NbtCompound tag = new NbtCompound();
+
+        NbtList chunksTag = new NbtList();
+        for (LongIterator iter = reader.getChunks().iterator(); iter.hasNext(); ) {
+            chunksTag.add(NbtLong.of(iter.nextLong()));
+        }
+        tag.put("chunks", chunksTag);
+
+        NbtList nodesTag = new NbtList();
+        for (int i = 0; i < reader.getNodeCount(); i++) {
+            NodeEntry entry = reader.readNode();
+            BlockPos pos = entry.pos();
+
+            NbtCompound com = new NbtCompound();
+            com.putInt("x", pos.getX());
+            com.putInt("y", pos.getY());
+            com.putInt("z", pos.getZ());
+            com.putString("type", reader.getId(entry.type()).toString());
+            if (entry.raw() != null) {
+                BlockNode node = reader.decodeRawNode(entry.type(), entry.raw());
+                if (node != null) {
+                    NbtElement nodeTag = node.toTag();
+                    if (nodeTag != null) com.put("node", nodeTag);
+                } else {
+                    com.putByteArray("nodeRaw", entry.raw());
+                }
+            } else if (entry.tag() != null) {
+                com.put("node", entry.tag());
+            }
+
+            if (entry.slot() >= 0) com.putInt("slot", entry.slot());
+            putEntity(com, reader, entry.entityType(), entry.entity());
+            if (entry.scheduledTick() >= 0) com.putInt("scheduledTick", entry.scheduledTick());
+
+            nodesTag.add(com);
+        }
+        tag.put("nodes", nodesTag);
+
+        tag.putByteArray("slotGenerations", reader.getSlotGenerations());
+
+        NbtList linksTag = new NbtList();
+        for (int i = 0; i < reader.getLinkCount(); i++) {
+            LinkEntry entry = reader.readLink();
+
+            NbtCompound linkTag = new NbtCompound();
+            linkTag.putString("keyType", reader.getId(entry.keyType()).toString());
+            if (entry.raw() != null) {
+                LinkKey key = reader.decodeRawLinkKey(entry.keyType(), entry.raw());
+                if (key != null) {
+                    NbtElement keyTag = key.toTag();
+                    if (keyTag != null) linkTag.put("key", keyTag);
+                } else {
+                    linkTag.putByteArray("keyRaw", entry.raw());
+                }
+            } else if (entry.tag() != null) {
+                linkTag.put("key", entry.tag());
+            }
+
+            putEntity(linkTag, reader, entry.entityType(), entry.entity());
+            if (entry.scheduledTick() >= 0) linkTag.putInt("scheduledTick", entry.scheduledTick());
+            linkTag.putInt("first", entry.first());
+            linkTag.putInt("second", entry.second());
+
+            linksTag.add(linkTag);
+        }
+        tag.put("links", linksTag);
+
+        tag.put("graphEntities", reader.readGraphEntities());
+
+        return tag;
+    }
+
+    private static void putEntity(@NotNull NbtCompound com, @NotNull Reader reader, int entityType,
+                                  @Nullable NbtElement entity) throws IOException {
+        if (entityType < 0) return;
+
+        com.putString("entityType", reader.getId(entityType).toString());
+        if (entity != null) {
+            com.put("entity", entity);
+        }
+    }
+
+    /**
+     * A node as read from an encoded graph.
+     *
+     * @param pos           the node's block position.
+     * @param type          the palette index of the node's type.
+     * @param raw           the node's raw data, if it was saved as raw bytes.
+     * @param tag           the node's NBT data, if it was saved as NBT.
+     * @param slot          the node's slot, or <code>-1</code>.
+     * @param entityType    the palette index of the node's entity's type, or <code>-1</code> if it has no entity.
+     * @param entity        the node's entity's NBT data.
+     * @param scheduledTick the number of ticks until the node's scheduled tick, or <code>-1</code>.
+     */
+    record NodeEntry(@NotNull BlockPos pos, int type, @Nullable byte[] raw, @Nullable NbtElement tag, int slot,
+                     int entityType, @Nullable NbtElement entity, int scheduledTick) {}
+
+    /**
+     * A link as read from an encoded graph.
+     *
+     * @param first         the index of the link's first node.
+     * @param second        the index of the link's second node.
+     * @param keyType       the palette index of the link's key's type.
+     * @param raw           the link key's raw data, if it was saved as raw bytes.
+     * @param tag           the link key's NBT data, if it was saved as NBT.
+     * @param entityType    the palette index of the link's entity's type, or <code>-1</code> if it has no entity.
+     * @param entity        the link's entity's NBT data.
+     * @param scheduledTick the number of ticks until the link's scheduled tick, or <code>-1</code>.
+     */
+    record LinkEntry(int first, int second, int keyType, @Nullable byte[] raw, @Nullable NbtElement tag,
+                     int entityType, @Nullable NbtElement entity, int scheduledTick) {}
+
+    /**
+     * Thrown when a graph is in a version of this format that this version of GraphLib cannot read, most likely because
+     * it was saved by a newer one.
+     */
+    static final class UnsupportedVersionException extends IOException {
+        UnsupportedVersionException(int version) {
+            super("Unsupported graph format version: " + version);
+        }
+    }
+
+    /**
+     * Visits nodes read from an encoded graph.
+     */
+    @FunctionalInterface
+    interface NodeVisitor {
+        void visit(@NotNull NodeEntry entry) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface RawEncoder {
+        void encode(@NotNull DataOutput out) throws IOException;
+    }
+
+    /**
+     * Writes a block node, link key, or entity's data, as raw bytes if there are any, otherwise as NBT.
+     */
+    static void writePayload(@NotNull DataOutput out, @Nullable byte[] raw, @Nullable NbtElement tag)
+        throws IOException {
+        if (raw != null) {
+            out.writeByte(PAYLOAD_RAW);
+            VarInts.writeUnsignedInt(out, raw.length);
+            out.write(raw);
+        } else if (tag != null) {
+            out.writeByte(PAYLOAD_NBT);
+            out.writeByte(tag.getType());
+            tag.write(out);
+        } else {
+            out.writeByte(PAYLOAD_NONE);
+        }
+    }
+
+    /**
+     * Encodes something as raw bytes, returning <code>null</code> if it should be saved as NBT instead.
+     */
+    static @Nullable byte[] toRaw(@NotNull RawEncoder encoder, @NotNull Identifier typeId) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            encoder.encode(out);
+        } catch (IOException e) {
+            GLLog.error("Unable to encode object of type {} as raw bytes, saving it as NBT instead", typeId, e);
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the kind of payload written by {@link #writePayload(DataOutput, byte[], NbtElement)}, to be passed to
+     * {@link #readRaw(DataInput, int)} and {@link #readTag(DataInput, int)}.
+     */
+    static int readPayloadKind(@NotNull DataInput in) throws IOException {
+        int payload = in.readUnsignedByte();
+        if (payload > PAYLOAD_RAW) {
+            throw new IOException("Unknown payload kind: " + payload);
+        }
+        return payload;
+    }
+
+    /**
+     * Reads a payload's raw bytes, or returns <code>null</code> if the payload is not raw.
+     */
+    static @Nullable byte[] readRaw(@NotNull DataInput in, int payload) throws IOException {
+        if (payload != PAYLOAD_RAW) return null;
+
+        byte[] raw = new byte[VarInts.readUnsignedInt(in)];
+        in.readFully(raw);
+        return raw;
+    }
+
+    /**
+     * Reads a payload's NBT, or returns <code>null</code> if the payload is not NBT.
+     */
+    static @Nullable NbtElement readTag(@NotNull DataInput in, int payload) throws IOException {
+        if (payload != PAYLOAD_NBT) return null;
+
+        int type = in.readUnsignedByte();
+        return NbtTypes.byId(type).read(in, 0, NbtTagSizeTracker.EMPTY);
+    }
+
+    /**
+     * The nodes in a chunk section and the links between them.
+     */
+    private static final class Segment {
+        private final ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+        private final DataOutputStream nodeOut = new DataOutputStream(nodeBytes);
+        private int nodeCount = 0;
+        private final ByteArrayOutputStream linkBytes = new ByteArrayOutputStream();
+        private final DataOutputStream linkOut = new DataOutputStream(linkBytes);
+        private int linkCount = 0;
+    }
+
+    /**
+     * Encodes a graph. Nodes must be written before links, and links refer to nodes by the order they were written in,
+     * regardless of the segments they end up in.
+     */
+    static final class Writer {
+        private final long journalSeq;
+        private final byte[] slotGenerations;
+
+        private final Object2IntMap<Identifier> paletteIndices = new Object2IntOpenHashMap<>();
+        private final List<Identifier> palette = new ObjectArrayList<>();
+        private final Long2IntMap sectionIndices = new Long2IntOpenHashMap();
+        private final LongList sections = new LongArrayList();
+        private final int chunkCount;
+
+        private final List<Segment> segments = new ObjectArrayList<>();
+
+        // the segment and index within that segment of each node, in the order the nodes were written in
+        private final IntList nodeSegments = new IntArrayList();
+        private final IntList nodeIndices = new IntArrayList();
+
+        private final ByteArrayOutputStream boundaryBytes = new ByteArrayOutputStream();
+        private final DataOutputStream boundaryOut = new DataOutputStream(boundaryBytes);
+        private int boundaryCount = 0;
+
+        /**
+         * Creates a new graph writer.
+         *
+         * @param journalSeq      the sequence number of the last journal operation included in the graph.
+         * @param chunks          the chunk sections the graph is in.
+         * @param slotGenerations the generations of the graph's node slots.
+         */
+        Writer(long journalSeq, @NotNull LongIterable chunks, @NotNull byte[] slotGenerations) {
+            this.journalSeq = journalSeq;
+            this.slotGenerations = slotGenerations;
+            paletteIndices.defaultReturnValue(-1);
+            sectionIndices.defaultReturnValue(-1);
+
+            // the graph's chunks come first in the section table so that they can be told apart from sections that
+            // are only there because a node is in them
+            for (LongIterator iter = chunks.iterator(); iter.hasNext(); ) {
+                sectionIndex(iter.nextLong());
+            }
+            chunkCount = sections.size();
+        }
+
+        /**
+         * Writes a block node.
+         */
+        void writeNode(@NotNull BlockPos pos, @NotNull BlockNode node, int slot, @Nullable NodeEntity entity,
+                       int scheduledTick) {
+            BlockNodeType type = node.getType();
+            byte[] raw = type.getBinaryDecoder() != null ? toRaw(node::toBinary, type.getId()) : null;
+
+            writeNode(pos, type.getId(), raw, raw == null ? node.toTag() : null, slot,
+                entity != null ? entity.getType().getId() : null, entity != null ? entity.toTag() : null,
+                scheduledTick);
+        }
+
+        /**
+         * Writes a block node in the NBT form produced by {@link SimpleBlockGraph#toTag()}.
+         */
+        void writeNodeTag(@NotNull NbtCompound com) {
+            BlockPos pos = new BlockPos(com.getInt("x"), com.getInt("y"), com.getInt("z"));
+            byte[] raw = com.contains("nodeRaw", NbtElement.BYTE_ARRAY_TYPE) ? com.getByteArray("nodeRaw") : null;
+            int slot = com.contains("slot", NbtElement.INT_TYPE) ? com.getInt("slot") : -1;
+            Identifier entityType =
+                com.contains("entityType", NbtElement.STRING_TYPE) ? new Identifier(com.getString("entityType")) :
+                    null;
+            int scheduledTick = com.contains("scheduledTick", NbtElement.INT_TYPE) ? com.getInt("scheduledTick") : -1;
+
+            writeNode(pos, new Identifier(com.getString("type")), raw, raw == null ? com.get("node") : null, slot,
+                entityType, com.get("entity"), scheduledTick);
+        }
+
+        private void writeNode(@NotNull BlockPos pos, @NotNull Identifier type, @Nullable byte[] raw,
+                               @Nullable NbtElement tag, int slot, @Nullable Identifier entityType,
+                               @Nullable NbtElement entity, int scheduledTick) {
+            int segmentIndex = sectionIndex(
+                ChunkSectionPos.asLong(ChunkSectionPos.getSectionCoord(pos.getX()),
+                    ChunkSectionPos.getSectionCoord(pos.getY()), ChunkSectionPos.getSectionCoord(pos.getZ())));
+            Segment segment = segments.get(segmentIndex);
+            DataOutputStream out = segment.nodeOut;
+
+            try {
+                VarInts.writeUnsignedInt(out, paletteIndex(type));
+                out.writeShort((pos.getX() & 0xF) << 8 | (pos.getY() & 0xF) << 4 | (pos.getZ() & 0xF));
+                writePayload(out, raw, tag);
+                VarInts.writeOptionalInt(out, Math.max(-1, slot));
+                writeEntity(out, entityType, entity);
+                VarInts.writeOptionalInt(out, Math.max(-1, scheduledTick));
+            } catch (IOException e) {
+                // ByteArrayOutputStreams don't throw
+                throw new AssertionError(e);
+            }
+
+            nodeSegments.add(segmentIndex);
+            nodeIndices.add(segment.nodeCount++);
+        }
+
+        /**
+         * Writes a link between the nodes with the given indices.
+         */
+        void writeLink(int first, int second, @NotNull LinkKey key, @Nullable LinkEntity entity, int scheduledTick) {
+            LinkKeyType type = key.getType();
+            byte[] raw = type.getBinaryDecoder() != null ? toRaw(key::toBinary, type.getId()) : null;
+
+            writeLink(first, second, type.getId(), raw, raw == null ? key.toTag() : null,
+                entity != null ? entity.getType().getId() : null, entity != null ? entity.toTag() : null,
+                scheduledTick);
+        }
+
+        /**
+         * Writes a link in the NBT form produced by {@link SimpleBlockGraph#toTag()}.
+         */
+        void writeLinkTag(@NotNull NbtCompound linkTag) {
+            Identifier keyType =
+                linkTag.contains("keyType", NbtElement.STRING_TYPE) ? new Identifier(linkTag.getString("keyType")) :
+                    EmptyLinkKey.TYPE_ID;
+            byte[] raw =
+                linkTag.contains("keyRaw", NbtElement.BYTE_ARRAY_TYPE) ? linkTag.getByteArray("keyRaw") : null;
+            Identifier entityType = linkTag.contains("entityType", NbtElement.STRING_TYPE) ?
+                new Identifier(linkTag.getString("entityType")) : null;
+            int scheduledTick =
+                linkTag.contains("scheduledTick", NbtElement.INT_TYPE) ? linkTag.getInt("scheduledTick") : -1;
+
+            writeLink(linkTag.getInt("first"), linkTag.getInt("second"), keyType, raw,
+                raw == null ? linkTag.get("key") : null, entityType, linkTag.get("entity"), scheduledTick);
+        }
+
+        private void writeLink(int first, int second, @NotNull Identifier keyType, @Nullable byte[] raw,
+                               @Nullable NbtElement tag, @Nullable Identifier entityType, @Nullable NbtElement entity,
+                               int scheduledTick) {
+            if (first < 0 || first >= nodeSegments.size() || second < 0 || second >= nodeSegments.size()) {
+                GLLog.warn("Attempted to save link with non-existent node. Link: {} - {}, node count: {}", first,
+                    second, nodeSegments.size());
+                return;
+            }
+
+            int firstSegment = nodeSegments.getInt(first);
+            int secondSegment = nodeSegments.getInt(second);
+
+            try {
+                DataOutputStream out;
+                if (firstSegment == secondSegment) {
+                    Segment segment = segments.get(firstSegment);
+                    out = segment.linkOut;
+                    VarInts.writeUnsignedInt(out, nodeIndices.getInt(first));
+                    VarInts.writeUnsignedInt(out, nodeIndices.getInt(second));
+                    segment.linkCount++;
+                } else {
+                    out = boundaryOut;
+                    VarInts.writeUnsignedInt(out, firstSegment);
+                    VarInts.writeUnsignedInt(out, nodeIndices.getInt(first));
+                    VarInts.writeUnsignedInt(out, secondSegment);
+                    VarInts.writeUnsignedInt(out, nodeIndices.getInt(second));
+                    boundaryCount++;
+                }
+
+                VarInts.writeUnsignedInt(out, paletteIndex(keyType));
+                writePayload(out, raw, tag);
+                writeEntity(out, entityType, entity);
+                VarInts.writeOptionalInt(out, Math.max(-1, scheduledTick));
+            } catch (IOException e) {
+                // ByteArrayOutputStreams don't throw
+                throw new AssertionError(e);
+            }
+        }
+
+        /**
+         * Finishes encoding the graph.
+         *
+         * @param graphEntities the graph's graph entities, in the NBT form produced by
+         *                      {@link SimpleBlockGraph#graphEntitiesToTag()}.
+         * @return the encoded graph.
+         */
+        @NotNull byte[] finish(@NotNull NbtCompound graphEntities) {
+            int size = 64 + palette.size() * 32 + sections.size() * 16 + slotGenerations.length + boundaryBytes.size();
+            for (Segment segment : segments) {
+                size += segment.nodeBytes.size() + segment.linkBytes.size();
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeLong(journalSeq);
+
+                VarInts.writeUnsignedInt(out, palette.size());
+                for (Identifier id : palette) {
+                    out.writeUTF(id.toString());
+                }
+
+                VarInts.writeUnsignedInt(out, sections.size());
+                VarInts.writeUnsignedInt(out, chunkCount);
+                for (int i = 0; i < sections.size(); i++) {
+                    out.writeLong(sections.getLong(i));
+                }
+
+                VarInts.writeUnsignedInt(out, slotGenerations.length);
+                out.write(slotGenerations);
+
+                // the directory
+                for (Segment segment : segments) {
+                    VarInts.writeUnsignedInt(out, segment.nodeCount);
+                    VarInts.writeUnsignedInt(out, segment.nodeBytes.size());
+                    VarInts.writeUnsignedInt(out, segment.linkCount);
+                    VarInts.writeUnsignedInt(out, segment.linkBytes.size());
+                }
+                VarInts.writeUnsignedInt(out, boundaryCount);
+
+                for (Segment segment : segments) {
+                    segment.nodeBytes.writeTo(out);
+                }
+                for (Segment segment : segments) {
+                    segment.linkBytes.writeTo(out);
+                }
+                boundaryBytes.writeTo(out);
+
+                NbtIo.write(graphEntities, out);
+            } catch (IOException e) {
+                // ByteArrayOutputStreams don't throw
+                throw new AssertionError(e);
+            }
+
+            return bytes.toByteArray();
+        }
+
+        private int paletteIndex(@NotNull Identifier id) {
+            int index = paletteIndices.getInt(id);
+            if (index < 0) {
+                index = palette.size();
+                palette.add(id);
+                paletteIndices.put(id, index);
+            }
+            return index;
+        }
+
+        private int sectionIndex(long section) {
+            int index = sectionIndices.get(section);
+            if (index < 0) {
+                index = sections.size();
+                sections.add(section);
+                sectionIndices.put(section, index);
+                segments.add(new Segment());
+            }
+            return index;
+        }
+
+        private void writeEntity(@NotNull DataOutput out, @Nullable Identifier entityType,
+                                 @Nullable NbtElement entity) throws IOException {
+            if (entityType == null) {
+                VarInts.writeOptionalInt(out, -1);
+                return;
+            }
+
+            VarInts.writeOptionalInt(out, paletteIndex(entityType));
+            writePayload(out, null, entity);
+        }
+    }
+
+    /**
+     * Decodes a graph. Nodes must be read before links, and graph entities last.
+     */
+    static final class Reader {
+        private final @Nullable GraphUniverse universe;
+        private final DataInputStream in;
+
+        private final long journalSeq;
+        private final Identifier[] palette;
+        private final long[] sections;
+        private final int chunkCount;
+        private final byte[] slotGenerations;
+
+        // the directory
+        private final int[] nodeCounts;
+        private final int[] nodeByteCounts;
+        private final int[] linkCounts;
+        private final int[] nodeBases;
+        private final int boundaryCount;
+        private final int nodeCount;
+        private final int linkCount;
+
+        private int nodeSegment = -1;
+        private int nodesLeftInSegment = 0;
+        private int linkSegment = -1;
+        private int linksLeftInSegment = 0;
+        private int linksRead = 0;
+
+        // filled in by preload()
+        private @Nullable List<NodeEntry> preloadedNodes = null;
+        private @Nullable List<LinkEntry> preloadedLinks = null;
+        private @Nullable NbtCompound preloadedGraphEntities = null;
+        private int preloadedNodesRead = 0;
+        private int preloadedLinksRead = 0;
+
+        // type lookups are done once per palette entry instead of once per node
+        private final BlockNodeType[] nodeTypes;
+        private final LinkKeyType[] linkKeyTypes;
+        private final NodeEntityType[] nodeEntityTypes;
+        private final LinkEntityType[] linkEntityTypes;
+
+        /**
+         * Starts reading an encoded graph.
+         *
+         * @param universe the universe to look types up in, or <code>null</code> if nothing will be decoded, in which
+         *                 case every type is treated as unknown.
+         * @param bytes    the uncompressed encoded graph.
+         * @throws IOException if the bytes do not hold a graph in a supported version of this format.
+         */
+        Reader(@Nullable GraphUniverse universe, @NotNull byte[] bytes) throws IOException {
+            this.universe = universe;
+            in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+            int magic = in.readInt();
+            if (magic != MAGIC) {
+                throw new IOException("Unrecognized graph format (magic: " + Integer.toHexString(magic) + ")");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION && version != LEGACY_VERSION) {
+                throw new UnsupportedVersionException(version);
+            }
+            journalSeq = in.readLong();
+
+            palette = new Identifier[VarInts.readUnsignedInt(in)];
+            for (int i = 0; i < palette.length; i++) {
+                palette[i] = new Identifier(in.readUTF());
+            }
+            nodeTypes = new BlockNodeType[palette.length];
+            linkKeyTypes = new LinkKeyType[palette.length];
+            nodeEntityTypes = new NodeEntityType[palette.length];
+            linkEntityTypes = new LinkEntityType[palette.length];
+
+            sections = new long[VarInts.readUnsignedInt(in)];
+            chunkCount = VarInts.readUnsignedInt(in);
+            if (chunkCount > sections.length) {
+                throw new IOException("Graph has more chunks (" + chunkCount + ") than sections (" + sections.length +
+                    ")");
+            }
+            for (int i = 0; i < sections.length; i++) {
+                sections[i] = in.readLong();
+            }
+
+            slotGenerations = new byte[VarInts.readUnsignedInt(in)];
+            in.readFully(slotGenerations);
+
+            if (version == LEGACY_VERSION) {
+                // there is no directory to read segments by, so the whole graph is read up front
+                nodeCounts = new int[0];
+                nodeByteCounts = new int[0];
+                linkCounts = new int[0];
+                nodeBases = new int[0];
+                boundaryCount = 0;
+                this.nodeCount = preloadLegacy();
+                this.linkCount = preloadedLinks.size();
+                return;
+            }
+
+            nodeCounts = new int[sections.length];
+            nodeByteCounts = new int[sections.length];
+            linkCounts = new int[sections.length];
+            nodeBases = new int[sections.length];
+            int nodeCount = 0;
+            int linkCount = 0;
+            for (int i = 0; i < sections.length; i++) {
+                nodeCounts[i] = VarInts.readUnsignedInt(in);
+                nodeByteCounts[i] = VarInts.readUnsignedInt(in);
+                linkCounts[i] = VarInts.readUnsignedInt(in);
+                // the length of the segment's links, which nothing needs to skip yet
+                VarInts.readUnsignedInt(in);
+
+                nodeBases[i] = nodeCount;
+                nodeCount += nodeCounts[i];
+                linkCount += linkCounts[i];
+            }
+            boundaryCount = VarInts.readUnsignedInt(in);
+            this.nodeCount = nodeCount;
+            this.linkCount = linkCount + boundaryCount;
+        }
+
+        long getJournalSeq() {
+            return journalSeq;
+        }
+
+        @NotNull LongSet getChunks() {
+            LongSet chunks = new LongLinkedOpenHashSet(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                chunks.add(sections[i]);
+            }
+            return chunks;
+        }
+
+        @NotNull byte[] getSlotGenerations() {
+            return slotGenerations;
+        }
+
+        int getNodeCount() {
+            return nodeCount;
+        }
+
+        int getLinkCount() {
+            return linkCount;
+        }
+
+        @NotNull Identifier getId(int paletteIndex) throws IOException {
+            if (paletteIndex < 0 || paletteIndex >= palette.length) {
+                throw new IOException("Palette index out of bounds: " + paletteIndex);
+            }
+            return palette[paletteIndex];
+        }
+
+        /**
+         * Reads the whole graph up front, so that the parsing can be done on another thread.
+         * <p>
+         * Afterwards, {@link #readNode()}, {@link #readLink()}, and {@link #readGraphEntities()} return the preloaded
+         * entries. Nothing is decoded into block nodes or link keys, as that must happen on the main thread.
+         *
+         * @return this reader.
+         * @throws IOException if an error occurs while reading.
+         */
+        @NotNull Reader preload() throws IOException {
+            if (preloadedNodes != null) return this;
+            if (nodeSegment >= 0) throw new IllegalStateException("Nodes have already been read");
+
+            List<NodeEntry> nodes = new ObjectArrayList<>(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                nodes.add(readNode());
+            }
+            List<LinkEntry> links = new ObjectArrayList<>(linkCount);
+            for (int i = 0; i < linkCount; i++) {
+                links.add(readLink());
+            }
+            preloadedGraphEntities = readGraphEntities();
+            preloadedNodes = nodes;
+            preloadedLinks = links;
+
+            return this;
+        }
+
+        /**
+         * Reads the next node. Nodes are read one segment at a time.
+         */
+        @NotNull NodeEntry readNode() throws IOException {
+            if (preloadedNodes != null) {
+                if (preloadedNodesRead >= preloadedNodes.size()) {
+                    throw new IOException("Attempted to read more than the " + nodeCount + " nodes in the graph");
+                }
+                return preloadedNodes.get(preloadedNodesRead++);
+            }
+
+            while (nodesLeftInSegment == 0) {
+                nodeSegment++;
+                if (nodeSegment >= sections.length) {
+                    throw new IOException("Attempted to read more than the " + nodeCount + " nodes in the graph");
+                }
+                nodesLeftInSegment = nodeCounts[nodeSegment];
+            }
+
+            nodesLeftInSegment--;
+            return readNodeIn(nodeSegment);
+        }
+
+        /**
+         * Reads only the nodes in the given chunk sections, skipping the rest without decoding them.
+         * <p>
+         * This is for readers that only need part of a graph, and must be called instead of {@link #readNode()}.
+         *
+         * @param sectionFilter tests whether the nodes in a chunk section should be read.
+         * @param visitor       receives the nodes that were read.
+         * @throws IOException if an error occurs while reading.
+         */
+        void readNodesIn(@NotNull LongPredicate sectionFilter, @NotNull NodeVisitor visitor) throws IOException {
+            if (preloadedNodes != null) {
+                // preloading reads every segment, so only the preloaded nodes say whether any were handed out
+                if (preloadedNodesRead > 0) throw new IllegalStateException("Nodes have already been read");
+
+                for (NodeEntry entry : preloadedNodes) {
+                    BlockPos pos = entry.pos();
+                    if (sectionFilter.test(ChunkSectionPos.asLong(ChunkSectionPos.getSectionCoord(pos.getX()),
+                        ChunkSectionPos.getSectionCoord(pos.getY()), ChunkSectionPos.getSectionCoord(pos.getZ())))) {
+                        visitor.visit(entry);
+                    }
+                }
+                preloadedNodesRead = preloadedNodes.size();
+                nodeSegment = sections.length;
+                return;
+            }
+
+            if (nodeSegment >= 0) throw new IllegalStateException("Nodes have already been read");
+
+            for (int i = 0; i < sections.length; i++) {
+                if (sectionFilter.test(sections[i])) {
+                    for (int j = 0; j < nodeCounts[i]; j++) {
+                        visitor.visit(readNodeIn(i));
+                    }
+                } else {
+                    in.skipNBytes(nodeByteCounts[i]);
+                }
+            }
+
+            nodeSegment = sections.length;
+        }
+
+        private @NotNull NodeEntry readNodeIn(int segment) throws IOException {
+            int type = VarInts.readUnsignedInt(in);
+            getId(type);
+
+            long section = sections[segment];
+            int local = in.readUnsignedShort();
+            BlockPos pos =
+                new BlockPos(ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(section)) + (local >> 8 & 0xF),
+                    ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(section)) + (local >> 4 & 0xF),
+                    ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(section)) + (local & 0xF));
+
+            int payload = readPayloadKind(in);
+            byte[] raw = readRaw(in, payload);
+            NbtElement tag = readTag(in, payload);
+            int slot = VarInts.readOptionalInt(in);
+            int entityType = VarInts.readOptionalInt(in);
+            NbtElement entity = entityType >= 0 ? readTag(in, readPayloadKind(in)) : null;
+            int scheduledTick = VarInts.readOptionalInt(in);
+
+            return new NodeEntry(pos, type, raw, tag, slot, entityType, entity, scheduledTick);
+        }
+
+        /**
+         * Reads the next link. Links are read after all nodes, one segment at a time, followed by links between
+         * segments.
+         */
+        @NotNull LinkEntry readLink() throws IOException {
+            if (preloadedLinks != null) {
+                if (preloadedLinksRead >= preloadedLinks.size()) {
+                    throw new IOException("Attempted to read more than the " + linkCount + " links in the graph");
+                }
+                return preloadedLinks.get(preloadedLinksRead++);
+            }
+
+            if (linksRead >= linkCount) {
+                throw new IOException("Attempted to read more than the " + linkCount + " links in the graph");
+            }
+
+            int first;
+            int second;
+            if (linksRead < linkCount - boundaryCount) {
+                while (linksLeftInSegment == 0) {
+                    linkSegment++;
+                    linksLeftInSegment = linkCounts[linkSegment];
+                }
+                linksLeftInSegment--;
+
+                first = nodeIndex(linkSegment, VarInts.readUnsignedInt(in));
+                second = nodeIndex(linkSegment, VarInts.readUnsignedInt(in));
+            } else {
+                first = nodeIndex(VarInts.readUnsignedInt(in), VarInts.readUnsignedInt(in));
+                second = nodeIndex(VarInts.readUnsignedInt(in), VarInts.readUnsignedInt(in));
+            }
+            linksRead++;
+
+            int keyType = VarInts.readUnsignedInt(in);
+            getId(keyType);
+
+            int payload = readPayloadKind(in);
+            byte[] raw = readRaw(in, payload);
+            NbtElement tag = readTag(in, payload);
+            int entityType = VarInts.readOptionalInt(in);
+            NbtElement entity = entityType >= 0 ? readTag(in, readPayloadKind(in)) : null;
+            int scheduledTick = VarInts.readOptionalInt(in);
+
+            return new LinkEntry(first, second, keyType, raw, tag, entityType, entity, scheduledTick);
+        }
+
+        private int nodeIndex(int segment, int index) throws IOException {
+            if (segment >= sections.length || index >= nodeCounts[segment]) {
+                throw new IOException("Link refers to non-existent node " + index + " in segment " + segment);
+            }
+            return nodeBases[segment] + index;
+        }
+
+        /**
+         * Reads a version 1 graph, where each node refers to its own section and links refer to nodes by index.
+         *
+         * @return the number of nodes read.
+         */
+        private int preloadLegacy() throws IOException {
+            int nodeCount = VarInts.readUnsignedInt(in);
+            List<NodeEntry> nodes = new ObjectArrayList<>(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                int type = VarInts.readUnsignedInt(in);
+                getId(type);
+
+                int sectionIndex = VarInts.readUnsignedInt(in);
+                if (sectionIndex >= sections.length) {
+                    throw new IOException("Section index out of bounds: " + sectionIndex);
+                }
+                long section = sections[sectionIndex];
+                int local = in.readUnsignedShort();
+                BlockPos pos =
+                    new BlockPos(ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(section)) + (local >> 8 & 0xF),
+                        ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(section)) + (local >> 4 & 0xF),
+                        ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(section)) + (local & 0xF));
+
+                int payload = readPayloadKind(in);
+                byte[] raw = readRaw(in, payload);
+                NbtElement tag = readTag(in, payload);
+                int slot = VarInts.readOptionalInt(in);
+                int entityType = VarInts.readOptionalInt(in);
+                NbtElement entity = entityType >= 0 ? readTag(in, readPayloadKind(in)) : null;
+                int scheduledTick = VarInts.readOptionalInt(in);
+
+                nodes.add(new NodeEntry(pos, type, raw, tag, slot, entityType, entity, scheduledTick));
+            }
+
+            int linkCount = VarInts.readUnsignedInt(in);
+            List<LinkEntry> links = new ObjectArrayList<>(linkCount);
+            for (int i = 0; i < linkCount; i++) {
+                int first = VarInts.readUnsignedInt(in);
+                int second = VarInts.readUnsignedInt(in);
+                if (first >= nodeCount || second >= nodeCount) {
+                    throw new IOException("Link refers to non-existent node: " + first + " - " + second);
+                }
+                int keyType = VarInts.readUnsignedInt(in);
+                getId(keyType);
+
+                int payload = readPayloadKind(in);
+                byte[] raw = readRaw(in, payload);
+                NbtElement tag = readTag(in, payload);
+                int entityType = VarInts.readOptionalInt(in);
+                NbtElement entity = entityType >= 0 ? readTag(in, readPayloadKind(in)) : null;
+                int scheduledTick = VarInts.readOptionalInt(in);
+
+                links.add(new LinkEntry(first, second, keyType, raw, tag, entityType, entity, scheduledTick));
+            }
+
+            preloadedGraphEntities = NbtIo.read(in);
+            preloadedNodes = nodes;
+            preloadedLinks = links;
+
+            return nodeCount;
+        }
+
+        @NotNull NbtCompound readGraphEntities() throws IOException {
+            if (preloadedGraphEntities != null) return preloadedGraphEntities;
+            return NbtIo.read(in);
+        }
+
+        /**
+         * Decodes a node's block node, logging a warning if it cannot be decoded.
+         */
+        @Nullable BlockNode decodeNode(@NotNull NodeEntry entry) throws IOException {
+            Identifier typeId = getId(entry.type());
+            BlockNodeType type = nodeType(entry.type());
+            if (type == null) {
+                GLLog.warn("Tried to load unknown BlockNode type: {} @ {}", typeId, entry.pos());
+                return null;
+            }
+
+            BlockNode node;
+            if (entry.raw() != null) {
+                node = decodeRawNode(entry.type(), entry.raw());
+            } else {
+                node = type.getDecoder().decode(entry.tag());
+            }
+
+            if (node == null) {
+                GLLog.warn("Unable to decode BlockNode with type: {} @ {}", typeId, entry.pos());
+            }
+
+            return node;
+        }
+
+        /**
+         * Decodes a block node that was saved as raw bytes, returning <code>null</code> if it cannot be decoded.
+         */
+        @Nullable BlockNode decodeRawNode(int typeIndex, @NotNull byte[] raw) {
+            BlockNodeType type = nodeType(typeIndex);
+            if (type == null) return null;
+
+            BlockNodeBinaryDecoder decoder = type.getBinaryDecoder();
+            if (decoder == null) return null;
+
+            try {
+                return decoder.decode(new DataInputStream(new ByteArrayInputStream(raw)));
+            } catch (IOException e) {
+                GLLog.warn("Error decoding raw BlockNode of type {}", palette[typeIndex], e);
+                return null;
+            }
+        }
+
+        /**
+         * Decodes a link's key, falling back to the empty link key if it cannot be decoded.
+         */
+        @NotNull LinkKey decodeLinkKey(@NotNull LinkEntry entry) throws IOException {
+            Identifier typeId = getId(entry.keyType());
+            LinkKeyType type = linkKeyType(entry.keyType());
+            if (type == null) {
+                GLLog.warn("Encountered link key with unknown type id: {}", typeId);
+                return EmptyLinkKey.INSTANCE;
+            }
+
+            LinkKey key;
+            if (entry.raw() != null) {
+                key = decodeRawLinkKey(entry.keyType(), entry.raw());
+            } else {
+                key = type.getDecoder().decode(entry.tag());
+            }
+
+            return key != null ? key : EmptyLinkKey.INSTANCE;
+        }
+
+        /**
+         * Decodes a link key that was saved as raw bytes, returning <code>null</code> if it cannot be decoded.
+         */
+        @Nullable LinkKey decodeRawLinkKey(int typeIndex, @NotNull byte[] raw) {
+            LinkKeyType type = linkKeyType(typeIndex);
+            if (type == null) return null;
+
+            LinkKeyBinaryDecoder decoder = type.getBinaryDecoder();
+            if (decoder == null) return null;
+
+            try {
+                return decoder.decode(new DataInputStream(new ByteArrayInputStream(raw)));
+            } catch (IOException e) {
+                GLLog.warn("Error decoding raw link key of type {}", palette[typeIndex], e);
+                return null;
+            }
+        }
+
+        @Nullable NodeEntity decodeNodeEntity(@NotNull NodeEntry entry) throws IOException {
+            if (entry.entityType() < 0) return null;
+
+            Identifier typeId = getId(entry.entityType());
+            NodeEntityType type = nodeEntityTypes[entry.entityType()];
+            if (type == null && universe != null) {
+                type = nodeEntityTypes[entry.entityType()] = universe.getNodeEntityType(typeId);
+            }
+            if (type == null) {
+                GLLog.warn("Encountered Node Entity with unknown type id: {}", typeId);
+                return null;
+            }
+
+            return type.getDecoder().decode(entry.entity());
+        }
+
+        @Nullable LinkEntity decodeLinkEntity(@NotNull LinkEntry entry) throws IOException {
+            if (entry.entityType() < 0) return null;
+
+            Identifier typeId = getId(entry.entityType());
+            LinkEntityType type = linkEntityTypes[entry.entityType()];
+            if (type == null && universe != null) {
+                type = linkEntityTypes[entry.entityType()] = universe.getLinkEntityType(typeId);
+            }
+            if (type == null) {
+                GLLog.warn("Encountered Link Entity with unknown id: {}", typeId);
+                return null;
+            }
+
+            return type.getDecoder().decode(entry.entity());
+        }
+
+        private @Nullable BlockNodeType nodeType(int index) {
+            BlockNodeType type = nodeTypes[index];
+            if (type == null && universe != null) {
+                type = nodeTypes[index] = universe.getNodeType(palette[index]);
+            }
+            return type;
+        }
+
+        private @Nullable LinkKeyType linkKeyType(int index) {
+            LinkKeyType type = linkKeyTypes[index];
+            if (type == null && universe != null) {
+                type = linkKeyTypes[index] = universe.getLinkKeyType(palette[index]);
+            }
+            return type;
+        }
+    }
+}
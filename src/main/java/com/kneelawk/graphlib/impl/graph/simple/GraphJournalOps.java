@@ -0,0 +1,453 @@
+package com.kneelawk.graphlib.impl.graph.simple;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtLong;
+import net.minecraft.util.math.ChunkSectionPos;
+
+import com.kneelawk.graphlib.api.util.NodeHandle;
+import com.kneelawk.graphlib.impl.GLLog;
+
+/**
+ * Builds the operations recorded in the graph journal and replays them onto saved graphs.
+ * <p>
+ * Operations are replayed at the NBT level, so graphs that are not loaded can be brought up-to-date without decoding
+ * their nodes or firing any callbacks.
+ * <p>
+ * Nodes are referred to by their key tag, as produced by {@link SimpleNodeWrapper#toTag()}. Links are referred to by
+ * link tags with <code>first</code> and <code>second</code> node key tags, alongside the link's own
+ * <code>keyType</code> and <code>key</code>.
+ */
+final class GraphJournalOps {
+    private GraphJournalOps() {}
+
+    private static final String ADD_NODE = "addNode";
+    private static final String REMOVE_NODE = "removeNode";
+    private static final String REMOVE_NODES = "removeNodes";
+    private static final String LINK = "link";
+    private static final String UNLINK = "unlink";
+    private static final String NODE_ENTITY = "nodeEntity";
+    private static final String LINK_ENTITY = "linkEntity";
+    private static final String NODE_TICK = "nodeTick";
+    private static final String LINK_TICK = "linkTick";
+    private static final String MERGE = "merge";
+    private static final String GRAPH_ENTITIES = "graphEntities";
+    private static final String DESTROY = "destroy";
+
+    /**
+     * A journal operation and its sequence number.
+     *
+     * @param seq the sequence number of the operation.
+     * @param op  the operation.
+     */
+    record Entry(long seq, @NotNull NbtCompound op) {}
+
+    static @NotNull NbtCompound addNode(@NotNull NbtCompound node) {
+        NbtCompound op = op(ADD_NODE);
+        op.put("node", node);
+        return op;
+    }
+
+    static @NotNull NbtCompound removeNode(@NotNull NbtCompound node) {
+        NbtCompound op = op(REMOVE_NODE);
+        op.put("node", node);
+        return op;
+    }
+
+    static @NotNull NbtCompound removeNodes(@NotNull NbtList nodes) {
+        NbtCompound op = op(REMOVE_NODES);
+        op.put("nodes", nodes);
+        return op;
+    }
+
+    static @NotNull NbtCompound link(@NotNull NbtCompound link) {
+        NbtCompound op = op(LINK);
+        op.put("link", link);
+        return op;
+    }
+
+    static @NotNull NbtCompound unlink(@NotNull NbtCompound link) {
+        NbtCompound op = op(UNLINK);
+        op.put("link", link);
+        return op;
+    }
+
+    static @NotNull NbtCompound nodeEntity(@NotNull NbtCompound node) {
+        NbtCompound op = op(NODE_ENTITY);
+        op.put("node", node);
+        return op;
+    }
+
+    static @NotNull NbtCompound linkEntity(@NotNull NbtCompound link) {
+        NbtCompound op = op(LINK_ENTITY);
+        op.put("link", link);
+        return op;
+    }
+
+    static @NotNull NbtCompound nodeTick(@NotNull NbtCompound node, int delay) {
+        NbtCompound op = op(NODE_TICK);
+        op.put("node", node);
+        op.putInt("delay", delay);
+        return op;
+    }
+
+    static @NotNull NbtCompound linkTick(@NotNull NbtCompound link, int delay) {
+        NbtCompound op = op(LINK_TICK);
+        op.put("link", link);
+        op.putInt("delay", delay);
+        return op;
+    }
+
+    static @NotNull NbtCompound merge(@NotNull NbtList nodes, @NotNull NbtList links) {
+        NbtCompound op = op(MERGE);
+        op.put("nodes", nodes);
+        op.put("links", links);
+        return op;
+    }
+
+    static @NotNull NbtCompound graphEntities(@NotNull NbtCompound graphEntities) {
+        NbtCompound op = op(GRAPH_ENTITIES);
+        op.put("graphEntities", graphEntities);
+        return op;
+    }
+
+    static @NotNull NbtCompound destroy() {
+        return op(DESTROY);
+    }
+
+    /**
+     * Checks whether the last of the given operations destroys its graph.
+     *
+     * @param entries the operations to check.
+     * @return <code>true</code> if the graph ends up destroyed.
+     */
+    static boolean isDestroyed(@NotNull List<Entry> entries) {
+        return !entries.isEmpty() && DESTROY.equals(entries.get(entries.size() - 1).op().getString("op"));
+    }
+
+    /**
+     * Applies journal operations to a saved graph.
+     *
+     * @param data     the saved graph, as produced by {@link SimpleBlockGraph#toTag()}. This is not modified.
+     * @param entries  the journal operations for the graph, in order.
+     * @param afterSeq the sequence number of the last operation that the saved graph already includes.
+     * @return the updated graph, or <code>null</code> if the graph was destroyed.
+     */
+    static @Nullable NbtCompound replay(@NotNull NbtCompound data, @NotNull List<Entry> entries, long afterSeq) {
+        Replay replay = new Replay(data);
+        for (Entry entry : entries) {
+            if (entry.seq() <= afterSeq) continue;
+
+            if (!replay.apply(entry.op())) return null;
+        }
+        return replay.toTag();
+    }
+
+    private static NbtCompound op(String name) {
+        NbtCompound op = new NbtCompound();
+        op.putString("op", name);
+        return op;
+    }
+
+    /**
+     * Extracts the key tag from a node tag that may hold extra data.
+     */
+    private static NbtCompound nodeKey(NbtCompound node) {
+        NbtCompound key = new NbtCompound();
+        key.putInt("x", node.getInt("x"));
+        key.putInt("y", node.getInt("y"));
+        key.putInt("z", node.getInt("z"));
+        NbtElement nodeTag = node.get("node");
+        if (nodeTag != null) {
+            key.put("node", nodeTag);
+        }
+        NbtElement rawTag = node.get("nodeRaw");
+        if (rawTag != null) {
+            key.put("nodeRaw", rawTag);
+        }
+        key.putString("type", node.getString("type"));
+        return key;
+    }
+
+    private static void copyEntity(NbtCompound from, NbtCompound to) {
+        to.remove("entityType");
+        to.remove("entity");
+        if (from.contains("entityType", NbtElement.STRING_TYPE)) {
+            to.putString("entityType", from.getString("entityType"));
+            NbtElement entity = from.get("entity");
+            if (entity != null) {
+                to.put("entity", entity);
+            }
+        }
+    }
+
+    private static void setTick(NbtCompound tag, int delay) {
+        if (delay > 0) {
+            tag.putInt("scheduledTick", delay);
+        } else {
+            tag.remove("scheduledTick");
+        }
+    }
+
+    private record LinkEntry(NbtCompound first, NbtCompound second, NbtCompound data) {}
+
+    /**
+     * Identifies a link by its node keys and its own key, the same way no matter which way around its nodes are.
+     */
+    private record LinkId(NbtCompound first, NbtCompound second, String keyType, @Nullable NbtElement key) {
+        static LinkId of(NbtCompound first, NbtCompound second, NbtCompound data) {
+            return new LinkId(first, second, data.getString("keyType"), data.get("key"));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof LinkId other)) return false;
+            if (!keyType.equals(other.keyType) || !Objects.equals(key, other.key)) return false;
+
+            // links are undirected
+            return (first.equals(other.first) && second.equals(other.second)) ||
+                (first.equals(other.second) && second.equals(other.first));
+        }
+
+        @Override
+        public int hashCode() {
+            // symmetric in the two nodes
+            return 31 * (31 * (first.hashCode() + second.hashCode()) + keyType.hashCode()) + Objects.hashCode(key);
+        }
+    }
+
+    private static final class Replay {
+        private final Map<NbtCompound, NbtCompound> nodes = new Object2ObjectLinkedOpenHashMap<>();
+        private final Map<LinkId, LinkEntry> links = new Object2ObjectLinkedOpenHashMap<>();
+        // the links touching each node, so removing a node doesn't have to look at every link
+        private final Map<NbtCompound, Set<LinkId>> nodeLinks = new Object2ObjectOpenHashMap<>();
+        private final IntArrayList slotGenerations = new IntArrayList();
+        private NbtCompound graphEntities;
+
+        Replay(NbtCompound data) {
+            for (byte generation : data.getByteArray("slotGenerations")) {
+                slotGenerations.add(generation == 0 ? 1 : Byte.toUnsignedInt(generation));
+            }
+
+            List<NbtCompound> keys = new ObjectArrayList<>();
+            for (NbtElement element : data.getList("nodes", NbtElement.COMPOUND_TYPE)) {
+                NbtCompound node = ((NbtCompound) element).copy();
+                NbtCompound key = nodeKey(node);
+                keys.add(key);
+                nodes.put(key, node);
+            }
+
+            for (NbtElement element : data.getList("links", NbtElement.COMPOUND_TYPE)) {
+                NbtCompound link = ((NbtCompound) element).copy();
+                int first = link.getInt("first");
+                int second = link.getInt("second");
+                if (first < 0 || first >= keys.size() || second < 0 || second >= keys.size()) continue;
+
+                link.remove("first");
+                link.remove("second");
+                putLink(keys.get(first), keys.get(second), link);
+            }
+
+            graphEntities = data.getCompound("graphEntities").copy();
+        }
+
+        /**
+         * Applies an operation.
+         *
+         * @return <code>false</code> if the graph was destroyed.
+         */
+        boolean apply(NbtCompound op) {
+            String name = op.getString("op");
+            switch (name) {
+                case ADD_NODE -> addNode(op.getCompound("node"));
+                case REMOVE_NODE -> removeNode(op.getCompound("node"));
+                case REMOVE_NODES -> {
+                    for (NbtElement node : op.getList("nodes", NbtElement.COMPOUND_TYPE)) {
+                        removeNode((NbtCompound) node);
+                    }
+                }
+                case LINK -> link(op.getCompound("link"));
+                case UNLINK -> {
+                    NbtCompound link = op.getCompound("link");
+                    NbtCompound first = nodeKey(link.getCompound("first"));
+                    NbtCompound second = nodeKey(link.getCompound("second"));
+                    removeLink(LinkId.of(first, second, link));
+                }
+                case NODE_ENTITY -> {
+                    NbtCompound node = op.getCompound("node");
+                    NbtCompound existing = nodes.get(nodeKey(node));
+                    if (existing != null) copyEntity(node, existing);
+                }
+                case LINK_ENTITY -> {
+                    NbtCompound link = op.getCompound("link");
+                    LinkEntry existing = findLink(link);
+                    if (existing != null) copyEntity(link, existing.data());
+                }
+                case NODE_TICK -> {
+                    NbtCompound existing = nodes.get(nodeKey(op.getCompound("node")));
+                    if (existing != null) setTick(existing, op.getInt("delay"));
+                }
+                case LINK_TICK -> {
+                    LinkEntry existing = findLink(op.getCompound("link"));
+                    if (existing != null) setTick(existing.data(), op.getInt("delay"));
+                }
+                case MERGE -> {
+                    for (NbtElement node : op.getList("nodes", NbtElement.COMPOUND_TYPE)) {
+                        addNode((NbtCompound) node);
+                    }
+                    for (NbtElement link : op.getList("links", NbtElement.COMPOUND_TYPE)) {
+                        link((NbtCompound) link);
+                    }
+                }
+                case GRAPH_ENTITIES -> graphEntities = op.getCompound("graphEntities").copy();
+                case DESTROY -> {
+                    return false;
+                }
+                default -> GLLog.warn("Encountered unknown graph journal operation: {}. Skipping...", name);
+            }
+
+            return true;
+        }
+
+        private void addNode(NbtCompound node) {
+            node = node.copy();
+            nodes.put(nodeKey(node), node);
+
+            if (node.contains("slot", NbtElement.INT_TYPE)) {
+                int slot = node.getInt("slot");
+                while (slot >= 0 && slotGenerations.size() <= slot) {
+                    slotGenerations.add(1);
+                }
+            }
+        }
+
+        private void removeNode(NbtCompound node) {
+            NbtCompound key = nodeKey(node);
+            NbtCompound removed = nodes.remove(key);
+            if (removed == null) return;
+
+            Set<LinkId> touching = nodeLinks.remove(key);
+            if (touching != null) {
+                for (LinkId id : touching) {
+                    removeLink(id);
+                }
+            }
+
+            // keep handles to the removed node stale, the same way the live graph does
+            if (removed.contains("slot", NbtElement.INT_TYPE)) {
+                int slot = removed.getInt("slot");
+                if (slot >= 0 && slot < slotGenerations.size()) {
+                    slotGenerations.set(slot, NodeHandle.nextGeneration(slotGenerations.getInt(slot)));
+                }
+            }
+        }
+
+        private void link(NbtCompound link) {
+            NbtCompound first = nodeKey(link.getCompound("first"));
+            NbtCompound second = nodeKey(link.getCompound("second"));
+            NbtCompound data = link.copy();
+            data.remove("first");
+            data.remove("second");
+
+            putLink(first, second, data);
+        }
+
+        private void putLink(NbtCompound first, NbtCompound second, NbtCompound data) {
+            LinkId id = LinkId.of(first, second, data);
+            // re-linking replaces the link, moving it to the end like it would be in the live graph
+            links.remove(id);
+            links.put(id, new LinkEntry(first, second, data));
+            nodeLinks.computeIfAbsent(first, k -> new ObjectOpenHashSet<>()).add(id);
+            nodeLinks.computeIfAbsent(second, k -> new ObjectOpenHashSet<>()).add(id);
+        }
+
+        private void removeLink(LinkId id) {
+            LinkEntry removed = links.remove(id);
+            if (removed == null) return;
+
+            unindex(removed.first(), id);
+            unindex(removed.second(), id);
+        }
+
+        private void unindex(NbtCompound node, LinkId id) {
+            Set<LinkId> touching = nodeLinks.get(node);
+            if (touching != null) {
+                touching.remove(id);
+                if (touching.isEmpty()) {
+                    nodeLinks.remove(node);
+                }
+            }
+        }
+
+        private @Nullable LinkEntry findLink(NbtCompound link) {
+            return links.get(LinkId.of(nodeKey(link.getCompound("first")), nodeKey(link.getCompound("second")), link));
+        }
+
+        NbtCompound toTag() {
+            NbtCompound tag = new NbtCompound();
+
+            LongSet chunks = new LongLinkedOpenHashSet();
+            Object2IntMap<NbtCompound> indices = new Object2IntOpenHashMap<>();
+            indices.defaultReturnValue(-1);
+            NbtList nodesTag = new NbtList();
+            for (Map.Entry<NbtCompound, NbtCompound> entry : nodes.entrySet()) {
+                NbtCompound node = entry.getValue();
+                chunks.add(ChunkSectionPos.asLong(ChunkSectionPos.getSectionCoord(node.getInt("x")),
+                    ChunkSectionPos.getSectionCoord(node.getInt("y")),
+                    ChunkSectionPos.getSectionCoord(node.getInt("z"))));
+                indices.put(entry.getKey(), nodesTag.size());
+                nodesTag.add(node);
+            }
+
+            NbtList chunksTag = new NbtList();
+            for (long chunk : chunks) {
+                chunksTag.add(NbtLong.of(chunk));
+            }
+            tag.put("chunks", chunksTag);
+            tag.put("nodes", nodesTag);
+
+            byte[] generations = new byte[slotGenerations.size()];
+            for (int i = 0; i < generations.length; i++) {
+                generations[i] = (byte) slotGenerations.getInt(i);
+            }
+            tag.putByteArray("slotGenerations", generations);
+
+            NbtList linksTag = new NbtList();
+            for (LinkEntry entry : links.values()) {
+                int first = indices.getInt(entry.first());
+                int second = indices.getInt(entry.second());
+                if (first < 0 || second < 0) continue;
+
+                NbtCompound link = entry.data().copy();
+                link.putInt("first", first);
+                link.putInt("second", second);
+                linksTag.add(link);
+            }
+            tag.put("links", linksTag);
+
+            tag.put("graphEntities", graphEntities);
+
+            return tag;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.kneelawk.graphlib.impl.graph.simple;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
@@ -17,11 +18,18 @@ import com.google.common.collect.Multimap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongIterable;
 import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
 
 import net.minecraft.nbt.NbtCompound;
@@ -39,6 +47,7 @@ import alexiil.mc.lib.net.InvalidInputDataException;
 import alexiil.mc.lib.net.NetByteBuf;
 
 import com.kneelawk.graphlib.api.graph.BlockGraph;
+import com.kneelawk.graphlib.api.graph.ConnectivityView;
 import com.kneelawk.graphlib.api.graph.GraphView;
 import com.kneelawk.graphlib.api.graph.LinkHolder;
 import com.kneelawk.graphlib.api.graph.NodeHolder;
@@ -54,8 +63,10 @@ import com.kneelawk.graphlib.api.graph.user.NodeEntity;
 import com.kneelawk.graphlib.api.graph.user.NodeEntityType;
 import com.kneelawk.graphlib.api.graph.user.SidedBlockNode;
 import com.kneelawk.graphlib.api.util.CacheCategory;
+import com.kneelawk.graphlib.api.util.ConnectivityCategory;
 import com.kneelawk.graphlib.api.util.EmptyLinkKey;
 import com.kneelawk.graphlib.api.util.LinkPos;
+import com.kneelawk.graphlib.api.util.NodeHandle;
 import com.kneelawk.graphlib.api.util.NodePos;
 import com.kneelawk.graphlib.api.util.SidedPos;
 import com.kneelawk.graphlib.api.util.graph.Graph;
@@ -82,6 +93,8 @@ public class SimpleBlockGraph implements BlockGraph {
 
         SimpleBlockGraph graph = new SimpleBlockGraph(controller, id, chunks);
 
+        graph.restoreSlotGenerations(tag.getByteArray("slotGenerations"));
+
         NbtList nodesTag = tag.getList("nodes", NbtElement.COMPOUND_TYPE);
         NbtList linksTag = tag.getList("links", NbtElement.COMPOUND_TYPE);
         NbtCompound graphEntities = tag.getCompound("graphEntities");
@@ -103,7 +116,13 @@ public class SimpleBlockGraph implements BlockGraph {
                     }
                 }
 
-                nodes.add(graph.createNode(node.getPos(), node.getNode(), entity, false));
+                int slot = com.contains("slot", NbtElement.INT_TYPE) ? com.getInt("slot") : -1;
+                NodeHolder<BlockNode> holder = graph.createNode(node.getPos(), node.getNode(), entity, false, slot);
+                nodes.add(holder);
+
+                if (com.contains("scheduledTick", NbtElement.INT_TYPE)) {
+                    controller.scheduleNodeTick(graph, holder.getPos(), com.getInt("scheduledTick"));
+                }
             } else {
                 // keep the gap so other nodes' links don't get messed up
                 nodes.add(null);
@@ -120,7 +139,10 @@ public class SimpleBlockGraph implements BlockGraph {
                 if (linkTag.contains("keyType", NbtElement.STRING_TYPE)) {
                     Identifier keyTypeId = new Identifier(linkTag.getString("keyType"));
                     LinkKeyType type = controller.universe.getLinkKeyType(keyTypeId);
-                    if (type != null) {
+                    if (linkTag.contains("keyRaw", NbtElement.BYTE_ARRAY_TYPE)) {
+                        // raw bytes only end up here if they could not be decoded
+                        GLLog.warn("Unable to decode raw link key with type id: {}", keyTypeId);
+                    } else if (type != null) {
                         LinkKey decodedKey = type.getDecoder().decode(linkTag.get("key"));
                         if (decodedKey != null) {
                             key = decodedKey;
@@ -141,30 +163,63 @@ public class SimpleBlockGraph implements BlockGraph {
                     }
                 }
 
-                graph.link(first, second, key, entity, false);
+                LinkHolder<LinkKey> holder = graph.link(first, second, key, entity, false);
+
+                if (linkTag.contains("scheduledTick", NbtElement.INT_TYPE)) {
+                    controller.scheduleLinkTick(graph, holder.getPos(), linkTag.getInt("scheduledTick"));
+                }
             }
         }
 
-        // decode the graph entities
-        for (GraphEntityType<?> type : controller.universe.getAllGraphEntityTypes()) {
-            SimpleGraphEntityContext ctx = new SimpleGraphEntityContext(controller.world, controller, graph);
-            if (graphEntities.contains(type.getId().toString(), NbtElement.COMPOUND_TYPE)) {
-                NbtCompound entityCom = graphEntities.getCompound(type.getId().toString());
-                GraphEntity<?> entity = type.getDecoder().decode(entityCom.get("entity"));
-                if (entity == null) {
-                    entity = type.getFactory().createNew();
+        graph.loadGraphEntities(controller, graphEntities);
+
+        // no need to rebuild refs as that stuff is handled by graph.createNode(...)
+
+        return graph;
+    }
+
+    static @NotNull SimpleBlockGraph fromBinary(@NotNull SimpleServerGraphWorld controller, long id,
+                                                @NotNull GraphBinaryFormat.Reader reader) throws IOException {
+        SimpleBlockGraph graph = new SimpleBlockGraph(controller, id, reader.getChunks());
+        graph.restoreSlotGenerations(reader.getSlotGenerations());
+
+        int nodeCount = reader.getNodeCount();
+        List<@Nullable NodeHolder<BlockNode>> nodes = new ArrayList<>(nodeCount);
+
+        for (int i = 0; i < nodeCount; i++) {
+            GraphBinaryFormat.NodeEntry entry = reader.readNode();
+            BlockNode node = reader.decodeNode(entry);
+            if (node != null) {
+                NodeEntity entity = reader.decodeNodeEntity(entry);
+                NodeHolder<BlockNode> holder = graph.createNode(entry.pos(), node, entity, false, entry.slot());
+                nodes.add(holder);
+
+                if (entry.scheduledTick() >= 0) {
+                    controller.scheduleNodeTick(graph, holder.getPos(), entry.scheduledTick());
                 }
-                graph.graphEntities.put(type, entity);
-                entity.onInit(ctx);
             } else {
-                GLLog.warn("Graph missing graph entity of type: {}, creating a new one...", type.getId());
-                GraphEntity<?> entity = type.getFactory().createNew();
-                graph.graphEntities.put(type, entity);
-                entity.onInit(ctx);
+                // keep the gap so other nodes' links don't get messed up
+                nodes.add(null);
             }
         }
 
-        // no need to rebuild refs as that stuff is handled by graph.createNode(...)
+        for (int i = 0; i < reader.getLinkCount(); i++) {
+            GraphBinaryFormat.LinkEntry entry = reader.readLink();
+            var first = nodes.get(entry.first());
+            var second = nodes.get(entry.second());
+
+            if (first != null && second != null) {
+                LinkKey key = reader.decodeLinkKey(entry);
+                LinkEntity entity = reader.decodeLinkEntity(entry);
+                LinkHolder<LinkKey> holder = graph.link(first, second, key, entity, false);
+
+                if (entry.scheduledTick() >= 0) {
+                    controller.scheduleLinkTick(graph, holder.getPos(), entry.scheduledTick());
+                }
+            }
+        }
+
+        graph.loadGraphEntities(controller, reader.readGraphEntities());
 
         return graph;
     }
@@ -179,8 +234,18 @@ public class SimpleBlockGraph implements BlockGraph {
     private final Long2ObjectMap<Set<NodeHolder<BlockNode>>> nodesInChunk = new Long2ObjectLinkedOpenHashMap<>();
     private final Map<NodePos, NodeHolder<BlockNode>> nodesToHolders = new Object2ObjectLinkedOpenHashMap<>();
     final LongSet chunks = new LongLinkedOpenHashSet();
+    // the world's use epoch this graph's chunk sections were last queued to be marked as used in
+    long useEpoch = -1;
     private final Map<CacheCategory<?>, List<?>> nodeCaches = new Object2ObjectLinkedOpenHashMap<>();
+    private final Map<ConnectivityCategory<?>, SimpleConnectivityView> connectivityViews =
+        new Object2ObjectLinkedOpenHashMap<>();
     private final Map<GraphEntityType<?>, GraphEntity<?>> graphEntities = new Object2ObjectLinkedOpenHashMap<>();
+    private final ObjectArrayList<Node<SimpleNodeWrapper, LinkKey>> slots = new ObjectArrayList<>();
+    private final IntArrayList slotGenerations = new IntArrayList();
+    private final IntArrayList freeSlots = new IntArrayList();
+    private boolean freeSlotsDirty = false;
+    private final Object2LongMap<NodePos> scheduledNodeTicks = new Object2LongLinkedOpenHashMap<>();
+    private final Object2LongMap<LinkPos> scheduledLinkTicks = new Object2LongLinkedOpenHashMap<>();
 
     public SimpleBlockGraph(@NotNull SimpleGraphCollection world, long id, boolean initializeGraphEntities) {
         this(world, id, LongSet.of());
@@ -205,6 +270,35 @@ public class SimpleBlockGraph implements BlockGraph {
         this.chunks.addAll(chunks);
     }
 
+    private void restoreSlotGenerations(@NotNull byte[] generations) {
+        // restore slot generations so that handles to nodes that were removed before saving stay stale
+        for (byte generation : generations) {
+            slots.add(null);
+            slotGenerations.add(generation == 0 ? 1 : Byte.toUnsignedInt(generation));
+        }
+        freeSlotsDirty = true;
+    }
+
+    private void loadGraphEntities(@NotNull SimpleServerGraphWorld controller, @NotNull NbtCompound tag) {
+        for (GraphEntityType<?> type : controller.universe.getAllGraphEntityTypes()) {
+            SimpleGraphEntityContext ctx = new SimpleGraphEntityContext(controller.world, controller, this);
+            if (tag.contains(type.getId().toString(), NbtElement.COMPOUND_TYPE)) {
+                NbtCompound entityCom = tag.getCompound(type.getId().toString());
+                GraphEntity<?> entity = type.getDecoder().decode(entityCom.get("entity"));
+                if (entity == null) {
+                    entity = type.getFactory().createNew();
+                }
+                graphEntities.put(type, entity);
+                entity.onInit(ctx);
+            } else {
+                GLLog.warn("Graph missing graph entity of type: {}, creating a new one...", type.getId());
+                GraphEntity<?> entity = type.getFactory().createNew();
+                graphEntities.put(type, entity);
+                entity.onInit(ctx);
+            }
+        }
+    }
+
     @NotNull NbtCompound toTag() {
         NbtCompound tag = new NbtCompound();
 
@@ -223,23 +317,13 @@ public class SimpleBlockGraph implements BlockGraph {
         NbtList nodesTag = new NbtList();
 
         for (var node : nodes) {
-            NbtCompound com = node.data().toTag();
-
-            NodePos key = new NodePos(node.data().getPos(), node.data().getNode());
-            NodeEntity entity = nodeEntities.get(key);
-            if (entity != null) {
-                com.putString("entityType", entity.getType().getId().toString());
-                NbtElement entityTag = entity.toTag();
-                if (entityTag != null) {
-                    com.put("entity", entityTag);
-                }
-            }
-
-            nodesTag.add(com);
+            nodesTag.add(nodeToTag(node));
         }
 
         tag.put("nodes", nodesTag);
 
+        tag.putByteArray("slotGenerations", slotGenerationsToBytes());
+
         NbtList linksTag = new NbtList();
 
         for (var link : nodes.stream().flatMap(node -> node.connections().stream()).distinct().toList()) {
@@ -256,33 +340,220 @@ public class SimpleBlockGraph implements BlockGraph {
                 continue;
             }
 
-            NbtCompound linkTag = new NbtCompound();
+            NbtCompound linkTag = linkToTag(link);
             linkTag.putInt("first", nodeIndexMap.get(link.first()));
             linkTag.putInt("second", nodeIndexMap.get(link.second()));
 
-            LinkKey key = link.key();
-            linkTag.putString("keyType", key.getType().getId().toString());
-            NbtElement keyTag = key.toTag();
-            if (keyTag != null) {
-                linkTag.put("key", keyTag);
+            linksTag.add(linkTag);
+        }
+
+        tag.put("links", linksTag);
+
+        tag.put("graphEntities", graphEntitiesToTag());
+
+        return tag;
+    }
+
+    /**
+     * Encodes this graph in the binary format graphs are saved in.
+     *
+     * @param journalSeq the sequence number of the last journal operation included in this graph.
+     * @return the encoded graph.
+     */
+    @NotNull byte[] toBinary(long journalSeq) {
+        GraphBinaryFormat.Writer writer = new GraphBinaryFormat.Writer(journalSeq, chunks, slotGenerationsToBytes());
+
+        Object2IntMap<Node<SimpleNodeWrapper, LinkKey>> nodeIndices = new Object2IntOpenHashMap<>();
+        nodeIndices.defaultReturnValue(-1);
+        Set<Link<SimpleNodeWrapper, LinkKey>> links = new ObjectLinkedOpenHashSet<>();
+
+        for (var node : graph) {
+            SimpleNodeWrapper data = node.data();
+            NodePos key = new NodePos(data.getPos(), data.getNode());
+            int scheduledTick =
+                scheduledNodeTicks.containsKey(key) ? getRemainingTicks(scheduledNodeTicks.getLong(key)) : -1;
+
+            writer.writeNode(data.getPos(), data.getNode(), ownsSlot(node) ? data.slot : -1, nodeEntities.get(key),
+                scheduledTick);
+            nodeIndices.put(node, nodeIndices.size());
+            links.addAll(node.connections());
+        }
+
+        for (var link : links) {
+            int first = nodeIndices.getInt(link.first());
+            int second = nodeIndices.getInt(link.second());
+            if (first < 0 || second < 0) {
+                GLLog.warn("Attempted to save link with non-existent node. Graph Id: {}, link: {} - {}", id,
+                    link.first(), link.second());
+                continue;
             }
 
-            LinkEntity entity = linkEntities.get(
+            LinkPos linkPos =
                 new LinkPos(link.first().data().getPos(), link.first().data().getNode(), link.second().data().getPos(),
-                    link.second().data().getNode(), link.key()));
-            if (entity != null) {
-                linkTag.putString("entityType", entity.getType().getId().toString());
-                NbtElement entityTag = entity.toTag();
-                if (entityTag != null) {
-                    linkTag.put("entity", entityTag);
-                }
-            }
+                    link.second().data().getNode(), link.key());
+            int scheduledTick =
+                scheduledLinkTicks.containsKey(linkPos) ? getRemainingTicks(scheduledLinkTicks.getLong(linkPos)) : -1;
 
-            linksTag.add(linkTag);
+            writer.writeLink(first, second, link.key(), linkEntities.get(linkPos), scheduledTick);
         }
 
-        tag.put("links", linksTag);
+        return writer.finish(graphEntitiesToTag());
+    }
+
+    private @NotNull byte[] slotGenerationsToBytes() {
+        byte[] generations = new byte[slotGenerations.size()];
+        for (int i = 0; i < generations.length; i++) {
+            generations[i] = (byte) slotGenerations.getInt(i);
+        }
+        return generations;
+    }
+
+    /**
+     * Encodes a node along with its slot, entity, and scheduled tick.
+     */
+    private @NotNull NbtCompound nodeToTag(@NotNull Node<SimpleNodeWrapper, LinkKey> node) {
+        NbtCompound com = nodeRefToTag(node);
+
+        NodePos key = new NodePos(node.data().getPos(), node.data().getNode());
+        NodeEntity entity = nodeEntities.get(key);
+        if (entity != null) {
+            putNodeEntity(com, entity);
+        }
+
+        if (scheduledNodeTicks.containsKey(key)) {
+            com.putInt("scheduledTick", getRemainingTicks(scheduledNodeTicks.getLong(key)));
+        }
+
+        return com;
+    }
+
+    /**
+     * Encodes a node's key along with its slot, which is all that is needed to refer to it in the graph journal.
+     */
+    private @NotNull NbtCompound nodeRefToTag(@NotNull Node<SimpleNodeWrapper, LinkKey> node) {
+        NbtCompound com = node.data().toTag();
+
+        if (ownsSlot(node)) {
+            com.putInt("slot", node.data().slot);
+        }
+
+        return com;
+    }
+
+    /**
+     * Encodes a link's key, entity, and scheduled tick, but not its ends.
+     */
+    private @NotNull NbtCompound linkToTag(@NotNull Link<SimpleNodeWrapper, LinkKey> link) {
+        NbtCompound linkTag = new NbtCompound();
+        putLinkKey(linkTag, link.key());
+
+        LinkPos linkPos =
+            new LinkPos(link.first().data().getPos(), link.first().data().getNode(), link.second().data().getPos(),
+                link.second().data().getNode(), link.key());
+        LinkEntity entity = linkEntities.get(linkPos);
+        if (entity != null) {
+            putLinkEntity(linkTag, entity);
+        }
+
+        if (scheduledLinkTicks.containsKey(linkPos)) {
+            linkTag.putInt("scheduledTick", getRemainingTicks(scheduledLinkTicks.getLong(linkPos)));
+        }
+
+        return linkTag;
+    }
+
+    /**
+     * Encodes a link along with its ends' keys, for the graph journal.
+     */
+    private @NotNull NbtCompound linkRefToTag(@NotNull Link<SimpleNodeWrapper, LinkKey> link) {
+        NbtCompound linkTag = linkToTag(link);
+        linkTag.put("first", link.first().data().toTag());
+        linkTag.put("second", link.second().data().toTag());
+        return linkTag;
+    }
+
+    private static @NotNull NbtCompound linkPosToTag(@NotNull LinkPos pos) {
+        NbtCompound linkTag = new NbtCompound();
+        linkTag.put("first", SimpleNodeWrapper.toTag(pos.first().pos(), pos.first().node()));
+        linkTag.put("second", SimpleNodeWrapper.toTag(pos.second().pos(), pos.second().node()));
+        putLinkKey(linkTag, pos.key());
+        return linkTag;
+    }
 
+    private static void putLinkKey(@NotNull NbtCompound com, @NotNull LinkKey key) {
+        com.putString("keyType", key.getType().getId().toString());
+        NbtElement keyTag = key.toTag();
+        if (keyTag != null) {
+            com.put("key", keyTag);
+        }
+    }
+
+    private static void putNodeEntity(@NotNull NbtCompound com, @NotNull NodeEntity entity) {
+        com.putString("entityType", entity.getType().getId().toString());
+        NbtElement entityTag = entity.toTag();
+        if (entityTag != null) {
+            com.put("entity", entityTag);
+        }
+    }
+
+    private static void putLinkEntity(@NotNull NbtCompound com, @NotNull LinkEntity entity) {
+        com.putString("entityType", entity.getType().getId().toString());
+        NbtElement entityTag = entity.toTag();
+        if (entityTag != null) {
+            com.put("entity", entityTag);
+        }
+    }
+
+    /**
+     * Builds a journal operation that adds the given nodes and all their links to this graph.
+     */
+    private @NotNull NbtCompound mergeOp(@NotNull Iterable<Node<SimpleNodeWrapper, LinkKey>> nodes) {
+        NbtList nodesTag = new NbtList();
+        Set<Link<SimpleNodeWrapper, LinkKey>> links = new ObjectLinkedOpenHashSet<>();
+        for (var node : nodes) {
+            nodesTag.add(nodeToTag(node));
+            links.addAll(node.connections());
+        }
+
+        NbtList linksTag = new NbtList();
+        for (var link : links) {
+            linksTag.add(linkRefToTag(link));
+        }
+
+        return GraphJournalOps.merge(nodesTag, linksTag);
+    }
+
+    /**
+     * Encodes the node entity at the given position for the graph journal.
+     *
+     * @param pos the position of the node entity.
+     * @return the encoded node entity, or <code>null</code> if there is no node entity at the given position.
+     */
+    @Nullable NbtCompound nodeEntityToTag(@NotNull NodePos pos) {
+        NodeEntity entity = nodeEntities.get(pos);
+        if (entity == null) return null;
+
+        NbtCompound com = SimpleNodeWrapper.toTag(pos.pos(), pos.node());
+        putNodeEntity(com, entity);
+        return com;
+    }
+
+    /**
+     * Encodes the link entity at the given position for the graph journal.
+     *
+     * @param pos the position of the link entity.
+     * @return the encoded link entity, or <code>null</code> if there is no link entity at the given position.
+     */
+    @Nullable NbtCompound linkEntityToTag(@NotNull LinkPos pos) {
+        LinkEntity entity = linkEntities.get(pos);
+        if (entity == null) return null;
+
+        NbtCompound com = linkPosToTag(pos);
+        putLinkEntity(com, entity);
+        return com;
+    }
+
+    @NotNull NbtCompound graphEntitiesToTag() {
         NbtCompound graphEntitiesCom = new NbtCompound();
 
         for (Map.Entry<GraphEntityType<?>, GraphEntity<?>> entry : graphEntities.entrySet()) {
@@ -296,9 +567,7 @@ public class SimpleBlockGraph implements BlockGraph {
             graphEntitiesCom.put(entry.getKey().getId().toString(), graphEntityCom);
         }
 
-        tag.put("graphEntities", graphEntitiesCom);
-
-        return tag;
+        return graphEntitiesCom;
     }
 
     void loadGraphEntitiesFromPacket(NetByteBuf buf, IMsgReadCtx ctx) throws InvalidInputDataException {
@@ -457,6 +726,53 @@ public class SimpleBlockGraph implements BlockGraph {
         return new SimpleLinkHolder<>(world.getWorld(), world, rawLink);
     }
 
+    /**
+     * Gets the node holder referred to by the given handle, if it is still valid.
+     *
+     * @param handle the handle of the node to get.
+     * @return the node holder referred to by the given handle, or <code>null</code> if the handle is stale.
+     */
+    @Override
+    public @Nullable NodeHolder<BlockNode> getNodeByHandle(long handle) {
+        Node<SimpleNodeWrapper, LinkKey> node = getRawNodeByHandle(handle);
+        if (node == null) return null;
+        return new SimpleNodeHolder<>(world.getWorld(), world, node);
+    }
+
+    /**
+     * Gets the link holder between the two nodes referred to by the given handles, if it exists.
+     *
+     * @param first  the handle of the first node.
+     * @param second the handle of the second node.
+     * @param key    the key of the link.
+     * @return the link holder between the two nodes, or <code>null</code> if either handle is stale or no such link
+     * exists.
+     */
+    @Override
+    public @Nullable LinkHolder<LinkKey> getLinkByHandles(long first, long second, @NotNull LinkKey key) {
+        Node<SimpleNodeWrapper, LinkKey> node1 = getRawNodeByHandle(first);
+        Node<SimpleNodeWrapper, LinkKey> node2 = getRawNodeByHandle(second);
+        if (node1 == null || node2 == null) return null;
+
+        // comparing nodes by identity avoids re-hashing both ends of every candidate link
+        for (Link<SimpleNodeWrapper, LinkKey> link : node1.connections()) {
+            if (link.other(node1) == node2 && link.key().equals(key)) {
+                return new SimpleLinkHolder<>(world.getWorld(), world, link);
+            }
+        }
+
+        return null;
+    }
+
+    private @Nullable Node<SimpleNodeWrapper, LinkKey> getRawNodeByHandle(long handle) {
+        if (NodeHandle.getGraphId(handle) != id) return null;
+
+        int slot = NodeHandle.getSlot(handle);
+        if (slot >= slots.size() || slotGenerations.getInt(slot) != NodeHandle.getGeneration(handle)) return null;
+
+        return slots.get(slot);
+    }
+
     @Override
     public @Nullable NodeEntity getNodeEntity(@NotNull NodePos pos) {
         return nodeEntities.get(pos);
@@ -467,6 +783,84 @@ public class SimpleBlockGraph implements BlockGraph {
         return linkEntities.get(pos);
     }
 
+    /**
+     * Records a scheduled tick for the node entity at the given position, keeping the earlier deadline if one is
+     * already scheduled.
+     *
+     * @param pos      the position of the node entity.
+     * @param deadline the tick the node entity should be ticked at.
+     * @return <code>true</code> if the deadline was recorded and needs to be added to the tick schedule.
+     */
+    boolean scheduleNodeTick(@NotNull NodePos pos, long deadline) {
+        if (!nodeEntities.containsKey(pos)) return false;
+        if (scheduledNodeTicks.containsKey(pos) && scheduledNodeTicks.getLong(pos) <= deadline) return false;
+
+        scheduledNodeTicks.put(pos, deadline);
+        world.journal(id, () -> GraphJournalOps.nodeTick(SimpleNodeWrapper.toTag(pos.pos(), pos.node()),
+            getRemainingTicks(deadline)));
+        return true;
+    }
+
+    boolean isNodeTickScheduled(@NotNull NodePos pos) {
+        return scheduledNodeTicks.containsKey(pos);
+    }
+
+    /**
+     * Removes the scheduled tick for the node entity at the given position if it is due at exactly the given deadline.
+     * Schedule entries with any other deadline are stale.
+     *
+     * @param pos      the position of the node entity.
+     * @param deadline the deadline of the schedule entry that fired.
+     * @return the node entity to tick, or <code>null</code> if the schedule entry was stale.
+     */
+    @Nullable NodeEntity consumeNodeTick(@NotNull NodePos pos, long deadline) {
+        if (!scheduledNodeTicks.containsKey(pos) || scheduledNodeTicks.getLong(pos) != deadline) return null;
+
+        scheduledNodeTicks.removeLong(pos);
+        world.journal(id, () -> GraphJournalOps.nodeTick(SimpleNodeWrapper.toTag(pos.pos(), pos.node()), 0));
+        return nodeEntities.get(pos);
+    }
+
+    /**
+     * Records a scheduled tick for the link entity at the given position, keeping the earlier deadline if one is
+     * already scheduled.
+     *
+     * @param pos      the position of the link entity.
+     * @param deadline the tick the link entity should be ticked at.
+     * @return <code>true</code> if the deadline was recorded and needs to be added to the tick schedule.
+     */
+    boolean scheduleLinkTick(@NotNull LinkPos pos, long deadline) {
+        if (!linkEntities.containsKey(pos)) return false;
+        if (scheduledLinkTicks.containsKey(pos) && scheduledLinkTicks.getLong(pos) <= deadline) return false;
+
+        scheduledLinkTicks.put(pos, deadline);
+        world.journal(id, () -> GraphJournalOps.linkTick(linkPosToTag(pos), getRemainingTicks(deadline)));
+        return true;
+    }
+
+    boolean isLinkTickScheduled(@NotNull LinkPos pos) {
+        return scheduledLinkTicks.containsKey(pos);
+    }
+
+    /**
+     * Removes the scheduled tick for the link entity at the given position if it is due at exactly the given deadline.
+     *
+     * @param pos      the position of the link entity.
+     * @param deadline the deadline of the schedule entry that fired.
+     * @return the link entity to tick, or <code>null</code> if the schedule entry was stale.
+     */
+    @Nullable LinkEntity consumeLinkTick(@NotNull LinkPos pos, long deadline) {
+        if (!scheduledLinkTicks.containsKey(pos) || scheduledLinkTicks.getLong(pos) != deadline) return null;
+
+        scheduledLinkTicks.removeLong(pos);
+        world.journal(id, () -> GraphJournalOps.linkTick(linkPosToTag(pos), 0));
+        return linkEntities.get(pos);
+    }
+
+    private int getRemainingTicks(long deadline) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, deadline - world.getCurrentTick()));
+    }
+
     /**
      * Gets all the nodes in the given chunk section.
      *
@@ -537,6 +931,18 @@ public class SimpleBlockGraph implements BlockGraph {
         return cached;
     }
 
+    /**
+     * Gets a view of this graph's connectivity, only considering links whose keys match the given category.
+     *
+     * @param category the category of links to consider.
+     * @return a view of this graph's connectivity when only considering links matching the given category.
+     */
+    @Override
+    public @NotNull ConnectivityView getConnectivity(@NotNull ConnectivityCategory<?> category) {
+        return connectivityViews.computeIfAbsent(category,
+            cat -> new SimpleConnectivityView(world, graph, cat));
+    }
+
     /**
      * Gets all the chunk sections that this graph currently has nodes in.
      *
@@ -585,6 +991,9 @@ public class SimpleBlockGraph implements BlockGraph {
 
     private void rebuildRefs() {
         // Ok, we did end up needing this "rebuildRefs" after all, but only under specific circumstances
+        for (long sectionPos : chunks) {
+            world.graphLeftChunk(id, sectionPos);
+        }
         chunks.clear();
         nodesInPos.clear();
         nodesInChunk.clear();
@@ -593,14 +1002,91 @@ public class SimpleBlockGraph implements BlockGraph {
         for (var node : graph) {
             SimpleNodeWrapper data = node.data();
             data.graphId = id;
+            if (!ownsSlot(node)) {
+                allocateSlot(node, -1);
+            }
             BlockPos pos = data.getPos();
             long sectionPos = ChunkSectionPos.from(pos).asLong();
-            chunks.add(sectionPos);
+            addChunk(sectionPos);
             NodeHolder<BlockNode> holder = new SimpleNodeHolder<>(world.getWorld(), world, node);
             nodesInPos.put(pos, holder);
             nodesInChunk.computeIfAbsent(sectionPos, posLong -> new ObjectLinkedOpenHashSet<>()).add(holder);
             nodesToHolders.put(holder.getPos(), holder);
         }
+        invalidateConnectivity();
+    }
+
+    private void invalidateConnectivity() {
+        for (SimpleConnectivityView view : connectivityViews.values()) {
+            view.invalidate();
+        }
+    }
+
+    private void graphEntitiesChanged() {
+        // graph entities may change their state when told about changes without marking themselves dirty
+        if (!graphEntities.isEmpty()) {
+            world.journalGraphEntities(id);
+        }
+    }
+
+    private boolean ownsSlot(@NotNull Node<SimpleNodeWrapper, LinkKey> node) {
+        int slot = node.data().slot;
+        return slot >= 0 && slot < slots.size() && slots.get(slot) == node;
+    }
+
+    private void allocateSlot(@NotNull Node<SimpleNodeWrapper, LinkKey> node, int preferredSlot) {
+        int slot;
+        if (preferredSlot >= 0 && preferredSlot <= NodeHandle.MAX_SLOT && (preferredSlot >= slots.size() ||
+            (slots.get(preferredSlot) == null && !NodeHandle.isRetired(slotGenerations.getInt(preferredSlot))))) {
+            while (slots.size() <= preferredSlot) {
+                slots.add(null);
+                slotGenerations.add(1);
+            }
+            slot = preferredSlot;
+            // the preferred slot may have been in the free list
+            freeSlotsDirty = true;
+        } else {
+            if (freeSlotsDirty) {
+                rebuildFreeSlots();
+            }
+
+            if (!freeSlots.isEmpty()) {
+                slot = freeSlots.popInt();
+            } else {
+                slot = slots.size();
+                slots.add(null);
+                slotGenerations.add(1);
+            }
+        }
+
+        slots.set(slot, node);
+        SimpleNodeWrapper data = node.data();
+        data.slot = slot;
+        data.generation = slotGenerations.getInt(slot);
+    }
+
+    private void freeSlot(@NotNull Node<SimpleNodeWrapper, LinkKey> node) {
+        if (!ownsSlot(node)) return;
+
+        int slot = node.data().slot;
+        slots.set(slot, null);
+        int generation = NodeHandle.nextGeneration(slotGenerations.getInt(slot));
+        slotGenerations.set(slot, generation);
+        // retired slots are never reused, so handles to their old nodes stay stale
+        if (!freeSlotsDirty && !NodeHandle.isRetired(generation)) {
+            freeSlots.push(slot);
+        }
+    }
+
+    private void rebuildFreeSlots() {
+        freeSlots.clear();
+        // pushed in reverse so that the lowest slots get re-used first
+        for (int slot = slots.size() - 1; slot >= 0; slot--) {
+            if (slots.get(slot) == null && !NodeHandle.isRetired(slotGenerations.getInt(slot))) {
+                freeSlots.push(slot);
+            }
+        }
+        freeSlotsDirty = false;
     }
 
     private void rebuildCaches() {
@@ -613,6 +1099,12 @@ public class SimpleBlockGraph implements BlockGraph {
 
     @NotNull SimpleNodeHolder<BlockNode> createNode(@NotNull BlockPos blockPos, @NotNull BlockNode node,
                                                     @Nullable NodeEntity entity, boolean newlyAdded) {
+        return createNode(blockPos, node, entity, newlyAdded, -1);
+    }
+
+    private @NotNull SimpleNodeHolder<BlockNode> createNode(@NotNull BlockPos blockPos, @NotNull BlockNode node,
+                                                            @Nullable NodeEntity entity, boolean newlyAdded,
+                                                            int preferredSlot) {
         BlockPos pos = blockPos.toImmutable();
         NodePos nodePos = new NodePos(pos, node);
 
@@ -625,6 +1117,7 @@ public class SimpleBlockGraph implements BlockGraph {
         // Actually create the node entity
         SimpleNodeHolder<BlockNode> graphNode = new SimpleNodeHolder<>(world.getWorld(), world,
             graph.add(new SimpleNodeWrapper(pos, node, id)));
+        allocateSlot(graphNode.node, preferredSlot);
 
         // Get the proper node entity and determine whether it needs to be initialized
         NodeEntity nodeEntity;
@@ -658,7 +1151,10 @@ public class SimpleBlockGraph implements BlockGraph {
         long sectionPos = ChunkSectionPos.from(pos).asLong();
         nodesInChunk.computeIfAbsent(sectionPos, posLong -> new ObjectLinkedOpenHashSet<>()).add(graphNode);
         nodesToHolders.put(nodePos, graphNode);
-        chunks.add(sectionPos);
+        addChunk(sectionPos);
+        for (SimpleConnectivityView view : connectivityViews.values()) {
+            view.onNodeAdded(graphNode.node);
+        }
         world.putGraphWithNode(id, nodePos);
         world.scheduleCallbackUpdate(graphNode, true);
 
@@ -677,8 +1173,9 @@ public class SimpleBlockGraph implements BlockGraph {
         for (GraphEntity<?> graphEntity : graphEntities.values()) {
             graphEntity.onNodeCreated(graphNode, nodeEntity);
         }
+        graphEntitiesChanged();
 
-        world.markDirty(id);
+        world.journal(id, () -> GraphJournalOps.addNode(nodeToTag(graphNode.node)));
 
         world.sendNodeAdd(this, graphNode);
 
@@ -701,7 +1198,8 @@ public class SimpleBlockGraph implements BlockGraph {
             if (inRemovedChunk.isEmpty()) nodesInChunk.remove(removedChunk.asLong());
         }
         nodesToHolders.remove(removedNode);
-        world.markDirty(id);
+        // the node still owns its slot here, which the journal needs to keep handles to it stale
+        world.journal(id, () -> GraphJournalOps.removeNode(nodeRefToTag(node.node)));
 
         Map<LinkPos, LinkEntity> removedLinks = new Object2ObjectLinkedOpenHashMap<>();
 
@@ -725,6 +1223,10 @@ public class SimpleBlockGraph implements BlockGraph {
 
         // actually remove the node
         graph.remove(node.node);
+        freeSlot(node.node);
+        for (SimpleConnectivityView view : connectivityViews.values()) {
+            view.onNodeRemoved(node.node);
+        }
 
         // check to see if the pos or chunk are used by any of our other nodes
         for (var ourNode : graph) {
@@ -747,11 +1249,12 @@ public class SimpleBlockGraph implements BlockGraph {
         if (removedChunk != null) {
             long chunkLong = removedChunk.asLong();
             world.removeGraphInChunk(id, chunkLong);
-            chunks.remove(chunkLong);
+            removeChunk(chunkLong);
         }
 
         // remove the associated node entity if any
         NodeEntity nodeEntity = nodeEntities.remove(node.getPos());
+        scheduledNodeTicks.removeLong(node.getPos());
         if (nodeEntity != null) {
             nodeEntity.onDelete();
         }
@@ -759,6 +1262,7 @@ public class SimpleBlockGraph implements BlockGraph {
         // remove connected link entities
         for (Map.Entry<LinkPos, LinkEntity> entry : removedLinks.entrySet()) {
             linkEntities.remove(entry.getKey());
+            scheduledLinkTicks.removeLong(entry.getKey());
             entry.getValue().onDelete();
         }
 
@@ -766,6 +1270,7 @@ public class SimpleBlockGraph implements BlockGraph {
         for (GraphEntity<?> graphEntity : graphEntities.values()) {
             graphEntity.onNodeDestroyed(holder, nodeEntity, removedLinks);
         }
+        graphEntitiesChanged();
 
         rebuildCaches();
 
@@ -791,6 +1296,10 @@ public class SimpleBlockGraph implements BlockGraph {
             return link;
         }
 
+        for (SimpleConnectivityView view : connectivityViews.values()) {
+            view.onLink(rawLink);
+        }
+
         LinkPos linkPos = link.getPos();
 
         // Get the proper node entity and determine whether it needs to be initialized
@@ -837,8 +1346,9 @@ public class SimpleBlockGraph implements BlockGraph {
         for (GraphEntity<?> graphEntity : graphEntities.values()) {
             graphEntity.onLink(a, b, linkEntity);
         }
+        graphEntitiesChanged();
 
-        world.markDirty(id);
+        world.journal(id, () -> GraphJournalOps.link(linkRefToTag(rawLink)));
 
         world.sendLink(this, link);
 
@@ -851,21 +1361,28 @@ public class SimpleBlockGraph implements BlockGraph {
         boolean linkRemoved =
             graph.unlink(((SimpleNodeHolder<BlockNode>) a).node, ((SimpleNodeHolder<BlockNode>) b).node, key);
 
-        LinkEntity entity = linkEntities.remove(new LinkPos(a.getPos(), b.getPos(), key));
+        LinkPos linkPos = new LinkPos(a.getPos(), b.getPos(), key);
+        LinkEntity entity = linkEntities.remove(linkPos);
+        scheduledLinkTicks.removeLong(linkPos);
         if (entity != null) {
             entity.onDelete();
         }
 
         if (!linkRemoved) return false;
 
+        for (SimpleConnectivityView view : connectivityViews.values()) {
+            view.onUnlink(((SimpleNodeHolder<BlockNode>) a).node, ((SimpleNodeHolder<BlockNode>) b).node, key);
+        }
+
         world.scheduleCallbackUpdate(a, true);
         world.scheduleCallbackUpdate(b, true);
 
         for (GraphEntity<?> graphEntity : graphEntities.values()) {
             graphEntity.onUnlink(a, b, entity);
         }
+        graphEntitiesChanged();
 
-        world.markDirty(id);
+        world.journal(id, () -> GraphJournalOps.unlink(linkPosToTag(linkPos)));
 
         return true;
     }
@@ -878,17 +1395,23 @@ public class SimpleBlockGraph implements BlockGraph {
 
         world.sendMerge(other, this);
 
+        List<Node<SimpleNodeWrapper, LinkKey>> mergedNodes = other.graph.stream().toList();
+
         // add our graph to all the positions and chunks the other graph is in
         for (var node : other.graph) {
             world.putGraphWithNode(id, new NodePos(node.data().getPos(), node.data().getNode()));
 
-            // might as well set the node's graph id here as well
+            // might as well set the node's graph id and slot here as well
             node.data().graphId = id;
+            allocateSlot(node, -1);
         }
 
         graph.join(other.graph);
         nodeEntities.putAll(other.nodeEntities);
         linkEntities.putAll(other.linkEntities);
+        // schedule entries still point at the other graph, but get redirected by position when they fire
+        scheduledNodeTicks.putAll(other.scheduledNodeTicks);
+        scheduledLinkTicks.putAll(other.scheduledLinkTicks);
         nodesInPos.putAll(other.nodesInPos);
         for (Long2ObjectMap.Entry<Set<NodeHolder<BlockNode>>> entry : other.nodesInChunk.long2ObjectEntrySet()) {
             nodesInChunk.merge(entry.getLongKey(), entry.getValue(), (a, b) -> {
@@ -897,8 +1420,11 @@ public class SimpleBlockGraph implements BlockGraph {
             });
         }
         nodesToHolders.putAll(other.nodesToHolders);
-        chunks.addAll(other.chunks);
-        world.markDirty(id);
+        for (long sectionPos : other.chunks) {
+            addChunk(sectionPos);
+        }
+        invalidateConnectivity();
+        world.journal(id, () -> mergeOp(mergedNodes));
 
         // merge all our graph entities
         for (Map.Entry<GraphEntityType<?>, GraphEntity<?>> entry : graphEntities.entrySet()) {
@@ -910,6 +1436,7 @@ public class SimpleBlockGraph implements BlockGraph {
                 GLLog.warn("Merging graph with missing graph entity: {}. Skipping...", type.getId());
             }
         }
+        graphEntitiesChanged();
 
         rebuildCaches();
 
@@ -925,6 +1452,7 @@ public class SimpleBlockGraph implements BlockGraph {
             Set<NodePos> removedNodes = new LinkedHashSet<>();
             Set<BlockPos> removedPoses = new LinkedHashSet<>();
             LongSet removedChunks = new LongLinkedOpenHashSet();
+            NbtList removedTags = new NbtList();
 
             for (Graph<SimpleNodeWrapper, LinkKey> graph : newGraphs) {
                 for (var node : graph) {
@@ -944,6 +1472,8 @@ public class SimpleBlockGraph implements BlockGraph {
                         if (inRemovedChunk.isEmpty()) nodesInChunk.remove(sectionPos);
                     }
                     nodesToHolders.remove(nodePos);
+                    removedTags.add(nodeRefToTag(node));
+                    freeSlot(node);
                 }
             }
 
@@ -956,8 +1486,9 @@ public class SimpleBlockGraph implements BlockGraph {
 
             // do this stuff instead of rebuilding-refs later
             world.removeGraphInPoses(id, removedNodes, removedPoses, removedChunks);
-            chunks.removeAll(removedChunks);
-            world.markDirty(id);
+            removeChunks(removedChunks);
+            invalidateConnectivity();
+            world.journal(id, () -> GraphJournalOps.removeNodes(removedTags));
 
             // setup block-graphs for the newly created graphs
             List<SimpleBlockGraph> newBlockGraphs = new ArrayList<>(newGraphs.size());
@@ -983,6 +1514,9 @@ public class SimpleBlockGraph implements BlockGraph {
                     if (entity != null) {
                         bg.nodeEntities.put(key, entity);
                     }
+                    if (scheduledNodeTicks.containsKey(key)) {
+                        bg.scheduledNodeTicks.put(key, scheduledNodeTicks.removeLong(key));
+                    }
 
                     // make sure to move link entities over too
                     for (var link : node.connections()) {
@@ -993,6 +1527,9 @@ public class SimpleBlockGraph implements BlockGraph {
                         if (linkEntity != null) {
                             bg.linkEntities.put(linkKey, linkEntity);
                         }
+                        if (scheduledLinkTicks.containsKey(linkKey)) {
+                            bg.scheduledLinkTicks.put(linkKey, scheduledLinkTicks.removeLong(linkKey));
+                        }
                     }
                 }
 
@@ -1007,6 +1544,9 @@ public class SimpleBlockGraph implements BlockGraph {
                 // we want to rebuild caches after entities have been moved
                 bg.rebuildCaches();
 
+                world.journal(bg.id, () -> bg.mergeOp(bg.graph));
+                bg.graphEntitiesChanged();
+
                 newBlockGraphs.add(bg);
 
                 // Fire update events for the new graphs
@@ -1015,6 +1555,8 @@ public class SimpleBlockGraph implements BlockGraph {
                 world.sendSplitInto(this, bg);
             }
 
+            // splitting off graph entities may have changed ours too
+            graphEntitiesChanged();
             rebuildCaches();
 
             // Fire the update events
@@ -1054,6 +1596,7 @@ public class SimpleBlockGraph implements BlockGraph {
                 }
 
                 movedNodes.add(((SimpleNodeHolder<BlockNode>) holder).node);
+                freeSlot(((SimpleNodeHolder<BlockNode>) holder).node);
             }
         }
 
@@ -1072,7 +1615,8 @@ public class SimpleBlockGraph implements BlockGraph {
 
         // do this stuff instead of rebuilding-refs later
         world.removeGraphInPoses(id, removedNodes, removedPoses, removedChunks);
-        chunks.removeAll(removedChunks);
+        removeChunks(removedChunks);
+        invalidateConnectivity();
         world.markDirty(id);
 
         // this sets the nodes' graph ids, and sets up the new block-graph's chunks and nodes-in-pos
@@ -1091,6 +1635,9 @@ public class SimpleBlockGraph implements BlockGraph {
             if (entity != null) {
                 into.nodeEntities.put(key, entity);
             }
+            if (scheduledNodeTicks.containsKey(key)) {
+                into.scheduledNodeTicks.put(key, scheduledNodeTicks.removeLong(key));
+            }
 
             // make sure to move link entities over too
             for (var link : node.connections()) {
@@ -1101,6 +1648,9 @@ public class SimpleBlockGraph implements BlockGraph {
                 if (linkEntity != null) {
                     into.linkEntities.put(linkKey, linkEntity);
                 }
+                if (scheduledLinkTicks.containsKey(linkKey)) {
+                    into.scheduledLinkTicks.put(linkKey, scheduledLinkTicks.removeLong(linkKey));
+                }
             }
         }
 
@@ -1111,6 +1661,8 @@ public class SimpleBlockGraph implements BlockGraph {
             into.graphEntities.put(type, entity);
             entity.onInit(new SimpleGraphEntityContext(world.getWorld(), world, into));
         }
+        graphEntitiesChanged();
+        into.graphEntitiesChanged();
 
         // we want to rebuild caches after entities have been moved
         into.rebuildCaches();
@@ -1144,6 +1696,7 @@ public class SimpleBlockGraph implements BlockGraph {
                     for (LinkHolder<LinkKey> link : holder.getConnections()) {
                         LinkPos linkKey = link.getPos();
                         LinkEntity linkEntity = linkEntities.remove(linkKey);
+                        scheduledLinkTicks.removeLong(linkKey);
                         if (linkEntity != null) {
                             linkEntity.onUnload();
                         }
@@ -1151,21 +1704,42 @@ public class SimpleBlockGraph implements BlockGraph {
 
                     // in this case, unloading means removing
                     graph.remove(((SimpleNodeHolder<BlockNode>) holder).node);
+                    freeSlot(((SimpleNodeHolder<BlockNode>) holder).node);
                     nodesInPos.removeAll(nodePos.pos());
                     nodesToHolders.remove(nodePos);
                     nodeEntities.remove(nodePos);
+                    scheduledNodeTicks.removeLong(nodePos);
                 }
 
                 nodesInChunk.remove(longPos);
             }
         }
 
-        chunks.removeAll(removedChunks);
+        removeChunks(removedChunks);
         rebuildCaches();
+        invalidateConnectivity();
 
         world.removeGraphInPoses(id, removedNodes, removedPoses, removedChunks);
     }
 
+    private void addChunk(long sectionPos) {
+        if (chunks.add(sectionPos)) {
+            world.graphEnteredChunk(id, sectionPos);
+        }
+    }
+
+    private void removeChunk(long sectionPos) {
+        if (chunks.remove(sectionPos)) {
+            world.graphLeftChunk(id, sectionPos);
+        }
+    }
+
+    private void removeChunks(@NotNull LongIterable sectionPoses) {
+        for (long sectionPos : sectionPoses) {
+            removeChunk(sectionPos);
+        }
+    }
+
     void onUnload() {
         for (NodeEntity entity : nodeEntities.values()) {
             entity.onUnload();
@@ -1,18 +1,25 @@
 package com.kneelawk.graphlib.impl.graph.simple;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.longs.Long2ObjectFunction;
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.objects.Object2LongLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.shorts.Short2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.shorts.Short2ObjectMap;
-import it.unimi.dsi.fastutil.shorts.ShortIterator;
 
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
@@ -25,16 +32,18 @@ import net.minecraft.util.math.ChunkSectionPos;
 import com.kneelawk.graphlib.api.graph.BlockGraph;
 import com.kneelawk.graphlib.api.graph.NodeHolder;
 import com.kneelawk.graphlib.api.graph.user.BlockNode;
+import com.kneelawk.graphlib.api.graph.user.BlockNodeBinaryDecoder;
 import com.kneelawk.graphlib.api.graph.user.BlockNodeType;
 import com.kneelawk.graphlib.api.util.NodePos;
 import com.kneelawk.graphlib.api.world.StorageChunk;
 import com.kneelawk.graphlib.impl.GLLog;
+import com.kneelawk.graphlib.impl.util.PalettedGraphIds;
 
 public class SimpleBlockGraphChunk implements StorageChunk {
     final ChunkSectionPos chunkPos;
     private final Runnable markDirty;
 
-    private final Short2ObjectMap<LongSet> graphsInPos = new Short2ObjectLinkedOpenHashMap<>();
+    private final PalettedGraphIds graphsInPos = new PalettedGraphIds();
     private final LongSet graphsInChunk = new LongLinkedOpenHashSet();
     private @Nullable Short2ObjectMap<Object2LongMap<BlockNode>> blockNodes = null;
 
@@ -43,6 +52,16 @@ public class SimpleBlockGraphChunk implements StorageChunk {
         this.chunkPos = chunkPos;
         this.markDirty = markDirty;
 
+        if (nbt.contains(ChunkSectionBinaryFormat.KEY, NbtElement.BYTE_ARRAY_TYPE)) {
+            try {
+                readBinary(ChunkSectionBinaryFormat.decode(nbt.getByteArray(ChunkSectionBinaryFormat.KEY)), universe);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to decode chunk section " + chunkPos, e);
+            }
+            return;
+        }
+
+        // chunk sections saved as NBT, from before the binary format existed
         NbtList inChunkList = nbt.getList("inChunk", NbtElement.LONG_TYPE);
         for (NbtElement element : inChunkList) {
             graphsInChunk.add(((NbtLong) element).longValue());
@@ -58,11 +77,10 @@ public class SimpleBlockGraphChunk implements StorageChunk {
             NbtList nodes = com.getList("nodes", NbtElement.COMPOUND_TYPE);
             if (!nodes.isEmpty()) {
                 short shortPos = ChunkSectionPos.packLocal(pos);
-                LongSet inPos = graphsInPos.computeIfAbsent(shortPos, s -> new LongLinkedOpenHashSet());
                 for (NbtElement keyElement : nodes) {
                     NbtCompound keyCom = (NbtCompound) keyElement;
                     long graphId = keyCom.getLong("id");
-                    inPos.add(graphId);
+                    graphsInPos.add(shortPos, graphId);
 
                     BlockPos keyPos = pos.add(chunkPos.getMinX(), chunkPos.getMinY(), chunkPos.getMinZ());
 
@@ -88,10 +106,9 @@ public class SimpleBlockGraphChunk implements StorageChunk {
             // Legacy route
             NbtList ids = com.getList("ids", NbtElement.LONG_TYPE);
             if (!ids.isEmpty()) {
-                LongSet inPos = graphsInPos.computeIfAbsent(ChunkSectionPos.packLocal(pos),
-                    s -> new LongLinkedOpenHashSet());
+                short shortPos = ChunkSectionPos.packLocal(pos);
                 for (NbtElement idElement : ids) {
-                    inPos.add(((NbtLong) idElement).longValue());
+                    graphsInPos.add(shortPos, ((NbtLong) idElement).longValue());
                 }
             }
         }
@@ -105,54 +122,93 @@ public class SimpleBlockGraphChunk implements StorageChunk {
 
     @Override
     public void toNbt(@NotNull NbtCompound nbt) {
-        NbtList inChunkList = new NbtList();
-        for (long id : graphsInChunk) {
-            inChunkList.add(NbtLong.of(id));
-        }
-        nbt.put("inChunk", inChunkList);
-
-        NbtList inPosList = new NbtList();
-        ShortIterator keyIterator = graphsInPos.keySet().iterator();
-        while (keyIterator.hasNext()) {
-            short shortPos = keyIterator.nextShort();
-            NbtCompound inPos = new NbtCompound();
-            BlockPos localPos =
-                new BlockPos(ChunkSectionPos.unpackLocalX(shortPos), ChunkSectionPos.unpackLocalY(shortPos),
-                    ChunkSectionPos.unpackLocalZ(shortPos));
-            inPos.putByte("x", (byte) localPos.getX());
-            inPos.putByte("y", (byte) localPos.getY());
-            inPos.putByte("z", (byte) localPos.getZ());
-
-            if (blockNodes == null || !blockNodes.containsKey(shortPos)) {
+        ChunkSectionBinaryFormat.Section section = new ChunkSectionBinaryFormat.Section();
+        section.inChunk.addAll(graphsInChunk);
+
+        for (int pos = graphsInPos.nextOccupied(0); pos >= 0; pos = graphsInPos.nextOccupied(pos + 1)) {
+            short shortPos = (short) pos;
+
+            Object2LongMap<BlockNode> keyMap = blockNodes != null ? blockNodes.get(shortPos) : null;
+            if (keyMap == null) {
                 // We never built our graph-key map
-                NbtList ids = new NbtList();
-                for (long id : graphsInPos.get(shortPos)) {
-                    ids.add(NbtLong.of(id));
-                }
-                inPos.put("ids", ids);
+                section.graphsAt.put(shortPos, graphsInPos.get(shortPos));
             } else {
-                Object2LongMap<BlockNode> keyMap = blockNodes.get(shortPos);
-                NbtList nodes = new NbtList();
+                List<ChunkSectionBinaryFormat.NodeEntry> nodes = new ObjectArrayList<>(keyMap.size());
                 for (Object2LongMap.Entry<BlockNode> entry : keyMap.object2LongEntrySet()) {
-                    NbtCompound keyCom = new NbtCompound();
+                    BlockNode node = entry.getKey();
+                    BlockNodeType type = node.getType();
+                    Identifier typeId = type.getId();
+
+                    byte[] raw = type.getBinaryDecoder() != null ? GraphBinaryFormat.toRaw(node::toBinary, typeId) :
+                        null;
+                    nodes.add(new ChunkSectionBinaryFormat.NodeEntry(typeId, entry.getLongValue(), raw,
+                        raw == null ? node.toTag() : null));
+                }
+                section.nodesAt.put(shortPos, nodes);
+            }
+        }
+
+        nbt.putByteArray(ChunkSectionBinaryFormat.KEY, ChunkSectionBinaryFormat.encode(section));
+    }
 
-                    long id = entry.getLongValue();
-                    keyCom.putLong("id", id);
+    private void readBinary(@NotNull ChunkSectionBinaryFormat.Section section, @NotNull SimpleGraphUniverse universe) {
+        graphsInChunk.addAll(section.inChunk);
 
-                    NbtElement data = entry.getKey().toTag();
-                    if (data != null) {
-                        keyCom.put("data", data);
-                    }
+        for (Short2ObjectMap.Entry<LongSet> entry : section.graphsAt.short2ObjectEntrySet()) {
+            for (LongIterator iter = entry.getValue().iterator(); iter.hasNext(); ) {
+                graphsInPos.add(entry.getShortKey(), iter.nextLong());
+            }
+        }
 
-                    keyCom.putString("type", entry.getKey().getType().getId().toString());
+        // type lookups are done once per type instead of once per node
+        Object2ObjectMap<Identifier, BlockNodeType> types = new Object2ObjectOpenHashMap<>();
+        for (Short2ObjectMap.Entry<List<ChunkSectionBinaryFormat.NodeEntry>> entry :
+            section.nodesAt.short2ObjectEntrySet()) {
+            short shortPos = entry.getShortKey();
 
-                    nodes.add(keyCom);
+            for (ChunkSectionBinaryFormat.NodeEntry nodeEntry : entry.getValue()) {
+                graphsInPos.add(shortPos, nodeEntry.graphId());
+
+                BlockNodeType type = types.computeIfAbsent(nodeEntry.type(), universe::getNodeType);
+                if (type == null) {
+                    GLLog.error("Chunk tried to load unknown NodeKey type: {} @ {}.", nodeEntry.type(),
+                        toBlockPos(shortPos));
+                    continue;
+                }
+
+                BlockNode data = nodeEntry.raw() != null ? decodeRawNode(type, nodeEntry.raw()) :
+                    type.getDecoder().decode(nodeEntry.tag());
+                if (data == null) {
+                    GLLog.warn("Unable to decode BlockNode with type: {} @ {}", nodeEntry.type(),
+                        toBlockPos(shortPos));
+                    continue;
+                }
+
+                if (blockNodes == null) {
+                    blockNodes = new Short2ObjectLinkedOpenHashMap<>();
                 }
-                inPos.put("nodes", nodes);
+                blockNodes.computeIfAbsent(shortPos, pos1 -> new Object2LongLinkedOpenHashMap<>())
+                    .put(data, nodeEntry.graphId());
             }
-            inPosList.add(inPos);
         }
-        nbt.put("inPos", inPosList);
+    }
+
+    private static @Nullable BlockNode decodeRawNode(@NotNull BlockNodeType type, @NotNull byte[] raw) {
+        BlockNodeBinaryDecoder decoder = type.getBinaryDecoder();
+        if (decoder == null) return null;
+
+        try {
+            return decoder.decode(new DataInputStream(new ByteArrayInputStream(raw)));
+        } catch (IOException e) {
+            GLLog.warn("Error decoding raw BlockNode of type {}", type.getId(), e);
+            return null;
+        }
+    }
+
+    private @NotNull BlockPos toBlockPos(short shortPos) {
+        return new BlockPos(chunkPos.getMinX() + ChunkSectionPos.unpackLocalX(shortPos),
+            chunkPos.getMinY() + ChunkSectionPos.unpackLocalY(shortPos),
+            chunkPos.getMinZ() + ChunkSectionPos.unpackLocalZ(shortPos));
     }
 
     public void clear() {
@@ -174,32 +230,22 @@ public class SimpleBlockGraphChunk implements StorageChunk {
         graphNodes.computeIfAbsent(posShort, pos -> new Object2LongLinkedOpenHashMap<>()).put(key.node(), id);
 
         graphsInChunk.add(id);
-        graphsInPos.computeIfAbsent(posShort, s -> new LongLinkedOpenHashSet()).add(id);
+        graphsInPos.add(posShort, id);
     }
 
     public void removeGraph(long id) {
         markDirty.run();
         graphsInChunk.remove(id);
+        graphsInPos.removeAll(id);
 
-        // Worst possible case here is 4096 iterations.
-        IntIterator posIterator = graphsInPos.keySet().intIterator();
-        while (posIterator.hasNext()) {
-            short posShort = (short) posIterator.nextInt();
-            LongSet graphs = graphsInPos.get(posShort);
-            boolean removed = graphs.remove(id);
-            if (graphs.isEmpty()) {
-                posIterator.remove();
-            }
-
-            // also remove nodes associated with said graph
-            if (removed && blockNodes != null) {
-                Object2LongMap<BlockNode> nodes = blockNodes.get(posShort);
-                if (nodes != null) {
-                    nodes.values().removeIf(l -> l == id);
+        // also remove nodes associated with said graph
+        if (blockNodes != null) {
+            for (var iter = blockNodes.values().iterator(); iter.hasNext(); ) {
+                Object2LongMap<BlockNode> nodes = iter.next();
+                nodes.values().removeIf(l -> l == id);
 
-                    if (nodes.isEmpty()) {
-                        blockNodes.remove(posShort);
-                    }
+                if (nodes.isEmpty()) {
+                    iter.remove();
                 }
             }
         }
@@ -223,7 +269,7 @@ public class SimpleBlockGraphChunk implements StorageChunk {
         return uNodes.containsKey(key.node());
     }
 
-    public LongSet getGraphsAt(BlockPos pos) {
+    public @NotNull LongSet getGraphsAt(BlockPos pos) {
         return graphsInPos.get(ChunkSectionPos.packLocal(pos));
     }
 
@@ -249,11 +295,7 @@ public class SimpleBlockGraphChunk implements StorageChunk {
     public void removeGraphInPosUnchecked(long id, @NotNull BlockPos pos) {
         markDirty.run();
         short local = ChunkSectionPos.packLocal(pos);
-        LongSet graphs = graphsInPos.get(local);
-        graphs.remove(id);
-        if (graphs.isEmpty()) {
-            graphsInPos.remove(local);
-        }
+        graphsInPos.remove(local, id);
     }
 
     public void removeGraphUnchecked(long id) {
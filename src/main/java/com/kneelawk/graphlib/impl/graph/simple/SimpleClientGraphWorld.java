@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
@@ -43,6 +44,7 @@ import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
 
+import net.minecraft.nbt.NbtCompound;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.ChunkSectionPos;
@@ -561,6 +563,21 @@ public class SimpleClientGraphWorld implements GraphView, ClientGraphWorldImpl,
     @Override
     public void markDirty(long graphId) {}
 
+    @Override
+    public void journal(long graphId, @NotNull Supplier<NbtCompound> op) {}
+
+    @Override
+    public void markNodeEntityDirty(long graphId, @NotNull NodePos pos) {}
+
+    @Override
+    public void markLinkEntityDirty(long graphId, @NotNull LinkPos pos) {}
+
+    @Override
+    public void markGraphEntitiesDirty(long graphId) {}
+
+    @Override
+    public void journalGraphEntities(long graphId) {}
+
     @Override
     public @NotNull SimpleBlockGraph createGraph(boolean initializeGraphEntities) {
         throw new UnsupportedOperationException("Graphs should never be split on the client");
@@ -661,9 +678,36 @@ public class SimpleClientGraphWorld implements GraphView, ClientGraphWorldImpl,
         }
     }
 
+    @Override
+    public void graphEnteredChunk(long id, long pos) {}
+
+    @Override
+    public void graphLeftChunk(long id, long pos) {}
+
     @Override
     public void scheduleCallbackUpdate(@NotNull NodeHolder<BlockNode> node, boolean validate) {}
 
+    @Override
+    public void scheduleNodeTick(long graphId, @NotNull NodePos pos, int delay) {}
+
+    @Override
+    public void scheduleLinkTick(long graphId, @NotNull LinkPos pos, int delay) {}
+
+    @Override
+    public boolean isNodeTickScheduled(long graphId, @NotNull NodePos pos) {
+        return false;
+    }
+
+    @Override
+    public boolean isLinkTickScheduled(long graphId, @NotNull LinkPos pos) {
+        return false;
+    }
+
+    @Override
+    public long getCurrentTick() {
+        return 0;
+    }
+
     @Override
     public void graphUpdated(SimpleBlockGraph graph) {}
 
@@ -0,0 +1,265 @@
+package com.kneelawk.graphlib.impl.graph.simple;
+
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import com.kneelawk.graphlib.api.graph.ConnectivityView;
+import com.kneelawk.graphlib.api.graph.NodeHolder;
+import com.kneelawk.graphlib.api.graph.user.BlockNode;
+import com.kneelawk.graphlib.api.graph.user.LinkKey;
+import com.kneelawk.graphlib.api.util.ConnectivityCategory;
+import com.kneelawk.graphlib.api.util.NodePos;
+import com.kneelawk.graphlib.api.util.graph.Graph;
+import com.kneelawk.graphlib.api.util.graph.Link;
+import com.kneelawk.graphlib.api.util.graph.Node;
+import com.kneelawk.graphlib.impl.util.IntUnionFind;
+
+/**
+ * Union-find based connectivity view maintained by a {@link SimpleBlockGraph}.
+ * <p>
+ * Additions are applied directly to the union-find, in near-constant time. Removals cannot be applied to a union-find,
+ * so removing a link or node instead searches the component it was in, starting from the nodes it was linked to. Any
+ * nodes no longer connected to the rest of the component are given new union-find elements. A removal therefore takes
+ * time proportional to the size of the component it was in, but not to the size of the whole graph. The elements left
+ * behind are reclaimed by rebuilding the view once they outnumber the nodes.
+ * <p>
+ * Bulk changes, like merges and splits, mark this view as invalid, and it gets rebuilt the next time it is queried.
+ * Rebuilding takes time proportional to the size of the graph.
+ */
+class SimpleConnectivityView implements ConnectivityView {
+    private final SimpleGraphCollection world;
+    private final Graph<SimpleNodeWrapper, LinkKey> graph;
+    private final ConnectivityCategory<?> category;
+
+    private final Object2IntMap<NodePos> indices = new Object2IntOpenHashMap<>();
+    // null for elements whose node has been removed or given a new element
+    private final ObjectArrayList<Node<SimpleNodeWrapper, LinkKey>> nodes = new ObjectArrayList<>();
+    private final IntUnionFind components = new IntUnionFind();
+    // the union-find's own count includes stale elements
+    private int componentCount = 0;
+    private int staleCount = 0;
+    private boolean valid = false;
+
+    SimpleConnectivityView(SimpleGraphCollection world, Graph<SimpleNodeWrapper, LinkKey> graph,
+                           ConnectivityCategory<?> category) {
+        this.world = world;
+        this.graph = graph;
+        this.category = category;
+        indices.defaultReturnValue(-1);
+    }
+
+    void invalidate() {
+        valid = false;
+    }
+
+    void onNodeAdded(@NotNull Node<SimpleNodeWrapper, LinkKey> node) {
+        if (valid) indexOf(node);
+    }
+
+    void onLink(@NotNull Link<SimpleNodeWrapper, LinkKey> link) {
+        if (valid && category.matches(link.key())) {
+            if (components.union(indexOf(link.first()), indexOf(link.second()))) {
+                componentCount--;
+            }
+        }
+    }
+
+    /**
+     * Called after a link has been removed from the graph.
+     */
+    void onUnlink(@NotNull Node<SimpleNodeWrapper, LinkKey> first, @NotNull Node<SimpleNodeWrapper, LinkKey> second,
+                  @NotNull LinkKey key) {
+        if (!valid || !category.matches(key)) return;
+
+        Set<Node<SimpleNodeWrapper, LinkKey>> ends = new ObjectLinkedOpenHashSet<>();
+        ends.add(first);
+        ends.add(second);
+        separate(ends);
+        reclaimIfNeeded();
+    }
+
+    /**
+     * Called after a node has been removed from the graph, while the node still has its links.
+     */
+    void onNodeRemoved(@NotNull Node<SimpleNodeWrapper, LinkKey> node) {
+        if (!valid) return;
+
+        int index = indices.removeInt(posOf(node));
+        if (index < 0) return;
+        nodes.set(index, null);
+        staleCount++;
+
+        Set<Node<SimpleNodeWrapper, LinkKey>> neighbors = new ObjectLinkedOpenHashSet<>();
+        for (Link<SimpleNodeWrapper, LinkKey> link : node.connections()) {
+            Node<SimpleNodeWrapper, LinkKey> other = link.other(node);
+            if (other != node && category.matches(link.key())) {
+                neighbors.add(other);
+            }
+        }
+
+        if (neighbors.isEmpty()) {
+            // the node was a component by itself
+            componentCount--;
+        } else {
+            separate(neighbors);
+        }
+        reclaimIfNeeded();
+    }
+
+    /**
+     * Gives each group of nodes that has been split off from the rest of their component new elements.
+     *
+     * @param seeds nodes that were all in the same component, at least one in each group that might have been split
+     *              off.
+     */
+    private void separate(@NotNull Set<Node<SimpleNodeWrapper, LinkKey>> seeds) {
+        ObjectLinkedOpenHashSet<Node<SimpleNodeWrapper, LinkKey>> remaining = new ObjectLinkedOpenHashSet<>(seeds);
+        // the last group keeps the component's existing elements
+        while (remaining.size() > 1) {
+            Set<Node<SimpleNodeWrapper, LinkKey>> group = search(remaining.removeFirst(), remaining);
+            if (group == null) return;
+
+            int root = -1;
+            for (Node<SimpleNodeWrapper, LinkKey> node : group) {
+                NodePos pos = posOf(node);
+                int old = indices.getInt(pos);
+                if (old >= 0) {
+                    nodes.set(old, null);
+                    staleCount++;
+                }
+
+                int index = components.add();
+                indices.put(pos, index);
+                nodes.add(node);
+                if (root < 0) {
+                    root = index;
+                } else {
+                    components.union(root, index);
+                }
+            }
+            componentCount++;
+        }
+    }
+
+    /**
+     * Finds every node connected to a node, removing the ones it finds from a set of targets.
+     *
+     * @return the nodes found, or <code>null</code> if every target was found.
+     */
+    private @Nullable Set<Node<SimpleNodeWrapper, LinkKey>> search(
+        @NotNull Node<SimpleNodeWrapper, LinkKey> start, @NotNull Set<Node<SimpleNodeWrapper, LinkKey>> targets) {
+        Set<Node<SimpleNodeWrapper, LinkKey>> found = new ObjectOpenHashSet<>();
+        ObjectArrayList<Node<SimpleNodeWrapper, LinkKey>> stack = new ObjectArrayList<>();
+        found.add(start);
+        stack.push(start);
+
+        while (!stack.isEmpty()) {
+            Node<SimpleNodeWrapper, LinkKey> node = stack.pop();
+            for (Link<SimpleNodeWrapper, LinkKey> link : node.connections()) {
+                if (!category.matches(link.key())) continue;
+
+                Node<SimpleNodeWrapper, LinkKey> other = link.other(node);
+                if (found.add(other)) {
+                    if (targets.remove(other) && targets.isEmpty()) return null;
+                    stack.push(other);
+                }
+            }
+        }
+
+        return found;
+    }
+
+    private void reclaimIfNeeded() {
+        if (staleCount > indices.size()) valid = false;
+    }
+
+    private static @NotNull NodePos posOf(@NotNull Node<SimpleNodeWrapper, LinkKey> node) {
+        return new NodePos(node.data().getPos(), node.data().getNode());
+    }
+
+    private int indexOf(Node<SimpleNodeWrapper, LinkKey> node) {
+        NodePos pos = posOf(node);
+        int index = indices.getInt(pos);
+        if (index < 0) {
+            index = components.add();
+            indices.put(pos, index);
+            nodes.add(node);
+            componentCount++;
+        }
+        return index;
+    }
+
+    private void ensureValid() {
+        if (valid) return;
+
+        indices.clear();
+        nodes.clear();
+        components.clear();
+        componentCount = 0;
+        staleCount = 0;
+
+        for (Node<SimpleNodeWrapper, LinkKey> node : graph) {
+            indexOf(node);
+        }
+
+        for (Node<SimpleNodeWrapper, LinkKey> node : graph) {
+            for (Link<SimpleNodeWrapper, LinkKey> link : node.connections()) {
+                // each link gets visited from both ends, but only needs to be unioned once
+                if (link.first() == node && category.matches(link.key()) &&
+                    components.union(indexOf(link.first()), indexOf(link.second()))) {
+                    componentCount--;
+                }
+            }
+        }
+
+        valid = true;
+    }
+
+    @Override
+    public @NotNull ConnectivityCategory<?> getCategory() {
+        return category;
+    }
+
+    @Override
+    public boolean areConnected(@NotNull NodePos a, @NotNull NodePos b) {
+        ensureValid();
+        int indexA = indices.getInt(a);
+        int indexB = indices.getInt(b);
+        if (indexA < 0 || indexB < 0) return false;
+        return components.connected(indexA, indexB);
+    }
+
+    @Override
+    public int getComponentId(@NotNull NodePos pos) {
+        ensureValid();
+        int index = indices.getInt(pos);
+        if (index < 0) return -1;
+        return components.find(index);
+    }
+
+    @Override
+    public @NotNull Stream<NodeHolder<BlockNode>> getComponent(@NotNull NodePos pos) {
+        int root = getComponentId(pos);
+        if (root < 0) return Stream.empty();
+
+        return IntStream.range(0, nodes.size())
+            .filter(index -> nodes.get(index) != null && components.find(index) == root)
+            .mapToObj(index -> new SimpleNodeHolder<>(world.getWorld(), world, nodes.get(index)));
+    }
+
+    @Override
+    public int getComponentCount() {
+        ensureValid();
+        return componentCount;
+    }
+}
@@ -25,10 +25,13 @@
 
 package com.kneelawk.graphlib.impl.graph.simple;
 
+import java.util.function.Supplier;
+
 import org.jetbrains.annotations.NotNull;
 
 import it.unimi.dsi.fastutil.longs.LongIterable;
 
+import net.minecraft.nbt.NbtCompound;
 import net.minecraft.util.math.BlockPos;
 
 import com.kneelawk.graphlib.api.graph.BlockGraph;
@@ -37,6 +40,7 @@ import com.kneelawk.graphlib.api.graph.LinkHolder;
 import com.kneelawk.graphlib.api.graph.NodeHolder;
 import com.kneelawk.graphlib.api.graph.user.BlockNode;
 import com.kneelawk.graphlib.api.graph.user.LinkKey;
+import com.kneelawk.graphlib.api.util.LinkPos;
 import com.kneelawk.graphlib.api.util.NodePos;
 
 public interface SimpleGraphCollection extends GraphView {
@@ -47,6 +51,48 @@ public interface SimpleGraphCollection extends GraphView {
      */
     void markDirty(long graphId);
 
+    /**
+     * Records an incremental change to a graph in the graph journal.
+     *
+     * @param graphId the id of the graph that changed.
+     * @param op      builds the journal operation describing the change. This is only called if the change is actually
+     *                going to be recorded.
+     */
+    void journal(long graphId, @NotNull Supplier<NbtCompound> op);
+
+    /**
+     * Marks a node entity as changed, so that its new state gets recorded.
+     *
+     * @param graphId the id of the graph the node entity is in.
+     * @param pos     the position of the node entity.
+     */
+    void markNodeEntityDirty(long graphId, @NotNull NodePos pos);
+
+    /**
+     * Marks a link entity as changed, so that its new state gets recorded.
+     *
+     * @param graphId the id of the graph the link entity is in.
+     * @param pos     the position of the link entity.
+     */
+    void markLinkEntityDirty(long graphId, @NotNull LinkPos pos);
+
+    /**
+     * Marks a graph's graph entities as changed, so that their new state gets recorded.
+     *
+     * @param graphId the id of the graph.
+     */
+    void markGraphEntitiesDirty(long graphId);
+
+    /**
+     * Records a graph's graph entities in the graph journal after they have been told about a change to their graph.
+     * <p>
+     * Unlike {@link #markGraphEntitiesDirty(long)}, this does nothing for graphs that are still being loaded or
+     * constructed.
+     *
+     * @param graphId the id of the graph.
+     */
+    void journalGraphEntities(long graphId);
+
     /**
      * Creates a new graph and stores it, assigning it an ID.
      *
@@ -72,8 +118,53 @@ public interface SimpleGraphCollection extends GraphView {
     void removeGraphInPoses(long id, @NotNull Iterable<NodePos> nodes, @NotNull Iterable<BlockPos> poses,
                             @NotNull LongIterable chunkPoses);
 
+    /**
+     * Called when a graph gains nodes in a chunk section it had none in before.
+     *
+     * @param id  the id of the graph.
+     * @param pos the chunk section the graph is now in.
+     */
+    void graphEnteredChunk(long id, long pos);
+
+    /**
+     * Called when a graph no longer has any nodes in a chunk section.
+     *
+     * @param id  the id of the graph.
+     * @param pos the chunk section the graph is no longer in.
+     */
+    void graphLeftChunk(long id, long pos);
+
     void scheduleCallbackUpdate(@NotNull NodeHolder<BlockNode> node, boolean validate);
 
+    /**
+     * Schedules a node entity's scheduled tick.
+     *
+     * @param graphId the id of the graph the node entity is in.
+     * @param pos     the position of the node entity.
+     * @param delay   the number of ticks until the node entity's scheduled tick.
+     */
+    void scheduleNodeTick(long graphId, @NotNull NodePos pos, int delay);
+
+    /**
+     * Schedules a link entity's scheduled tick.
+     *
+     * @param graphId the id of the graph the link entity is in.
+     * @param pos     the position of the link entity.
+     * @param delay   the number of ticks until the link entity's scheduled tick.
+     */
+    void scheduleLinkTick(long graphId, @NotNull LinkPos pos, int delay);
+
+    boolean isNodeTickScheduled(long graphId, @NotNull NodePos pos);
+
+    boolean isLinkTickScheduled(long graphId, @NotNull LinkPos pos);
+
+    /**
+     * Gets the tick that scheduled ticks are measured against.
+     *
+     * @return the current tick.
+     */
+    long getCurrentTick();
+
     void graphUpdated(SimpleBlockGraph graph);
 
     void sendNodeAdd(BlockGraph graph, NodeHolder<BlockNode> node);
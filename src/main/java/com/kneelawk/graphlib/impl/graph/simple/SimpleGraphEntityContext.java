@@ -12,7 +12,7 @@ import com.kneelawk.graphlib.api.graph.GraphView;
 public record SimpleGraphEntityContext(World blockWorld, SimpleGraphCollection graphWorld, BlockGraph graph) implements GraphEntityContext {
     @Override
     public void markDirty() {
-        graphWorld.markDirty(graph.getId());
+        graphWorld.markGraphEntitiesDirty(graph.getId());
     }
 
     @Override
@@ -37,6 +37,8 @@ import com.kneelawk.graphlib.api.util.CacheCategory;
 import com.kneelawk.graphlib.api.util.ColorUtils;
 import com.kneelawk.graphlib.api.util.EmptyLinkKey;
 import com.kneelawk.graphlib.api.world.SaveMode;
+import com.kneelawk.graphlib.api.world.SaveScheduler;
+import com.kneelawk.graphlib.api.world.SharedRegionStorage;
 import com.kneelawk.graphlib.impl.CommonProxy;
 import com.kneelawk.graphlib.impl.GraphLibImpl;
 import com.kneelawk.graphlib.impl.graph.ClientGraphWorldImpl;
@@ -58,11 +60,15 @@ public class SimpleGraphUniverse implements GraphUniverse, GraphUniverseImpl {
     private final Set<CacheCategory<?>> cacheCategories = new ObjectLinkedOpenHashSet<>();
     final SaveMode saveMode;
     final SyncProfile syncProfile;
+    final long residencyBudget;
+    final boolean sharedRegionStorage;
 
     public SimpleGraphUniverse(Identifier universeId, SimpleGraphUniverseBuilder builder) {
         this.id = universeId;
         saveMode = builder.saveMode;
         syncProfile = builder.profile;
+        residencyBudget = builder.residencyBudget;
+        sharedRegionStorage = builder.sharedRegionStorage;
 
         addLinkKeyType(EmptyLinkKey.TYPE);
 
@@ -184,8 +190,15 @@ public class SimpleGraphUniverse implements GraphUniverse, GraphUniverseImpl {
     }
 
     @Override
-    public ServerGraphWorldImpl createGraphWorld(ServerWorld world, Path path, boolean syncChunkWrites) {
-        return new SimpleServerGraphWorld(this, world, path, syncChunkWrites);
+    public boolean isRegionStorageShared() {
+        return sharedRegionStorage;
+    }
+
+    @Override
+    public ServerGraphWorldImpl createGraphWorld(ServerWorld world, Path path, boolean syncChunkWrites,
+                                                 SaveScheduler saveScheduler,
+                                                 @Nullable SharedRegionStorage sharedRegions) {
+        return new SimpleServerGraphWorld(this, world, path, syncChunkWrites, saveScheduler, sharedRegions);
     }
 
     @Override
@@ -12,6 +12,8 @@ import com.kneelawk.graphlib.impl.GraphLibImpl;
 public class SimpleGraphUniverseBuilder implements GraphUniverse.Builder {
     SaveMode saveMode = SaveMode.UNLOAD;
     SyncProfile profile = SyncProfile.SYNC_NOTHING;
+    long residencyBudget = -1;
+    boolean sharedRegionStorage = false;
 
     @Override
     public @NotNull GraphUniverse build(@NotNull Identifier universeId) {
@@ -30,4 +32,17 @@ public class SimpleGraphUniverseBuilder implements GraphUniverse.Builder {
         this.profile = profile;
         return this;
     }
+
+    @Override
+    public GraphUniverse.@NotNull Builder residencyBudget(long maxNodes) {
+        if (maxNodes < 0) throw new IllegalArgumentException("Residency budget cannot be negative");
+        this.residencyBudget = maxNodes;
+        return this;
+    }
+
+    @Override
+    public GraphUniverse.@NotNull Builder sharedRegionStorage(boolean shared) {
+        this.sharedRegionStorage = shared;
+        return this;
+    }
 }
@@ -13,7 +13,17 @@ public record SimpleLinkEntityContext(LinkHolder<LinkKey> holder, World blockWor
     implements LinkEntityContext {
     @Override
     public void markDirty() {
-        graphWorld.markDirty(holder.getFirst().getGraphId());
+        graphWorld.markLinkEntityDirty(holder.getFirst().getGraphId(), holder.getPos());
+    }
+
+    @Override
+    public void scheduleTick(int delay) {
+        graphWorld.scheduleLinkTick(holder.getFirst().getGraphId(), holder.getPos(), delay);
+    }
+
+    @Override
+    public boolean isTickScheduled() {
+        return graphWorld.isLinkTickScheduled(holder.getFirst().getGraphId(), holder.getPos());
     }
 
     @Override
@@ -13,7 +13,17 @@ public record SimpleNodeEntityContext(@NotNull NodeHolder<BlockNode> holder, @No
                                       @NotNull SimpleGraphCollection graphWorld) implements NodeEntityContext {
     @Override
     public void markDirty() {
-        graphWorld.markDirty(getGraphId());
+        graphWorld.markNodeEntityDirty(getGraphId(), getPos());
+    }
+
+    @Override
+    public void scheduleTick(int delay) {
+        graphWorld.scheduleNodeTick(getGraphId(), getPos(), delay);
+    }
+
+    @Override
+    public boolean isTickScheduled() {
+        return graphWorld.isNodeTickScheduled(getGraphId(), getPos());
     }
 
     @Override
@@ -17,6 +17,7 @@ import com.kneelawk.graphlib.api.graph.NodeHolder;
 import com.kneelawk.graphlib.api.graph.SnapshotNode;
 import com.kneelawk.graphlib.api.graph.user.BlockNode;
 import com.kneelawk.graphlib.api.graph.user.LinkKey;
+import com.kneelawk.graphlib.api.util.NodeHandle;
 import com.kneelawk.graphlib.api.util.NodePos;
 import com.kneelawk.graphlib.api.util.graph.Link;
 import com.kneelawk.graphlib.api.util.graph.Node;
@@ -55,6 +56,16 @@ public class SimpleNodeHolder<T extends BlockNode> implements NodeHolder<T> {
         return node.data().getGraphId();
     }
 
+    @Override
+    public long getHandle() {
+        SimpleNodeWrapper data = node.data();
+        if (data.generation == 0 || data.slot < 0 || data.slot > NodeHandle.MAX_SLOT || data.graphId < 0 ||
+            data.graphId > NodeHandle.MAX_GRAPH_ID) {
+            return NodeHandle.NONE;
+        }
+        return NodeHandle.pack(data.graphId, data.slot, data.generation);
+    }
+
     @Override
     public World getBlockWorld() {
         return blockWorld;
@@ -25,6 +25,10 @@ public final class SimpleNodeWrapper {
 
     long graphId;
 
+    // assigned by the owning graph
+    int slot = -1;
+    int generation = 0;
+
     public SimpleNodeWrapper(@NotNull BlockPos pos, @NotNull BlockNode node, long graphId) {
         this.pos = pos.toImmutable();
         this.node = node;
@@ -32,6 +36,17 @@ public final class SimpleNodeWrapper {
     }
 
     public @NotNull NbtCompound toTag() {
+        return toTag(pos, node);
+    }
+
+    /**
+     * Encodes a node's position and node the same way {@link #toTag()} does, without needing a wrapper.
+     *
+     * @param pos  the block position of the node.
+     * @param node the block node.
+     * @return the encoded node.
+     */
+    public static @NotNull NbtCompound toTag(@NotNull BlockPos pos, @NotNull BlockNode node) {
         NbtCompound tag = new NbtCompound();
 
         tag.putInt("x", pos.getX());
@@ -61,6 +76,12 @@ public final class SimpleNodeWrapper {
             return null;
         }
 
+        if (tag.contains("nodeRaw", NbtElement.BYTE_ARRAY_TYPE)) {
+            // raw bytes only end up here if they could not be decoded
+            GLLog.warn("Unable to decode raw BlockNode with type: {} @ {}", typeId, pos);
+            return null;
+        }
+
         NbtElement nodeTag = tag.get("node");
         BlockNode node = type.getDecoder().decode(nodeTag);
 
@@ -1,8 +1,13 @@
 package com.kneelawk.graphlib.impl.graph.simple;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -11,36 +16,51 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.PrimitiveIterator;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongBidirectionalIterator;
 import it.unimi.dsi.fastutil.longs.LongIterable;
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongList;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongRBTreeSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.longs.LongSortedSet;
 import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2LongLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
 import it.unimi.dsi.fastutil.objects.ObjectSet;
 
 import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
 import net.minecraft.nbt.NbtIo;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
@@ -56,6 +76,8 @@ import com.kneelawk.graphlib.api.graph.GraphUniverse;
 import com.kneelawk.graphlib.api.graph.GraphWorld;
 import com.kneelawk.graphlib.api.graph.LinkHolder;
 import com.kneelawk.graphlib.api.graph.NodeHolder;
+import com.kneelawk.graphlib.api.graph.SnapshotGraph;
+import com.kneelawk.graphlib.api.graph.SnapshotNode;
 import com.kneelawk.graphlib.api.graph.user.BlockNode;
 import com.kneelawk.graphlib.api.graph.user.LinkEntity;
 import com.kneelawk.graphlib.api.graph.user.LinkKey;
@@ -67,13 +89,24 @@ import com.kneelawk.graphlib.api.util.HalfLink;
 import com.kneelawk.graphlib.api.util.LinkPos;
 import com.kneelawk.graphlib.api.util.NodePos;
 import com.kneelawk.graphlib.api.util.SidedPos;
-import com.kneelawk.graphlib.api.world.SaveMode;
+import com.kneelawk.graphlib.api.world.SaveScheduler;
+import com.kneelawk.graphlib.api.world.SharedRegionStorage;
 import com.kneelawk.graphlib.api.world.UnloadingRegionBasedStorage;
 import com.kneelawk.graphlib.impl.Constants;
 import com.kneelawk.graphlib.impl.GLLog;
 import com.kneelawk.graphlib.impl.graph.RebuildChunksListener;
 import com.kneelawk.graphlib.impl.graph.ServerGraphWorldImpl;
+import com.kneelawk.graphlib.impl.graph.store.GraphIndex;
+import com.kneelawk.graphlib.impl.graph.store.GraphJournal;
+import com.kneelawk.graphlib.impl.graph.store.GraphPrefetcher;
+import com.kneelawk.graphlib.impl.graph.store.GraphWriteQueue;
+import com.kneelawk.graphlib.impl.graph.store.SavePool;
+import com.kneelawk.graphlib.impl.graph.store.SegmentGraphStore;
 import com.kneelawk.graphlib.impl.net.GLNet;
+import com.kneelawk.graphlib.impl.util.LongRangeSet;
+import com.kneelawk.graphlib.impl.util.ResidencyBudget;
+import com.kneelawk.graphlib.impl.util.ResidentGraphIndex;
+import com.kneelawk.graphlib.impl.util.TimingWheel;
 
 /**
  * Holds and manages all block graphs for a given world.
@@ -87,13 +120,44 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
      * Graphs will unload 1 minute after their chunk unloads or their last use.
      */
     private static final int MAX_AGE = 20 * 60;
-    private static final int INCREMENTAL_SAVE_FACTOR = 10;
 
     /**
      * The maximum number of graphs to re-add to chunks each tick during a chunk rebuild.
      */
     private static final int MAX_GRAPHS_REBUILT_PER_TICK = 100;
 
+    /**
+     * Once the graph journal grows past this size, it moves on to a new segment, every graph with changes in the old
+     * segment gets a full snapshot, and the old segment is deleted.
+     */
+    private static final long JOURNAL_CHECKPOINT_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * The maximum number of unloaded graphs to apply recovered journal operations to each tick during a checkpoint.
+     */
+    private static final int MAX_GRAPHS_REPLAYED_PER_TICK = 16;
+
+    /**
+     * Graphs with this many journal operations since their last snapshot are marked for a full snapshot, so that
+     * loading them never has to replay too much.
+     */
+    private static final int MAX_JOURNAL_OPS_PER_GRAPH = 1024;
+
+    /**
+     * How long each tick may spend installing graphs that were prefetched when their chunks loaded.
+     */
+    private static final long PREFETCH_INSTALL_BUDGET_NANOS = 5_000_000L;
+
+    /**
+     * The maximum number of graphs to consider evicting each tick while over the residency budget.
+     */
+    private static final int MAX_EVICTION_CHECKS_PER_TICK = 64;
+
+    /**
+     * The maximum number of graphs to read ahead of the consumer when streaming detached graph snapshots.
+     */
+    private static final int GRAPH_SNAPSHOT_BATCH_SIZE = 64;
+
     final SimpleGraphUniverse universe;
 
     final ServerWorld world;
@@ -102,46 +166,172 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
 
     private final ChunkSectionUnloadTimer timer;
 
-    private final Path graphsDir;
+    private final SegmentGraphStore graphStore;
 
-    private final Path stateFile;
+    private final GraphWriteQueue<byte[]> graphWrites;
+
+    private final GraphJournal journal;
+
+    private final GraphPrefetcher<GraphBinaryFormat.Reader> graphPrefetcher;
+
+    /**
+     * What is in each stored graph, so that rebuilds and empty graph removal can skip decoding most graphs.
+     */
+    private final GraphIndex graphIndex;
+    private final Path graphIndexFile;
 
-    private final SaveMode saveMode;
+    /**
+     * The number of journal operations recorded for each graph since its last snapshot.
+     */
+    private final Long2IntOpenHashMap journaledGraphs = new Long2IntOpenHashMap();
+
+    /**
+     * Journal operations found when the journal was opened, for graphs that have not been loaded since.
+     */
+    private final Long2ObjectMap<List<GraphJournalOps.Entry>> recoveredOps = new Long2ObjectOpenHashMap<>();
+
+    private final Object2LongMap<NodePos> dirtyNodeEntities = new Object2LongLinkedOpenHashMap<>();
+    private final Object2LongMap<LinkPos> dirtyLinkEntities = new Object2LongLinkedOpenHashMap<>();
+    private final LongSet dirtyGraphEntities = new LongLinkedOpenHashSet();
+
+    private final Path stateFile;
 
     private final Long2ObjectMap<SimpleBlockGraph> loadedGraphs = new Long2ObjectLinkedOpenHashMap<>();
-    private final LongSet unsavedGraphs = new LongOpenHashSet();
+
+    /**
+     * Which chunk sections each loaded graph is in, so that saving and unloading only have to look at the graphs in
+     * the affected chunk sections.
+     */
+    private final ResidentGraphIndex residentGraphs = new ResidentGraphIndex();
+
+    /**
+     * How many block-nodes are loaded, and which graphs were used least recently.
+     */
+    private final ResidencyBudget residency;
+    private final boolean residencyBudgeted;
+
+    /**
+     * Graphs that have been used since their chunk sections were last marked as used. Marking sections is deferred
+     * until unloading is evaluated, so a graph used many times in a tick only marks its sections once.
+     */
+    private final LongSet usedGraphs = new LongLinkedOpenHashSet();
+    private long useEpoch = 0;
+    private final SaveScheduler.Queue unsavedGraphs;
 
     private final ObjectSet<BlockPos> nodeUpdates = new ObjectLinkedOpenHashSet<>();
     private final ObjectSet<UpdatePos> connectionUpdates = new ObjectLinkedOpenHashSet<>();
     private final Map<NodePos, CallbackUpdate> callbackUpdates = new Object2ObjectLinkedOpenHashMap<>();
 
+    private final TimingWheel<ScheduledTick> scheduledTicks = new TimingWheel<>(0);
+    private long tickCount = 0;
+
     private boolean stateDirty = false;
     private long prevGraphId = -1L;
+    private final LongRangeSet allocatedGraphIds = new LongRangeSet();
+    private long savedJournalSeq = 0;
 
     private ChunkRebuildState rebuildState = null;
 
+    /**
+     * The snapshot currently being exported. The journal is not checkpointed while this is set, as the export is still
+     * copying it.
+     */
+    private SnapshotExport snapshotExport = null;
+
+    /**
+     * The checkpoint in progress, if any.
+     */
+    private Checkpoint checkpoint = null;
+
+    private boolean closing = false;
     private boolean closed = false;
 
     public SimpleServerGraphWorld(SimpleGraphUniverse universe, @NotNull ServerWorld world, @NotNull Path path,
-                                  boolean syncChunkWrites) {
+                                  boolean syncChunkWrites, @NotNull SaveScheduler saveScheduler,
+                                  @Nullable SharedRegionStorage sharedRegions) {
         this.universe = universe;
-        this.chunks = new UnloadingRegionBasedStorage<>(world, path.resolve(Constants.REGION_DIRNAME), syncChunkWrites,
-            (compound, pos, markDirty) -> new SimpleBlockGraphChunk(compound, pos, markDirty, universe),
-            SimpleBlockGraphChunk::new, universe.saveMode);
+        if (sharedRegions != null) {
+            this.chunks = new UnloadingRegionBasedStorage<>(world, sharedRegions, universe.getId().toString(),
+                (compound, pos, markDirty) -> new SimpleBlockGraphChunk(compound, pos, markDirty, universe),
+                SimpleBlockGraphChunk::new, universe.saveMode, saveScheduler);
+
+            // region files of its own are from a restored snapshot or from before this universe shared region files
+            Path ownRegions = path.resolve(Constants.REGION_DIRNAME);
+            if (Files.isDirectory(ownRegions)) {
+                try {
+                    if (chunks.importRegions(ownRegions)) {
+                        GLLog.info("Imported the region files in '{}' into the shared region files.", ownRegions);
+                    }
+                } catch (IOException e) {
+                    GLLog.error("Unable to import the region files in '{}' into the shared region files.", ownRegions,
+                        e);
+                }
+            }
+        } else {
+            this.chunks =
+                new UnloadingRegionBasedStorage<>(world, path.resolve(Constants.REGION_DIRNAME), syncChunkWrites,
+                    (compound, pos, markDirty) -> new SimpleBlockGraphChunk(compound, pos, markDirty, universe),
+                    SimpleBlockGraphChunk::new, universe.saveMode, saveScheduler);
+        }
         this.world = world;
-        this.saveMode = universe.saveMode;
-        graphsDir = path.resolve(Constants.GRAPHS_DIRNAME);
+        unsavedGraphs = saveScheduler.createQueue(universe.saveMode, this::saveUnsavedGraph);
+        Path graphsDir = path.resolve(Constants.GRAPHS_DIRNAME);
         stateFile = path.resolve(Constants.STATE_FILENAME);
         timer = new ChunkSectionUnloadTimer(world.getBottomSectionCoord(), world.getTopSectionCoord(), MAX_AGE);
+        residencyBudgeted = universe.residencyBudget >= 0;
+        residency = new ResidencyBudget(residencyBudgeted ? universe.residencyBudget : Long.MAX_VALUE);
 
         try {
-            Files.createDirectories(graphsDir);
+            graphStore = SegmentGraphStore.open(graphsDir);
+
+            int migrated = graphStore.migrateLegacyGraphs(graphsDir);
+            if (migrated > 0) {
+                GLLog.info("Migrated {} graphs in '{}' to the segment graph store.", migrated, graphsDir);
+            }
         } catch (IOException e) {
-            throw new RuntimeException("Unable to create graphs dir: '" + graphsDir + "'. This is a fatal exception.",
+            throw new RuntimeException("Unable to open graph store: '" + graphsDir + "'. This is a fatal exception.",
                 e);
         }
 
+        graphWrites = new GraphWriteQueue<>(graphStore, StoredGraphs::compress,
+            "GraphLib Graph Writer " + universe.getId() + " " + world.getRegistryKey().getValue());
+
+        graphPrefetcher = new GraphPrefetcher<>(this::readStoredGraphBytes, this::preloadGraph,
+            ForkJoinPool.commonPool(),
+            "GraphLib Graph Reader " + universe.getId() + " " + world.getRegistryKey().getValue());
+
         loadState();
+
+        Path journalFile = graphsDir.resolve(Constants.GRAPH_JOURNAL_FILENAME);
+        try {
+            journal = GraphJournal.open(journalFile, savedJournalSeq, this::recoverJournalOp);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to open graph journal: '" + journalFile + "'. This is a fatal exception.",
+                e);
+        }
+        graphIndexFile = graphsDir.resolve(Constants.GRAPH_INDEX_FILENAME);
+        graphIndex = GraphIndex.load(graphIndexFile, journal.getBaseSeq());
+
+        if (!recoveredOps.isEmpty()) {
+            GLLog.info("Recovered unsaved changes to {} graphs from the graph journal in '{}'.", recoveredOps.size(),
+                graphsDir);
+        }
+
+        // Ids at or below prevGraphId are never handed out again, so only stored graphs above it need to be tracked
+        // separately. These can exist if the state file was not saved after they were created.
+        if (prevGraphId >= 0) {
+            allocatedGraphIds.addRange(0, prevGraphId);
+        }
+        graphStore.forEachId(id -> {
+            if (id > prevGraphId) {
+                allocatedGraphIds.add(id);
+            }
+        });
+        for (long id : recoveredOps.keySet()) {
+            if (id > prevGraphId) {
+                allocatedGraphIds.add(id);
+            }
+        }
     }
 
     // ---- Lifecycle Methods ---- //
@@ -160,6 +350,13 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
         loadGraphs(pos);
     }
 
+    @Override
+    public void scanChunkPresence(@NotNull ChunkPos pos) {
+        if (closed) return;
+
+        chunks.scanPresence(pos);
+    }
+
     @Override
     public void onWorldChunkUnload(@NotNull ChunkPos pos) {
         chunks.onWorldChunkUnload(pos);
@@ -168,18 +365,25 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
 
     @Override
     public void tick() {
+        if (snapshotExport != null && snapshotExport.future.isDone()) {
+            finishSnapshotExport();
+        }
+
         continueRebuildingChunks();
 
         chunks.tick();
         timer.tick();
 
+        installPrefetchedGraphs();
+
         tickGraphs();
+        handleScheduledTicks();
         handleNodeUpdates();
         handleConnectionUpdates();
         handleCallbackUpdates();
+        flushJournal();
 
         unloadGraphs();
-        saveUnsvedGraphs();
     }
 
     @Override
@@ -194,23 +398,126 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
         // This can be useful sometimes but causes log spam in prod
 //        GLLog.info("Saving block-graph for '{}'/{}", world, world.getRegistryKey().getValue());
 
-        saveAllGraphs();
+        // make the journal durable, then snapshot the graphs whose changes it doesn't describe
+        flushJournal();
+        flushJournalBuffer(true);
+        saveAllUnsavedGraphs();
         saveState();
+        if (graphIndex.isDirty()) {
+            saveGraphIndex();
+        }
+
+        graphWrites.flush(flush);
 
         chunks.saveAll();
     }
 
+    @Override
+    public void flushWrites() {
+        graphWrites.flush(true);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Void> exportSnapshot(@NotNull Path target) {
+        if (closing) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Graph world is closing"));
+        }
+        if (snapshotExport != null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("A snapshot is already being exported"));
+        }
+
+        // graphs with unsaved changes are snapshotted now, and changes to all other graphs are in the journal
+        flushJournal();
+        saveAllUnsavedGraphs();
+        flushJournalBuffer(true);
+        long journalLength = journal.size();
+        NbtCompound state = createStateTag();
+
+        CompletableFuture<Void> regionsSaved = chunks.beginSnapshot();
+
+        // the store's contents plus the writes that have not reached it yet are exactly what has been saved so far
+        Long2ObjectMap<GraphWriteQueue.Pending<byte[]>> pending = new Long2ObjectOpenHashMap<>();
+        SegmentGraphStore.Snapshot storeSnapshot;
+        try {
+            storeSnapshot = graphWrites.collectPending(pending, graphStore::snapshot);
+        } catch (IOException e) {
+            chunks.endSnapshot();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        Executor exporter = runnable -> {
+            Thread thread = new Thread(runnable,
+                "GraphLib Snapshot Exporter " + universe.getId() + " " + world.getRegistryKey().getValue());
+            thread.setDaemon(true);
+            thread.start();
+        };
+
+        CompletableFuture<Void> future = regionsSaved.thenRunAsync(() -> {
+            try {
+                Long2ObjectMap<byte[]> extra = new Long2ObjectOpenHashMap<>(pending.size());
+                for (Long2ObjectMap.Entry<GraphWriteQueue.Pending<byte[]>> entry : pending.long2ObjectEntrySet()) {
+                    byte[] snapshot = entry.getValue().snapshot();
+                    extra.put(entry.getLongKey(), snapshot != null ? StoredGraphs.compress(snapshot) : null);
+                }
+
+                Path graphsDir = target.resolve(Constants.GRAPHS_DIRNAME);
+                storeSnapshot.exportTo(graphsDir, extra);
+                journal.exportTo(graphsDir.resolve(Constants.GRAPH_JOURNAL_FILENAME), journalLength);
+                // the graph index is left out, as a missing index is treated as empty
+
+                try (OutputStream os = Files.newOutputStream(target.resolve(Constants.STATE_FILENAME))) {
+                    NbtIo.writeCompressed(state, os);
+                }
+
+                chunks.exportRegions(target.resolve(Constants.REGION_DIRNAME));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, exporter);
+
+        snapshotExport = new SnapshotExport(future, storeSnapshot, target);
+        return future;
+    }
+
+    @Override
+    public void prepareClose() {
+        if (closing) {
+            return;
+        }
+
+        closing = true;
+
+        flushJournal();
+        writeGraphs(loadedGraphs.values());
+        unsavedGraphs.close();
+    }
+
     @Override
     public void close() throws Exception {
         if (closed) {
             return;
         }
 
+        prepareClose();
         closed = true;
 
-        saveAllGraphs();
+        if (snapshotExport != null) {
+            try {
+                snapshotExport.future.join();
+            } catch (CompletionException e) {
+                // logged when finishing
+            }
+            finishSnapshotExport();
+        }
+
+        checkpointNow();
         saveState();
 
+        graphPrefetcher.close();
+        graphWrites.close();
+        journal.close();
+        graphStore.close();
+
         chunks.close();
     }
 
@@ -603,12 +910,7 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
     public @NotNull LongStream getAllGraphIdsAt(@NotNull BlockPos pos) {
         SimpleBlockGraphChunk chunk = chunks.getIfExists(ChunkSectionPos.from(pos));
         if (chunk != null) {
-            LongSet graphsInPos = chunk.getGraphsAt(pos);
-            if (graphsInPos != null) {
-                return graphsInPos.longStream();
-            } else {
-                return LongStream.empty();
-            }
+            return chunk.getGraphsAt(pos).longStream();
         } else {
             return LongStream.empty();
         }
@@ -831,6 +1133,16 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
         connectionUpdates.add(new UpdateSidedPos(pos));
     }
 
+    /**
+     * Starts loading a chunk pillar in the background, if it isn't already loaded.
+     *
+     * @param pos the position of the chunk pillar.
+     */
+    @Override
+    public void prefetchChunk(@NotNull ChunkPos pos) {
+        chunks.prefetch(pos);
+    }
+
     /**
      * Gets the graph with the given ID.
      * <p>
@@ -844,16 +1156,16 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
     public SimpleBlockGraph getGraph(long id) {
         SimpleBlockGraph graph = loadedGraphs.get(id);
         if (graph == null) {
-            graph = readGraph(id);
+            // a graph whose chunk just loaded may already be on its way in
+            GraphBinaryFormat.Reader prefetched = graphPrefetcher.claim(id);
+            graph = readGraph(id, isPrefetchUsable(id) ? prefetched : null);
             if (graph != null) {
-                loadedGraphs.put(id, graph);
+                addLoadedGraph(graph);
             }
         }
 
         if (graph != null) {
-            for (long posLong : graph.chunks) {
-                timer.onChunkUse(ChunkSectionPos.from(posLong));
-            }
+            markUsed(graph);
         }
 
         return graph;
@@ -940,6 +1252,19 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
         return loadedGraphs.values().stream().map(Function.identity());
     }
 
+    /**
+     * Gets detached copies of all graphs in this graph world, without loading them.
+     *
+     * @param parallel whether stored graphs should be read and parsed on worker threads ahead of being decoded.
+     * @return a stream of detached copies of all the graphs in this graph world.
+     */
+    @Override
+    public @NotNull Stream<SnapshotGraph> getAllGraphSnapshots(boolean parallel) {
+        Iterator<SnapshotGraph> iter = new GraphSnapshotIterator(new LongArrayList(getExistingGraphs()), parallel);
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(iter, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
     /**
      * Called by the <code>/graphlib removeemptygraphs</code> command.
      * <p>
@@ -967,6 +1292,10 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
                     removed++;
                 }
             } else {
+                // graphs the index knows have nodes don't need to be decoded
+                GraphIndex.Entry entry = getIndexEntry(id);
+                if (entry != null && entry.nodeCount() > 0) continue;
+
                 if (readGraph(id) == null) {
                     removed++;
                 }
@@ -986,15 +1315,17 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
     public void rebuildChunks(List<ChunkSectionPos> toRebuild, RebuildChunksListener listener) {
         if (rebuildState == null) {
             LongSet chunksToRebuild = new LongLinkedOpenHashSet();
+            GraphIndex.Box bounds = GraphIndex.Box.EMPTY;
             for (ChunkSectionPos pos : toRebuild) {
                 chunksToRebuild.add(pos.asLong());
+                bounds = bounds.include(pos.getSectionX(), pos.getSectionY(), pos.getSectionZ());
                 SimpleBlockGraphChunk chunk = chunks.getIfExists(pos);
                 if (chunk != null) {
                     chunk.clear();
                 }
             }
 
-            LongSortedSet existingGraphs = getExistingGraphs();
+            LongSortedSet existingGraphs = getGraphsToRebuild(chunksToRebuild, bounds);
             if (existingGraphs.isEmpty()) {
                 listener.onComplete(0, chunksToRebuild.size());
                 return;
@@ -1010,7 +1341,7 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
                 listener.onComplete(existingGraphs.size(), chunksToRebuild.size());
             } else {
                 rebuildState =
-                    new ChunkRebuildState(chunksToRebuild, listener, finalGraph, lastGraph + 1,
+                    new ChunkRebuildState(chunksToRebuild, bounds, listener, finalGraph, lastGraph + 1,
                         existingGraphs.size());
             }
         } else {
@@ -1028,11 +1359,41 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
         unsavedGraphs.add(graphId);
     }
 
+    @Override
+    public void journal(long graphId, @NotNull Supplier<NbtCompound> op) {
+        // graphs that are still being loaded or constructed have nothing new to record
+        if (!loadedGraphs.containsKey(graphId)) return;
+
+        appendJournal(graphId, op.get());
+    }
+
+    @Override
+    public void markNodeEntityDirty(long graphId, @NotNull NodePos pos) {
+        dirtyNodeEntities.put(pos, graphId);
+    }
+
+    @Override
+    public void markLinkEntityDirty(long graphId, @NotNull LinkPos pos) {
+        dirtyLinkEntities.put(pos, graphId);
+    }
+
+    @Override
+    public void markGraphEntitiesDirty(long graphId) {
+        dirtyGraphEntities.add(graphId);
+    }
+
+    @Override
+    public void journalGraphEntities(long graphId) {
+        if (loadedGraphs.containsKey(graphId)) {
+            dirtyGraphEntities.add(graphId);
+        }
+    }
+
     @Override
     @NotNull
     public SimpleBlockGraph createGraph(boolean initializeGraphEntities) {
         SimpleBlockGraph graph = new SimpleBlockGraph(this, getNextGraphId(), initializeGraphEntities);
-        loadedGraphs.put(graph.getId(), graph);
+        addLoadedGraph(graph);
 
         // Fire graph created event
         GraphLibEvents.GRAPH_CREATED.invoker().graphCreated(world, this, graph);
@@ -1061,7 +1422,7 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
         SimpleBlockGraphChunk chunk = chunks.getOrCreate(sectionPos);
         chunk.putGraphWithNode(id, pos, this::getGraph);
 
-        timer.onChunkUse(sectionPos);
+        useChunkSection(sectionPos);
     }
 
     @Override
@@ -1113,8 +1474,19 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
         }
     }
 
+    @Override
+    public void graphEnteredChunk(long id, long pos) {
+        residentGraphs.addSection(id, pos);
+    }
+
+    @Override
+    public void graphLeftChunk(long id, long pos) {
+        residentGraphs.removeSection(id, pos);
+    }
+
     @Override
     public void graphUpdated(SimpleBlockGraph graph) {
+        residency.update(graph.getId(), graph.size());
         GraphLibEvents.GRAPH_UPDATED.invoker().graphUpdated(world, this, graph);
     }
 
@@ -1188,6 +1560,98 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
         }
     }
 
+    @Override
+    public void scheduleNodeTick(long graphId, @NotNull NodePos pos, int delay) {
+        // entity contexts only exist while their graphs are loaded, so there is never a need to load a graph here
+        SimpleBlockGraph graph = loadedGraphs.get(graphId);
+        if (graph != null) {
+            scheduleNodeTick(graph, pos, delay);
+        }
+    }
+
+    void scheduleNodeTick(@NotNull SimpleBlockGraph graph, @NotNull NodePos pos, int delay) {
+        long deadline = tickCount + Math.max(1, delay);
+        if (graph.scheduleNodeTick(pos, deadline)) {
+            scheduledTicks.schedule(new ScheduledNodeTick(graph.getId(), pos, deadline), deadline);
+        }
+    }
+
+    @Override
+    public void scheduleLinkTick(long graphId, @NotNull LinkPos pos, int delay) {
+        SimpleBlockGraph graph = loadedGraphs.get(graphId);
+        if (graph != null) {
+            scheduleLinkTick(graph, pos, delay);
+        }
+    }
+
+    void scheduleLinkTick(@NotNull SimpleBlockGraph graph, @NotNull LinkPos pos, int delay) {
+        long deadline = tickCount + Math.max(1, delay);
+        if (graph.scheduleLinkTick(pos, deadline)) {
+            scheduledTicks.schedule(new ScheduledLinkTick(graph.getId(), pos, deadline), deadline);
+        }
+    }
+
+    @Override
+    public boolean isNodeTickScheduled(long graphId, @NotNull NodePos pos) {
+        SimpleBlockGraph graph = loadedGraphs.get(graphId);
+        return graph != null && graph.isNodeTickScheduled(pos);
+    }
+
+    @Override
+    public boolean isLinkTickScheduled(long graphId, @NotNull LinkPos pos) {
+        SimpleBlockGraph graph = loadedGraphs.get(graphId);
+        return graph != null && graph.isLinkTickScheduled(pos);
+    }
+
+    @Override
+    public long getCurrentTick() {
+        return tickCount;
+    }
+
+    private void handleScheduledTicks() {
+        tickCount++;
+        scheduledTicks.advance(tickCount, this::fireScheduledTick);
+    }
+
+    private void fireScheduledTick(ScheduledTick tick) {
+        // Schedule entries are never cancelled. Instead, they are validated against their graph's own record of the
+        // deadline, which is removed when the entity is removed or unloaded and replaced when an earlier tick is
+        // scheduled.
+        if (tick instanceof ScheduledNodeTick nodeTick) {
+            SimpleBlockGraph graph = findLoadedGraph(nodeTick.graphId(), nodeTick.pos().pos(),
+                g -> g.isNodeTickScheduled(nodeTick.pos()));
+            if (graph == null) return;
+
+            NodeEntity entity = graph.consumeNodeTick(nodeTick.pos(), nodeTick.deadline());
+            if (entity != null) {
+                entity.onScheduledTick();
+            }
+        } else if (tick instanceof ScheduledLinkTick linkTick) {
+            SimpleBlockGraph graph = findLoadedGraph(linkTick.graphId(), linkTick.pos().first().pos(),
+                g -> g.isLinkTickScheduled(linkTick.pos()));
+            if (graph == null) return;
+
+            LinkEntity entity = graph.consumeLinkTick(linkTick.pos(), linkTick.deadline());
+            if (entity != null) {
+                entity.onScheduledTick();
+            }
+        }
+    }
+
+    private @Nullable SimpleBlockGraph findLoadedGraph(long graphId, @NotNull BlockPos pos,
+                                                       @NotNull Predicate<SimpleBlockGraph> matches) {
+        SimpleBlockGraph graph = loadedGraphs.get(graphId);
+        if (graph != null && matches.test(graph)) return graph;
+
+        // the entity may have been moved to another graph by a merge or split since the graph id was recorded
+        for (PrimitiveIterator.OfLong iter = getAllGraphIdsAt(pos).iterator(); iter.hasNext(); ) {
+            graph = loadedGraphs.get(iter.nextLong());
+            if (graph != null && matches.test(graph)) return graph;
+        }
+
+        return null;
+    }
+
     private void handleCallbackUpdates() {
         List<NodeHolder<BlockNode>> toRemove = new ArrayList<>();
         for (CallbackUpdate update : callbackUpdates.values()) {
@@ -1359,7 +1823,13 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
 
     private void continueRebuildingChunks() {
         if (rebuildState != null) {
-            LongSortedSet existingGraphs = getExistingGraphs();
+            LongSortedSet existingGraphs = getGraphsToRebuild(rebuildState.toRebuild, rebuildState.bounds);
+            if (existingGraphs.isEmpty()) {
+                rebuildState.listener.onComplete(0, rebuildState.toRebuild.size());
+                rebuildState = null;
+                return;
+            }
+
             rebuildState.approximateGraphCount = existingGraphs.size();
             rebuildState.finalGraph = existingGraphs.lastLong();
 
@@ -1415,6 +1885,30 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
     private void reAddGraphToChunks(long graphId, LongSet chunkPoses) {
         SimpleBlockGraph graph = loadedGraphs.get(graphId);
 
+        if (graph == null && !recoveredOps.containsKey(graphId)) {
+            // only the sections being rebuilt are needed, so there is no need to decode the whole graph
+            try {
+                byte[] bytes = readGraphBytes(graphId);
+                if (bytes != null && GraphBinaryFormat.isBinary(bytes)) {
+                    GraphBinaryFormat.Reader reader = new GraphBinaryFormat.Reader(universe, bytes);
+                    if (graphIndex.get(graphId) == null) {
+                        // graphs from before the index existed get indexed as rebuilds come across them
+                        graphIndex.put(graphId, StoredGraphs.createIndexEntry(reader.getChunks(), reader.getNodeCount()));
+                    }
+                    reader.readNodesIn(chunkPoses::contains, entry -> {
+                        BlockNode node = reader.decodeNode(entry);
+                        if (node != null) {
+                            reAddNodeToChunk(graphId, new NodePos(entry.pos(), node));
+                        }
+                    });
+                    return;
+                }
+            } catch (IOException e) {
+                GLLog.error("Unable to read the sections of graph {} being rebuilt. Reading the whole graph...",
+                    graphId, e);
+            }
+        }
+
         if (graph == null) {
             graph = readGraph(graphId);
         }
@@ -1424,19 +1918,23 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
         Iterator<NodeHolder<BlockNode>> holderIterator = graph.getNodes().iterator();
         while (holderIterator.hasNext()) {
             NodeHolder<BlockNode> holder = holderIterator.next();
-            ChunkSectionPos sectionPos = ChunkSectionPos.from(holder.getBlockPos());
 
-            if (chunkPoses.contains(sectionPos.asLong())) {
-                SimpleBlockGraphChunk chunk = chunks.getOrCreate(sectionPos);
-                chunk.putGraphWithNode(graphId, holder.getPos(), id -> {
-                    throw new AssertionError(
-                        "This chunk (" + sectionPos +
-                            ") should already have had its node->graph map initialized and should not need to rebuild it. This is a bug.");
-                });
+            if (chunkPoses.contains(ChunkSectionPos.from(holder.getBlockPos()).asLong())) {
+                reAddNodeToChunk(graphId, holder.getPos());
             }
         }
     }
 
+    private void reAddNodeToChunk(long graphId, @NotNull NodePos pos) {
+        ChunkSectionPos sectionPos = ChunkSectionPos.from(pos.pos());
+        SimpleBlockGraphChunk chunk = chunks.getOrCreate(sectionPos);
+        chunk.putGraphWithNode(graphId, pos, id -> {
+            throw new AssertionError(
+                "This chunk (" + sectionPos +
+                    ") should already have had its node->graph map initialized and should not need to rebuild it. This is a bug.");
+        });
+    }
+
     private void tickGraphs() {
         for (SimpleBlockGraph graph : loadedGraphs.values()) {
             graph.onTick();
@@ -1448,158 +1946,336 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
             SimpleBlockGraphChunk chunk = chunks.getIfExists(ChunkSectionPos.from(pos.x, y, pos.z));
             if (chunk != null) {
                 for (long id : chunk.getGraphs()) {
-                    getGraph(id);
+                    if (loadedGraphs.containsKey(id) || !isPrefetchUsable(id)) {
+                        getGraph(id);
+                    } else {
+                        graphPrefetcher.prefetch(id);
+                    }
                 }
             }
         }
     }
 
+    private void installPrefetchedGraphs() {
+        graphPrefetcher.installReady(PREFETCH_INSTALL_BUDGET_NANOS, (id, reader) -> {
+            if (loadedGraphs.containsKey(id)) return;
+
+            SimpleBlockGraph graph = readGraph(id, isPrefetchUsable(id) ? reader : null);
+            if (graph != null) {
+                addLoadedGraph(graph);
+                for (long posLong : graph.chunks) {
+                    useChunkSection(ChunkSectionPos.from(posLong));
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks whether a graph can be loaded from what is in the graph store.
+     * <p>
+     * Graphs with recovered journal operations or snapshots that have not been written yet must be loaded the normal
+     * way.
+     */
+    private boolean isPrefetchUsable(long id) {
+        return !recoveredOps.containsKey(id) && graphWrites.getPending(id) == null;
+    }
+
     private void saveGraphs(@NotNull ChunkPos pos) {
-        LongSet chunkSectionPillar = new LongOpenHashSet(world.getTopSectionCoord() - world.getBottomSectionCoord());
         for (int y = world.getBottomSectionCoord(); y < world.getTopSectionCoord(); y++) {
-            chunkSectionPillar.add(ChunkSectionPos.asLong(pos.x, y, pos.z));
-        }
-
-        for (SimpleBlockGraph loadedGraph : loadedGraphs.values()) {
-            for (long graphChunk : loadedGraph.chunks) {
-                if (chunkSectionPillar.contains(graphChunk)) {
-                    writeGraph(loadedGraph);
-                    unsavedGraphs.remove(loadedGraph.getId());
-                    break;
+            for (long id : residentGraphs.getGraphs(ChunkSectionPos.asLong(pos.x, y, pos.z))) {
+                // graphs that are only journaled are already safe, and graphs in several sections are only saved once
+                if (unsavedGraphs.remove(id)) {
+                    writeGraph(loadedGraphs.get(id));
                 }
             }
         }
     }
 
     private void unloadGraphs() {
+        flushUsedGraphs();
+
         List<ChunkSectionPos> chunksToUnload = timer.chunksToUnload();
         for (ChunkSectionPos chunk : chunksToUnload) {
             // acknowledge that we're unloading the chunk's data
             timer.onChunkUnload(chunk);
+            residentGraphs.unloadSection(chunk.asLong());
         }
 
-        if (!chunksToUnload.isEmpty()) {
-            LongSet toUnload = new LongLinkedOpenHashSet();
-
-            for (SimpleBlockGraph graph : loadedGraphs.values()) {
-                // we want to only unload graphs that aren't in any loaded chunks
-                if (graph.chunks.longStream().mapToObj(ChunkSectionPos::from).noneMatch(timer::isChunkLoaded)) {
-                    toUnload.add(graph.getId());
-                }
-            }
-
+        if (residencyBudgeted) {
+            // graphs outside used chunks stay loaded until the budget needs the room
+            evictGraphs();
+        } else if (!chunksToUnload.isEmpty()) {
+            // we want to only unload graphs that aren't in any loaded chunks
+            LongList toUnload = new LongArrayList(residentGraphs.getUnreferencedGraphs());
             for (long id : toUnload) {
-                // unload the graphs
-                SimpleBlockGraph graph = loadedGraphs.remove(id);
-                GraphLibEvents.GRAPH_UNLOADING.invoker().graphUnloading(world, this, graph);
-                graph.onUnload();
-                writeGraph(graph);
-                unsavedGraphs.remove(id);
+                unloadGraph(id);
             }
         }
     }
 
-    private void saveUnsvedGraphs() {
-        if (unsavedGraphs.isEmpty() || !(saveMode == SaveMode.INCREMENTAL || saveMode == SaveMode.IMMEDIATE)) return;
-
-        int saveCount;
-        if (saveMode == SaveMode.IMMEDIATE) {
-            saveCount = unsavedGraphs.size();
-        } else {
-            saveCount = (unsavedGraphs.size() + INCREMENTAL_SAVE_FACTOR - 1) / INCREMENTAL_SAVE_FACTOR;
-        }
-
-        LongIterator iter = unsavedGraphs.longIterator();
-        while (iter.hasNext() && saveCount > 0) {
-            SimpleBlockGraph graph = loadedGraphs.get(iter.nextLong());
-
-            if (graph != null) {
-                writeGraph(graph);
-                saveCount--;
+    private void evictGraphs() {
+        for (int i = 0; i < MAX_EVICTION_CHECKS_PER_TICK && residency.isOverBudget(); i++) {
+            long id = residency.getLeastRecentlyUsed();
+            SimpleBlockGraph graph = loadedGraphs.get(id);
+            if (isInWorldLoadedChunk(graph)) {
+                // graphs in loaded chunks are in use, so move them out of the way of the next checks
+                residency.use(id, graph.size());
+            } else {
+                unloadGraph(id);
             }
-
-            iter.remove();
         }
     }
 
-    private void saveAllGraphs() {
-        for (SimpleBlockGraph graph : loadedGraphs.values()) {
-            writeGraph(graph);
+    private boolean isInWorldLoadedChunk(@NotNull SimpleBlockGraph graph) {
+        for (long posLong : graph.chunks) {
+            ChunkPos pos = new ChunkPos(ChunkSectionPos.unpackX(posLong), ChunkSectionPos.unpackZ(posLong));
+            if (timer.isWorldChunkLoaded(pos)) return true;
         }
-        unsavedGraphs.clear();
+        return false;
     }
 
-    private long getNextGraphId() {
-        do {
-            prevGraphId++;
-        } while (graphExists(prevGraphId));
-        markStateDirty();
-        return prevGraphId;
+    private void unloadGraph(long id) {
+        SimpleBlockGraph graph = loadedGraphs.remove(id);
+        residentGraphs.removeGraph(id, graph.chunks);
+        residency.remove(id);
+        GraphLibEvents.GRAPH_UNLOADING.invoker().graphUnloading(world, this, graph);
+        graph.onUnload();
+        writeGraph(graph);
+        unsavedGraphs.forget(id);
     }
 
-    private boolean graphExists(long id) {
-        return loadedGraphs.containsKey(id) || Files.exists(getGraphFile(id));
+    private void addLoadedGraph(@NotNull SimpleBlockGraph graph) {
+        loadedGraphs.put(graph.getId(), graph);
+        residentGraphs.addGraph(graph.getId(), graph.chunks);
+        residency.use(graph.getId(), graph.size());
     }
 
-    private @NotNull Path getGraphFile(long id) {
-        return graphsDir.resolve(String.format("%016X.dat", id));
+    private void markUsed(@NotNull SimpleBlockGraph graph) {
+        if (graph.useEpoch == useEpoch) return;
+
+        graph.useEpoch = useEpoch;
+        usedGraphs.add(graph.getId());
+        residency.use(graph.getId(), graph.size());
     }
 
-    private static final Pattern GRAPH_ID_PATTERN = Pattern.compile("^(?<id>[\\da-fA-F]+)\\.dat$");
+    private void flushUsedGraphs() {
+        for (LongIterator iter = usedGraphs.iterator(); iter.hasNext(); ) {
+            // graphs may have been unloaded or destroyed since they were used
+            SimpleBlockGraph graph = loadedGraphs.get(iter.nextLong());
+            if (graph != null) {
+                for (long posLong : graph.chunks) {
+                    useChunkSection(ChunkSectionPos.from(posLong));
+                }
+            }
+        }
 
-    private @NotNull LongSortedSet getExistingGraphs() {
-        LongSortedSet ids = new LongRBTreeSet(Long::compareUnsigned);
-        ids.addAll(loadedGraphs.keySet());
+        usedGraphs.clear();
+        useEpoch++;
+    }
 
-        try (Stream<Path> children = Files.list(graphsDir)) {
-            children.forEach(child -> {
-                String filename = child.getFileName().toString();
-                Matcher matcher = GRAPH_ID_PATTERN.matcher(filename);
+    private void useChunkSection(@NotNull ChunkSectionPos pos) {
+        timer.onChunkUse(pos);
+        residentGraphs.loadSection(pos.asLong());
+    }
 
-                if (matcher.matches()) {
-                    try {
-                        long id = Long.parseLong(matcher.group("id"), 16);
-                        ids.add(id);
-                    } catch (NumberFormatException e) {
-                        GLLog.warn("Encountered NumberFormatException while parsing graph id from filename: {}",
-                            filename, e);
-                    }
-                } else {
-                    GLLog.warn("Encountered non-graph file in graphs dir: {}", child);
-                }
-            });
-        } catch (IOException e) {
-            GLLog.error("Error listing children of {}", graphsDir, e);
+    private void saveUnsavedGraph(long id) {
+        SimpleBlockGraph graph = loadedGraphs.get(id);
+        if (graph != null) {
+            writeGraph(graph);
+        }
+    }
+
+    private void saveAllUnsavedGraphs() {
+        // changes to all other loaded graphs are already in the journal and get snapshotted at the next checkpoint
+        List<SimpleBlockGraph> graphs = new ArrayList<>(unsavedGraphs.size());
+        for (LongIterator iter = unsavedGraphs.takeAll().iterator(); iter.hasNext(); ) {
+            SimpleBlockGraph graph = loadedGraphs.get(iter.nextLong());
+            if (graph != null) {
+                graphs.add(graph);
+            }
         }
+        writeGraphs(graphs);
+    }
 
+    private long getNextGraphId() {
+        prevGraphId = allocatedGraphIds.nextAbsent(prevGraphId + 1);
+        allocatedGraphIds.add(prevGraphId);
+        markStateDirty();
+        return prevGraphId;
+    }
+
+    private @NotNull LongSortedSet getExistingGraphs() {
+        // collect pending operations first, so that any that finish while we're reading the store's ids are still seen
+        LongSet written = new LongOpenHashSet();
+        LongSet deleted = new LongOpenHashSet();
+        graphWrites.forEachPending(written::add, deleted::add);
+
+        LongSortedSet ids = new LongRBTreeSet(Long::compareUnsigned);
+        graphStore.forEachId(ids::add);
+        ids.addAll(written);
+        ids.removeAll(deleted);
+        for (Long2ObjectMap.Entry<List<GraphJournalOps.Entry>> entry : recoveredOps.long2ObjectEntrySet()) {
+            if (GraphJournalOps.isDestroyed(entry.getValue())) {
+                ids.remove(entry.getLongKey());
+            } else {
+                ids.add(entry.getLongKey());
+            }
+        }
+        ids.addAll(loadedGraphs.keySet());
         return ids;
     }
 
+    /**
+     * Gets the graphs that may be in the given chunk sections. Graphs that the index knows are elsewhere are skipped.
+     */
+    private @NotNull LongSortedSet getGraphsToRebuild(@NotNull LongSet sections, @NotNull GraphIndex.Box bounds) {
+        LongSortedSet ids = getExistingGraphs();
+        LongBidirectionalIterator iter = ids.iterator();
+        while (iter.hasNext()) {
+            GraphIndex.Entry entry = getIndexEntry(iter.nextLong());
+            if (entry != null && !entry.intersects(sections, bounds)) {
+                iter.remove();
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Gets a graph's index entry, if the graph is not loaded and its entry describes its latest snapshot.
+     */
+    private @Nullable GraphIndex.Entry getIndexEntry(long id) {
+        // the index does not know about changes to loaded graphs or journal operations that were never snapshotted
+        if (loadedGraphs.containsKey(id) || recoveredOps.containsKey(id)) return null;
+        return graphIndex.get(id);
+    }
+
+    private void saveGraphIndex() {
+        try {
+            graphIndex.save(graphIndexFile, journal.getNextSeq());
+        } catch (IOException e) {
+            GLLog.error("Error saving graph index.", e);
+
+            // an old index could be mistaken for an up-to-date one
+            try {
+                Files.deleteIfExists(graphIndexFile);
+            } catch (IOException e1) {
+                GLLog.error("Error deleting out-of-date graph index.", e1);
+            }
+        }
+    }
+
     private void writeGraph(@NotNull SimpleBlockGraph graph) {
-        Path graphFile = getGraphFile(graph.getId());
+        // only the encoding happens on the server thread, compression and writing happen on the graph writer thread
+        writeGraph(graph, prepareSnapshot());
+    }
 
-        NbtCompound root = new NbtCompound();
-        root.put("data", graph.toTag());
+    /**
+     * Writes many graphs at once.
+     * <p>
+     * Graphs are encoded one at a time on the server thread, as block nodes and entities are not required to be safe to
+     * encode from other threads. Only compressing and writing them happens in parallel, on the graph writer thread.
+     */
+    private void writeGraphs(@NotNull Collection<SimpleBlockGraph> graphs) {
+        if (graphs.isEmpty()) return;
+
+        // every snapshot includes every operation recorded so far
+        long journalSeq = prepareSnapshot();
+
+        for (SimpleBlockGraph graph : graphs) {
+            writeGraph(graph, journalSeq);
+        }
+    }
+
+    private void writeGraph(@NotNull SimpleBlockGraph graph, long journalSeq) {
+        long id = graph.getId();
+
+        byte[] bytes;
+        try {
+            bytes = graph.toBinary(journalSeq);
+        } catch (RuntimeException e) {
+            // one broken node shouldn't stop every other graph from saving
+            GLLog.error("Unable to save graph {}. Skipping it...", id, e);
+            return;
+        }
+
+        writeGraphBytes(id, bytes);
+    }
+
+    private void writeGraphData(long id, @NotNull NbtCompound data) {
+        writeGraphBytes(id, GraphBinaryFormat.fromTag(data, prepareSnapshot()));
+    }
+
+    /**
+     * Gets ready to take snapshots of graphs.
+     *
+     * @return the sequence number of the last journal operation the snapshots will include.
+     */
+    private long prepareSnapshot() {
+        // a snapshot must never reach the store ahead of the journal operations that came before it
+        flushJournalBuffer(false);
+
+        // the snapshot includes every operation recorded so far
+        return journal.getNextSeq() - 1;
+    }
+
+    private void writeGraphBytes(long id, @NotNull byte[] bytes) {
+        graphWrites.write(id, bytes);
+        journaledGraphs.remove(id);
+        recoveredOps.remove(id);
+
+        GraphIndex.Entry indexEntry = createIndexEntry(id, bytes);
+        if (indexEntry != null) {
+            graphIndex.put(id, indexEntry);
+        } else {
+            graphIndex.remove(id);
+        }
+    }
 
-        try (OutputStream os = Files.newOutputStream(graphFile)) {
-            NbtIo.writeCompressed(root, os);
+    private @Nullable GraphIndex.Entry createIndexEntry(long id, @NotNull byte[] bytes) {
+        try {
+            GraphBinaryFormat.Reader reader = new GraphBinaryFormat.Reader(universe, bytes);
+            return StoredGraphs.createIndexEntry(reader.getChunks(), reader.getNodeCount());
         } catch (IOException e) {
-            GLLog.error("Unable to save graph {}.", graph.getId(), e);
+            GLLog.error("Unable to index graph {}.", id, e);
+            return null;
         }
     }
 
+    private void deleteStoredGraph(long id) {
+        graphWrites.delete(id);
+        graphIndex.remove(id);
+    }
+
     @Nullable
     private SimpleBlockGraph readGraph(long id) {
-        Path graphFile = getGraphFile(id);
+        return readGraph(id, null);
+    }
 
-        if (!Files.exists(graphFile)) {
-            return null;
-        }
+    /**
+     * Loads a graph, using the given prefetched reader if there is one.
+     */
+    @Nullable
+    private SimpleBlockGraph readGraph(long id, @Nullable GraphBinaryFormat.Reader prefetched) {
+        try {
+            SimpleBlockGraph graph;
+            byte[] bytes = prefetched != null || recoveredOps.containsKey(id) ? null : readGraphBytes(id);
+            if (prefetched != null) {
+                graph = SimpleBlockGraph.fromBinary(this, id, prefetched);
+            } else if (bytes != null && GraphBinaryFormat.isBinary(bytes)) {
+                // nothing to replay, so the graph can be decoded directly
+                graph = SimpleBlockGraph.fromBinary(this, id, new GraphBinaryFormat.Reader(universe, bytes));
+            } else {
+                NbtCompound data = readGraphData(id);
+                if (data == null) {
+                    return null;
+                }
+
+                graph = SimpleBlockGraph.fromTag(this, id, data);
+            }
+
+            // the loaded graph now holds these changes, and gets written out when it unloads
+            recoveredOps.remove(id);
 
-        try (InputStream is = Files.newInputStream(graphFile)) {
-            NbtCompound root = NbtIo.readCompressed(is);
-            NbtCompound data = root.getCompound("data");
-            SimpleBlockGraph graph = SimpleBlockGraph.fromTag(this, id, data);
             if (graph.isEmpty()) {
                 GLLog.warn(
                     "Loaded empty graph! The graph's nodes probably failed to load. Removing graph... Id: {}, chunks: {}",
@@ -1611,31 +2287,430 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
             } else {
                 return graph;
             }
+        } catch (GraphBinaryFormat.UnsupportedVersionException e) {
+            // the graph is most likely fine, just not readable by this version, so it is kept
+            GLLog.error("Unable to load graph {}. Skipping it without removing it...", id, e);
+            return null;
         } catch (IOException e) {
             GLLog.error("Unable to load graph {}. Removing graph...", id, e);
 
-            if (Files.exists(graphFile)) {
-                try {
-                    Files.delete(graphFile);
-                } catch (IOException ex) {
-                    GLLog.error("Error deleting broken graph file: {}", graphFile, ex);
+            journaledGraphs.remove(id);
+            recoveredOps.remove(id);
+            deleteStoredGraph(id);
+
+            return null;
+        }
+    }
+
+    /**
+     * Reads a graph's latest snapshot and applies any recovered journal operations to it.
+     *
+     * @param id the id of the graph to read.
+     * @return the graph's data, or <code>null</code> if the graph does not exist.
+     * @throws IOException if an error occurs while reading the graph.
+     */
+    private @Nullable NbtCompound readGraphData(long id) throws IOException {
+        byte[] bytes = readGraphBytes(id);
+
+        NbtCompound data = null;
+        long journalSeq = Long.MIN_VALUE;
+        if (bytes != null) {
+            if (GraphBinaryFormat.isBinary(bytes)) {
+                GraphBinaryFormat.Reader reader = new GraphBinaryFormat.Reader(universe, bytes);
+                journalSeq = reader.getJournalSeq();
+                data = GraphBinaryFormat.toTag(reader);
+            } else {
+                // graphs saved as NBT, from before the binary format existed
+                NbtCompound root = NbtIo.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+                // snapshots from before the journal existed don't include any of its operations
+                journalSeq = root.contains("journalSeq", NbtElement.LONG_TYPE) ? root.getLong("journalSeq") : -1;
+                data = root.getCompound("data");
+            }
+        }
+
+        List<GraphJournalOps.Entry> ops = recoveredOps.get(id);
+        if (ops == null) {
+            return data;
+        }
+
+        // the graph may have been created after its last snapshot, if it ever had one
+        return GraphJournalOps.replay(data != null ? data : new NbtCompound(), ops, journalSeq);
+    }
+
+    /**
+     * Reads a graph's latest snapshot, uncompressed.
+     */
+    private @Nullable byte[] readGraphBytes(long id) throws IOException {
+        // the store may not have caught up with the latest save of this graph yet
+        GraphWriteQueue.Pending<byte[]> pending = graphWrites.getPending(id);
+        if (pending != null) {
+            return pending.snapshot();
+        }
+
+        return readStoredGraphBytes(id);
+    }
+
+    /**
+     * Reads a graph's snapshot from the graph store, uncompressed. This is also called by the graph prefetcher's
+     * thread.
+     */
+    private @Nullable byte[] readStoredGraphBytes(long id) throws IOException {
+        byte[] bytes = graphStore.read(id);
+        if (bytes == null) {
+            return null;
+        }
+
+        return StoredGraphs.decompress(bytes);
+    }
+
+    /**
+     * Parses a prefetched graph on the worker pool. Graphs that are not in the binary format are left to be loaded
+     * the normal way.
+     */
+    private @Nullable GraphBinaryFormat.Reader preloadGraph(long id, @NotNull byte[] bytes) throws IOException {
+        if (!GraphBinaryFormat.isBinary(bytes)) return null;
+        return new GraphBinaryFormat.Reader(universe, bytes).preload();
+    }
+
+    /**
+     * Makes a detached copy of a graph, decoding it from storage if it isn't loaded. Nothing about the graph's loaded
+     * state is changed.
+     *
+     * @param id         the id of the graph to copy.
+     * @param prefetched the graph's already parsed stored snapshot, if it was read ahead.
+     * @return the copy, or <code>null</code> if the graph does not exist or could not be read.
+     */
+    private @Nullable SnapshotGraph snapshotGraph(long id, @Nullable GraphBinaryFormat.Reader prefetched) {
+        SimpleBlockGraph loaded = loadedGraphs.get(id);
+        if (loaded != null) {
+            return snapshotLoadedGraph(loaded);
+        }
+
+        try {
+            GraphBinaryFormat.Reader reader = prefetched;
+            if (reader == null) {
+                byte[] bytes = recoveredOps.containsKey(id) ? null : readGraphBytes(id);
+                if (bytes != null && GraphBinaryFormat.isBinary(bytes)) {
+                    reader = new GraphBinaryFormat.Reader(universe, bytes);
+                } else {
+                    NbtCompound data = readGraphData(id);
+                    if (data == null) {
+                        return null;
+                    }
+
+                    // graphs with journal operations or from before the binary format are decoded the same way
+                    reader = new GraphBinaryFormat.Reader(universe, GraphBinaryFormat.fromTag(data, -1));
                 }
             }
 
+            return decodeSnapshotGraph(id, reader);
+        } catch (IOException e) {
+            GLLog.error("Unable to read graph {} for a detached snapshot. Skipping...", id, e);
             return null;
         }
     }
 
-    private void destroyGraphImpl(SimpleBlockGraph graph) {
-        long id = graph.getId();
+    private static @NotNull SnapshotGraph snapshotLoadedGraph(@NotNull SimpleBlockGraph graph) {
+        List<SnapshotNode<BlockNode>> nodes = new ArrayList<>(graph.size());
+        // links are non-directional, so each one is seen from both of its ends
+        Set<LinkPos> links = new LinkedHashSet<>();
+        graph.getNodes().forEach(node -> {
+            nodes.add(node.toSnapshot());
+            for (LinkHolder<LinkKey> link : node.getConnections()) {
+                links.add(link.getPos());
+            }
+        });
 
-        loadedGraphs.remove(id);
-        unsavedGraphs.remove(id);
+        return new SnapshotGraph(graph.getId(), nodes, new ArrayList<>(links), graph.getChunks().toList());
+    }
+
+    private @Nullable SnapshotGraph decodeSnapshotGraph(long id, @NotNull GraphBinaryFormat.Reader reader)
+        throws IOException {
+        List<ChunkSectionPos> chunks = new ArrayList<>();
+        for (LongIterator iter = reader.getChunks().iterator(); iter.hasNext(); ) {
+            chunks.add(ChunkSectionPos.from(iter.nextLong()));
+        }
+
+        int nodeCount = reader.getNodeCount();
+        List<@Nullable SnapshotNode<BlockNode>> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            GraphBinaryFormat.NodeEntry entry = reader.readNode();
+            BlockNode node = reader.decodeNode(entry);
+            // keep the gap so other nodes' links don't get messed up
+            nodes.add(node != null ? new SnapshotNode<>(entry.pos(), node, id) : null);
+        }
+
+        int linkCount = reader.getLinkCount();
+        List<LinkPos> links = new ArrayList<>(linkCount);
+        for (int i = 0; i < linkCount; i++) {
+            GraphBinaryFormat.LinkEntry entry = reader.readLink();
+            SnapshotNode<BlockNode> first = nodes.get(entry.first());
+            SnapshotNode<BlockNode> second = nodes.get(entry.second());
+            if (first != null && second != null) {
+                links.add(new LinkPos(first.pos(), first.node(), second.pos(), second.node(),
+                    reader.decodeLinkKey(entry)));
+            }
+        }
+
+        nodes.removeIf(Objects::isNull);
+        // loading would remove a graph like this, but a snapshot must not change anything, so it is just skipped
+        if (nodes.isEmpty()) {
+            return null;
+        }
+
+        return new SnapshotGraph(id, nodes, links, chunks);
+    }
+
+    private void recoverJournalOp(long graphId, long seq, @NotNull byte[] payload) {
+        try {
+            NbtCompound op = NbtIo.read(new DataInputStream(new ByteArrayInputStream(payload)));
+            recoveredOps.computeIfAbsent(graphId, id -> new ArrayList<>()).add(new GraphJournalOps.Entry(seq, op));
+            journaledGraphs.addTo(graphId, 1);
+        } catch (IOException e) {
+            GLLog.error("Unable to decode graph journal operation for graph {}. Skipping...", graphId, e);
+        }
+    }
+
+    private void appendJournal(long graphId, @NotNull NbtCompound op) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(os)) {
+            NbtIo.write(op, dos);
+        } catch (IOException e) {
+            GLLog.error("Unable to encode graph journal operation for graph {}. Saving the whole graph instead...",
+                graphId, e);
+            markDirty(graphId);
+            return;
+        }
+
+        journal.append(graphId, os.toByteArray());
+
+        if (journaledGraphs.addTo(graphId, 1) + 1 >= MAX_JOURNAL_OPS_PER_GRAPH) {
+            markDirty(graphId);
+        }
+    }
+
+    /**
+     * Records the state of all entities that changed since the last call and writes the journal out, starting a
+     * checkpoint if the journal has grown too large.
+     */
+    private void flushJournal() {
+        for (Object2LongMap.Entry<NodePos> entry : dirtyNodeEntities.object2LongEntrySet()) {
+            NodePos pos = entry.getKey();
+            SimpleBlockGraph graph =
+                findLoadedGraph(entry.getLongValue(), pos.pos(), g -> g.getNodeEntity(pos) != null);
+            if (graph != null) {
+                NbtCompound entity = graph.nodeEntityToTag(pos);
+                if (entity != null) {
+                    appendJournal(graph.getId(), GraphJournalOps.nodeEntity(entity));
+                }
+            }
+        }
+        dirtyNodeEntities.clear();
+
+        for (Object2LongMap.Entry<LinkPos> entry : dirtyLinkEntities.object2LongEntrySet()) {
+            LinkPos pos = entry.getKey();
+            SimpleBlockGraph graph =
+                findLoadedGraph(entry.getLongValue(), pos.first().pos(), g -> g.getLinkEntity(pos) != null);
+            if (graph != null) {
+                NbtCompound entity = graph.linkEntityToTag(pos);
+                if (entity != null) {
+                    appendJournal(graph.getId(), GraphJournalOps.linkEntity(entity));
+                }
+            }
+        }
+        dirtyLinkEntities.clear();
+
+        for (long graphId : dirtyGraphEntities) {
+            SimpleBlockGraph graph = loadedGraphs.get(graphId);
+            if (graph != null) {
+                appendJournal(graphId, GraphJournalOps.graphEntities(graph.graphEntitiesToTag()));
+            }
+        }
+        dirtyGraphEntities.clear();
+
+        flushJournalBuffer(false);
+
+        if (checkpoint != null) {
+            continueCheckpoint();
+        } else if (journal.size() >= JOURNAL_CHECKPOINT_SIZE && snapshotExport == null) {
+            // a snapshot export is still copying the journal, so it has to keep growing until the export is done
+            startCheckpoint();
+        }
+    }
+
+    /**
+     * Lets the chunk storage and graph store go back to normal after a snapshot export has finished.
+     */
+    private void finishSnapshotExport() {
+        SnapshotExport export = snapshotExport;
+        snapshotExport = null;
+
+        chunks.endSnapshot();
+        export.storeSnapshot.close();
+
+        try {
+            export.future.join();
+            GLLog.info("Exported graph storage snapshot to '{}'.", export.target);
+        } catch (CompletionException e) {
+            GLLog.error("Error exporting graph storage snapshot to '{}'.", export.target, e.getCause());
+        }
+    }
+
+    private void flushJournalBuffer(boolean sync) {
+        try {
+            journal.flush(sync);
+        } catch (IOException e) {
+            GLLog.error("Error writing graph journal.", e);
+        }
+    }
+
+    /**
+     * Starts moving the operations in the journal into graph snapshots without blocking.
+     * <p>
+     * The journal moves on to a new segment right away. Loaded graphs with operations in the old segment are
+     * snapshotted now, while unloaded graphs with recovered operations are replayed a few at a time over the following
+     * ticks. The old segment is only deleted once the graph writer reports that all of those snapshots are durable.
+     */
+    private void startCheckpoint() {
+        List<GraphJournal.Segment> segments;
         try {
-            Files.deleteIfExists(getGraphFile(id));
+            segments = journal.rotate();
         } catch (IOException e) {
-            GLLog.error("Error removing graph file. Id: {}", id, e);
+            GLLog.error("Error starting a new graph journal segment.", e);
+            return;
+        }
+
+        LongList toReplay = new LongArrayList();
+        List<SimpleBlockGraph> graphs = new ArrayList<>();
+        for (long id : journaledGraphs.keySet()) {
+            SimpleBlockGraph graph = loadedGraphs.get(id);
+            if (graph != null) {
+                graphs.add(graph);
+            } else {
+                toReplay.add(id);
+            }
+        }
+        for (SimpleBlockGraph graph : graphs) {
+            unsavedGraphs.remove(graph.getId());
         }
+        writeGraphs(graphs);
+
+        checkpoint = new Checkpoint(segments, toReplay);
+    }
+
+    private void continueCheckpoint() {
+        Checkpoint cp = checkpoint;
+
+        if (cp.durable == null) {
+            for (int i = 0; i < MAX_GRAPHS_REPLAYED_PER_TICK && cp.nextReplay < cp.toReplay.size(); i++) {
+                long id = cp.toReplay.getLong(cp.nextReplay++);
+
+                // the graph may have been loaded, saved, or destroyed since the checkpoint started
+                if (!journaledGraphs.containsKey(id)) continue;
+
+                SimpleBlockGraph graph = loadedGraphs.get(id);
+                if (graph != null) {
+                    unsavedGraphs.remove(id);
+                    writeGraph(graph);
+                } else {
+                    writeRecoveredGraph(id);
+                }
+            }
+            if (cp.nextReplay < cp.toReplay.size()) return;
+
+            // the old segments are only needed until everything they describe has reached the store
+            cp.durable = graphWrites.flushAsync().thenRun(() -> cp.segments.forEach(GraphJournal.Segment::seal));
+            return;
+        }
+
+        // a snapshot export may still be copying the old segments
+        if (!cp.durable.isDone() || snapshotExport != null) return;
+
+        checkpoint = null;
+        try {
+            cp.durable.join();
+        } catch (CompletionException e) {
+            // the old segments are replayed on the next start, which is harmless for anything that did get saved
+            GLLog.error("Error flushing graph snapshots for a checkpoint. Keeping the old graph journal segments...",
+                e.getCause());
+            return;
+        }
+
+        // the index must be saved before the old segments are deleted, or it will be considered out of date
+        saveGraphIndex();
+        try {
+            journal.deleteSealed(cp.segments);
+        } catch (IOException e) {
+            GLLog.error("Error deleting old graph journal segments.", e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of every graph with operations in the journal, waits for them to reach the store, and then
+     * clears the journal. This blocks, so it is only used when closing.
+     */
+    private void checkpointNow() {
+        // anything a checkpoint in progress hasn't saved yet is still in the journal, and gets saved here
+        checkpoint = null;
+
+        LongList ids = new LongArrayList(journaledGraphs.keySet());
+        List<SimpleBlockGraph> graphs = new ArrayList<>();
+        for (long id : ids) {
+            SimpleBlockGraph graph = loadedGraphs.get(id);
+            if (graph != null) {
+                graphs.add(graph);
+                unsavedGraphs.remove(id);
+            } else {
+                writeRecoveredGraph(id);
+            }
+        }
+        writeGraphs(graphs);
+
+        // the journal can only be cleared once everything it describes has reached the store
+        graphWrites.flush(true);
+        // the index must be saved before every reset, or it will be considered out of date
+        saveGraphIndex();
+        try {
+            journal.reset();
+        } catch (IOException e) {
+            GLLog.error("Error clearing graph journal.", e);
+        }
+    }
+
+    private void writeRecoveredGraph(long id) {
+        try {
+            NbtCompound data = readGraphData(id);
+            if (data != null) {
+                writeGraphData(id, data);
+            } else {
+                deleteStoredGraph(id);
+            }
+        } catch (GraphBinaryFormat.UnsupportedVersionException e) {
+            GLLog.error("Unable to apply the graph journal to graph {}. Keeping the graph as it was stored...", id, e);
+        } catch (IOException e) {
+            GLLog.error("Unable to apply the graph journal to graph {}. Removing graph...", id, e);
+            deleteStoredGraph(id);
+        }
+
+        journaledGraphs.remove(id);
+        recoveredOps.remove(id);
+    }
+
+    private void destroyGraphImpl(SimpleBlockGraph graph) {
+        long id = graph.getId();
+
+        loadedGraphs.remove(id);
+        residentGraphs.removeGraph(id, graph.chunks);
+        residency.remove(id);
+        unsavedGraphs.forget(id);
+
+        // without this, a crash could bring the graph back from its journaled operations
+        appendJournal(id, GraphJournalOps.destroy());
+        journaledGraphs.remove(id);
+        recoveredOps.remove(id);
+        flushJournalBuffer(false);
+
+        deleteStoredGraph(id);
 
         for (long sectionPos : graph.chunks) {
             SimpleBlockGraphChunk chunk = chunks.getIfExists(ChunkSectionPos.from(sectionPos));
@@ -1663,6 +2738,14 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
                 NbtCompound root = NbtIo.readCompressed(is);
                 NbtCompound data = root.getCompound("data");
                 prevGraphId = data.getLong("prevGraphId");
+                savedJournalSeq = data.getLong("journalSeq");
+                if (data.contains("allocatedGraphIds", NbtElement.LONG_ARRAY_TYPE)) {
+                    try {
+                        allocatedGraphIds.addAll(LongRangeSet.fromRangeArray(data.getLongArray("allocatedGraphIds")));
+                    } catch (IllegalArgumentException e) {
+                        GLLog.warn("Invalid allocated graph ids in graph controller state file. Rebuilding...", e);
+                    }
+                }
             } catch (Exception e) {
                 GLLog.error("Error loading graph controller state file.", e);
             }
@@ -1670,13 +2753,12 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
     }
 
     private void saveState() {
-        if (stateDirty) {
-            NbtCompound root = new NbtCompound();
-
-            NbtCompound data = new NbtCompound();
-            data.putLong("prevGraphId", prevGraphId);
+        if (journal.getNextSeq() != savedJournalSeq) {
+            markStateDirty();
+        }
 
-            root.put("data", data);
+        if (stateDirty) {
+            NbtCompound root = createStateTag();
 
             if (!Files.exists(stateFile.getParent())) {
                 try {
@@ -1693,10 +2775,23 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
                 return;
             }
 
+            savedJournalSeq = journal.getNextSeq();
             stateDirty = false;
         }
     }
 
+    private @NotNull NbtCompound createStateTag() {
+        NbtCompound root = new NbtCompound();
+
+        NbtCompound data = new NbtCompound();
+        data.putLong("prevGraphId", prevGraphId);
+        data.putLongArray("allocatedGraphIds", allocatedGraphIds.toRangeArray());
+        data.putLong("journalSeq", journal.getNextSeq());
+
+        root.put("data", data);
+        return root;
+    }
+
     private void logRebuildChunksSuggestion(BlockPos affected) {
         GLLog.info(
             "Use the command '/graphlib {} rebuildchunks {} {} {} {} {} {}' in the {} dimension to fix the issue.",
@@ -1713,17 +2808,122 @@ public class SimpleServerGraphWorld implements AutoCloseable, GraphWorld, Server
 
     private record CallbackUpdate(NodeHolder<BlockNode> holder, boolean validate) {}
 
+    private sealed interface ScheduledTick {}
+
+    private record ScheduledNodeTick(long graphId, NodePos pos, long deadline) implements ScheduledTick {}
+
+    private record ScheduledLinkTick(long graphId, LinkPos pos, long deadline) implements ScheduledTick {}
+
+    private record SnapshotExport(CompletableFuture<Void> future, SegmentGraphStore.Snapshot storeSnapshot,
+                                  Path target) {}
+
+    private static class Checkpoint {
+        final List<GraphJournal.Segment> segments;
+        final LongList toReplay;
+        int nextReplay = 0;
+        CompletableFuture<Void> durable = null;
+
+        Checkpoint(List<GraphJournal.Segment> segments, LongList toReplay) {
+            this.segments = segments;
+            this.toReplay = toReplay;
+        }
+    }
+
+    /**
+     * Copies graphs a batch at a time, so that at most one batch of detached graphs is held at once.
+     */
+    private class GraphSnapshotIterator implements Iterator<SnapshotGraph> {
+        private final LongList ids;
+        private final boolean parallel;
+        private final List<SnapshotGraph> batch = new ObjectArrayList<>();
+        private int nextId = 0;
+        private int batchIndex = 0;
+
+        private GraphSnapshotIterator(@NotNull LongList ids, boolean parallel) {
+            this.ids = ids;
+            this.parallel = parallel;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (batchIndex >= batch.size()) {
+                if (nextId >= ids.size()) {
+                    return false;
+                }
+                fillBatch();
+            }
+            return true;
+        }
+
+        @Override
+        public SnapshotGraph next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.get(batchIndex++);
+        }
+
+        private void fillBatch() {
+            batch.clear();
+            batchIndex = 0;
+
+            int end = Math.min(ids.size(), nextId + GRAPH_SNAPSHOT_BATCH_SIZE);
+            LongList batchIds = ids.subList(nextId, end);
+            nextId = end;
+
+            Long2ObjectMap<GraphBinaryFormat.Reader> prefetched = new Long2ObjectOpenHashMap<>();
+            if (parallel) {
+                // only graphs that are nothing but their stored snapshot can be read off the server thread
+                LongList stored = new LongArrayList();
+                for (LongIterator iter = batchIds.iterator(); iter.hasNext(); ) {
+                    long id = iter.nextLong();
+                    if (!loadedGraphs.containsKey(id) && !recoveredOps.containsKey(id) &&
+                        graphWrites.getPending(id) == null) {
+                        stored.add(id);
+                    }
+                }
+
+                List<GraphBinaryFormat.Reader> readers = SavePool.map(stored, this::prefetch);
+                for (int i = 0; i < readers.size(); i++) {
+                    if (readers.get(i) != null) {
+                        prefetched.put(stored.getLong(i), readers.get(i));
+                    }
+                }
+            }
+
+            for (LongIterator iter = batchIds.iterator(); iter.hasNext(); ) {
+                long id = iter.nextLong();
+                SnapshotGraph snapshot = snapshotGraph(id, prefetched.get(id));
+                if (snapshot != null) {
+                    batch.add(snapshot);
+                }
+            }
+        }
+
+        private @Nullable GraphBinaryFormat.Reader prefetch(long id) {
+            try {
+                byte[] bytes = readStoredGraphBytes(id);
+                return bytes != null ? preloadGraph(id, bytes) : null;
+            } catch (IOException e) {
+                // read again on the server thread, which reports the error
+                return null;
+            }
+        }
+    }
+
     private static class ChunkRebuildState {
         final LongSet toRebuild;
+        final GraphIndex.Box bounds;
         final RebuildChunksListener listener;
         long finalGraph;
         long nextGraph;
         int approximateGraphCount;
         int ticksSinceLastProgressReport = 0;
 
-        ChunkRebuildState(LongSet toRebuild, RebuildChunksListener listener, long finalGraph,
+        ChunkRebuildState(LongSet toRebuild, GraphIndex.Box bounds, RebuildChunksListener listener, long finalGraph,
                           long nextGraph, int approximateGraphCount) {
             this.toRebuild = toRebuild;
+            this.bounds = bounds;
             this.listener = listener;
             this.finalGraph = finalGraph;
             this.nextGraph = nextGraph;
@@ -0,0 +1,139 @@
+package com.kneelawk.graphlib.impl.graph.simple;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jetbrains.annotations.NotNull;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.shorts.ShortOpenHashSet;
+import it.unimi.dsi.fastutil.shorts.ShortSet;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+import com.kneelawk.graphlib.impl.graph.store.GraphIndex;
+
+/**
+ * Helpers for graphs as they are kept in the graph store, usable without a graph universe.
+ * <p>
+ * Nothing here decodes block nodes or link keys, so graphs can be inspected without the mods that define their types.
+ */
+public final class StoredGraphs {
+    private StoredGraphs() {}
+
+    /**
+     * Compresses a graph's snapshot for the graph store.
+     *
+     * @param bytes the uncompressed snapshot.
+     * @return the compressed snapshot.
+     * @throws IOException if an error occurs while compressing.
+     */
+    public static @NotNull byte[] compress(@NotNull byte[] bytes) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(bytes.length / 2 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(os)) {
+            gzip.write(bytes);
+        }
+        return os.toByteArray();
+    }
+
+    /**
+     * Decompresses a graph's snapshot read from the graph store.
+     *
+     * @param bytes the compressed snapshot.
+     * @return the uncompressed snapshot.
+     * @throws IOException if an error occurs while decompressing.
+     */
+    public static @NotNull byte[] decompress(@NotNull byte[] bytes) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return gzip.readAllBytes();
+        }
+    }
+
+    /**
+     * Checks whether an uncompressed snapshot is in the binary format, as opposed to a legacy NBT graph.
+     *
+     * @param bytes the uncompressed snapshot.
+     * @return <code>true</code> if the snapshot is in the binary format.
+     */
+    public static boolean isBinary(@NotNull byte[] bytes) {
+        return GraphBinaryFormat.isBinary(bytes);
+    }
+
+    /**
+     * Converts a legacy NBT snapshot to the binary format. Snapshots already in the binary format are returned as-is.
+     *
+     * @param bytes the uncompressed snapshot.
+     * @return the uncompressed snapshot in the binary format.
+     * @throws IOException if the snapshot cannot be read.
+     */
+    public static @NotNull byte[] toBinary(@NotNull byte[] bytes) throws IOException {
+        if (GraphBinaryFormat.isBinary(bytes)) return bytes;
+
+        NbtCompound root = NbtIo.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        // snapshots from before the journal existed don't include any of its operations
+        long journalSeq = root.contains("journalSeq", NbtElement.LONG_TYPE) ? root.getLong("journalSeq") : -1;
+        return GraphBinaryFormat.fromTag(root.getCompound("data"), journalSeq);
+    }
+
+    /**
+     * Reads the structure of a graph: where its nodes are and how many links it has.
+     *
+     * @param bytes the uncompressed snapshot, in either format.
+     * @return the graph's structure.
+     * @throws IOException if the snapshot cannot be read.
+     */
+    public static @NotNull Summary summarize(@NotNull byte[] bytes) throws IOException {
+        GraphBinaryFormat.Reader reader = new GraphBinaryFormat.Reader(null, toBinary(bytes));
+
+        Long2ObjectMap<ShortSet> nodes = new Long2ObjectOpenHashMap<>();
+        for (int i = 0; i < reader.getNodeCount(); i++) {
+            BlockPos pos = reader.readNode().pos();
+            long section = ChunkSectionPos.asLong(ChunkSectionPos.getSectionCoord(pos.getX()),
+                ChunkSectionPos.getSectionCoord(pos.getY()), ChunkSectionPos.getSectionCoord(pos.getZ()));
+            nodes.computeIfAbsent(section, s -> new ShortOpenHashSet()).add(ChunkSectionPos.packLocal(pos));
+        }
+
+        return new Summary(reader.getJournalSeq(), reader.getChunks(), reader.getNodeCount(), reader.getLinkCount(),
+            nodes);
+    }
+
+    /**
+     * Creates a graph's entry in the {@link GraphIndex}.
+     *
+     * @param sections  the chunk sections the graph is in.
+     * @param nodeCount the number of nodes in the graph.
+     * @return the graph's index entry.
+     */
+    public static @NotNull GraphIndex.Entry createIndexEntry(@NotNull LongCollection sections, int nodeCount) {
+        GraphIndex.Box bounds = GraphIndex.Box.EMPTY;
+        for (long section : sections) {
+            bounds = bounds.include(ChunkSectionPos.unpackX(section), ChunkSectionPos.unpackY(section),
+                ChunkSectionPos.unpackZ(section));
+        }
+        return new GraphIndex.Entry(sections.toLongArray(), nodeCount, bounds);
+    }
+
+    /**
+     * The structure of a stored graph.
+     *
+     * @param journalSeq the sequence number of the last journal operation included in the snapshot.
+     * @param chunks     the chunk sections the graph says it is in.
+     * @param nodeCount  the number of nodes in the graph.
+     * @param linkCount  the number of links in the graph.
+     * @param nodes      the chunk sections the graph's nodes are actually in, with the local positions of the nodes in
+     *                   each, as packed by {@link ChunkSectionPos#packLocal(BlockPos)}.
+     */
+    public record Summary(long journalSeq, @NotNull LongSet chunks, int nodeCount, int linkCount,
+                          @NotNull Long2ObjectMap<ShortSet> nodes) {}
+}
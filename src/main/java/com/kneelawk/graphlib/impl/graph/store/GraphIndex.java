@@ -0,0 +1,236 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import com.kneelawk.graphlib.impl.GLLog;
+import com.kneelawk.graphlib.impl.util.VarInts;
+
+/**
+ * A persistent index of what is in each stored graph, so that graphs do not have to be decoded to find out which chunk
+ * sections they are in or whether they are empty.
+ * <p>
+ * The index is only a cache. Graphs without an entry must be read to find out about them. The index is saved along with
+ * the journal sequence number at the time, and is discarded on load if the journal has been reset since, as graphs may
+ * have been changed without the index being saved.
+ */
+public final class GraphIndex {
+    private static final int MAGIC = 0x474C4958; // GLIX
+    private static final int VERSION = 1;
+
+    private final Long2ObjectMap<Entry> entries = new Long2ObjectOpenHashMap<>();
+    private boolean dirty = false;
+
+    /**
+     * Loads an index, returning an empty index if it is missing, corrupt, or out of date.
+     *
+     * @param path          the index file.
+     * @param minJournalSeq the journal's base sequence number. Indices saved before this are out of date.
+     * @return the loaded index.
+     */
+    public static @NotNull GraphIndex load(@NotNull Path path, long minJournalSeq) {
+        GraphIndex index = new GraphIndex();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int magic = in.readInt();
+            int version = in.readUnsignedByte();
+            if (magic != MAGIC || version != VERSION) {
+                GLLog.warn("Unrecognized graph index: {} (magic: {}, version: {}). Discarding...", path,
+                    Integer.toHexString(magic), version);
+                return index;
+            }
+
+            long journalSeq = in.readLong();
+            if (journalSeq < minJournalSeq) {
+                GLLog.info("Graph index {} is out of date. Discarding...", path);
+                return index;
+            }
+
+            int count = VarInts.readUnsignedInt(in);
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                int nodeCount = VarInts.readUnsignedInt(in);
+                long[] sections = new long[VarInts.readUnsignedInt(in)];
+                for (int j = 0; j < sections.length; j++) {
+                    sections[j] = in.readLong();
+                }
+                Box bounds = new Box(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                    in.readInt());
+                index.entries.put(id, new Entry(sections, nodeCount, bounds));
+            }
+        } catch (NoSuchFileException e) {
+            // no index yet
+        } catch (IOException e) {
+            GLLog.warn("Error loading graph index {}. Discarding...", path, e);
+            index.entries.clear();
+        }
+
+        return index;
+    }
+
+    /**
+     * Gets the entry for a graph.
+     *
+     * @param id the id of the graph.
+     * @return the graph's entry, or <code>null</code> if the graph is not in the index.
+     */
+    public @Nullable Entry get(long id) {
+        return entries.get(id);
+    }
+
+    /**
+     * Sets the entry for a graph.
+     *
+     * @param id    the id of the graph.
+     * @param entry the graph's new entry.
+     */
+    public void put(long id, @NotNull Entry entry) {
+        entries.put(id, entry);
+        dirty = true;
+    }
+
+    /**
+     * Removes a graph from the index.
+     *
+     * @param id the id of the graph.
+     */
+    public void remove(long id) {
+        if (entries.remove(id) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * @return the number of graphs in the index.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return whether the index has changed since it was last saved.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Saves the index, replacing the index file atomically.
+     *
+     * @param path       the index file.
+     * @param journalSeq the next journal sequence number. Every graph change before this must be reflected in the
+     *                   index.
+     * @throws IOException if an error occurs while saving the index.
+     */
+    public void save(@NotNull Path path, long journalSeq) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(journalSeq);
+
+            VarInts.writeUnsignedInt(out, entries.size());
+            for (Long2ObjectMap.Entry<Entry> entry : entries.long2ObjectEntrySet()) {
+                Entry value = entry.getValue();
+                out.writeLong(entry.getLongKey());
+                VarInts.writeUnsignedInt(out, value.nodeCount());
+                VarInts.writeUnsignedInt(out, value.sections().length);
+                for (long section : value.sections()) {
+                    out.writeLong(section);
+                }
+                Box bounds = value.bounds();
+                out.writeInt(bounds.minX());
+                out.writeInt(bounds.minY());
+                out.writeInt(bounds.minZ());
+                out.writeInt(bounds.maxX());
+                out.writeInt(bounds.maxY());
+                out.writeInt(bounds.maxZ());
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        dirty = false;
+    }
+
+    /**
+     * What the index knows about a graph.
+     *
+     * @param sections  the chunk sections the graph is in.
+     * @param nodeCount the number of nodes in the graph.
+     * @param bounds    the bounding box of the graph's chunk sections.
+     */
+    public record Entry(@NotNull long[] sections, int nodeCount, @NotNull Box bounds) {
+        /**
+         * Checks whether the graph is in any of the given chunk sections.
+         *
+         * @param sectionSet   the chunk sections to check.
+         * @param sectionBound the bounding box of the chunk sections to check.
+         * @return <code>true</code> if the graph is in any of the given chunk sections.
+         */
+        public boolean intersects(@NotNull LongSet sectionSet, @NotNull Box sectionBound) {
+            if (!bounds.intersects(sectionBound)) return false;
+
+            for (long section : sections) {
+                if (sectionSet.contains(section)) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * An inclusive bounding box in chunk section coordinates.
+     *
+     * @param minX the minimum x coordinate.
+     * @param minY the minimum y coordinate.
+     * @param minZ the minimum z coordinate.
+     * @param maxX the maximum x coordinate.
+     * @param maxY the maximum y coordinate.
+     * @param maxZ the maximum z coordinate.
+     */
+    public record Box(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        /**
+         * A box containing nothing, which can be grown with {@link #include(int, int, int)}.
+         */
+        public static final Box EMPTY =
+            new Box(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE,
+                Integer.MIN_VALUE);
+
+        /**
+         * Gets a box that also contains the given point.
+         *
+         * @param x the x coordinate.
+         * @param y the y coordinate.
+         * @param z the z coordinate.
+         * @return a box containing this box and the given point.
+         */
+        public @NotNull Box include(int x, int y, int z) {
+            return new Box(Math.min(minX, x), Math.min(minY, y), Math.min(minZ, z), Math.max(maxX, x),
+                Math.max(maxY, y), Math.max(maxZ, z));
+        }
+
+        /**
+         * Checks whether this box shares any points with another.
+         *
+         * @param other the other box.
+         * @return <code>true</code> if the boxes overlap.
+         */
+        public boolean intersects(@NotNull Box other) {
+            return minX <= other.maxX && maxX >= other.minX && minY <= other.maxY && maxY >= other.minY &&
+                minZ <= other.maxZ && maxZ >= other.minZ;
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.kneelawk.graphlib.impl.GLLog;
+
+/**
+ * An append-only journal of incremental graph changes.
+ * <p>
+ * Each record holds the id of the graph it applies to, a sequence number, and an opaque payload. Sequence numbers keep
+ * increasing across {@link #reset()}s, so graph snapshots can record the last sequence number they include and skip
+ * older records when replaying.
+ * <p>
+ * Appends are buffered in memory until {@link #flush(boolean)} is called. Records are checksummed, and anything after
+ * the last intact record (e.g. a torn write) is truncated away when the journal is opened.
+ * <p>
+ * Instead of being reset, the journal can be {@link #rotate() rotated}, which seals the current file as a segment next
+ * to it and starts a new one. Sealed segments are replayed before the current file when the journal is opened, until
+ * they are deleted with {@link #deleteSealed(List)}.
+ */
+public final class GraphJournal implements AutoCloseable {
+    private static final int MAGIC = 0x474C4A4E; // GLJN
+    private static final int VERSION = 1;
+    // magic (4) + version (4) + base sequence number (8)
+    private static final int HEADER_SIZE = 16;
+    // length (4) + graph id (8) + sequence number (8) + crc (4)
+    private static final int RECORD_HEADER_SIZE = 24;
+
+    private final Path path;
+    private final Pattern sealedPattern;
+    private FileChannel channel;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream bufferOut = new DataOutputStream(buffer);
+    private long fileSize;
+    private long baseSeq;
+    private long nextSeq;
+
+    /**
+     * Segments that have been sealed but not deleted yet, oldest first. These are read by exports on other threads.
+     */
+    private final List<Segment> sealed = new CopyOnWriteArrayList<>();
+
+    /**
+     * Sealed segments that no {@link #rotate()} has returned yet, which are the ones left over from before the journal
+     * was opened.
+     */
+    private final List<Segment> unclaimed = new ArrayList<>();
+
+    private GraphJournal(@NotNull Path path) {
+        this.path = path;
+        sealedPattern = Pattern.compile(Pattern.quote(path.getFileName().toString()) + "\\.\\d+");
+    }
+
+    /**
+     * Opens the journal at the given path, creating it if it does not exist.
+     *
+     * @param path     the path of the journal file.
+     * @param minSeq   the sequence number to start at if the journal is new. This keeps sequence numbers from going
+     *                 backwards if the journal file was lost.
+     * @param recovery called with every intact record already in the journal, in order.
+     * @return the opened journal.
+     * @throws IOException if an error occurs while reading the journal.
+     */
+    public static @NotNull GraphJournal open(@NotNull Path path, long minSeq, @NotNull RecordConsumer recovery)
+        throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+
+        GraphJournal journal = new GraphJournal(path);
+        long sealedSeq = journal.loadSealed(recovery);
+
+        journal.channel =
+            FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            journal.load(Math.max(minSeq, sealedSeq), recovery);
+        } catch (IOException e) {
+            journal.channel.close();
+            throw e;
+        }
+
+        return journal;
+    }
+
+    /**
+     * Appends a record to the journal's in-memory buffer.
+     *
+     * @param graphId the id of the graph the record applies to.
+     * @param payload the record's payload.
+     * @return the sequence number of the new record.
+     */
+    public long append(long graphId, @NotNull byte[] payload) {
+        long seq = nextSeq++;
+
+        try {
+            bufferOut.writeInt(payload.length);
+            bufferOut.writeLong(graphId);
+            bufferOut.writeLong(seq);
+            bufferOut.writeInt(checksum(graphId, seq, payload));
+            bufferOut.write(payload);
+        } catch (IOException e) {
+            // ByteArrayOutputStreams don't throw
+            throw new AssertionError(e);
+        }
+
+        return seq;
+    }
+
+    /**
+     * Gets the sequence number the next appended record will have.
+     *
+     * @return the next sequence number.
+     */
+    public long getNextSeq() {
+        return nextSeq;
+    }
+
+    /**
+     * Gets the sequence number of the first record that is still kept, in either a sealed segment or the current file.
+     *
+     * @return the base sequence number.
+     */
+    public long getBaseSeq() {
+        return sealed.isEmpty() ? baseSeq : sealed.get(0).baseSeq;
+    }
+
+    /**
+     * Gets the size of the current file, including records that have not been flushed yet. Sealed segments are not
+     * counted.
+     *
+     * @return the size of the current file in bytes.
+     */
+    public long size() {
+        return fileSize + buffer.size();
+    }
+
+    /**
+     * Writes all buffered records to the journal file.
+     *
+     * @param sync whether to also make sure the records have reached the disk. Sealed segments that have not reached
+     *             the disk yet are synced first, so that newer records never survive a crash that older ones don't.
+     * @throws IOException if an error occurs while writing.
+     */
+    public void flush(boolean sync) throws IOException {
+        if (buffer.size() > 0) {
+            ByteBuffer buf = ByteBuffer.wrap(buffer.toByteArray());
+            writeFully(buf, fileSize);
+            fileSize += buf.limit();
+            buffer.reset();
+        }
+
+        if (sync) {
+            for (Segment segment : sealed) {
+                segment.seal();
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Removes all records from this journal, including every sealed segment. Sequence numbers continue from where they
+     * left off.
+     * <p>
+     * This should only be called once everything recorded in this journal has been durably written elsewhere.
+     *
+     * @throws IOException if an error occurs while truncating the journal.
+     */
+    public void reset() throws IOException {
+        buffer.reset();
+        channel.truncate(0);
+        writeHeader(nextSeq);
+        channel.force(false);
+
+        deleteSealed(new ArrayList<>(sealed));
+        unclaimed.clear();
+    }
+
+    /**
+     * Seals the current file as a segment and starts a new one. Sequence numbers continue from where they left off.
+     * <p>
+     * This does not wait for anything to reach the disk. The returned segments must be {@link Segment#seal() sealed},
+     * which can be done on another thread, and are kept until they are passed to {@link #deleteSealed(List)}.
+     *
+     * @return the segment that was just sealed, along with any sealed segments left over from before the journal was
+     * opened that an earlier rotation has not returned yet.
+     * @throws IOException if an error occurs while starting the new file.
+     */
+    public @NotNull List<Segment> rotate() throws IOException {
+        flush(false);
+
+        Path sealedPath = path.resolveSibling(path.getFileName() + "." + baseSeq);
+        // the old channel keeps working after the move, so it can still be synced later
+        Files.move(path, sealedPath, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel newChannel;
+        try {
+            newChannel =
+                FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            Files.move(sealedPath, path, StandardCopyOption.ATOMIC_MOVE);
+            throw e;
+        }
+
+        Segment segment = new Segment(sealedPath, baseSeq, channel);
+        sealed.add(segment);
+        unclaimed.add(segment);
+
+        channel = newChannel;
+        writeHeader(nextSeq);
+
+        List<Segment> claimed = new ArrayList<>(unclaimed);
+        unclaimed.clear();
+        return claimed;
+    }
+
+    /**
+     * Deletes sealed segments.
+     * <p>
+     * This should only be called once everything recorded in the segments has been durably written elsewhere.
+     *
+     * @param segments the segments to delete.
+     * @throws IOException if an error occurs while deleting a segment. Segments that were deleted before the error stay
+     *                     deleted.
+     */
+    public void deleteSealed(@NotNull List<Segment> segments) throws IOException {
+        for (Segment segment : segments) {
+            segment.seal();
+            Files.deleteIfExists(segment.path);
+            sealed.remove(segment);
+        }
+    }
+
+    /**
+     * Copies this journal's sealed segments and the start of its current file to another file, with the sealed
+     * segments next to it.
+     * <p>
+     * This can be called from any thread, as long as the journal is not reset or rotated and no sealed segments are
+     * deleted while the copy is running. Records appended after the given length has been taken are not copied.
+     *
+     * @param target the file to copy the current file to.
+     * @param length the number of bytes to copy, as returned by {@link #size()} after a flush.
+     * @throws IOException if an error occurs while copying.
+     */
+    public void exportTo(@NotNull Path target, long length) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        for (Segment segment : sealed) {
+            Files.copy(segment.path, target.resolveSibling(target.getFileName() + "." + segment.baseSeq),
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            while (position < length) {
+                long copied = channel.transferTo(position, length - position, out);
+                if (copied <= 0) throw new EOFException("Graph journal shrank: " + path);
+                position += copied;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Replays the sealed segments next to the journal file, oldest first.
+     *
+     * @return the sequence number after the last record in the sealed segments, or <code>0</code> if there are none.
+     */
+    private long loadSealed(RecordConsumer recovery) throws IOException {
+        List<Segment> found = new ArrayList<>();
+        try (Stream<Path> children = Files.list(path.toAbsolutePath().getParent())) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                if (sealedPattern.matcher(child.getFileName().toString()).matches()) {
+                    try (FileChannel sealedChannel = FileChannel.open(child, StandardOpenOption.READ)) {
+                        if (sealedChannel.size() < HEADER_SIZE) {
+                            GLLog.warn("Skipping incomplete graph journal segment {}", child);
+                            continue;
+                        }
+                        found.add(new Segment(child, readHeader(sealedChannel, child), null));
+                    }
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong(segment -> segment.baseSeq));
+
+        long seq = 0;
+        for (Segment segment : found) {
+            try (FileChannel sealedChannel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+                long size = sealedChannel.size();
+                ReadResult result = readRecords(sealedChannel, Math.max(seq, segment.baseSeq), size, recovery);
+                if (result.offset < size) {
+                    GLLog.warn("Skipping {} bytes of incomplete data at the end of graph journal segment {}",
+                        size - result.offset, segment.path);
+                }
+                seq = result.nextSeq;
+            }
+            sealed.add(segment);
+            unclaimed.add(segment);
+        }
+
+        return seq;
+    }
+
+    private void load(long minSeq, RecordConsumer recovery) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            // new journal, or crashed while creating it
+            writeHeader(Math.max(0, minSeq));
+            return;
+        }
+
+        baseSeq = readHeader(channel, path);
+
+        ReadResult result = readRecords(channel, baseSeq, size, recovery);
+        nextSeq = result.nextSeq;
+
+        if (result.offset < size) {
+            GLLog.warn("Truncating {} bytes of incomplete data at the end of graph journal {}", size - result.offset,
+                path);
+            channel.truncate(result.offset);
+        }
+        fileSize = result.offset;
+    }
+
+    private static long readHeader(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) throw new EOFException();
+        }
+        header.flip();
+        int magic = header.getInt();
+        int version = header.getInt();
+        if (magic != MAGIC || version != VERSION) {
+            throw new IOException(
+                "Unrecognized graph journal: " + path + " (magic: " + Integer.toHexString(magic) + ", version: " +
+                    version + ")");
+        }
+        return header.getLong();
+    }
+
+    /**
+     * Reads every intact record after the header, stopping at the first one that isn't.
+     */
+    private static ReadResult readRecords(FileChannel channel, long nextSeq, long size, RecordConsumer recovery)
+        throws IOException {
+        long offset = HEADER_SIZE;
+        channel.position(offset);
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 65536));
+        try {
+            while (offset < size) {
+                int length = dis.readInt();
+                long graphId = dis.readLong();
+                long seq = dis.readLong();
+                int crc = dis.readInt();
+                if (length < 0 || length > size - offset - RECORD_HEADER_SIZE || seq < nextSeq) break;
+
+                byte[] payload = new byte[length];
+                dis.readFully(payload);
+                if (checksum(graphId, seq, payload) != crc) break;
+
+                recovery.accept(graphId, seq, payload);
+
+                nextSeq = seq + 1;
+                offset += RECORD_HEADER_SIZE + length;
+            }
+        } catch (EOFException e) {
+            // handled by the caller
+        }
+
+        // Note: the stream is deliberately not closed, as that would close the channel too
+
+        return new ReadResult(offset, nextSeq);
+    }
+
+    private void writeHeader(long baseSeq) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(baseSeq);
+        header.flip();
+        writeFully(header, 0);
+        fileSize = HEADER_SIZE;
+        this.baseSeq = baseSeq;
+        nextSeq = baseSeq;
+    }
+
+    private void writeFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    private static int checksum(long graphId, long seq, byte[] payload) {
+        CRC32 crc = new CRC32();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putLong(graphId);
+        header.putLong(seq);
+        header.flip();
+        crc.update(header);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private record ReadResult(long offset, long nextSeq) {}
+
+    /**
+     * A sealed journal segment, which no longer receives records.
+     */
+    public static final class Segment {
+        private final Path path;
+        private final long baseSeq;
+        private @Nullable FileChannel channel;
+
+        private Segment(@NotNull Path path, long baseSeq, @Nullable FileChannel channel) {
+            this.path = path;
+            this.baseSeq = baseSeq;
+            this.channel = channel;
+        }
+
+        /**
+         * Makes sure the segment has reached the disk and closes it. This can be called from any thread, and does
+         * nothing if the segment has already been sealed.
+         */
+        public synchronized void seal() {
+            if (channel == null) return;
+
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                GLLog.error("Error syncing graph journal segment {}.", path, e);
+            }
+
+            try {
+                channel.close();
+            } catch (IOException e) {
+                GLLog.error("Error closing graph journal segment {}.", path, e);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Receives records read from a journal.
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        /**
+         * Receives a record.
+         *
+         * @param graphId the id of the graph the record applies to.
+         * @param seq     the record's sequence number.
+         * @param payload the record's payload.
+         */
+        void accept(long graphId, long seq, @NotNull byte[] payload);
+    }
+}
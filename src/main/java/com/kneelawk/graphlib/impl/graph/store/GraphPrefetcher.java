@@ -0,0 +1,240 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import com.kneelawk.graphlib.impl.GLLog;
+
+/**
+ * Reads and decodes graphs in the background ahead of when they are needed.
+ * <p>
+ * Graphs are read on a dedicated I/O thread and decoded on a worker pool. Decoded graphs are handed back to the main
+ * thread by {@link #installReady(long, ReadyConsumer)}, a few at a time. Callers that need a graph right away can
+ * {@link #claim(long)} its prefetch instead of waiting for it to be installed.
+ * <p>
+ * Apart from the background stages, everything here must be called from the main thread. A prefetch that fails just
+ * results in <code>null</code>, leaving the caller to load the graph the normal way and handle the error there.
+ *
+ * @param <T> the type of decoded graph.
+ */
+public final class GraphPrefetcher<T> implements AutoCloseable {
+    private static final int QUEUED = 0;
+    private static final int STARTED = 1;
+    private static final int CANCELLED = 2;
+
+    private final Source source;
+    private final Decoder<T> decoder;
+    private final Executor workerExecutor;
+    private final ExecutorService ioExecutor;
+
+    private final Long2ObjectMap<Task<T>> tasks = new Long2ObjectOpenHashMap<>();
+    private final Queue<Task<T>> ready = new ConcurrentLinkedQueue<>();
+
+    private boolean closed = false;
+
+    /**
+     * Creates a new graph prefetcher.
+     *
+     * @param source         reads encoded graphs on the I/O thread.
+     * @param decoder        decodes graphs on the worker pool.
+     * @param workerExecutor the worker pool.
+     * @param name           the name of the I/O thread.
+     */
+    public GraphPrefetcher(@NotNull Source source, @NotNull Decoder<T> decoder, @NotNull Executor workerExecutor,
+                           @NotNull String name) {
+        this.source = source;
+        this.decoder = decoder;
+        this.workerExecutor = workerExecutor;
+        ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts prefetching a graph, unless it is already being prefetched.
+     *
+     * @param id the id of the graph to prefetch.
+     */
+    public void prefetch(long id) {
+        if (closed || tasks.containsKey(id)) return;
+
+        Task<T> task = new Task<>(id);
+        tasks.put(id, task);
+
+        task.future = CompletableFuture.supplyAsync(() -> {
+                if (!task.state.compareAndSet(QUEUED, STARTED)) return null;
+                try {
+                    return source.read(id);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, ioExecutor)
+            .thenApplyAsync(bytes -> {
+                if (bytes == null) return null;
+                try {
+                    return decoder.decode(id, bytes);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, workerExecutor)
+            .whenComplete((result, error) -> ready.add(task));
+    }
+
+    /**
+     * Checks whether the given graph is being prefetched.
+     *
+     * @param id the id of the graph.
+     * @return <code>true</code> if the graph has a prefetch that has not been claimed or installed yet.
+     */
+    public boolean isPrefetching(long id) {
+        return tasks.containsKey(id);
+    }
+
+    /**
+     * Takes over the given graph's prefetch, if it has one.
+     * <p>
+     * If the prefetch has not started yet, it is cancelled, as the caller can read the graph just as quickly itself.
+     * Otherwise, this blocks until the prefetch is done.
+     *
+     * @param id the id of the graph.
+     * @return the decoded graph, or <code>null</code> if the caller needs to load the graph itself.
+     */
+    public @Nullable T claim(long id) {
+        Task<T> task = tasks.remove(id);
+        if (task == null) return null;
+        if (task.state.compareAndSet(QUEUED, CANCELLED)) return null;
+        return task.result();
+    }
+
+    /**
+     * Hands prefetched graphs to the given consumer until there are none left or the time budget runs out.
+     * <p>
+     * The consumer is always called at least once if there are prefetched graphs, so that installing graphs never
+     * stalls completely.
+     *
+     * @param budgetNanos the time budget, in nanoseconds.
+     * @param consumer    receives the id and decoded graph of each prefetch. The graph is <code>null</code> if the
+     *                    prefetch failed.
+     */
+    public void installReady(long budgetNanos, @NotNull ReadyConsumer<T> consumer) {
+        long start = System.nanoTime();
+
+        Task<T> task;
+        while ((task = ready.poll()) != null) {
+            // prefetches that were claimed also end up here
+            if (!tasks.remove(task.id, task)) continue;
+
+            consumer.accept(task.id, task.result());
+
+            if (System.nanoTime() - start >= budgetNanos) break;
+        }
+    }
+
+    /**
+     * Cancels all prefetches and stops the I/O thread.
+     * <p>
+     * This waits for any read in progress, so the underlying store can be closed safely afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        for (Task<T> task : tasks.values()) {
+            task.state.compareAndSet(QUEUED, CANCELLED);
+        }
+        tasks.clear();
+        ready.clear();
+
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                GLLog.warn("Timed out waiting for graph prefetches to finish.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Task<T> {
+        private final long id;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private CompletableFuture<T> future;
+
+        private Task(long id) {
+            this.id = id;
+        }
+
+        private @Nullable T result() {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Reads encoded graphs.
+     */
+    @FunctionalInterface
+    public interface Source {
+        /**
+         * Reads an encoded graph. This is called on the I/O thread.
+         *
+         * @param id the id of the graph to read.
+         * @return the encoded graph, or <code>null</code> if the graph does not exist.
+         * @throws IOException if an error occurs while reading the graph.
+         */
+        @Nullable byte[] read(long id) throws IOException;
+    }
+
+    /**
+     * Decodes graphs.
+     *
+     * @param <T> the type of decoded graph.
+     */
+    @FunctionalInterface
+    public interface Decoder<T> {
+        /**
+         * Decodes a graph. This is called on the worker pool.
+         *
+         * @param id    the id of the graph being decoded.
+         * @param bytes the encoded graph.
+         * @return the decoded graph, or <code>null</code> if it should be loaded the normal way instead.
+         * @throws IOException if an error occurs while decoding the graph.
+         */
+        @Nullable T decode(long id, @NotNull byte[] bytes) throws IOException;
+    }
+
+    /**
+     * Receives prefetched graphs.
+     *
+     * @param <T> the type of decoded graph.
+     */
+    @FunctionalInterface
+    public interface ReadyConsumer<T> {
+        /**
+         * Receives a prefetched graph.
+         *
+         * @param id    the id of the graph.
+         * @param graph the decoded graph, or <code>null</code> if the prefetch failed.
+         */
+        void accept(long id, @Nullable T graph);
+    }
+}
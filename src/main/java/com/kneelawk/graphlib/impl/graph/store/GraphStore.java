@@ -0,0 +1,72 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.io.IOException;
+import java.util.function.LongConsumer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Persistent storage for encoded graphs, keyed by graph id.
+ * <p>
+ * Stores deal in opaque byte arrays, leaving the encoding of graphs up to the graph world.
+ */
+public interface GraphStore extends AutoCloseable {
+    /**
+     * Checks whether a graph with the given id is stored.
+     *
+     * @param id the id of the graph.
+     * @return <code>true</code> if a graph with the given id is stored.
+     */
+    boolean contains(long id);
+
+    /**
+     * Reads the encoded graph with the given id.
+     *
+     * @param id the id of the graph to read.
+     * @return the encoded graph, or <code>null</code> if no graph with the given id is stored.
+     * @throws IOException if an error occurs while reading the graph.
+     */
+    @Nullable byte[] read(long id) throws IOException;
+
+    /**
+     * Writes an encoded graph, replacing any graph previously stored with the same id.
+     *
+     * @param id   the id of the graph to write.
+     * @param data the encoded graph.
+     * @throws IOException if an error occurs while writing the graph.
+     */
+    void write(long id, @NotNull byte[] data) throws IOException;
+
+    /**
+     * Removes the graph with the given id, if it is stored.
+     *
+     * @param id the id of the graph to remove.
+     * @throws IOException if an error occurs while removing the graph.
+     */
+    void delete(long id) throws IOException;
+
+    /**
+     * Calls the given consumer with the id of every stored graph, in no particular order.
+     *
+     * @param consumer the consumer to call with each stored graph id.
+     */
+    void forEachId(@NotNull LongConsumer consumer);
+
+    /**
+     * Gets the number of stored graphs.
+     *
+     * @return the number of stored graphs.
+     */
+    int size();
+
+    /**
+     * Makes sure everything written so far has reached the disk.
+     *
+     * @throws IOException if an error occurs while flushing.
+     */
+    void flush() throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
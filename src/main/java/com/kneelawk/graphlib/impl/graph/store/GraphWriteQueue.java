@@ -0,0 +1,359 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import com.kneelawk.graphlib.impl.GLLog;
+
+/**
+ * Writes graph snapshots to a {@link GraphStore} on a dedicated I/O thread.
+ * <p>
+ * Snapshots are taken on the calling thread. The I/O thread takes them in batches, encodes each batch in parallel on the
+ * {@link SavePool}, and then writes them to the store one at a time. Operations on the same graph are coalesced: if a
+ * graph is written several times before the I/O thread gets to it, only the latest snapshot is encoded and written.
+ * Operations that have not finished yet can be looked up with {@link #getPending(long)} so that callers never read
+ * stale data from the store.
+ *
+ * @param <T> the type of graph snapshot.
+ */
+public final class GraphWriteQueue<T> implements AutoCloseable {
+    /**
+     * The maximum number of operations the I/O thread takes at once.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    private final GraphStore store;
+    private final Encoder<T> encoder;
+    private final ExecutorService executor;
+
+    /**
+     * Operations that have been submitted, but that the I/O thread has not started on yet.
+     */
+    private final Long2ObjectMap<Pending<T>> queued = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * Operations the I/O thread is currently working on.
+     */
+    private final Long2ObjectMap<Pending<T>> inFlight = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * Whether a task to work through the queued operations has been submitted and has not finished yet.
+     */
+    private boolean draining = false;
+
+    private boolean closed = false;
+
+    /**
+     * Creates a new graph write queue.
+     *
+     * @param store   the store to write graphs to.
+     * @param encoder encodes graph snapshots on the save pool. This may be called from several threads at once.
+     * @param name    the name of the I/O thread.
+     */
+    public GraphWriteQueue(@NotNull GraphStore store, @NotNull Encoder<T> encoder, @NotNull String name) {
+        this.store = store;
+        this.encoder = encoder;
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a snapshot of a graph to be written, replacing any queued operation on the same graph.
+     * <p>
+     * The snapshot must not be modified after it has been submitted.
+     *
+     * @param id       the id of the graph.
+     * @param snapshot the snapshot of the graph.
+     */
+    public void write(long id, @NotNull T snapshot) {
+        submit(id, new Pending<>(snapshot));
+    }
+
+    /**
+     * Queues the removal of a graph, replacing any queued operation on the same graph.
+     *
+     * @param id the id of the graph.
+     */
+    public void delete(long id) {
+        submit(id, new Pending<>(null));
+    }
+
+    /**
+     * Gets the latest operation on the given graph that has not finished yet.
+     *
+     * @param id the id of the graph.
+     * @return the latest unfinished operation on the graph, or <code>null</code> if the store is up-to-date for that
+     * graph.
+     */
+    public synchronized @Nullable Pending<T> getPending(long id) {
+        Pending<T> pending = queued.get(id);
+        if (pending != null) return pending;
+        return inFlight.get(id);
+    }
+
+    /**
+     * Calls the given consumers with the ids of all graphs that have unfinished operations.
+     *
+     * @param written called with the ids of graphs whose latest unfinished operation is a write.
+     * @param deleted called with the ids of graphs whose latest unfinished operation is a removal.
+     */
+    public synchronized void forEachPending(@NotNull LongConsumer written, @NotNull LongConsumer deleted) {
+        for (Long2ObjectMap.Entry<Pending<T>> entry : inFlight.long2ObjectEntrySet()) {
+            if (!queued.containsKey(entry.getLongKey())) {
+                (entry.getValue().isDelete() ? deleted : written).accept(entry.getLongKey());
+            }
+        }
+        for (Long2ObjectMap.Entry<Pending<T>> entry : queued.long2ObjectEntrySet()) {
+            (entry.getValue().isDelete() ? deleted : written).accept(entry.getLongKey());
+        }
+    }
+
+    /**
+     * Collects the latest unfinished operation on every graph, running an action at the same moment.
+     * <p>
+     * Nothing reaches the store while the action runs, so the store the action sees plus the collected operations are
+     * exactly everything that has been submitted so far.
+     *
+     * @param into   the map to put the latest unfinished operation on every graph that has one into.
+     * @param action the action to run while no operations can finish.
+     * @param <R>    the type of result of the action.
+     * @return the result of the action.
+     * @throws IOException if the action throws.
+     */
+    public synchronized <R> R collectPending(@NotNull Long2ObjectMap<Pending<T>> into, @NotNull StoreAction<R> action)
+        throws IOException {
+        into.putAll(inFlight);
+        into.putAll(queued);
+        return action.run();
+    }
+
+    /**
+     * Queues a flush of the store after everything that has been submitted so far.
+     *
+     * @param wait whether to block until the flush and everything before it has finished.
+     */
+    public void flush(boolean wait) {
+        Future<?> future;
+        synchronized (this) {
+            if (closed) return;
+            future = executor.submit(() -> {
+                try {
+                    store.flush();
+                } catch (IOException e) {
+                    GLLog.error("Error flushing graph store.", e);
+                }
+            });
+        }
+
+        if (wait) await(future);
+    }
+
+    /**
+     * Queues a flush of the store after everything that has been submitted so far, without waiting for it.
+     *
+     * @return a future that completes once the flush and everything before it has finished, or completes exceptionally
+     * if the flush failed.
+     */
+    public @NotNull CompletableFuture<Void> flushAsync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("Graph write queue is closed"));
+                return future;
+            }
+
+            executor.execute(() -> {
+                try {
+                    store.flush();
+                    future.complete(null);
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+
+        return future;
+    }
+
+    /**
+     * Finishes all submitted operations, flushes the store, and stops the I/O thread.
+     * <p>
+     * This does not close the underlying store.
+     */
+    @Override
+    public void close() {
+        flush(true);
+
+        synchronized (this) {
+            closed = true;
+        }
+
+        executor.shutdown();
+    }
+
+    private void submit(long id, Pending<T> pending) {
+        synchronized (this) {
+            if (closed) {
+                // nothing should be writing after close, but if something does, make sure it still happens
+                GLLog.warn("Graph {} was submitted for writing after the write queue was closed. Writing directly...",
+                    id);
+                run(id, pending);
+                return;
+            }
+
+            // replaces any operation that is already queued
+            queued.put(id, pending);
+
+            // the running task keeps going until the queue is empty, so it will pick this operation up
+            if (draining) return;
+            draining = true;
+        }
+
+        executor.execute(this::drain);
+    }
+
+    private void drain() {
+        while (true) {
+            List<Batched<T>> batch = new ArrayList<>(BATCH_SIZE);
+            synchronized (this) {
+                if (queued.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+
+                ObjectIterator<Long2ObjectMap.Entry<Pending<T>>> iter = queued.long2ObjectEntrySet().iterator();
+                while (iter.hasNext() && batch.size() < BATCH_SIZE) {
+                    Long2ObjectMap.Entry<Pending<T>> entry = iter.next();
+                    Batched<T> op = new Batched<>(entry.getLongKey(), entry.getValue());
+                    iter.remove();
+                    inFlight.put(op.id, op.pending);
+                    batch.add(op);
+                }
+            }
+
+            // encoding is the expensive part, but the store is written to by this thread alone
+            List<byte[]> encoded = SavePool.map(batch, this::encode);
+
+            for (int i = 0; i < batch.size(); i++) {
+                Batched<T> op = batch.get(i);
+                byte[] bytes = encoded.get(i);
+                if (op.pending.isDelete() || bytes != null) {
+                    store(op.id, bytes);
+                }
+
+                synchronized (this) {
+                    inFlight.remove(op.id, op.pending);
+                }
+            }
+        }
+    }
+
+    private void run(long id, Pending<T> pending) {
+        byte[] bytes = encode(new Batched<>(id, pending));
+        if (pending.isDelete() || bytes != null) {
+            store(id, bytes);
+        }
+    }
+
+    private byte[] encode(Batched<T> op) {
+        if (op.pending.isDelete()) return null;
+
+        try {
+            return encoder.encode(op.pending.snapshot());
+        } catch (Exception e) {
+            GLLog.error("Unable to save graph {}.", op.id, e);
+            return null;
+        }
+    }
+
+    private void store(long id, @Nullable byte[] bytes) {
+        try {
+            if (bytes == null) {
+                store.delete(id);
+            } else {
+                store.write(id, bytes);
+            }
+        } catch (Exception e) {
+            GLLog.error("Unable to save graph {}.", id, e);
+        }
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            GLLog.error("Error waiting for graph writes to finish.", e);
+        }
+    }
+
+    private record Batched<T>(long id, Pending<T> pending) {}
+
+    /**
+     * An operation that has not finished yet.
+     *
+     * @param snapshot the snapshot being written, or <code>null</code> if the graph is being removed.
+     * @param <T>      the type of graph snapshot.
+     */
+    public record Pending<T>(@Nullable T snapshot) {
+        /**
+         * Checks whether this operation removes its graph.
+         *
+         * @return <code>true</code> if this operation removes its graph.
+         */
+        public boolean isDelete() {
+            return snapshot == null;
+        }
+    }
+
+    /**
+     * An action run on the store while no operations can finish.
+     *
+     * @param <R> the type of result of the action.
+     */
+    @FunctionalInterface
+    public interface StoreAction<R> {
+        /**
+         * Runs the action.
+         *
+         * @return the result of the action.
+         * @throws IOException if an error occurs while running the action.
+         */
+        R run() throws IOException;
+    }
+
+    /**
+     * Encodes graph snapshots into bytes.
+     *
+     * @param <T> the type of graph snapshot.
+     */
+    @FunctionalInterface
+    public interface Encoder<T> {
+        /**
+         * Encodes a graph snapshot. This is called on the save pool, possibly from several threads at once.
+         *
+         * @param snapshot the snapshot to encode.
+         * @return the encoded snapshot.
+         * @throws IOException if an error occurs while encoding.
+         */
+        @NotNull byte[] encode(@NotNull T snapshot) throws IOException;
+    }
+}
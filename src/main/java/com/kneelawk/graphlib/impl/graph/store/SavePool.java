@@ -0,0 +1,87 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A bounded pool of worker threads, shared by every graph world, for compressing and parsing stored graphs in parallel.
+ * <p>
+ * Nothing run on the pool may call into block nodes, link keys, or entities, as those are only used from the server
+ * thread.
+ */
+public final class SavePool {
+    private SavePool() {}
+
+    /**
+     * The number of worker threads. One core is left for the server thread.
+     */
+    public static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    /**
+     * Applies a function to every input, spreading the inputs across the pool and waiting for all of them.
+     * <p>
+     * The function is called from several threads at once, so it must not modify anything the other inputs use.
+     *
+     * @param inputs   the inputs to apply the function to.
+     * @param function the function to apply.
+     * @param <T>      the type of input.
+     * @param <R>      the type of result.
+     * @return the results, in the same order as the inputs.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, R> @NotNull List<R> map(@NotNull List<T> inputs,
+                                              @NotNull Function<? super T, ? extends R> function) {
+        int size = inputs.size();
+        int tasks = Math.min(THREADS, size);
+
+        Object[] results = new Object[size];
+        if (tasks <= 1) {
+            // not worth handing off to another thread
+            for (int i = 0; i < size; i++) {
+                results[i] = function.apply(inputs.get(i));
+            }
+            return (List<R>) Arrays.asList(results);
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(tasks);
+        for (int task = 0; task < tasks; task++) {
+            int start = (int) ((long) size * task / tasks);
+            int end = (int) ((long) size * (task + 1) / tasks);
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int i = start; i < end; i++) {
+                    results[i] = function.apply(inputs.get(i));
+                }
+            }, Holder.EXECUTOR));
+        }
+
+        try {
+            // joining can't be interrupted, so a save is never abandoned halfway
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
+        }
+
+        return (List<R>) Arrays.asList(results);
+    }
+
+    // only start the threads once something is saved
+    private static final class Holder {
+        private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "GraphLib Save Worker " + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
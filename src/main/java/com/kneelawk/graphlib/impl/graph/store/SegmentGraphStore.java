@@ -0,0 +1,789 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import com.kneelawk.graphlib.impl.GLLog;
+
+/**
+ * A log-structured graph store that packs graphs into a small number of append-only segment files.
+ * <p>
+ * Every write appends a record to the newest segment and an in-memory index maps each graph id to its latest record.
+ * Deletes append tombstones. Once most of an older segment has been superseded, its live records are copied to the
+ * newest segment on a background thread and the old segment is deleted.
+ * <p>
+ * Records are checksummed. When a store is opened, anything after the last intact record of the newest segment (e.g. a
+ * torn write) is truncated away.
+ */
+public final class SegmentGraphStore implements GraphStore {
+    /**
+     * The default maximum size of a segment before a new one is started. Segments can grow larger than this if a single
+     * graph is larger than this.
+     */
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024L * 1024L;
+
+    private static final int SEGMENT_MAGIC = 0x474C5347; // GLSG
+    private static final int SEGMENT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    // length (4) + graph id (8) + type (1) + crc (4)
+    private static final int RECORD_HEADER_SIZE = 17;
+    private static final byte TYPE_PUT = 0;
+    private static final byte TYPE_DELETE = 1;
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Segments with less than this fraction of live data get compacted.
+     */
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("^(?<number>[\\da-fA-F]{8})\\.seg$");
+    private static final Pattern LEGACY_GRAPH_PATTERN = Pattern.compile("^(?<id>[\\da-fA-F]+)\\.dat$");
+
+    private final Path dir;
+    private final long maxSegmentSize;
+    private final NavigableMap<Integer, Segment> segments = new TreeMap<>();
+    private final Long2ObjectMap<Location> index = new Long2ObjectOpenHashMap<>();
+    private final ExecutorService compactor;
+    // held while taking and forcing unforced segments, so that a flush can't return while an overlapping one is still
+    // forcing the segments it took. Always taken before the store's own lock.
+    private final Object forceLock = new Object();
+    private Segment active = null;
+    private int openSnapshots = 0;
+    private boolean closed = false;
+
+    private SegmentGraphStore(@NotNull Path dir, long maxSegmentSize) {
+        this.dir = dir;
+        this.maxSegmentSize = maxSegmentSize;
+        compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GraphLib Graph Store Compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the segment store in the given directory, creating it if it does not exist.
+     *
+     * @param dir the directory to keep segment files in.
+     * @return the opened store.
+     * @throws IOException if an error occurs while reading existing segments.
+     */
+    public static @NotNull SegmentGraphStore open(@NotNull Path dir) throws IOException {
+        return open(dir, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the segment store in the given directory, creating it if it does not exist.
+     *
+     * @param dir            the directory to keep segment files in.
+     * @param maxSegmentSize the size after which a new segment is started.
+     * @return the opened store.
+     * @throws IOException if an error occurs while reading existing segments.
+     */
+    public static @NotNull SegmentGraphStore open(@NotNull Path dir, long maxSegmentSize) throws IOException {
+        if (maxSegmentSize <= SEGMENT_HEADER_SIZE || maxSegmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid max segment size: " + maxSegmentSize);
+        }
+
+        Files.createDirectories(dir);
+
+        SegmentGraphStore store = new SegmentGraphStore(dir, maxSegmentSize);
+        try {
+            store.load();
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+
+        return store;
+    }
+
+    /**
+     * Moves graphs from the old one-file-per-graph layout into this store.
+     * <p>
+     * Legacy files are only deleted once their contents have been flushed to this store. If a graph is already in this
+     * store, its legacy file is left over from an interrupted migration and is simply deleted.
+     *
+     * @param legacyDir the directory containing legacy graph files.
+     * @return the number of legacy graph files migrated.
+     * @throws IOException if an error occurs while migrating.
+     */
+    public int migrateLegacyGraphs(@NotNull Path legacyDir) throws IOException {
+        if (!Files.isDirectory(legacyDir)) return 0;
+
+        List<Path> migrated = new ArrayList<>();
+        try (Stream<Path> children = Files.list(legacyDir)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                String filename = child.getFileName().toString();
+                Matcher matcher = LEGACY_GRAPH_PATTERN.matcher(filename);
+                if (!matcher.matches()) continue;
+
+                long id;
+                try {
+                    id = Long.parseUnsignedLong(matcher.group("id"), 16);
+                } catch (NumberFormatException e) {
+                    GLLog.warn("Encountered NumberFormatException while parsing graph id from filename: {}", filename,
+                        e);
+                    continue;
+                }
+
+                if (!contains(id)) {
+                    write(id, Files.readAllBytes(child));
+                }
+                migrated.add(child);
+            }
+        }
+
+        if (migrated.isEmpty()) return 0;
+
+        flush();
+
+        for (Path path : migrated) {
+            Files.delete(path);
+        }
+
+        return migrated.size();
+    }
+
+    @Override
+    public synchronized boolean contains(long id) {
+        return index.containsKey(id);
+    }
+
+    @Override
+    public synchronized @Nullable byte[] read(long id) throws IOException {
+        checkOpen();
+
+        Location location = index.get(id);
+        if (location == null) return null;
+
+        Segment segment = segments.get(location.segment);
+        ByteBuffer buf = ByteBuffer.allocate(location.size);
+        readFully(segment.channel, buf, location.offset);
+        buf.flip();
+
+        int length = buf.getInt();
+        long recordId = buf.getLong();
+        byte type = buf.get();
+        int crc = buf.getInt();
+        byte[] payload = new byte[length];
+        buf.get(payload);
+
+        if (recordId != id || type != TYPE_PUT || checksum(recordId, type, payload) != crc) {
+            throw new IOException("Corrupt record for graph " + id + " in " + segment.path);
+        }
+
+        return payload;
+    }
+
+    @Override
+    public synchronized void write(long id, @NotNull byte[] data) throws IOException {
+        checkOpen();
+
+        Location location = append(id, TYPE_PUT, data);
+        Location old = index.put(id, location);
+        if (old != null) release(old);
+    }
+
+    @Override
+    public synchronized void delete(long id) throws IOException {
+        checkOpen();
+
+        if (!index.containsKey(id)) return;
+
+        append(id, TYPE_DELETE, EMPTY);
+        release(index.remove(id));
+    }
+
+    @Override
+    public synchronized void forEachId(@NotNull LongConsumer consumer) {
+        for (long id : index.keySet()) {
+            consumer.accept(id);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (forceLock) {
+            List<Segment> toForce;
+            synchronized (this) {
+                checkOpen();
+                toForce = takeUnforced();
+            }
+
+            // forcing can take a while, and reads shouldn't have to wait for it
+            for (int i = 0; i < toForce.size(); i++) {
+                try {
+                    toForce.get(i).channel.force(false);
+                } catch (ClosedChannelException e) {
+                    // the segment was compacted away, which only happens once its records have been forced into
+                    // another segment
+                } catch (IOException e) {
+                    // the rest still need forcing by the next flush
+                    markUnforced(toForce.subList(i, toForce.size()));
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+
+        // let any in-progress compaction notice that we're closed before closing its files
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+                GLLog.warn("Timed out waiting for graph store compaction to stop in {}", dir);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // nothing is written once closed, so forcing doesn't need the store's lock. The force lock waits for any flush
+        // that is still forcing the segments it took.
+        IOException error = null;
+        synchronized (forceLock) {
+            List<Segment> toForce;
+            synchronized (this) {
+                toForce = takeUnforced();
+            }
+
+            for (Segment segment : toForce) {
+                try {
+                    segment.channel.force(false);
+                } catch (IOException e) {
+                    if (error == null) error = e;
+                    else error.addSuppressed(e);
+                }
+            }
+        }
+
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                try {
+                    segment.channel.close();
+                } catch (IOException e) {
+                    if (error == null) error = e;
+                    else error.addSuppressed(e);
+                }
+            }
+            if (error != null) throw error;
+        }
+    }
+
+    /**
+     * Compacts every segment holding any dead records, regardless of how much of it is still live, and waits for the
+     * compaction to finish. This is meant for offline maintenance.
+     *
+     * @return the number of segments compacted.
+     * @throws IOException if an error occurs while compacting.
+     */
+    public int compactAll() throws IOException {
+        int compacted = 0;
+        synchronized (this) {
+            checkOpen();
+
+            // the active segment is only ever compacted once it has been rotated out
+            if (active.liveBytes < active.size - SEGMENT_HEADER_SIZE) {
+                rotate();
+            }
+
+            for (Segment segment : segments.values()) {
+                if (segment == active || segment.liveBytes >= segment.size - SEGMENT_HEADER_SIZE) continue;
+
+                if (!segment.compacting) {
+                    segment.compacting = true;
+                    compactor.execute(() -> compact(segment));
+                }
+                compacted++;
+            }
+        }
+
+        try {
+            awaitCompaction();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compacting graph store " + dir, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error compacting graph store " + dir, e);
+        }
+
+        flush();
+
+        return compacted;
+    }
+
+    /**
+     * Freezes the current contents of this store so that they can be exported while the store keeps being written to.
+     * <p>
+     * Segments are append-only, so a snapshot only has to remember how long each one is. While any snapshot is open,
+     * compacted segments are kept instead of being deleted, and no new compactions are started.
+     *
+     * @return the new snapshot, which must be closed once it has been exported.
+     * @throws IOException if this store is closed.
+     */
+    public synchronized @NotNull Snapshot snapshot() throws IOException {
+        checkOpen();
+
+        List<SnapshotSegment> parts = new ArrayList<>(segments.size());
+        for (Segment segment : segments.values()) {
+            parts.add(new SnapshotSegment(segment.number, segment.path, segment.size));
+        }
+        openSnapshots++;
+
+        return new Snapshot(parts);
+    }
+
+    /**
+     * Waits for all currently scheduled compactions to finish.
+     */
+    void awaitCompaction() throws InterruptedException, ExecutionException {
+        compactor.submit(() -> {}).get();
+    }
+
+    /**
+     * Gets the number of segment files this store is made of.
+     *
+     * @return the number of segment files.
+     */
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Gets the segments written to since they were last forced, and marks them as forced.
+     */
+    private @NotNull List<Segment> takeUnforced() {
+        List<Segment> unforced = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment.unforced) {
+                segment.unforced = false;
+                unforced.add(segment);
+            }
+        }
+        return unforced;
+    }
+
+    /**
+     * Marks segments as written to again, after forcing them failed.
+     */
+    private synchronized void markUnforced(@NotNull List<Segment> unforced) {
+        for (Segment segment : unforced) {
+            segment.unforced = true;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) throw new IOException("Graph store is closed: " + dir);
+    }
+
+    private void load() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (Stream<Path> children = Files.list(dir)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                Matcher matcher = SEGMENT_PATTERN.matcher(child.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Integer.parseUnsignedInt(matcher.group("number"), 16));
+                }
+            }
+        }
+        numbers.sort(Integer::compare);
+
+        for (int i = 0; i < numbers.size(); i++) {
+            int number = numbers.get(i);
+            Path path = getSegmentPath(number);
+            Segment segment = new Segment(number, path,
+                FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            segments.put(number, segment);
+            scan(segment, i == numbers.size() - 1);
+        }
+
+        if (segments.isEmpty()) {
+            active = createSegment(0);
+        } else {
+            active = segments.lastEntry().getValue();
+            if (active.size >= maxSegmentSize) rotate();
+        }
+
+        for (Segment segment : segments.values()) {
+            maybeScheduleCompaction(segment);
+        }
+    }
+
+    private void scan(Segment segment, boolean newest) throws IOException {
+        long fileSize = segment.channel.size();
+
+        if (fileSize < SEGMENT_HEADER_SIZE) {
+            // crashed while creating the segment
+            writeHeader(segment);
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        readFully(segment.channel, header, 0);
+        header.flip();
+        int magic = header.getInt();
+        int version = header.getInt();
+        if (magic != SEGMENT_MAGIC || version != SEGMENT_VERSION) {
+            throw new IOException(
+                "Unrecognized graph store segment: " + segment.path + " (magic: " + Integer.toHexString(magic) +
+                    ", version: " + version + ")");
+        }
+
+        long offset = SEGMENT_HEADER_SIZE;
+        segment.channel.position(offset);
+        DataInputStream dis =
+            new DataInputStream(new BufferedInputStream(Channels.newInputStream(segment.channel), 65536));
+        try {
+            while (offset < fileSize) {
+                int length = dis.readInt();
+                long id = dis.readLong();
+                byte type = dis.readByte();
+                int crc = dis.readInt();
+                if (length < 0 || length > fileSize - offset - RECORD_HEADER_SIZE ||
+                    (type != TYPE_PUT && type != TYPE_DELETE)) break;
+
+                byte[] payload = new byte[length];
+                dis.readFully(payload);
+                if (checksum(id, type, payload) != crc) break;
+
+                int recordSize = RECORD_HEADER_SIZE + length;
+                if (type == TYPE_PUT) {
+                    Location old = index.put(id, new Location(segment.number, (int) offset, recordSize));
+                    if (old != null) release(old);
+                    segment.liveBytes += recordSize;
+                } else {
+                    Location old = index.remove(id);
+                    if (old != null) release(old);
+                }
+
+                offset += recordSize;
+            }
+        } catch (EOFException e) {
+            // handled below
+        }
+
+        // Note: the stream is deliberately not closed, as that would close the channel too
+
+        segment.size = offset;
+        if (offset < fileSize) {
+            if (newest) {
+                GLLog.warn("Truncating {} bytes of incomplete data at the end of graph store segment {}",
+                    fileSize - offset, segment.path);
+                segment.channel.truncate(offset);
+            } else {
+                GLLog.warn("Ignoring {} bytes of corrupt data at the end of graph store segment {}", fileSize - offset,
+                    segment.path);
+            }
+        }
+    }
+
+    private Location append(long id, byte type, byte[] payload) throws IOException {
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (active.size > SEGMENT_HEADER_SIZE && active.size + recordSize > maxSegmentSize) {
+            rotate();
+        }
+
+        long offset = active.size;
+        writeRecord(active.channel, offset, id, type, payload);
+        active.size += recordSize;
+        active.unforced = true;
+        if (type == TYPE_PUT) active.liveBytes += recordSize;
+
+        return new Location(active.number, (int) offset, recordSize);
+    }
+
+    private void release(Location location) {
+        Segment segment = segments.get(location.segment);
+        if (segment != null) {
+            segment.liveBytes -= location.size;
+            maybeScheduleCompaction(segment);
+        }
+    }
+
+    private void rotate() throws IOException {
+        Segment old = active;
+        active = createSegment(old.number + 1);
+        maybeScheduleCompaction(old);
+    }
+
+    private void maybeScheduleCompaction(Segment segment) {
+        // active is null while loading
+        if (closed || openSnapshots > 0 || active == null || segment == active || segment.compacting) return;
+
+        long dataSize = segment.size - SEGMENT_HEADER_SIZE;
+        if (segment.liveBytes < dataSize * COMPACTION_THRESHOLD || dataSize <= 0) {
+            segment.compacting = true;
+            compactor.execute(() -> compact(segment));
+        }
+    }
+
+    private void compact(Segment victim) {
+        try {
+            // the segments the live records were copied to
+            Set<Segment> copiedTo = new ObjectOpenHashSet<>();
+
+            // segments other than the active one are never appended to, so they can be read without holding the lock
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            long offset = SEGMENT_HEADER_SIZE;
+            while (offset < victim.size) {
+                header.clear();
+                readFully(victim.channel, header, offset);
+                header.flip();
+                int length = header.getInt();
+                long id = header.getLong();
+                byte type = header.get();
+                int recordSize = RECORD_HEADER_SIZE + length;
+
+                synchronized (this) {
+                    if (closed) return;
+
+                    if (type == TYPE_PUT) {
+                        Location location = index.get(id);
+                        if (location != null && location.segment == victim.number && location.offset == offset) {
+                            byte[] payload = new byte[length];
+                            readFully(victim.channel, ByteBuffer.wrap(payload), offset + RECORD_HEADER_SIZE);
+                            index.put(id, append(id, TYPE_PUT, payload));
+                            victim.liveBytes -= recordSize;
+                            copiedTo.add(active);
+                        }
+                    } else if (!index.containsKey(id) && segments.firstKey() < victim.number) {
+                        // an older segment may still hold a record this tombstone is hiding
+                        append(id, TYPE_DELETE, EMPTY);
+                        copiedTo.add(active);
+                    }
+                }
+
+                offset += recordSize;
+            }
+
+            // the copied records must be on disk before the originals go away. This is done without the lock, so that
+            // reads don't wait on it.
+            for (Segment segment : copiedTo) {
+                try {
+                    segment.channel.force(false);
+                } catch (ClosedChannelException e) {
+                    // the store was closed
+                    return;
+                }
+            }
+
+            synchronized (this) {
+                if (closed) return;
+
+                if (openSnapshots > 0) {
+                    // a snapshot may still need this segment, so it is compacted again once the snapshots close
+                    victim.compacting = false;
+                    return;
+                }
+
+                segments.remove(victim.number);
+                victim.channel.close();
+                Files.deleteIfExists(victim.path);
+            }
+        } catch (IOException e) {
+            GLLog.error("Error compacting graph store segment {}", victim.path, e);
+        }
+    }
+
+    private Segment createSegment(int number) throws IOException {
+        Path path = getSegmentPath(number);
+        Segment segment = new Segment(number, path,
+            FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        segment.channel.truncate(0);
+        writeHeader(segment);
+        segment.unforced = true;
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private static void writeHeader(Segment segment) throws IOException {
+        writeHeader(segment.channel);
+        segment.size = SEGMENT_HEADER_SIZE;
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC);
+        header.putInt(SEGMENT_VERSION);
+        header.flip();
+        writeFully(channel, header, 0);
+    }
+
+    private static int writeRecord(FileChannel channel, long offset, long id, byte type, byte[] payload)
+        throws IOException {
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        ByteBuffer buf = ByteBuffer.allocate(recordSize);
+        buf.putInt(payload.length);
+        buf.putLong(id);
+        buf.put(type);
+        buf.putInt(checksum(id, type, payload));
+        buf.put(payload);
+        buf.flip();
+
+        writeFully(channel, buf, offset);
+        return recordSize;
+    }
+
+    private @NotNull Path getSegmentPath(int number) {
+        return dir.resolve(String.format("%08X.seg", number));
+    }
+
+    private static int checksum(long id, byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        ByteBuffer header = ByteBuffer.allocate(9);
+        header.putLong(id);
+        header.put(type);
+        header.flip();
+        crc.update(header);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, position);
+            if (read < 0) throw new EOFException();
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    private record Location(int segment, int offset, int size) {}
+
+    private record SnapshotSegment(int number, Path path, long size) {}
+
+    /**
+     * The contents of a store at the moment the snapshot was taken.
+     */
+    public final class Snapshot implements AutoCloseable {
+        private final List<SnapshotSegment> parts;
+        private boolean snapshotClosed = false;
+
+        private Snapshot(List<SnapshotSegment> parts) {
+            this.parts = parts;
+        }
+
+        /**
+         * Writes the snapshot to a directory as segment files, followed by one more segment holding the given records.
+         * The directory can then be opened as a store of its own.
+         * <p>
+         * This can be called from any thread.
+         *
+         * @param dir   the directory to write segment files to.
+         * @param extra records to apply on top of the snapshot, like writes that had not reached the store yet.
+         *              <code>null</code> values delete their graphs.
+         * @throws IOException if an error occurs while exporting.
+         */
+        public void exportTo(@NotNull Path dir, @NotNull Long2ObjectMap<byte[]> extra) throws IOException {
+            Files.createDirectories(dir);
+
+            int nextNumber = 0;
+            for (SnapshotSegment part : parts) {
+                try (FileChannel in = FileChannel.open(part.path, StandardOpenOption.READ);
+                     FileChannel out = FileChannel.open(dir.resolve(part.path.getFileName()), StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long position = 0;
+                    while (position < part.size) {
+                        long copied = in.transferTo(position, part.size - position, out);
+                        if (copied <= 0) throw new EOFException("Graph store segment shrank: " + part.path);
+                        position += copied;
+                    }
+                }
+                nextNumber = part.number + 1;
+            }
+
+            if (extra.isEmpty()) return;
+
+            try (FileChannel out = FileChannel.open(dir.resolve(String.format("%08X.seg", nextNumber)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeHeader(out);
+                long offset = SEGMENT_HEADER_SIZE;
+                for (Long2ObjectMap.Entry<byte[]> entry : extra.long2ObjectEntrySet()) {
+                    byte[] payload = entry.getValue();
+                    offset += payload != null ? writeRecord(out, offset, entry.getLongKey(), TYPE_PUT, payload) :
+                        writeRecord(out, offset, entry.getLongKey(), TYPE_DELETE, EMPTY);
+                }
+                out.force(false);
+            }
+        }
+
+        /**
+         * Releases this snapshot, letting its store compact segments again.
+         */
+        @Override
+        public void close() {
+            synchronized (SegmentGraphStore.this) {
+                if (snapshotClosed) return;
+                snapshotClosed = true;
+
+                openSnapshots--;
+                for (Segment segment : segments.values()) {
+                    maybeScheduleCompaction(segment);
+                }
+            }
+        }
+    }
+
+    private static final class Segment {
+        final int number;
+        final Path path;
+        final FileChannel channel;
+        long size = SEGMENT_HEADER_SIZE;
+        long liveBytes = 0;
+        boolean compacting = false;
+        // whether this has been written to since it was last forced
+        boolean unforced = false;
+
+        Segment(int number, Path path, FileChannel channel) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.kneelawk.graphlib.impl.tool;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.shorts.Short2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.shorts.Short2ObjectMap;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtLong;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.storage.RegionFile;
+
+import com.kneelawk.graphlib.impl.graph.simple.ChunkSectionBinaryFormat;
+
+/**
+ * Reads and writes the chunk indexes that {@link com.kneelawk.graphlib.api.world.UnloadingRegionBasedStorage} keeps in
+ * region files, without decoding any block nodes.
+ * <p>
+ * Each chunk column is stored as <code>{"Sections": {"&lt;y&gt;": section}}</code>, where each section is in the form
+ * written by {@link com.kneelawk.graphlib.impl.graph.simple.SimpleBlockGraphChunk}. Sections are written in
+ * {@link ChunkSectionBinaryFormat}, and sections saved as NBT before that format existed can still be read.
+ */
+final class ChunkIndexRegions {
+    private static final Pattern REGION_PATTERN = Pattern.compile("^r\\.(?<x>-?\\d+)\\.(?<z>-?\\d+)\\.mca$");
+    private static final int REGION_SHIFT = 5;
+    private static final int REGION_SIZE = 1 << REGION_SHIFT;
+
+    private ChunkIndexRegions() {}
+
+    /**
+     * Lists the region files in a directory.
+     *
+     * @param regionDir the directory to list.
+     * @return the region files, or an empty list if the directory does not exist.
+     * @throws IOException if an error occurs while listing the directory.
+     */
+    static @NotNull List<Path> listRegions(@NotNull Path regionDir) throws IOException {
+        List<Path> regions = new ObjectArrayList<>();
+        if (!Files.isDirectory(regionDir)) return regions;
+
+        try (Stream<Path> children = Files.list(regionDir)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                if (REGION_PATTERN.matcher(child.getFileName().toString()).matches()) {
+                    regions.add(child);
+                }
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Reads every chunk section in the given region files, one region file per thread.
+     *
+     * @param regions the region files to read.
+     * @param pool    the pool to read on.
+     * @return everything that was read.
+     */
+    static @NotNull Scan read(@NotNull List<Path> regions, @NotNull ForkJoinPool pool)
+        throws InterruptedException, ExecutionException {
+        Scan scan = new Scan();
+        pool.submit(() -> regions.parallelStream().forEach(path -> readRegion(path, scan))).get();
+        return scan;
+    }
+
+    private static void readRegion(@NotNull Path path, @NotNull Scan scan) {
+        Matcher matcher = REGION_PATTERN.matcher(path.getFileName().toString());
+        if (!matcher.matches()) return;
+        int regionX = Integer.parseInt(matcher.group("x"));
+        int regionZ = Integer.parseInt(matcher.group("z"));
+
+        Long2ObjectMap<Section> sections = new Long2ObjectOpenHashMap<>();
+        int columns = 0;
+        List<String> errors = new ObjectArrayList<>();
+
+        try (RegionFile region = new RegionFile(path, path.getParent(), false)) {
+            for (int localX = 0; localX < REGION_SIZE; localX++) {
+                for (int localZ = 0; localZ < REGION_SIZE; localZ++) {
+                    ChunkPos pos =
+                        new ChunkPos((regionX << REGION_SHIFT) + localX, (regionZ << REGION_SHIFT) + localZ);
+                    try {
+                        NbtCompound root = readColumn(region, pos);
+                        if (root == null) continue;
+                        columns++;
+
+                        NbtCompound sectionsTag = root.getCompound("Sections");
+                        for (String key : sectionsTag.getKeys()) {
+                            int sectionY = Integer.parseInt(key);
+                            sections.put(ChunkSectionPos.asLong(pos.x, sectionY, pos.z),
+                                readSection(sectionsTag.getCompound(key)));
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        errors.add("Unreadable chunk " + pos + " in " + path.getFileName() + ": " + e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            errors.add("Unreadable region file " + path + ": " + e);
+        }
+
+        synchronized (scan) {
+            scan.sections.putAll(sections);
+            scan.columns += columns;
+            scan.errors.addAll(errors);
+        }
+    }
+
+    /**
+     * Writes chunk sections to new region files, replacing any chunk columns they are in.
+     *
+     * @param regionDir the directory to write region files in.
+     * @param sections  the chunk sections to write.
+     * @param pool      the pool to write on.
+     */
+    static void write(@NotNull Path regionDir, @NotNull Long2ObjectMap<Section> sections, @NotNull ForkJoinPool pool)
+        throws IOException, InterruptedException, ExecutionException {
+        // region -> chunk column -> section y -> section
+        Long2ObjectMap<Long2ObjectMap<Long2ObjectMap<Section>>> regions = new Long2ObjectOpenHashMap<>();
+        for (Long2ObjectMap.Entry<Section> entry : sections.long2ObjectEntrySet()) {
+            Section section = entry.getValue();
+            if (section.isEmpty()) continue;
+
+            long sectionPos = entry.getLongKey();
+            int x = ChunkSectionPos.unpackX(sectionPos);
+            int z = ChunkSectionPos.unpackZ(sectionPos);
+            regions.computeIfAbsent(ChunkPos.toLong(x >> REGION_SHIFT, z >> REGION_SHIFT),
+                    r -> new Long2ObjectOpenHashMap<>())
+                .computeIfAbsent(ChunkPos.toLong(x, z), c -> new Long2ObjectOpenHashMap<>())
+                .put(ChunkSectionPos.unpackY(sectionPos), section);
+        }
+
+        Files.createDirectories(regionDir);
+        pool.submit(() -> regions.long2ObjectEntrySet().parallelStream().forEach(entry -> {
+            ChunkPos regionPos = new ChunkPos(entry.getLongKey());
+            Path path = regionDir.resolve("r." + regionPos.x + "." + regionPos.z + ".mca");
+            try (RegionFile region = new RegionFile(path, regionDir, false)) {
+                for (Long2ObjectMap.Entry<Long2ObjectMap<Section>> column : entry.getValue().long2ObjectEntrySet()) {
+                    NbtCompound sectionsTag = new NbtCompound();
+                    for (Long2ObjectMap.Entry<Section> section : column.getValue().long2ObjectEntrySet()) {
+                        sectionsTag.put(String.valueOf(section.getLongKey()), section.getValue().toNbt());
+                    }
+                    NbtCompound root = new NbtCompound();
+                    root.put("Sections", sectionsTag);
+
+                    writeColumn(region, new ChunkPos(column.getLongKey()), root);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error writing region file " + path, e);
+            }
+        })).get();
+    }
+
+    /**
+     * Removes graphs from the chunk columns they are in, rewriting only the affected columns.
+     *
+     * @param regionDir the directory containing the region files.
+     * @param columns   the graphs to remove from each chunk column, by packed {@link ChunkPos}.
+     * @param pool      the pool to rewrite region files on.
+     * @return the number of chunk columns rewritten.
+     */
+    static int removeGraphs(@NotNull Path regionDir, @NotNull Long2ObjectMap<LongSet> columns,
+                            @NotNull ForkJoinPool pool) throws InterruptedException, ExecutionException {
+        Long2ObjectMap<Long2ObjectMap<LongSet>> regions = new Long2ObjectOpenHashMap<>();
+        for (Long2ObjectMap.Entry<LongSet> entry : columns.long2ObjectEntrySet()) {
+            ChunkPos pos = new ChunkPos(entry.getLongKey());
+            regions.computeIfAbsent(ChunkPos.toLong(pos.x >> REGION_SHIFT, pos.z >> REGION_SHIFT),
+                r -> new Long2ObjectOpenHashMap<>()).put(entry.getLongKey(), entry.getValue());
+        }
+
+        return pool.submit(() -> regions.long2ObjectEntrySet().parallelStream().mapToInt(entry -> {
+            ChunkPos regionPos = new ChunkPos(entry.getLongKey());
+            Path path = regionDir.resolve("r." + regionPos.x + "." + regionPos.z + ".mca");
+            if (!Files.exists(path)) return 0;
+
+            int rewritten = 0;
+            try (RegionFile region = new RegionFile(path, regionDir, false)) {
+                for (Long2ObjectMap.Entry<LongSet> column : entry.getValue().long2ObjectEntrySet()) {
+                    ChunkPos pos = new ChunkPos(column.getLongKey());
+                    NbtCompound root = readColumn(region, pos);
+                    if (root != null && removeGraphs(root.getCompound("Sections"), column.getValue())) {
+                        writeColumn(region, pos, root);
+                        rewritten++;
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error rewriting region file " + path, e);
+            }
+            return rewritten;
+        }).sum()).get();
+    }
+
+    private static boolean removeGraphs(@NotNull NbtCompound sectionsTag, @NotNull LongSet ids) throws IOException {
+        boolean changed = false;
+        for (String key : List.copyOf(sectionsTag.getKeys())) {
+            NbtCompound section = sectionsTag.getCompound(key);
+
+            if (section.contains(ChunkSectionBinaryFormat.KEY, NbtElement.BYTE_ARRAY_TYPE)) {
+                ChunkSectionBinaryFormat.Section binary =
+                    ChunkSectionBinaryFormat.decode(section.getByteArray(ChunkSectionBinaryFormat.KEY));
+                if (binary.removeGraphs(ids)) {
+                    changed = true;
+                    if (binary.isEmpty()) {
+                        sectionsTag.remove(key);
+                    } else {
+                        section.putByteArray(ChunkSectionBinaryFormat.KEY, ChunkSectionBinaryFormat.encode(binary));
+                    }
+                }
+                continue;
+            }
+
+            NbtList inChunk = section.getList("inChunk", NbtElement.LONG_TYPE);
+            changed |= inChunk.removeIf(element -> ids.contains(((NbtLong) element).longValue()));
+
+            NbtList inPos = section.getList("inPos", NbtElement.COMPOUND_TYPE);
+            for (NbtElement element : inPos) {
+                NbtCompound com = (NbtCompound) element;
+                changed |= com.getList("nodes", NbtElement.COMPOUND_TYPE)
+                    .removeIf(node -> ids.contains(((NbtCompound) node).getLong("id")));
+                changed |= com.getList("ids", NbtElement.LONG_TYPE)
+                    .removeIf(id -> ids.contains(((NbtLong) id).longValue()));
+            }
+            inPos.removeIf(element -> ((NbtCompound) element).getList("nodes", NbtElement.COMPOUND_TYPE).isEmpty() &&
+                ((NbtCompound) element).getList("ids", NbtElement.LONG_TYPE).isEmpty());
+
+            if (inChunk.isEmpty() && inPos.isEmpty()) {
+                sectionsTag.remove(key);
+            }
+        }
+        return changed;
+    }
+
+    private static @Nullable NbtCompound readColumn(@NotNull RegionFile region, @NotNull ChunkPos pos)
+        throws IOException {
+        try (DataInputStream in = region.getChunkInputStream(pos)) {
+            if (in == null) return null;
+            return NbtIo.read(in);
+        }
+    }
+
+    private static void writeColumn(@NotNull RegionFile region, @NotNull ChunkPos pos, @NotNull NbtCompound root)
+        throws IOException {
+        try (DataOutputStream out = region.getChunkOutputStream(pos)) {
+            NbtIo.write(root, out);
+        }
+    }
+
+    /**
+     * Reads a chunk section's graphs, whether it was saved in {@link ChunkSectionBinaryFormat} or as NBT.
+     *
+     * @param nbt the chunk section's NBT.
+     * @return the graphs in the chunk section and at each position within it.
+     * @throws IOException if the chunk section's binary data cannot be decoded.
+     */
+    static @NotNull Section readSection(@NotNull NbtCompound nbt) throws IOException {
+        Section section = new Section();
+
+        if (nbt.contains(ChunkSectionBinaryFormat.KEY, NbtElement.BYTE_ARRAY_TYPE)) {
+            ChunkSectionBinaryFormat.Section binary =
+                ChunkSectionBinaryFormat.decode(nbt.getByteArray(ChunkSectionBinaryFormat.KEY));
+            section.inChunk.addAll(binary.inChunk);
+            for (short local : binary.graphsAt.keySet()) {
+                binary.collectGraphsAt(local, section.getGraphsAt(local));
+            }
+            for (short local : binary.nodesAt.keySet()) {
+                binary.collectGraphsAt(local, section.getGraphsAt(local));
+            }
+            return section;
+        }
+
+        for (NbtElement element : nbt.getList("inChunk", NbtElement.LONG_TYPE)) {
+            section.inChunk.add(((NbtLong) element).longValue());
+        }
+
+        for (NbtElement element : nbt.getList("inPos", NbtElement.COMPOUND_TYPE)) {
+            NbtCompound com = (NbtCompound) element;
+            short local = ChunkSectionPos.packLocal(new BlockPos(com.getByte("x"), com.getByte("y"), com.getByte("z")));
+
+            // sections hold either full block node -> graph lookups or the legacy id-only form
+            LongSet ids = section.getGraphsAt(local);
+            for (NbtElement node : com.getList("nodes", NbtElement.COMPOUND_TYPE)) {
+                ids.add(((NbtCompound) node).getLong("id"));
+            }
+            for (NbtElement id : com.getList("ids", NbtElement.LONG_TYPE)) {
+                ids.add(((NbtLong) id).longValue());
+            }
+        }
+
+        return section;
+    }
+
+    /**
+     * The graphs in a chunk section, and at each position within it.
+     */
+    static final class Section {
+        final LongSet inChunk = new LongLinkedOpenHashSet();
+        final Short2ObjectMap<LongSet> inPos = new Short2ObjectLinkedOpenHashMap<>();
+
+        @NotNull LongSet getGraphsAt(short local) {
+            return inPos.computeIfAbsent(local, s -> new LongLinkedOpenHashSet());
+        }
+
+        boolean isEmpty() {
+            return inChunk.isEmpty() && inPos.isEmpty();
+        }
+
+        /**
+         * Writes this section in the id-only form. The full block node -> graph lookups are rebuilt by the game the
+         * next time the section is used.
+         */
+        @NotNull NbtCompound toNbt() {
+            ChunkSectionBinaryFormat.Section binary = new ChunkSectionBinaryFormat.Section();
+            binary.inChunk.addAll(inChunk);
+            for (Short2ObjectMap.Entry<LongSet> entry : inPos.short2ObjectEntrySet()) {
+                if (entry.getValue().isEmpty()) continue;
+                binary.graphsAt.put(entry.getShortKey(), entry.getValue());
+            }
+
+            NbtCompound nbt = new NbtCompound();
+            nbt.putByteArray(ChunkSectionBinaryFormat.KEY, ChunkSectionBinaryFormat.encode(binary));
+            return nbt;
+        }
+    }
+
+    /**
+     * Everything read from a set of region files.
+     */
+    static final class Scan {
+        final Long2ObjectMap<Section> sections = new Long2ObjectOpenHashMap<>();
+        final List<String> errors = new ObjectArrayList<>();
+        int columns = 0;
+    }
+}
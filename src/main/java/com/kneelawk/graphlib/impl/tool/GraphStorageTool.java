@@ -0,0 +1,696 @@
+package com.kneelawk.graphlib.impl.tool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2LongLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.shorts.Short2ObjectMap;
+import it.unimi.dsi.fastutil.shorts.ShortIterator;
+import it.unimi.dsi.fastutil.shorts.ShortSet;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+import com.kneelawk.graphlib.impl.Constants;
+import com.kneelawk.graphlib.impl.graph.simple.StoredGraphs;
+import com.kneelawk.graphlib.impl.graph.store.GraphIndex;
+import com.kneelawk.graphlib.impl.graph.store.GraphJournal;
+import com.kneelawk.graphlib.impl.graph.store.SegmentGraphStore;
+
+/**
+ * Offline maintenance for graph storage, run against a world directory while the world is not loaded.
+ * <p>
+ * This reads storage through the same codecs the game uses, but only ever looks at the structure of graphs and chunk
+ * indexes. Block nodes and link keys are never decoded, so the mods that define them do not need to be present.
+ * Graph files and region files are processed in parallel.
+ * <p>
+ * Storage is never modified while the graph journal holds changes that were not written to graph snapshots yet, as
+ * happens when the game does not shut down cleanly. Loading the world in the game once replays them.
+ */
+public final class GraphStorageTool {
+    private static final int MAX_EXAMPLES = 20;
+    private static final int MAX_SEARCH_DEPTH = 5;
+    private static final String REBUILD_SUFFIX = ".rebuild";
+    private static final String BACKUP_SUFFIX = ".bak";
+    private static final Pattern LEGACY_GRAPH_PATTERN = Pattern.compile("^[\\da-fA-F]+\\.dat$");
+
+    private final ForkJoinPool pool;
+    private final PrintStream out;
+
+    private GraphStorageTool(@NotNull ForkJoinPool pool, @NotNull PrintStream out) {
+        this.pool = pool;
+        this.out = out;
+    }
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Command command = null;
+        List<Path> paths = new ObjectArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--threads") && i + 1 < args.length) {
+                try {
+                    threads = Math.max(1, Integer.parseInt(args[++i]));
+                } catch (NumberFormatException e) {
+                    usage("Invalid thread count: " + args[i]);
+                    return;
+                }
+            } else if (command == null) {
+                command = Command.byId(arg);
+                if (command == null) {
+                    usage("Unknown command: " + arg);
+                    return;
+                }
+            } else {
+                paths.add(Path.of(arg));
+            }
+        }
+
+        if (command == null || paths.isEmpty()) {
+            usage(null);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int status;
+        try {
+            status = new GraphStorageTool(pool, System.out).run(command, paths);
+        } finally {
+            pool.shutdown();
+        }
+        System.exit(status);
+    }
+
+    private static void usage(@Nullable String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println("Usage: GraphStorageTool [--threads <n>] <command> <world or universe directory>...");
+        System.err.println("Commands:");
+        for (Command command : Command.values()) {
+            System.err.printf("  %-15s %s%n", command.id, command.description);
+        }
+        System.exit(2);
+    }
+
+    private int run(@NotNull Command command, @NotNull List<Path> paths) {
+        List<Path> universes = new ObjectArrayList<>();
+        for (Path path : paths) {
+            try {
+                universes.addAll(findUniverses(path));
+            } catch (IOException e) {
+                System.err.println("Unable to search " + path + ": " + e);
+                return 2;
+            }
+        }
+        if (universes.isEmpty()) {
+            System.err.println("No graph storage found in " + paths);
+            return 2;
+        }
+
+        int status = 0;
+        for (Path universe : universes) {
+            out.println("== " + universe);
+            try {
+                status = Math.max(status, runOn(command, universe));
+            } catch (Exception e) {
+                System.err.println("Error processing " + universe + ":");
+                e.printStackTrace();
+                status = 2;
+            }
+            out.println();
+        }
+        return status;
+    }
+
+    /**
+     * Finds universe directories, which are the directories holding a graph store.
+     */
+    private static @NotNull List<Path> findUniverses(@NotNull Path path) throws IOException {
+        try (Stream<Path> dirs = Files.walk(path, MAX_SEARCH_DEPTH)) {
+            return dirs.filter(dir -> Files.isDirectory(dir.resolve(Constants.GRAPHS_DIRNAME)))
+                .sorted()
+                .toList();
+        }
+    }
+
+    private int runOn(@NotNull Command command, @NotNull Path dir) throws Exception {
+        Path graphsDir = dir.resolve(Constants.GRAPHS_DIRNAME);
+        Path regionDir = dir.resolve(Constants.REGION_DIRNAME);
+
+        JournalState journal = readJournal(dir);
+        long journalSeq = journal.nextSeq();
+        long journalRecords = journal.records();
+        if (journalRecords > 0) {
+            out.println("The graph journal holds " + journalRecords +
+                " changes that are not in graph snapshots yet. Load the world in the game once to apply them.");
+            if (command.modifies) {
+                out.println("Refusing to modify storage.");
+                return 2;
+            }
+            out.println("Results only reflect the graph snapshots.");
+        }
+
+        try (SegmentGraphStore store = SegmentGraphStore.open(graphsDir)) {
+            if (command == Command.MIGRATE) {
+                return migrate(store, graphsDir, dir, journalSeq);
+            } else if (command == Command.COMPACT) {
+                return compact(store, graphsDir);
+            }
+
+            long legacyFiles = countLegacyGraphs(graphsDir);
+            if (legacyFiles > 0) {
+                out.println(legacyFiles + " graphs are still in the legacy one-file-per-graph layout and are not " +
+                    "included. Run 'migrate' to include them.");
+                if (command.modifies) {
+                    out.println("Refusing to modify storage.");
+                    return 2;
+                }
+            }
+
+            GraphScan graphs = scanGraphs(store);
+            ChunkIndexRegions.Scan chunks = ChunkIndexRegions.read(ChunkIndexRegions.listRegions(regionDir), pool);
+
+            return switch (command) {
+                case STATS -> stats(dir, store, graphs, chunks, journalSeq, journalRecords);
+                case VERIFY -> verify(graphs, chunks);
+                case REBUILD_CHUNKS -> rebuildChunks(dir, graphs, chunks, journalSeq);
+                case REMOVE_EMPTY -> removeEmpty(dir, store, graphs, journalSeq);
+                default -> throw new IllegalStateException("Unhandled command: " + command);
+            };
+        }
+    }
+
+    // ---- Commands ---- //
+
+    private int stats(@NotNull Path dir, @NotNull SegmentGraphStore store, @NotNull GraphScan graphs,
+                      @NotNull ChunkIndexRegions.Scan chunks, long journalSeq, long journalRecords)
+        throws IOException {
+        long nodes = 0;
+        long links = 0;
+        long empty = 0;
+        LongSet sections = new LongOpenHashSet();
+        long largestId = -1;
+        int largestNodes = -1;
+        for (Long2ObjectMap.Entry<StoredGraphs.Summary> entry : graphs.summaries.long2ObjectEntrySet()) {
+            StoredGraphs.Summary summary = entry.getValue();
+            nodes += summary.nodeCount();
+            links += summary.linkCount();
+            sections.addAll(summary.nodes().keySet());
+            if (summary.nodeCount() == 0) empty++;
+            if (summary.nodeCount() > largestNodes) {
+                largestNodes = summary.nodeCount();
+                largestId = entry.getLongKey();
+            }
+        }
+
+        long entries = 0;
+        for (ChunkIndexRegions.Section section : chunks.sections.values()) {
+            entries += section.inChunk.size();
+        }
+
+        Path graphsDir = dir.resolve(Constants.GRAPHS_DIRNAME);
+        GraphIndex index = GraphIndex.load(graphsDir.resolve(Constants.GRAPH_INDEX_FILENAME), journalSeq);
+
+        out.printf(Locale.ROOT, "Graphs:      %d (binary: %d, legacy NBT: %d, unreadable: %d, empty: %d)%n",
+            store.size(), graphs.summaries.size() - graphs.legacyFormat.size(), graphs.legacyFormat.size(),
+            graphs.failures.size(), empty);
+        out.printf(Locale.ROOT, "Nodes:       %d in %d chunk sections, %d links%n", nodes, sections.size(), links);
+        if (largestId >= 0) {
+            out.printf(Locale.ROOT, "Largest:     graph %d with %d nodes%n", largestId, largestNodes);
+        }
+        out.printf(Locale.ROOT, "Store:       %d segment files, %d bytes, %d bytes of live graphs%n",
+            countFiles(graphsDir, ".seg"), sizeOf(graphsDir, ".seg"), graphs.storedBytes);
+        out.printf(Locale.ROOT, "Chunk index: %d region files, %d chunk columns, %d sections, %d graph entries%n",
+            countFiles(dir.resolve(Constants.REGION_DIRNAME), ".mca"), chunks.columns, chunks.sections.size(),
+            entries);
+        out.printf(Locale.ROOT, "Journal:     %d pending changes%n", journalRecords);
+        out.printf(Locale.ROOT, "Index:       %d of %d graphs indexed%n", index.size(), store.size());
+
+        printErrors(graphs, chunks);
+        return 0;
+    }
+
+    private int verify(@NotNull GraphScan graphs, @NotNull ChunkIndexRegions.Scan chunks) {
+        Problems problems = new Problems();
+        Long2ObjectMap<ChunkIndexRegions.Section> expected = expectedSections(graphs);
+
+        for (Long2ObjectMap.Entry<StoredGraphs.Summary> entry : graphs.summaries.long2ObjectEntrySet()) {
+            long id = entry.getLongKey();
+            StoredGraphs.Summary summary = entry.getValue();
+            if (summary.nodeCount() == 0) {
+                problems.add("Empty graphs", "graph " + id);
+            }
+            for (long section : summary.nodes().keySet()) {
+                if (!summary.chunks().contains(section)) {
+                    problems.add("Graphs missing chunk sections their nodes are in",
+                        "graph " + id + " @ " + sectionString(section));
+                }
+            }
+            for (LongIterator iter = summary.chunks().iterator(); iter.hasNext(); ) {
+                long section = iter.nextLong();
+                if (!summary.nodes().containsKey(section)) {
+                    problems.add("Graphs listing chunk sections without nodes in them",
+                        "graph " + id + " @ " + sectionString(section));
+                }
+            }
+        }
+
+        for (Long2ObjectMap.Entry<ChunkIndexRegions.Section> entry : expected.long2ObjectEntrySet()) {
+            long sectionPos = entry.getLongKey();
+            ChunkIndexRegions.Section actual = chunks.sections.get(sectionPos);
+            for (long id : entry.getValue().inChunk) {
+                if (actual == null || !actual.inChunk.contains(id)) {
+                    problems.add("Graphs missing from chunk indexes",
+                        "graph " + id + " @ " + sectionString(sectionPos));
+                }
+            }
+            for (Short2ObjectMap.Entry<LongSet> pos : entry.getValue().inPos.short2ObjectEntrySet()) {
+                LongSet actualIds = actual != null ? actual.inPos.get(pos.getShortKey()) : null;
+                for (long id : pos.getValue()) {
+                    if (actualIds == null || !actualIds.contains(id)) {
+                        problems.add("Nodes missing from chunk indexes",
+                            "graph " + id + " @ " + blockString(sectionPos, pos.getShortKey()));
+                    }
+                }
+            }
+        }
+
+        for (Long2ObjectMap.Entry<ChunkIndexRegions.Section> entry : chunks.sections.long2ObjectEntrySet()) {
+            long sectionPos = entry.getLongKey();
+            ChunkIndexRegions.Section wanted = expected.get(sectionPos);
+            for (long id : entry.getValue().inChunk) {
+                if (graphs.failures.containsKey(id)) continue;
+
+                if (!graphs.summaries.containsKey(id)) {
+                    problems.add("Chunk indexes referring to missing graphs",
+                        "graph " + id + " @ " + sectionString(sectionPos));
+                } else if (wanted == null || !wanted.inChunk.contains(id)) {
+                    problems.add("Chunk indexes referring to graphs not in them",
+                        "graph " + id + " @ " + sectionString(sectionPos));
+                }
+            }
+            for (Short2ObjectMap.Entry<LongSet> pos : entry.getValue().inPos.short2ObjectEntrySet()) {
+                LongSet wantedIds = wanted != null ? wanted.inPos.get(pos.getShortKey()) : null;
+                for (long id : pos.getValue()) {
+                    if (graphs.failures.containsKey(id)) continue;
+
+                    if (wantedIds == null || !wantedIds.contains(id)) {
+                        problems.add("Chunk index positions without the graph's nodes",
+                            "graph " + id + " @ " + blockString(sectionPos, pos.getShortKey()));
+                    }
+                }
+            }
+        }
+
+        printErrors(graphs, chunks);
+        problems.print(out);
+
+        if (problems.isEmpty() && graphs.failures.isEmpty() && chunks.errors.isEmpty()) {
+            out.println("No problems found.");
+            return 0;
+        }
+        out.println("Use 'remove-empty' and 'rebuild-chunks' to fix chunk index and empty graph problems.");
+        return 1;
+    }
+
+    private int rebuildChunks(@NotNull Path dir, @NotNull GraphScan graphs, @NotNull ChunkIndexRegions.Scan chunks,
+                              long journalSeq) throws Exception {
+        Long2ObjectMap<ChunkIndexRegions.Section> sections = expectedSections(graphs);
+
+        // graphs that could not be read keep their old entries, so that the game can deal with them when it loads them
+        int kept = 0;
+        for (Long2ObjectMap.Entry<ChunkIndexRegions.Section> entry : chunks.sections.long2ObjectEntrySet()) {
+            ChunkIndexRegions.Section old = entry.getValue();
+            for (long id : old.inChunk) {
+                if (!graphs.failures.containsKey(id)) continue;
+
+                ChunkIndexRegions.Section section =
+                    sections.computeIfAbsent(entry.getLongKey(), s -> new ChunkIndexRegions.Section());
+                section.inChunk.add(id);
+                for (Short2ObjectMap.Entry<LongSet> pos : old.inPos.short2ObjectEntrySet()) {
+                    if (pos.getValue().contains(id)) {
+                        section.getGraphsAt(pos.getShortKey()).add(id);
+                    }
+                }
+                kept++;
+            }
+        }
+
+        Path regionDir = dir.resolve(Constants.REGION_DIRNAME);
+        Path rebuildDir = dir.resolve(Constants.REGION_DIRNAME + REBUILD_SUFFIX);
+        Path backupDir = dir.resolve(Constants.REGION_DIRNAME + BACKUP_SUFFIX);
+
+        deleteRecursively(rebuildDir);
+        ChunkIndexRegions.write(rebuildDir, sections, pool);
+
+        deleteRecursively(backupDir);
+        if (Files.exists(regionDir)) {
+            Files.move(regionDir, backupDir);
+        }
+        Files.move(rebuildDir, regionDir);
+
+        saveIndex(dir, graphs, journalSeq);
+
+        out.printf(Locale.ROOT, "Rebuilt %d chunk sections from %d graphs. The old chunk indexes are in %s.%n",
+            sections.size(), graphs.summaries.size(), backupDir.getFileName());
+        if (kept > 0) {
+            out.printf(Locale.ROOT, "Kept %d old chunk index entries for %d unreadable graphs.%n", kept,
+                graphs.failures.size());
+        }
+        return 0;
+    }
+
+    private int removeEmpty(@NotNull Path dir, @NotNull SegmentGraphStore store, @NotNull GraphScan graphs,
+                            long journalSeq) throws Exception {
+        // graph id -> summary, for the empty graphs
+        Long2ObjectMap<StoredGraphs.Summary> empty = new Long2ObjectOpenHashMap<>();
+        for (Long2ObjectMap.Entry<StoredGraphs.Summary> entry : graphs.summaries.long2ObjectEntrySet()) {
+            if (entry.getValue().nodeCount() == 0) {
+                empty.put(entry.getLongKey(), entry.getValue());
+            }
+        }
+
+        if (empty.isEmpty()) {
+            out.println("No empty graphs found.");
+            return 0;
+        }
+
+        // empty graphs may still be listed in the chunk sections they used to be in
+        Long2ObjectMap<LongSet> columns = new Long2ObjectOpenHashMap<>();
+        for (Long2ObjectMap.Entry<StoredGraphs.Summary> entry : empty.long2ObjectEntrySet()) {
+            for (LongIterator iter = entry.getValue().chunks().iterator(); iter.hasNext(); ) {
+                long section = iter.nextLong();
+                columns.computeIfAbsent(ChunkPos.toLong(ChunkSectionPos.unpackX(section),
+                    ChunkSectionPos.unpackZ(section)), c -> new LongOpenHashSet()).add(entry.getLongKey());
+            }
+        }
+        int rewritten = ChunkIndexRegions.removeGraphs(dir.resolve(Constants.REGION_DIRNAME), columns, pool);
+
+        for (long id : empty.keySet()) {
+            store.delete(id);
+            graphs.summaries.remove(id);
+        }
+        store.flush();
+
+        saveIndex(dir, graphs, journalSeq);
+
+        out.printf(Locale.ROOT, "Removed %d empty graphs, updating %d chunk columns.%n", empty.size(), rewritten);
+        return 0;
+    }
+
+    private int compact(@NotNull SegmentGraphStore store, @NotNull Path graphsDir) throws IOException {
+        long segmentsBefore = countFiles(graphsDir, ".seg");
+        long bytesBefore = sizeOf(graphsDir, ".seg");
+
+        int compacted = store.compactAll();
+
+        out.printf(Locale.ROOT, "Compacted %d segments: %d segment files, %d bytes -> %d segment files, %d bytes%n",
+            compacted, segmentsBefore, bytesBefore, countFiles(graphsDir, ".seg"), sizeOf(graphsDir, ".seg"));
+        return 0;
+    }
+
+    private int migrate(@NotNull SegmentGraphStore store, @NotNull Path graphsDir, @NotNull Path dir,
+                        long journalSeq) throws Exception {
+        int moved = store.migrateLegacyGraphs(graphsDir);
+
+        GraphScan graphs = scanGraphs(store);
+        LongList converted = new LongArrayList();
+        pool.submit(() -> LongStream.of(graphs.legacyFormat.toLongArray()).parallel().forEach(id -> {
+            try {
+                byte[] bytes = store.read(id);
+                if (bytes == null) return;
+
+                byte[] binary = StoredGraphs.compress(StoredGraphs.toBinary(StoredGraphs.decompress(bytes)));
+                store.write(id, binary);
+                synchronized (converted) {
+                    converted.add(id);
+                }
+            } catch (IOException e) {
+                synchronized (graphs) {
+                    graphs.failures.put(id, e.toString());
+                }
+            }
+        })).get();
+        store.flush();
+
+        saveIndex(dir, graphs, journalSeq);
+
+        out.printf(Locale.ROOT, "Moved %d graphs out of the legacy layout and converted %d graphs to the binary " +
+            "format.%n", moved, converted.size());
+        printErrors(graphs, null);
+        return graphs.failures.isEmpty() ? 0 : 1;
+    }
+
+    // ---- Helpers ---- //
+
+    /**
+     * Reads the structure of every graph in the store, in parallel.
+     */
+    private @NotNull GraphScan scanGraphs(@NotNull SegmentGraphStore store)
+        throws InterruptedException, ExecutionException {
+        LongList ids = new LongArrayList();
+        store.forEachId(ids::add);
+
+        GraphScan scan = new GraphScan();
+        pool.submit(() -> LongStream.of(ids.toLongArray()).parallel().forEach(id -> {
+            try {
+                byte[] stored = store.read(id);
+                if (stored == null) return;
+
+                byte[] bytes = StoredGraphs.decompress(stored);
+                StoredGraphs.Summary summary = StoredGraphs.summarize(bytes);
+                synchronized (scan) {
+                    scan.summaries.put(id, summary);
+                    scan.storedBytes += stored.length;
+                    if (!StoredGraphs.isBinary(bytes)) {
+                        scan.legacyFormat.add(id);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                synchronized (scan) {
+                    scan.failures.put(id, e.toString());
+                }
+            }
+        })).get();
+
+        return scan;
+    }
+
+    /**
+     * Works out what the chunk indexes should hold, from where the graphs' nodes are.
+     */
+    private static @NotNull Long2ObjectMap<ChunkIndexRegions.Section> expectedSections(@NotNull GraphScan graphs) {
+        Long2ObjectMap<ChunkIndexRegions.Section> sections = new Long2ObjectOpenHashMap<>();
+        for (Long2ObjectMap.Entry<StoredGraphs.Summary> entry : graphs.summaries.long2ObjectEntrySet()) {
+            long id = entry.getLongKey();
+            for (Long2ObjectMap.Entry<ShortSet> nodes : entry.getValue().nodes().long2ObjectEntrySet()) {
+                ChunkIndexRegions.Section section =
+                    sections.computeIfAbsent(nodes.getLongKey(), s -> new ChunkIndexRegions.Section());
+                section.inChunk.add(id);
+                for (ShortIterator iter = nodes.getValue().iterator(); iter.hasNext(); ) {
+                    section.getGraphsAt(iter.nextShort()).add(id);
+                }
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Rewrites the graph index from the scanned graphs, so that the game does not have to decode them to index them.
+     */
+    private static void saveIndex(@NotNull Path dir, @NotNull GraphScan graphs, long journalSeq) throws IOException {
+        GraphIndex index = new GraphIndex();
+        for (Long2ObjectMap.Entry<StoredGraphs.Summary> entry : graphs.summaries.long2ObjectEntrySet()) {
+            StoredGraphs.Summary summary = entry.getValue();
+            index.put(entry.getLongKey(), StoredGraphs.createIndexEntry(summary.chunks(), summary.nodeCount()));
+        }
+        index.save(dir.resolve(Constants.GRAPHS_DIRNAME).resolve(Constants.GRAPH_INDEX_FILENAME), journalSeq);
+    }
+
+    /**
+     * Reads the journal's next sequence number and how many records it holds. The journal is only opened if it
+     * exists, otherwise the sequence number the game would start a new journal at is used.
+     */
+    private static @NotNull JournalState readJournal(@NotNull Path dir) throws IOException {
+        long minSeq = 0;
+        Path stateFile = dir.resolve(Constants.STATE_FILENAME);
+        if (Files.exists(stateFile)) {
+            try (InputStream is = Files.newInputStream(stateFile)) {
+                NbtCompound root = NbtIo.readCompressed(is);
+                minSeq = root.getCompound("data").getLong("journalSeq");
+            }
+        }
+
+        Path journalFile = dir.resolve(Constants.GRAPHS_DIRNAME).resolve(Constants.GRAPH_JOURNAL_FILENAME);
+        if (!Files.exists(journalFile)) {
+            return new JournalState(minSeq, 0);
+        }
+
+        long[] records = {0};
+        try (GraphJournal journal = GraphJournal.open(journalFile, minSeq, (graphId, seq, payload) -> records[0]++)) {
+            return new JournalState(journal.getNextSeq(), records[0]);
+        }
+    }
+
+    private void printErrors(@NotNull GraphScan graphs, @Nullable ChunkIndexRegions.Scan chunks) {
+        Problems problems = new Problems();
+        for (Long2ObjectMap.Entry<String> entry : graphs.failures.long2ObjectEntrySet()) {
+            problems.add("Unreadable graphs", "graph " + entry.getLongKey() + ": " + entry.getValue());
+        }
+        if (chunks != null) {
+            for (String error : chunks.errors) {
+                problems.add("Unreadable chunk indexes", error);
+            }
+        }
+        problems.print(out);
+    }
+
+    private static long countLegacyGraphs(@NotNull Path graphsDir) throws IOException {
+        try (Stream<Path> children = Files.list(graphsDir)) {
+            return children.filter(child -> LEGACY_GRAPH_PATTERN.matcher(child.getFileName().toString()).matches())
+                .count();
+        }
+    }
+
+    private static long countFiles(@NotNull Path dir, @NotNull String extension) throws IOException {
+        if (!Files.isDirectory(dir)) return 0;
+        try (Stream<Path> children = Files.list(dir)) {
+            return children.filter(child -> child.getFileName().toString().endsWith(extension)).count();
+        }
+    }
+
+    private static long sizeOf(@NotNull Path dir, @NotNull String extension) throws IOException {
+        if (!Files.isDirectory(dir)) return 0;
+        long size = 0;
+        try (Stream<Path> children = Files.list(dir)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                if (child.getFileName().toString().endsWith(extension)) {
+                    size += Files.size(child);
+                }
+            }
+        }
+        return size;
+    }
+
+    private static void deleteRecursively(@NotNull Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static @NotNull String sectionString(long section) {
+        return "section [" + ChunkSectionPos.unpackX(section) + ", " + ChunkSectionPos.unpackY(section) + ", " +
+            ChunkSectionPos.unpackZ(section) + "]";
+    }
+
+    private static @NotNull String blockString(long section, short local) {
+        return "block [" + (ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(section)) +
+            ChunkSectionPos.unpackLocalX(local)) + ", " +
+            (ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(section)) + ChunkSectionPos.unpackLocalY(local)) +
+            ", " +
+            (ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(section)) + ChunkSectionPos.unpackLocalZ(local)) +
+            "]";
+    }
+
+    private enum Command {
+        STATS("stats", false, "Print statistics about graphs and chunk indexes."),
+        VERIFY("verify", false, "Check that chunk indexes agree with the graphs they refer to."),
+        REBUILD_CHUNKS("rebuild-chunks", true, "Rebuild all chunk indexes from the graphs, keeping a backup."),
+        REMOVE_EMPTY("remove-empty", true, "Remove graphs that have no nodes."),
+        COMPACT("compact", true, "Compact the graph store, dropping all overwritten and deleted graphs."),
+        MIGRATE("migrate", true, "Move legacy graph files into the graph store and convert them to the binary format.");
+
+        final String id;
+        final boolean modifies;
+        final String description;
+
+        Command(String id, boolean modifies, String description) {
+            this.id = id;
+            this.modifies = modifies;
+            this.description = description;
+        }
+
+        static @Nullable Command byId(@NotNull String id) {
+            for (Command command : values()) {
+                if (command.id.equals(id)) return command;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The structure of every readable graph in a store.
+     */
+    private static final class GraphScan {
+        final Long2ObjectMap<StoredGraphs.Summary> summaries = new Long2ObjectOpenHashMap<>();
+        final Long2ObjectMap<String> failures = new Long2ObjectOpenHashMap<>();
+        final LongList legacyFormat = new LongArrayList();
+        long storedBytes = 0;
+    }
+
+    /**
+     * Problems found, grouped by kind, with a few examples of each.
+     */
+    private static final class Problems {
+        private final Object2LongMap<String> counts = new Object2LongLinkedOpenHashMap<>();
+        private final Map<String, List<String>> examples = new Object2ObjectOpenHashMap<>();
+
+        void add(@NotNull String kind, @NotNull String example) {
+            counts.put(kind, counts.getLong(kind) + 1);
+            List<String> list = examples.computeIfAbsent(kind, k -> new ObjectArrayList<>());
+            if (list.size() < MAX_EXAMPLES) {
+                list.add(example);
+            }
+        }
+
+        boolean isEmpty() {
+            return counts.isEmpty();
+        }
+
+        void print(@NotNull PrintStream out) {
+            for (Object2LongMap.Entry<String> entry : counts.object2LongEntrySet()) {
+                out.println(entry.getKey() + ": " + entry.getLongValue());
+                for (String example : examples.get(entry.getKey())) {
+                    out.println("  " + example);
+                }
+                if (entry.getLongValue() > MAX_EXAMPLES) {
+                    out.println("  ...");
+                }
+            }
+        }
+    }
+
+    private record JournalState(long nextSeq, long records) {}
+}
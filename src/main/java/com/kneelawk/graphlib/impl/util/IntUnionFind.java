@@ -0,0 +1,134 @@
+package com.kneelawk.graphlib.impl.util;
+
+import java.util.Arrays;
+
+/**
+ * A simple disjoint-set forest over densely packed int elements.
+ * <p>
+ * Elements are allocated sequentially by {@link #add()}. Uses union by rank and path halving, so all operations run in
+ * amortized near-constant time.
+ */
+public final class IntUnionFind {
+    private int[] parents;
+    private byte[] ranks;
+    private int size = 0;
+    private int componentCount = 0;
+
+    /**
+     * Creates a new, empty union-find.
+     */
+    public IntUnionFind() {
+        this(16);
+    }
+
+    /**
+     * Creates a new, empty union-find with the given initial capacity.
+     *
+     * @param initialCapacity the number of elements to allocate space for.
+     */
+    public IntUnionFind(int initialCapacity) {
+        parents = new int[Math.max(initialCapacity, 1)];
+        ranks = new byte[parents.length];
+    }
+
+    /**
+     * Adds a new element in its own set.
+     *
+     * @return the new element.
+     */
+    public int add() {
+        if (size == parents.length) {
+            int newLength = parents.length * 2;
+            parents = Arrays.copyOf(parents, newLength);
+            ranks = Arrays.copyOf(ranks, newLength);
+        }
+
+        int element = size++;
+        parents[element] = element;
+        ranks[element] = 0;
+        componentCount++;
+        return element;
+    }
+
+    /**
+     * Finds the representative element of the set the given element is in.
+     *
+     * @param element the element to find the representative of.
+     * @return the representative of the given element's set.
+     */
+    public int find(int element) {
+        checkElement(element);
+        while (parents[element] != element) {
+            parents[element] = parents[parents[element]];
+            element = parents[element];
+        }
+        return element;
+    }
+
+    /**
+     * Merges the sets containing the two given elements.
+     *
+     * @param a the first element.
+     * @param b the second element.
+     * @return <code>true</code> if the elements were in different sets before this call.
+     */
+    public boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) return false;
+
+        if (ranks[rootA] < ranks[rootB]) {
+            parents[rootA] = rootB;
+        } else if (ranks[rootA] > ranks[rootB]) {
+            parents[rootB] = rootA;
+        } else {
+            parents[rootB] = rootA;
+            ranks[rootA]++;
+        }
+
+        componentCount--;
+        return true;
+    }
+
+    /**
+     * Checks whether the two given elements are in the same set.
+     *
+     * @param a the first element.
+     * @param b the second element.
+     * @return <code>true</code> if both elements are in the same set.
+     */
+    public boolean connected(int a, int b) {
+        return find(a) == find(b);
+    }
+
+    /**
+     * Gets the number of elements in this union-find.
+     *
+     * @return the number of elements.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of disjoint sets in this union-find.
+     *
+     * @return the number of disjoint sets.
+     */
+    public int componentCount() {
+        return componentCount;
+    }
+
+    /**
+     * Removes all elements from this union-find.
+     */
+    public void clear() {
+        size = 0;
+        componentCount = 0;
+    }
+
+    private void checkElement(int element) {
+        if (element < 0 || element >= size)
+            throw new IndexOutOfBoundsException("Element " + element + " out of bounds for size " + size);
+    }
+}
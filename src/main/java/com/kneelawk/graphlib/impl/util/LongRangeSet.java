@@ -0,0 +1,186 @@
+package com.kneelawk.graphlib.impl.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * A set of non-negative longs stored as sorted, disjoint, non-adjacent inclusive ranges.
+ * <p>
+ * This is compact for sets made up of long runs of consecutive values, like allocated ids.
+ */
+public final class LongRangeSet {
+    private final LongArrayList starts = new LongArrayList();
+    private final LongArrayList ends = new LongArrayList();
+
+    /**
+     * Creates a range set from an array of alternating inclusive range starts and ends, as produced by
+     * {@link #toRangeArray()}.
+     *
+     * @param ranges the array of range starts and ends.
+     * @return a new range set containing the given ranges.
+     * @throws IllegalArgumentException if the array has an odd length or contains an invalid range.
+     */
+    public static @NotNull LongRangeSet fromRangeArray(@NotNull long[] ranges) {
+        if (ranges.length % 2 != 0) throw new IllegalArgumentException("Range array must have an even length");
+
+        LongRangeSet set = new LongRangeSet();
+        for (int i = 0; i < ranges.length; i += 2) {
+            set.addRange(ranges[i], ranges[i + 1]);
+        }
+        return set;
+    }
+
+    /**
+     * Checks whether this set contains the given value.
+     *
+     * @param value the value to check for.
+     * @return <code>true</code> if this set contains the given value.
+     */
+    public boolean contains(long value) {
+        int index = floorIndex(value);
+        return index >= 0 && ends.getLong(index) >= value;
+    }
+
+    /**
+     * Adds a value to this set.
+     *
+     * @param value the value to add.
+     * @return <code>true</code> if the value was not already in this set.
+     */
+    public boolean add(long value) {
+        if (value < 0) throw new IllegalArgumentException("Value must be non-negative: " + value);
+
+        int index = floorIndex(value);
+        if (index >= 0 && ends.getLong(index) >= value) return false;
+
+        boolean joinsPrev = index >= 0 && ends.getLong(index) == value - 1;
+        boolean joinsNext = index + 1 < starts.size() && starts.getLong(index + 1) == value + 1;
+
+        if (joinsPrev && joinsNext) {
+            ends.set(index, ends.getLong(index + 1));
+            starts.removeLong(index + 1);
+            ends.removeLong(index + 1);
+        } else if (joinsPrev) {
+            ends.set(index, value);
+        } else if (joinsNext) {
+            starts.set(index + 1, value);
+        } else {
+            starts.add(index + 1, value);
+            ends.add(index + 1, value);
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds an inclusive range of values to this set.
+     *
+     * @param start the first value in the range.
+     * @param end   the last value in the range.
+     */
+    public void addRange(long start, long end) {
+        if (start < 0 || end < start) throw new IllegalArgumentException("Invalid range: " + start + ".." + end);
+
+        // find every range that overlaps or touches the new one and collapse them all into one
+        int first = floorIndex(start);
+        if (first < 0 || ends.getLong(first) < start - 1) first++;
+
+        int last = floorIndex(end == Long.MAX_VALUE ? end : end + 1);
+
+        if (first > last) {
+            starts.add(first, start);
+            ends.add(first, end);
+            return;
+        }
+
+        long newStart = Math.min(start, starts.getLong(first));
+        long newEnd = Math.max(end, ends.getLong(last));
+        starts.removeElements(first + 1, last + 1);
+        ends.removeElements(first + 1, last + 1);
+        starts.set(first, newStart);
+        ends.set(first, newEnd);
+    }
+
+    /**
+     * Adds all values in another range set to this set.
+     *
+     * @param other the range set to add the values of.
+     */
+    public void addAll(@NotNull LongRangeSet other) {
+        for (int i = 0; i < other.starts.size(); i++) {
+            addRange(other.starts.getLong(i), other.ends.getLong(i));
+        }
+    }
+
+    /**
+     * Gets the smallest value greater than or equal to the given value that is not in this set.
+     *
+     * @param from the value to start searching at.
+     * @return the first value not in this set, starting at <code>from</code>.
+     */
+    public long nextAbsent(long from) {
+        int index = floorIndex(from);
+        if (index < 0 || ends.getLong(index) < from) return from;
+
+        // ranges are never adjacent, so the value after a range is never in the set
+        return ends.getLong(index) + 1;
+    }
+
+    /**
+     * Gets the number of disjoint ranges in this set.
+     *
+     * @return the number of ranges in this set.
+     */
+    public int rangeCount() {
+        return starts.size();
+    }
+
+    /**
+     * Checks whether this set is empty.
+     *
+     * @return <code>true</code> if this set contains no values.
+     */
+    public boolean isEmpty() {
+        return starts.isEmpty();
+    }
+
+    /**
+     * Removes all values from this set.
+     */
+    public void clear() {
+        starts.clear();
+        ends.clear();
+    }
+
+    /**
+     * Gets the ranges in this set as an array of alternating inclusive range starts and ends.
+     *
+     * @return an array of range starts and ends.
+     */
+    public @NotNull long[] toRangeArray() {
+        long[] ranges = new long[starts.size() * 2];
+        for (int i = 0; i < starts.size(); i++) {
+            ranges[i * 2] = starts.getLong(i);
+            ranges[i * 2 + 1] = ends.getLong(i);
+        }
+        return ranges;
+    }
+
+    /**
+     * Finds the index of the last range starting at or before the given value.
+     */
+    private int floorIndex(long value) {
+        int low = 0;
+        int high = starts.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts.getLong(mid) <= value) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+}
@@ -0,0 +1,339 @@
+package com.kneelawk.graphlib.impl.util;
+
+import java.util.Arrays;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArraySet;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import it.unimi.dsi.fastutil.shorts.Short2ObjectMap;
+import it.unimi.dsi.fastutil.shorts.Short2ObjectOpenHashMap;
+
+/**
+ * The graph ids at each position in a chunk section, stored like vanilla's paletted containers.
+ * <p>
+ * Each position holds a bit-packed index into a small palette of graph ids, so a section only costs a few bits per
+ * position no matter how many of its positions are occupied. Positions with more than one graph keep the rest in a
+ * separate map, as those are rare.
+ */
+public final class PalettedGraphIds {
+    /**
+     * The number of positions in a chunk section.
+     */
+    public static final int POSITIONS = 4096;
+
+    // palettes up to this size are searched instead of keeping an id -> index map
+    private static final int MAX_SCANNED_PALETTE = 16;
+
+    private long[] palette = new long[4];
+    private int[] counts = new int[4];
+    // slots used in the palette, including freed ones
+    private int slots = 0;
+    private final IntArrayList freeSlots = new IntArrayList();
+    private @Nullable Long2IntMap paletteIndices = null;
+
+    // palette index + 1 at each position, 0 for empty positions
+    private @Nullable long[] data = null;
+    private int bits = 1;
+    private int valuesPerLong = 64;
+
+    private @Nullable Short2ObjectMap<LongSet> extra = null;
+
+    /**
+     * Adds a graph at a position.
+     *
+     * @param pos the packed local position.
+     * @param id  the graph id.
+     * @return <code>true</code> if the graph was not already at the position.
+     */
+    public boolean add(short pos, long id) {
+        int index = pos & (POSITIONS - 1);
+        int value = get(index);
+        if (value == 0) {
+            set(index, acquire(id) + 1);
+            return true;
+        }
+
+        if (palette[value - 1] == id) return false;
+
+        if (extra == null) {
+            extra = new Short2ObjectOpenHashMap<>();
+        }
+        return extra.computeIfAbsent(pos, s -> new LongArraySet(2)).add(id);
+    }
+
+    /**
+     * Removes a graph from a position.
+     *
+     * @param pos the packed local position.
+     * @param id  the graph id.
+     * @return <code>true</code> if the graph was at the position.
+     */
+    public boolean remove(short pos, long id) {
+        int index = pos & (POSITIONS - 1);
+        int value = get(index);
+        if (value == 0) return false;
+
+        if (palette[value - 1] == id) {
+            release(value - 1);
+            set(index, promoteExtra(pos));
+            return true;
+        }
+
+        return removeExtra(pos, id);
+    }
+
+    /**
+     * Removes a graph from every position.
+     *
+     * @param id the graph id.
+     * @return <code>true</code> if the graph was at any position.
+     */
+    public boolean removeAll(long id) {
+        boolean removed = false;
+
+        int paletteIndex = indexOf(id);
+        if (paletteIndex >= 0) {
+            int value = paletteIndex + 1;
+            // the slot may be reused by a promoted graph once the last position is removed, so count them instead
+            int remaining = counts[paletteIndex];
+            for (int index = 0; index < POSITIONS && remaining > 0; index++) {
+                if (get(index) == value) {
+                    remaining--;
+                    release(paletteIndex);
+                    set(index, promoteExtra((short) index));
+                    removed = true;
+                }
+            }
+        }
+
+        if (extra != null) {
+            for (var iter = extra.values().iterator(); iter.hasNext(); ) {
+                LongSet ids = iter.next();
+                removed |= ids.remove(id);
+                if (ids.isEmpty()) {
+                    iter.remove();
+                }
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Checks whether a graph is at a position.
+     *
+     * @param pos the packed local position.
+     * @param id  the graph id.
+     * @return <code>true</code> if the graph is at the position.
+     */
+    public boolean contains(short pos, long id) {
+        int value = get(pos & (POSITIONS - 1));
+        if (value == 0) return false;
+        if (palette[value - 1] == id) return true;
+
+        LongSet ids = extra != null ? extra.get(pos) : null;
+        return ids != null && ids.contains(id);
+    }
+
+    /**
+     * Gets the graphs at a position.
+     *
+     * @param pos the packed local position.
+     * @return a copy of the ids of the graphs at the position, which is empty if there are none.
+     */
+    public @NotNull LongSet get(short pos) {
+        int value = get(pos & (POSITIONS - 1));
+        if (value == 0) return LongSets.EMPTY_SET;
+
+        LongSet ids = extra != null ? extra.get(pos) : null;
+        LongSet result = new LongArraySet(ids != null ? ids.size() + 1 : 1);
+        result.add(palette[value - 1]);
+        if (ids != null) {
+            result.addAll(ids);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the next position with any graphs.
+     *
+     * @param from the position to start looking at.
+     * @return the first position at or after <code>from</code> with any graphs, or <code>-1</code> if there are none.
+     */
+    public int nextOccupied(int from) {
+        if (data == null) return -1;
+
+        int index = from;
+        while (index < POSITIONS) {
+            int longIndex = index / valuesPerLong;
+            if (data[longIndex] == 0) {
+                // skip whole empty longs
+                index = (longIndex + 1) * valuesPerLong;
+                continue;
+            }
+
+            if (get(index) != 0) return index;
+            index++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks whether no position has any graphs.
+     *
+     * @return <code>true</code> if no position has any graphs.
+     */
+    public boolean isEmpty() {
+        return slots == freeSlots.size();
+    }
+
+    /**
+     * Gets the number of graph ids in the palette.
+     *
+     * @return the number of graph ids in the palette.
+     */
+    public int paletteSize() {
+        return slots - freeSlots.size();
+    }
+
+    /**
+     * Removes every graph from every position.
+     */
+    public void clear() {
+        palette = new long[4];
+        counts = new int[4];
+        slots = 0;
+        freeSlots.clear();
+        paletteIndices = null;
+        data = null;
+        bits = 1;
+        valuesPerLong = 64;
+        extra = null;
+    }
+
+    private int promoteExtra(short pos) {
+        LongSet ids = extra != null ? extra.get(pos) : null;
+        if (ids == null) return 0;
+
+        LongIterator iter = ids.iterator();
+        long promoted = iter.nextLong();
+        iter.remove();
+        if (ids.isEmpty()) {
+            extra.remove(pos);
+        }
+
+        return acquire(promoted) + 1;
+    }
+
+    private boolean removeExtra(short pos, long id) {
+        if (extra == null) return false;
+
+        LongSet ids = extra.get(pos);
+        if (ids == null || !ids.remove(id)) return false;
+        if (ids.isEmpty()) {
+            extra.remove(pos);
+        }
+        return true;
+    }
+
+    private int indexOf(long id) {
+        if (paletteIndices != null) return paletteIndices.get(id);
+
+        for (int i = 0; i < slots; i++) {
+            if (counts[i] > 0 && palette[i] == id) return i;
+        }
+        return -1;
+    }
+
+    private int acquire(long id) {
+        int index = indexOf(id);
+        if (index >= 0) {
+            counts[index]++;
+            return index;
+        }
+
+        if (freeSlots.isEmpty()) {
+            index = slots++;
+            if (index == palette.length) {
+                palette = Arrays.copyOf(palette, palette.length * 2);
+                counts = Arrays.copyOf(counts, counts.length * 2);
+            }
+            if (slots >= 1 << bits) {
+                resize(bits + 1);
+            }
+        } else {
+            index = freeSlots.popInt();
+        }
+
+        palette[index] = id;
+        counts[index] = 1;
+
+        if (paletteIndices != null) {
+            paletteIndices.put(id, index);
+        } else if (slots > MAX_SCANNED_PALETTE) {
+            paletteIndices = new Long2IntOpenHashMap(slots * 2);
+            paletteIndices.defaultReturnValue(-1);
+            for (int i = 0; i < slots; i++) {
+                if (counts[i] > 0) {
+                    paletteIndices.put(palette[i], i);
+                }
+            }
+        }
+
+        return index;
+    }
+
+    private void release(int index) {
+        if (--counts[index] == 0) {
+            freeSlots.add(index);
+            if (paletteIndices != null) {
+                paletteIndices.remove(palette[index]);
+            }
+        }
+    }
+
+    private void resize(int newBits) {
+        long[] oldData = data;
+        int oldBits = bits;
+        int oldValuesPerLong = valuesPerLong;
+
+        bits = newBits;
+        valuesPerLong = 64 / newBits;
+        if (oldData == null) return;
+
+        data = new long[(POSITIONS + valuesPerLong - 1) / valuesPerLong];
+        long oldMask = (1L << oldBits) - 1;
+        for (int index = 0; index < POSITIONS; index++) {
+            int shift = (index % oldValuesPerLong) * oldBits;
+            int value = (int) ((oldData[index / oldValuesPerLong] >>> shift) & oldMask);
+            if (value != 0) {
+                set(index, value);
+            }
+        }
+    }
+
+    private int get(int index) {
+        if (data == null) return 0;
+        return (int) ((data[index / valuesPerLong] >>> ((index % valuesPerLong) * bits)) & ((1L << bits) - 1));
+    }
+
+    private void set(int index, int value) {
+        if (data == null) {
+            if (value == 0) return;
+            data = new long[(POSITIONS + valuesPerLong - 1) / valuesPerLong];
+        }
+
+        int shift = (index % valuesPerLong) * bits;
+        long mask = ((1L << bits) - 1) << shift;
+        int longIndex = index / valuesPerLong;
+        data[longIndex] = (data[longIndex] & ~mask) | (((long) value << shift) & mask);
+    }
+}
@@ -0,0 +1,154 @@
+package com.kneelawk.graphlib.impl.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.jetbrains.annotations.NotNull;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import com.kneelawk.graphlib.impl.GLLog;
+
+/**
+ * Keeps track of which chunk pillars have data in a directory of region files, so that looking up a pillar without any
+ * data doesn't have to wait for it to be read.
+ * <p>
+ * A region's pillars become known once the region file's header has been read, which is one small read per region
+ * instead of one read per pillar. Writes are tracked as they are made, as the region files may not reflect them yet.
+ */
+public final class PillarPresence {
+    private static final int REGION_SHIFT = 5;
+    private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+    private static final int PILLARS_PER_REGION = 1 << (REGION_SHIFT * 2);
+    private static final int HEADER_SIZE = PILLARS_PER_REGION * 4;
+
+    private final Path dir;
+    private final Long2ObjectMap<Region> regions = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * Creates a pillar presence tracker.
+     *
+     * @param dir the directory holding the region files.
+     */
+    public PillarPresence(@NotNull Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Checks whether a chunk pillar is known to have no data, without reading anything.
+     *
+     * @param chunkX the x coordinate of the chunk pillar.
+     * @param chunkZ the z coordinate of the chunk pillar.
+     * @return <code>true</code> if the pillar is known to have no data, <code>false</code> if it has data or if that
+     * is not known yet.
+     */
+    public boolean isKnownAbsent(int chunkX, int chunkZ) {
+        Region region = regions.get(regionKey(chunkX, chunkZ));
+        if (region == null) return false;
+
+        int index = pillarIndex(chunkX, chunkZ);
+        return (region.scanned || get(region.written, index)) && !get(region.present, index);
+    }
+
+    /**
+     * Checks whether a chunk pillar has no data, reading its region file's header if that hasn't been done yet.
+     *
+     * @param chunkX the x coordinate of the chunk pillar.
+     * @param chunkZ the z coordinate of the chunk pillar.
+     * @return <code>true</code> if the pillar has no data.
+     */
+    public boolean isAbsent(int chunkX, int chunkZ) {
+        Region region = getRegion(chunkX, chunkZ);
+        if (!region.scanned) {
+            scan(region, chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT);
+        }
+
+        return !get(region.present, pillarIndex(chunkX, chunkZ));
+    }
+
+    /**
+     * Records that a chunk pillar has been written.
+     *
+     * @param chunkX  the x coordinate of the chunk pillar.
+     * @param chunkZ  the z coordinate of the chunk pillar.
+     * @param hasData <code>true</code> if the pillar has data now, <code>false</code> if it was deleted.
+     */
+    public void markWritten(int chunkX, int chunkZ, boolean hasData) {
+        Region region = getRegion(chunkX, chunkZ);
+        int index = pillarIndex(chunkX, chunkZ);
+        set(region.written, index, true);
+        set(region.present, index, hasData);
+    }
+
+    private @NotNull Region getRegion(int chunkX, int chunkZ) {
+        return regions.computeIfAbsent(regionKey(chunkX, chunkZ), key -> new Region());
+    }
+
+    private void scan(@NotNull Region region, int regionX, int regionZ) {
+        long[] header = new long[PILLARS_PER_REGION / 64];
+
+        Path file = dir.resolve("r." + regionX + "." + regionZ + ".mca");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) < 0) {
+                    throw new IOException("Region file is shorter than its header");
+                }
+            }
+
+            buf.flip();
+            for (int i = 0; i < PILLARS_PER_REGION; i++) {
+                // each pillar has a location, which is zero if the pillar has never been written
+                set(header, i, buf.getInt() != 0);
+            }
+        } catch (NoSuchFileException e) {
+            // no region file means no pillars
+        } catch (IOException e) {
+            GLLog.warn("Unable to read region file header {}. Assuming all its chunk pillars have data.", file, e);
+            for (int i = 0; i < PILLARS_PER_REGION; i++) {
+                set(header, i, true);
+            }
+        }
+
+        // pillars written since the region file was last flushed may be out of date in the header, but every one of
+        // them has been recorded in written
+        for (int i = 0; i < header.length; i++) {
+            region.present[i] = (header[i] & ~region.written[i]) | (region.present[i] & region.written[i]);
+        }
+        region.scanned = true;
+    }
+
+    private static long regionKey(int chunkX, int chunkZ) {
+        return ((long) (chunkX >> REGION_SHIFT) & 0xFFFFFFFFL) |
+            (((long) (chunkZ >> REGION_SHIFT) & 0xFFFFFFFFL) << 32);
+    }
+
+    private static int pillarIndex(int chunkX, int chunkZ) {
+        return (chunkX & REGION_MASK) | ((chunkZ & REGION_MASK) << REGION_SHIFT);
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static void set(long[] bits, int index, boolean value) {
+        if (value) {
+            bits[index >>> 6] |= 1L << index;
+        } else {
+            bits[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    private static final class Region {
+        // the pillars with data
+        final long[] present = new long[PILLARS_PER_REGION / 64];
+        // the pillars written to since tracking started
+        final long[] written = new long[PILLARS_PER_REGION / 64];
+        boolean scanned = false;
+    }
+}
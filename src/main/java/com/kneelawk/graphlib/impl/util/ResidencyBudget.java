@@ -0,0 +1,94 @@
+package com.kneelawk.graphlib.impl.util;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+
+/**
+ * Keeps track of how much of a residency budget each resident graph uses, and the order the graphs were last used in.
+ */
+public final class ResidencyBudget {
+    private final long budget;
+    private final Long2IntOpenHashMap weights = new Long2IntOpenHashMap();
+    // least recently used first
+    private final LongLinkedOpenHashSet order = new LongLinkedOpenHashSet();
+    private long total = 0;
+
+    /**
+     * Creates a new residency budget.
+     *
+     * @param budget the total weight resident graphs may have before they should be evicted.
+     */
+    public ResidencyBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Records that a graph was used, adding it if it is not already tracked.
+     *
+     * @param id     the id of the graph.
+     * @param weight the current weight of the graph.
+     */
+    public void use(long id, int weight) {
+        total += weight - weights.put(id, weight);
+        order.addAndMoveToLast(id);
+    }
+
+    /**
+     * Updates a tracked graph's weight without counting it as a use. Graphs that are not tracked are ignored.
+     *
+     * @param id     the id of the graph.
+     * @param weight the current weight of the graph.
+     */
+    public void update(long id, int weight) {
+        if (!weights.containsKey(id)) return;
+        total += weight - weights.put(id, weight);
+    }
+
+    /**
+     * Stops tracking a graph.
+     *
+     * @param id the id of the graph.
+     */
+    public void remove(long id) {
+        if (!weights.containsKey(id)) return;
+        total -= weights.remove(id);
+        order.remove(id);
+    }
+
+    /**
+     * Gets the least recently used graph.
+     *
+     * @return the id of the least recently used graph.
+     * @throws java.util.NoSuchElementException if no graphs are tracked.
+     */
+    public long getLeastRecentlyUsed() {
+        return order.firstLong();
+    }
+
+    /**
+     * Gets whether the tracked graphs weigh more than the budget allows.
+     *
+     * @return whether the budget has been exceeded.
+     */
+    public boolean isOverBudget() {
+        return total > budget;
+    }
+
+    /**
+     * Gets the total weight of all the tracked graphs.
+     *
+     * @return the total weight of all the tracked graphs.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets the number of tracked graphs.
+     *
+     * @return the number of tracked graphs.
+     */
+    public int size() {
+        return order.size();
+    }
+}
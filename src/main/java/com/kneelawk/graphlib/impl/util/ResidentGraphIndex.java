@@ -0,0 +1,174 @@
+package com.kneelawk.graphlib.impl.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterable;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+
+/**
+ * Keeps track of which chunk sections each resident graph is in, and how many of those sections are loaded.
+ * <p>
+ * This lets the graphs in a chunk section, and the graphs that are no longer in any loaded chunk section, be found
+ * without going through every resident graph.
+ */
+public final class ResidentGraphIndex {
+    // chunk section -> resident graphs in it
+    private final Long2ObjectMap<LongSet> graphsBySection = new Long2ObjectOpenHashMap<>();
+    // resident graph -> number of its chunk sections that are loaded
+    private final Long2IntOpenHashMap loadedSectionCounts = new Long2IntOpenHashMap();
+    private final LongSet loadedSections = new LongOpenHashSet();
+    private final LongSet unreferenced = new LongLinkedOpenHashSet();
+
+    /**
+     * Adds a graph that has become resident.
+     *
+     * @param id       the id of the graph.
+     * @param sections the chunk sections the graph is in.
+     */
+    public void addGraph(long id, @NotNull LongIterable sections) {
+        if (!loadedSectionCounts.containsKey(id)) {
+            loadedSectionCounts.put(id, 0);
+            unreferenced.add(id);
+        }
+
+        for (LongIterator iter = sections.iterator(); iter.hasNext(); ) {
+            addSection(id, iter.nextLong());
+        }
+    }
+
+    /**
+     * Removes a graph that is no longer resident.
+     *
+     * @param id       the id of the graph.
+     * @param sections the chunk sections the graph is in.
+     */
+    public void removeGraph(long id, @NotNull LongIterable sections) {
+        for (LongIterator iter = sections.iterator(); iter.hasNext(); ) {
+            long section = iter.nextLong();
+            LongSet graphs = graphsBySection.get(section);
+            if (graphs != null) {
+                graphs.remove(id);
+                if (graphs.isEmpty()) {
+                    graphsBySection.remove(section);
+                }
+            }
+        }
+
+        loadedSectionCounts.remove(id);
+        unreferenced.remove(id);
+    }
+
+    /**
+     * Records that a resident graph has gained nodes in a chunk section. Graphs that are not resident are ignored.
+     *
+     * @param id      the id of the graph.
+     * @param section the chunk section.
+     */
+    public void addSection(long id, long section) {
+        if (!loadedSectionCounts.containsKey(id)) return;
+
+        if (graphsBySection.computeIfAbsent(section, s -> new LongOpenHashSet()).add(id) &&
+            loadedSections.contains(section)) {
+            reference(id);
+        }
+    }
+
+    /**
+     * Records that a resident graph no longer has any nodes in a chunk section.
+     *
+     * @param id      the id of the graph.
+     * @param section the chunk section.
+     */
+    public void removeSection(long id, long section) {
+        LongSet graphs = graphsBySection.get(section);
+        if (graphs == null || !graphs.remove(id)) return;
+
+        if (graphs.isEmpty()) {
+            graphsBySection.remove(section);
+        }
+        if (loadedSections.contains(section)) {
+            dereference(id);
+        }
+    }
+
+    /**
+     * Records that a chunk section has been loaded. Sections that are already loaded are ignored.
+     *
+     * @param section the chunk section.
+     */
+    public void loadSection(long section) {
+        if (!loadedSections.add(section)) return;
+
+        LongSet graphs = graphsBySection.get(section);
+        if (graphs != null) {
+            for (LongIterator iter = graphs.iterator(); iter.hasNext(); ) {
+                reference(iter.nextLong());
+            }
+        }
+    }
+
+    /**
+     * Records that a chunk section has been unloaded.
+     *
+     * @param section the chunk section.
+     */
+    public void unloadSection(long section) {
+        if (!loadedSections.remove(section)) return;
+
+        LongSet graphs = graphsBySection.get(section);
+        if (graphs != null) {
+            for (LongIterator iter = graphs.iterator(); iter.hasNext(); ) {
+                dereference(iter.nextLong());
+            }
+        }
+    }
+
+    /**
+     * Gets the resident graphs in a chunk section.
+     *
+     * @param section the chunk section.
+     * @return the resident graphs in the chunk section. This must not be modified.
+     */
+    public @NotNull LongSet getGraphs(long section) {
+        LongSet graphs = graphsBySection.get(section);
+        return graphs != null ? graphs : LongSets.EMPTY_SET;
+    }
+
+    /**
+     * Gets the resident graphs that are not in any loaded chunk section.
+     *
+     * @return the resident graphs that are not in any loaded chunk section. This must not be modified.
+     */
+    public @NotNull LongSet getUnreferencedGraphs() {
+        return unreferenced;
+    }
+
+    /**
+     * Gets how many of a resident graph's chunk sections are loaded.
+     *
+     * @param id the id of the graph.
+     * @return the number of the graph's chunk sections that are loaded.
+     */
+    public int getLoadedSectionCount(long id) {
+        return loadedSectionCounts.get(id);
+    }
+
+    private void reference(long id) {
+        if (loadedSectionCounts.addTo(id, 1) == 0) {
+            unreferenced.remove(id);
+        }
+    }
+
+    private void dereference(long id) {
+        if (loadedSectionCounts.addTo(id, -1) == 1) {
+            unreferenced.add(id);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.kneelawk.graphlib.impl.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Hierarchical timing wheel for scheduling things by tick.
+ * <p>
+ * Scheduling is constant time. Advancing is constant time per tick, plus the cost of cascading entries down to lower
+ * levels, which happens at most once per level per entry. Advancing a wheel that holds no entries skips straight to the
+ * target tick.
+ * <p>
+ * Entries cannot be cancelled. Owners are expected to validate entries when they fire.
+ *
+ * @param <T> the type of value being scheduled.
+ */
+public final class TimingWheel<T> {
+    private static final int LEVEL_BITS = 6;
+    private static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+    private static final int LEVEL_MASK = LEVEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private final List<List<Entry<T>>> slots = new ArrayList<>(LEVELS * LEVEL_SIZE);
+    private List<Entry<T>> overflow = new ArrayList<>();
+    private long currentTick;
+    private int size = 0;
+
+    /**
+     * Creates a new timing wheel.
+     *
+     * @param currentTick the tick the wheel starts at.
+     */
+    public TimingWheel(long currentTick) {
+        this.currentTick = currentTick;
+        for (int i = 0; i < LEVELS * LEVEL_SIZE; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Gets the tick this wheel is currently at.
+     *
+     * @return the tick this wheel is currently at.
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Gets the number of entries waiting in this wheel.
+     *
+     * @return the number of entries waiting in this wheel.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Schedules a value to fire at the given tick.
+     * <p>
+     * Values scheduled for the current tick or earlier fire the next time this wheel advances.
+     *
+     * @param value    the value to schedule.
+     * @param deadline the tick the value should fire at.
+     */
+    public void schedule(@NotNull T value, long deadline) {
+        // the current tick's slot has already fired
+        insert(new Entry<>(value, deadline), currentTick + 1);
+        size++;
+    }
+
+    /**
+     * Advances this wheel to the given tick, firing every value whose deadline has been reached.
+     *
+     * @param tick     the tick to advance to.
+     * @param onExpire called for each value that fires.
+     */
+    public void advance(long tick, @NotNull Consumer<T> onExpire) {
+        while (currentTick < tick) {
+            if (size == 0) {
+                currentTick = tick;
+                return;
+            }
+
+            currentTick++;
+            cascade();
+
+            int slotIndex = (int) (currentTick & LEVEL_MASK);
+            List<Entry<T>> expired = slots.get(slotIndex);
+            if (!expired.isEmpty()) {
+                slots.set(slotIndex, new ArrayList<>());
+                size -= expired.size();
+                for (Entry<T> entry : expired) {
+                    onExpire.accept(entry.value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all entries from this wheel.
+     */
+    public void clear() {
+        for (List<Entry<T>> slot : slots) {
+            slot.clear();
+        }
+        overflow.clear();
+        size = 0;
+    }
+
+    private void cascade() {
+        // higher levels must be cascaded first so their entries can trickle all the way down
+        if ((currentTick & ((1L << (LEVEL_BITS * LEVELS)) - 1)) == 0 && !overflow.isEmpty()) {
+            List<Entry<T>> entries = overflow;
+            overflow = new ArrayList<>();
+            for (Entry<T> entry : entries) {
+                insert(entry, currentTick);
+            }
+        }
+
+        for (int level = LEVELS - 1; level >= 1; level--) {
+            if ((currentTick & ((1L << (LEVEL_BITS * level)) - 1)) == 0) {
+                int slotIndex = level * LEVEL_SIZE + (int) ((currentTick >>> (LEVEL_BITS * level)) & LEVEL_MASK);
+                List<Entry<T>> entries = slots.get(slotIndex);
+                if (!entries.isEmpty()) {
+                    slots.set(slotIndex, new ArrayList<>());
+                    for (Entry<T> entry : entries) {
+                        insert(entry, currentTick);
+                    }
+                }
+            }
+        }
+    }
+
+    private void insert(Entry<T> entry, long earliest) {
+        long deadline = Math.max(entry.deadline, earliest);
+        long diff = deadline ^ currentTick;
+
+        for (int level = 0; level < LEVELS; level++) {
+            if ((diff >>> (LEVEL_BITS * (level + 1))) == 0) {
+                int slotIndex = level * LEVEL_SIZE + (int) ((deadline >>> (LEVEL_BITS * level)) & LEVEL_MASK);
+                slots.get(slotIndex).add(entry);
+                return;
+            }
+        }
+
+        overflow.add(entry);
+    }
+
+    private record Entry<T>(T value, long deadline) {}
+}
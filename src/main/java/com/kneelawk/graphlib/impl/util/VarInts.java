@@ -0,0 +1,69 @@
+package com.kneelawk.graphlib.impl.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads and writes variable-length integers, using 7 bits per byte with the high bit marking that more bytes follow.
+ */
+public final class VarInts {
+    private VarInts() {}
+
+    /**
+     * Writes a non-negative int as a variable-length integer.
+     *
+     * @param out   the output to write to.
+     * @param value the value to write. Negative values are written as large unsigned values.
+     * @throws IOException if an error occurs while writing.
+     */
+    public static void writeUnsignedInt(@NotNull DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads a variable-length integer written by {@link #writeUnsignedInt(DataOutput, int)}.
+     *
+     * @param in the input to read from.
+     * @return the value read.
+     * @throws IOException if an error occurs while reading or the integer is too long.
+     */
+    public static int readUnsignedInt(@NotNull DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Variable-length integer is too long");
+    }
+
+    /**
+     * Writes an int that may be <code>-1</code> as a variable-length integer, shifted up by one so that
+     * <code>-1</code> takes a single byte.
+     *
+     * @param out   the output to write to.
+     * @param value the value to write, <code>-1</code> or greater.
+     * @throws IOException if an error occurs while writing.
+     */
+    public static void writeOptionalInt(@NotNull DataOutput out, int value) throws IOException {
+        writeUnsignedInt(out, value + 1);
+    }
+
+    /**
+     * Reads a variable-length integer written by {@link #writeOptionalInt(DataOutput, int)}.
+     *
+     * @param in the input to read from.
+     * @return the value read, <code>-1</code> or greater.
+     * @throws IOException if an error occurs while reading or the integer is too long.
+     */
+    public static int readOptionalInt(@NotNull DataInput in) throws IOException {
+        return readUnsignedInt(in) - 1;
+    }
+}
@@ -0,0 +1,69 @@
+package com.kneelawk.graphlib.api.util;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NodeHandleTests {
+    @Test
+    public void roundTripTest() {
+        long handle = NodeHandle.pack(0x12345678L, 0xABCDEF, 0x42);
+
+        assertEquals("Graph id should survive packing.", 0x12345678L, NodeHandle.getGraphId(handle));
+        assertEquals("Slot should survive packing.", 0xABCDEF, NodeHandle.getSlot(handle));
+        assertEquals("Generation should survive packing.", 0x42, NodeHandle.getGeneration(handle));
+        assertTrue("Packed handles should be valid.", NodeHandle.isValid(handle));
+    }
+
+    @Test
+    public void maxValuesTest() {
+        long handle = NodeHandle.pack(NodeHandle.MAX_GRAPH_ID, NodeHandle.MAX_SLOT, NodeHandle.MAX_GENERATION);
+
+        assertEquals("Max graph id should survive packing.", NodeHandle.MAX_GRAPH_ID, NodeHandle.getGraphId(handle));
+        assertEquals("Max slot should survive packing.", NodeHandle.MAX_SLOT, NodeHandle.getSlot(handle));
+        assertEquals("Max generation should survive packing.", NodeHandle.MAX_GENERATION,
+            NodeHandle.getGeneration(handle));
+    }
+
+    @Test
+    public void noneTest() {
+        assertFalse("NONE should not be a valid handle.", NodeHandle.isValid(NodeHandle.NONE));
+        assertNotEquals("No packed handle should equal NONE.", NodeHandle.NONE, NodeHandle.pack(0, 0, 1));
+    }
+
+    @Test
+    public void nextGenerationTest() {
+        assertEquals("Generations should increment.", 2, NodeHandle.nextGeneration(1));
+        assertEquals("Generations should retire instead of wrapping around.", NodeHandle.RETIRED_GENERATION,
+            NodeHandle.nextGeneration(NodeHandle.RETIRED_GENERATION - 1));
+        assertEquals("Retired generations should stay retired.", NodeHandle.RETIRED_GENERATION,
+            NodeHandle.nextGeneration(NodeHandle.RETIRED_GENERATION));
+        assertFalse("Generations before the last should not be retired.",
+            NodeHandle.isRetired(NodeHandle.nextGeneration(NodeHandle.RETIRED_GENERATION - 2)));
+        assertTrue("Retired generations should be retired.", NodeHandle.isRetired(NodeHandle.RETIRED_GENERATION));
+    }
+
+    @Test
+    public void noReuseAfterRetirementTest() {
+        // a slot reused over and over must never hand out a generation that an earlier handle had
+        IntSet seen = new IntOpenHashSet();
+        int generation = 1;
+        while (!NodeHandle.isRetired(generation)) {
+            assertTrue("Generations should never repeat.", seen.add(generation));
+            generation = NodeHandle.nextGeneration(generation);
+        }
+        assertEquals("Every generation but the retired one should be used.", NodeHandle.MAX_GENERATION - 1,
+            seen.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void outOfRangeGraphIdTest() {
+        NodeHandle.pack(NodeHandle.MAX_GRAPH_ID + 1, 0, 1);
+    }
+}
@@ -0,0 +1,227 @@
+package com.kneelawk.graphlib.api.world;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SaveSchedulerTests {
+    private static final long MILLI = 1_000_000L;
+
+    private final long[] now = {0};
+
+    private SaveScheduler scheduler(long budgetNanos) {
+        return new SaveScheduler(budgetNanos, () -> now[0]);
+    }
+
+    @Test
+    public void budgetTest() {
+        SaveScheduler scheduler = scheduler(2 * MILLI);
+        LongList saved = new LongArrayList();
+        SaveScheduler.Queue queue = scheduler.createQueue(SaveMode.INCREMENTAL, key -> {
+            now[0] += MILLI;
+            saved.add(key);
+        });
+
+        for (long i = 0; i < 10; i++) {
+            queue.add(i);
+        }
+
+        scheduler.tick();
+        assertEquals("A 2 ms budget should save two 1 ms objects.", 2, saved.size());
+        assertEquals("The rest should still be dirty.", 8, queue.size());
+
+        for (int i = 0; i < 4; i++) {
+            scheduler.tick();
+        }
+        assertTrue("Everything should be saved eventually.", queue.isEmpty());
+        assertEquals("Every object should be saved exactly once.", 10, saved.size());
+    }
+
+    @Test
+    public void expensiveObjectTest() {
+        SaveScheduler scheduler = scheduler(2 * MILLI);
+        Long2LongMap costs = new Long2LongOpenHashMap();
+        costs.defaultReturnValue(MILLI / 10);
+        costs.put(0, 20 * MILLI);
+        LongList saved = new LongArrayList();
+        SaveScheduler.Queue queue = scheduler.createQueue(SaveMode.INCREMENTAL, key -> {
+            now[0] += costs.get(key);
+            saved.add(key);
+        });
+
+        queue.add(0);
+        scheduler.tick();
+        assertEquals("A lone object should be saved even if it is over budget.", 1, saved.size());
+
+        // learn the costs of the cheap objects
+        for (long i = 1; i <= 5; i++) {
+            queue.add(i);
+        }
+        while (!queue.isEmpty()) {
+            scheduler.tick();
+        }
+
+        queue.add(0);
+        for (long i = 1; i <= 5; i++) {
+            queue.add(i);
+        }
+        saved.clear();
+
+        scheduler.tick();
+        assertFalse("The expensive object should wait while cheaper objects are saved.", saved.contains(0));
+        assertEquals("The cheap objects should all be saved within the budget.", 5, saved.size());
+
+        int ticks = 0;
+        while (queue.contains(0) && ticks < 1000) {
+            scheduler.tick();
+            ticks++;
+        }
+        assertFalse("The expensive object should be saved once it has waited long enough.", queue.contains(0));
+    }
+
+    @Test
+    public void ageTest() {
+        SaveScheduler scheduler = scheduler(MILLI);
+        LongList saved = new LongArrayList();
+        SaveScheduler.Queue queue = scheduler.createQueue(SaveMode.INCREMENTAL, key -> {
+            now[0] += MILLI;
+            saved.add(key);
+        });
+
+        // learn the costs of all objects
+        for (long i = 1; i <= 4; i++) {
+            queue.add(i);
+        }
+        while (!queue.isEmpty()) {
+            scheduler.tick();
+        }
+        saved.clear();
+
+        queue.add(1);
+        queue.add(2);
+        scheduler.tick();
+        assertEquals("Only one object fits in the budget.", 1, saved.size());
+        long waiting = queue.contains(1) ? 1 : 2;
+
+        queue.add(3);
+        queue.add(4);
+        saved.clear();
+        scheduler.tick();
+        assertEquals("Only one object fits in the budget.", 1, saved.size());
+        assertEquals("The oldest object should be saved first.", waiting, saved.getLong(0));
+    }
+
+    @Test
+    public void manyDirtyObjectsTest() {
+        SaveScheduler scheduler = scheduler(2 * MILLI);
+        LongList saved = new LongArrayList();
+        SaveScheduler.Queue queue = scheduler.createQueue(SaveMode.INCREMENTAL, key -> {
+            now[0] += MILLI / 10;
+            saved.add(key);
+        });
+
+        for (long i = 0; i < 100_000; i++) {
+            queue.add(i);
+        }
+
+        scheduler.tick();
+        assertEquals("A 2 ms budget should save twenty 0.1 ms objects.", 20, saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            assertTrue("Only the oldest objects should be considered.", saved.getLong(i) < 256);
+        }
+    }
+
+    @Test
+    public void budgetUsedUpTest() {
+        SaveScheduler scheduler = scheduler(MILLI);
+        LongList saved = new LongArrayList();
+        SaveScheduler.Queue immediateQueue = scheduler.createQueue(SaveMode.IMMEDIATE, key -> now[0] += 2 * MILLI);
+        SaveScheduler.Queue queue = scheduler.createQueue(SaveMode.INCREMENTAL, key -> {
+            now[0] += MILLI;
+            saved.add(key);
+        });
+
+        immediateQueue.add(0);
+        queue.add(0);
+        queue.add(1);
+
+        scheduler.tick();
+        assertEquals("Something should be saved even if the budget was used up before choosing what to save.", 1,
+            saved.size());
+    }
+
+    @Test
+    public void sharedBudgetTest() {
+        SaveScheduler scheduler = scheduler(4 * MILLI);
+        LongList savedA = new LongArrayList();
+        LongList savedB = new LongArrayList();
+        SaveScheduler.Queue queueA = scheduler.createQueue(SaveMode.INCREMENTAL, key -> {
+            now[0] += MILLI;
+            savedA.add(key);
+        });
+        SaveScheduler.Queue queueB = scheduler.createQueue(SaveMode.INCREMENTAL, key -> {
+            now[0] += MILLI;
+            savedB.add(key);
+        });
+
+        for (long i = 0; i < 10; i++) {
+            queueA.add(i);
+            queueB.add(i);
+        }
+
+        scheduler.tick();
+        assertEquals("Both queues should share one budget.", 4, savedA.size() + savedB.size());
+    }
+
+    @Test
+    public void saveModeTest() {
+        SaveScheduler scheduler = scheduler(MILLI);
+        LongList immediate = new LongArrayList();
+        LongList unload = new LongArrayList();
+        SaveScheduler.Queue immediateQueue = scheduler.createQueue(SaveMode.IMMEDIATE, key -> {
+            now[0] += MILLI;
+            immediate.add(key);
+        });
+        SaveScheduler.Queue unloadQueue = scheduler.createQueue(SaveMode.UNLOAD, unload::add);
+
+        for (long i = 0; i < 10; i++) {
+            immediateQueue.add(i);
+            unloadQueue.add(i);
+        }
+
+        scheduler.tick();
+        assertEquals("Immediate queues should be saved in full, regardless of the budget.", 10, immediate.size());
+        assertTrue("Unload queues should never be saved by the scheduler.", unload.isEmpty());
+        assertEquals("Unload queues should keep their dirty objects.", 10, unloadQueue.size());
+
+        unloadQueue.close();
+        immediateQueue.close();
+        immediateQueue.add(20);
+        scheduler.tick();
+        assertEquals("Closed queues should no longer be saved.", 10, immediate.size());
+    }
+
+    @Test
+    public void takeAllTest() {
+        SaveScheduler scheduler = scheduler(MILLI);
+        LongList saved = new LongArrayList();
+        SaveScheduler.Queue queue = scheduler.createQueue(SaveMode.INCREMENTAL, saved::add);
+
+        queue.add(3);
+        queue.add(1);
+        queue.add(2);
+
+        assertEquals("Taken objects should be oldest first.", LongArrayList.of(3, 1, 2), queue.takeAll());
+        assertTrue("Taken objects should no longer be dirty.", queue.isEmpty());
+
+        scheduler.tick();
+        assertTrue("Taken objects should not be saved by the scheduler.", saved.isEmpty());
+    }
+}
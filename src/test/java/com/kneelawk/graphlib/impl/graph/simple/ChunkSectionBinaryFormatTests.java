@@ -0,0 +1,129 @@
+package com.kneelawk.graphlib.impl.graph.simple;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.Identifier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkSectionBinaryFormatTests {
+    private static final Identifier WIRE = new Identifier("test:wire");
+    private static final Identifier PIPE = new Identifier("test:pipe");
+
+    private static LongSet ids(long... ids) {
+        LongSet set = new LongLinkedOpenHashSet();
+        for (long id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+
+    private static NbtCompound nodeTag(int color) {
+        NbtCompound tag = new NbtCompound();
+        tag.putInt("color", color);
+        return tag;
+    }
+
+    @Test
+    public void nodesRoundTripTest() throws IOException {
+        ChunkSectionBinaryFormat.Section section = new ChunkSectionBinaryFormat.Section();
+        section.inChunk.addAll(ids(3, 7, 1L << 40));
+
+        List<ChunkSectionBinaryFormat.NodeEntry> nodes = new ObjectArrayList<>();
+        nodes.add(new ChunkSectionBinaryFormat.NodeEntry(WIRE, 3, null, nodeTag(2)));
+        nodes.add(new ChunkSectionBinaryFormat.NodeEntry(PIPE, 7, new byte[]{1, 2, 3}, null));
+        nodes.add(new ChunkSectionBinaryFormat.NodeEntry(WIRE, 1L << 40, null, null));
+        section.nodesAt.put((short) 0x123, nodes);
+        section.nodesAt.put((short) 0xFFF,
+            new ObjectArrayList<>(List.of(new ChunkSectionBinaryFormat.NodeEntry(PIPE, 3, new byte[0], null))));
+
+        ChunkSectionBinaryFormat.Section decoded =
+            ChunkSectionBinaryFormat.decode(ChunkSectionBinaryFormat.encode(section));
+
+        assertEquals("The graphs in the section should round-trip.", section.inChunk, decoded.inChunk);
+        assertTrue("No positions should be decoded as graph-only.", decoded.graphsAt.isEmpty());
+        assertEquals("Every position with nodes should round-trip.", section.nodesAt.keySet(),
+            decoded.nodesAt.keySet());
+
+        List<ChunkSectionBinaryFormat.NodeEntry> decodedNodes = decoded.nodesAt.get((short) 0x123);
+        assertEquals("Every node at a position should round-trip.", 3, decodedNodes.size());
+
+        ChunkSectionBinaryFormat.NodeEntry nbtNode = decodedNodes.get(0);
+        assertEquals("NBT node types should round-trip.", WIRE, nbtNode.type());
+        assertEquals("NBT nodes' graphs should round-trip.", 3, nbtNode.graphId());
+        assertNull("NBT nodes should not be decoded as raw.", nbtNode.raw());
+        assertEquals("NBT payloads should round-trip.", nodeTag(2), nbtNode.tag());
+
+        ChunkSectionBinaryFormat.NodeEntry rawNode = decodedNodes.get(1);
+        assertEquals("Raw node types should round-trip.", PIPE, rawNode.type());
+        assertEquals("Raw nodes' graphs should round-trip.", 7, rawNode.graphId());
+        assertArrayEquals("Raw payloads should round-trip.", new byte[]{1, 2, 3}, rawNode.raw());
+        assertNull("Raw nodes should not be decoded as NBT.", rawNode.tag());
+
+        ChunkSectionBinaryFormat.NodeEntry emptyNode = decodedNodes.get(2);
+        assertEquals("Graph ids beyond an int should round-trip.", 1L << 40, emptyNode.graphId());
+        assertNull("Nodes without a payload should have no raw data.", emptyNode.raw());
+        assertNull("Nodes without a payload should have no NBT.", emptyNode.tag());
+
+        ChunkSectionBinaryFormat.NodeEntry lastNode = decoded.nodesAt.get((short) 0xFFF).get(0);
+        assertArrayEquals("Empty raw payloads should stay raw.", new byte[0], lastNode.raw());
+        assertNull("Empty raw payloads should not be decoded as NBT.", lastNode.tag());
+    }
+
+    @Test
+    public void multipleGraphsAtPositionTest() throws IOException {
+        ChunkSectionBinaryFormat.Section section = new ChunkSectionBinaryFormat.Section();
+        section.graphsAt.put((short) 5, ids(1, 2, 3));
+        section.graphsAt.put((short) 6, ids(2));
+        section.nodesAt.put((short) 7, new ObjectArrayList<>(
+            List.of(new ChunkSectionBinaryFormat.NodeEntry(WIRE, 1, null, nodeTag(0)),
+                new ChunkSectionBinaryFormat.NodeEntry(WIRE, 4, null, nodeTag(1)))));
+
+        ChunkSectionBinaryFormat.Section decoded =
+            ChunkSectionBinaryFormat.decode(ChunkSectionBinaryFormat.encode(section));
+
+        assertEquals("Every graph at a position should round-trip.", ids(1, 2, 3), decoded.graphsAt.get((short) 5));
+        assertEquals("Graphs shared with other positions should round-trip.", ids(2), decoded.graphsAt.get((short) 6));
+
+        LongSet at7 = new LongLinkedOpenHashSet();
+        decoded.collectGraphsAt((short) 7, at7);
+        assertEquals("Nodes in different graphs at one position should round-trip.", ids(1, 4), at7);
+
+        assertTrue("Removing graphs should change the section.", decoded.removeGraphs(ids(1, 2)));
+        assertEquals("Removed graphs should leave positions.", ids(3), decoded.graphsAt.get((short) 5));
+        assertNull("Positions left without graphs should be removed.", decoded.graphsAt.get((short) 6));
+        assertEquals("Removed graphs' nodes should leave positions.", 1, decoded.nodesAt.get((short) 7).size());
+    }
+
+    @Test
+    public void emptySectionTest() throws IOException {
+        ChunkSectionBinaryFormat.Section decoded =
+            ChunkSectionBinaryFormat.decode(ChunkSectionBinaryFormat.encode(new ChunkSectionBinaryFormat.Section()));
+        assertTrue("Empty sections should round-trip.", decoded.isEmpty());
+
+        ChunkSectionBinaryFormat.Section chunkOnly = new ChunkSectionBinaryFormat.Section();
+        chunkOnly.inChunk.add(9);
+        decoded = ChunkSectionBinaryFormat.decode(ChunkSectionBinaryFormat.encode(chunkOnly));
+        assertEquals("Sections with graphs but no positions should round-trip.", ids(9), decoded.inChunk);
+        assertTrue("Sections without positions should have no graph-only positions.", decoded.graphsAt.isEmpty());
+        assertTrue("Sections without positions should have no node positions.", decoded.nodesAt.isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersionTest() throws IOException {
+        byte[] bytes = ChunkSectionBinaryFormat.encode(new ChunkSectionBinaryFormat.Section());
+        bytes[0] = 2;
+        ChunkSectionBinaryFormat.decode(bytes);
+    }
+}
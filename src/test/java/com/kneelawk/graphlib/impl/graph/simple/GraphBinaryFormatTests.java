@@ -0,0 +1,474 @@
+package com.kneelawk.graphlib.impl.graph.simple;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtLong;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+import com.kneelawk.graphlib.api.graph.GraphUniverse;
+import com.kneelawk.graphlib.impl.util.VarInts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GraphBinaryFormatTests {
+    private static final long SECTION_A = ChunkSectionPos.asLong(0, 4, 0);
+    private static final long SECTION_B = ChunkSectionPos.asLong(-1, -2, 3);
+    private static final long SECTION_EMPTY = ChunkSectionPos.asLong(100, 0, -100);
+
+    /**
+     * A universe with no types registered, so that nothing is decoded and raw payloads are kept as they are.
+     */
+    private static final GraphUniverse NO_TYPES =
+        (GraphUniverse) Proxy.newProxyInstance(GraphUniverse.class.getClassLoader(),
+            new Class<?>[]{GraphUniverse.class}, (proxy, method, args) -> null);
+
+    private static NbtCompound node(int x, int y, int z, String type) {
+        NbtCompound com = new NbtCompound();
+        com.putInt("x", x);
+        com.putInt("y", y);
+        com.putInt("z", z);
+        com.putString("type", type);
+        return com;
+    }
+
+    private static NbtCompound link(int first, int second, String keyType) {
+        NbtCompound com = new NbtCompound();
+        com.putString("keyType", keyType);
+        com.putInt("first", first);
+        com.putInt("second", second);
+        return com;
+    }
+
+    private static NbtCompound value(int value) {
+        NbtCompound com = new NbtCompound();
+        com.putInt("value", value);
+        return com;
+    }
+
+    private static NbtCompound graph(long[] chunks, List<NbtCompound> nodes, List<NbtCompound> links) {
+        NbtCompound data = new NbtCompound();
+
+        NbtList chunksTag = new NbtList();
+        for (long chunk : chunks) {
+            chunksTag.add(NbtLong.of(chunk));
+        }
+        data.put("chunks", chunksTag);
+
+        NbtList nodesTag = new NbtList();
+        nodesTag.addAll(nodes);
+        data.put("nodes", nodesTag);
+
+        data.putByteArray("slotGenerations", new byte[]{1, 3, 0, (byte) 200});
+
+        NbtList linksTag = new NbtList();
+        linksTag.addAll(links);
+        data.put("links", linksTag);
+
+        NbtCompound graphEntities = new NbtCompound();
+        graphEntities.put("test:counter", value(12));
+        data.put("graphEntities", graphEntities);
+
+        return data;
+    }
+
+    /**
+     * A graph with raw, NBT, and empty payloads, spread over several sections, with links both within and between
+     * sections.
+     */
+    private static NbtCompound testGraph() {
+        List<NbtCompound> nodes = new ObjectArrayList<>();
+
+        // section A
+        NbtCompound raw = node(1, 70, 2, "test:wire");
+        raw.putByteArray("nodeRaw", new byte[]{4, 5, 6});
+        raw.putInt("slot", 0);
+        nodes.add(raw);
+
+        // section B, with negative coordinates
+        NbtCompound nbt = node(-3, -17, 60, "test:pipe");
+        nbt.put("node", value(1));
+        nbt.putInt("slot", 1);
+        nbt.putString("entityType", "test:node_entity");
+        nbt.put("entity", value(2));
+        nbt.putInt("scheduledTick", 5);
+        nodes.add(nbt);
+
+        // section A again, after a node in another section
+        NbtCompound empty = node(15, 79, 15, "test:marker");
+        nodes.add(empty);
+
+        // section B again
+        NbtCompound entityWithoutData = node(-16, -32, 48, "test:pipe");
+        entityWithoutData.put("node", value(3));
+        entityWithoutData.putString("entityType", "test:node_entity");
+        nodes.add(entityWithoutData);
+
+        List<NbtCompound> links = new ObjectArrayList<>();
+
+        // within section A, with a raw key
+        NbtCompound rawKey = link(0, 2, "test:raw_key");
+        rawKey.putByteArray("keyRaw", new byte[]{9});
+        links.add(rawKey);
+
+        // between sections, with an NBT key, entity, and tick
+        NbtCompound nbtKey = link(1, 0, "test:nbt_key");
+        nbtKey.put("key", value(4));
+        nbtKey.putString("entityType", "test:link_entity");
+        nbtKey.put("entity", value(5));
+        nbtKey.putInt("scheduledTick", 0);
+        links.add(nbtKey);
+
+        // within section B, with no key data
+        links.add(link(3, 1, "graphlib:empty"));
+
+        return graph(new long[]{SECTION_A, SECTION_B, SECTION_EMPTY}, nodes, links);
+    }
+
+    private static Set<NbtCompound> nodesOf(NbtCompound data) {
+        Set<NbtCompound> nodes = new ObjectOpenHashSet<>();
+        for (NbtElement node : data.getList("nodes", NbtElement.COMPOUND_TYPE)) {
+            nodes.add((NbtCompound) node);
+        }
+        return nodes;
+    }
+
+    /**
+     * Gets a graph's links with their node indices replaced by the nodes themselves, as node order is not kept.
+     */
+    private static Set<NbtCompound> linksOf(NbtCompound data) {
+        NbtList nodes = data.getList("nodes", NbtElement.COMPOUND_TYPE);
+        Set<NbtCompound> links = new ObjectOpenHashSet<>();
+        for (NbtElement element : data.getList("links", NbtElement.COMPOUND_TYPE)) {
+            NbtCompound link = ((NbtCompound) element).copy();
+            link.put("first", nodes.getCompound(link.getInt("first")));
+            link.put("second", nodes.getCompound(link.getInt("second")));
+            links.add(link);
+        }
+        return links;
+    }
+
+    private static void assertSameGraph(String message, NbtCompound expected, NbtCompound actual) {
+        assertEquals(message + " Chunks should match.", expected.getList("chunks", NbtElement.LONG_TYPE),
+            actual.getList("chunks", NbtElement.LONG_TYPE));
+        assertEquals(message + " Nodes should match.", nodesOf(expected), nodesOf(actual));
+        assertEquals(message + " Node counts should match.", expected.getList("nodes", NbtElement.COMPOUND_TYPE).size(),
+            actual.getList("nodes", NbtElement.COMPOUND_TYPE).size());
+        assertEquals(message + " Links should match.", linksOf(expected), linksOf(actual));
+        assertEquals(message + " Link counts should match.", expected.getList("links", NbtElement.COMPOUND_TYPE).size(),
+            actual.getList("links", NbtElement.COMPOUND_TYPE).size());
+        assertArrayEquals(message + " Slot generations should match.", expected.getByteArray("slotGenerations"),
+            actual.getByteArray("slotGenerations"));
+        assertEquals(message + " Graph entities should match.", expected.getCompound("graphEntities"),
+            actual.getCompound("graphEntities"));
+    }
+
+    private static long sectionOf(BlockPos pos) {
+        return ChunkSectionPos.asLong(ChunkSectionPos.getSectionCoord(pos.getX()),
+            ChunkSectionPos.getSectionCoord(pos.getY()), ChunkSectionPos.getSectionCoord(pos.getZ()));
+    }
+
+    private static int occurrences(byte[] bytes, String str) {
+        byte[] needle = str.getBytes(StandardCharsets.UTF_8);
+        int count = 0;
+        outer:
+        for (int i = 0; i + needle.length <= bytes.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (bytes[i + j] != needle[j]) continue outer;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void roundTripTest() throws IOException {
+        NbtCompound data = testGraph();
+        byte[] bytes = GraphBinaryFormat.fromTag(data, 42);
+        assertTrue("Encoded graphs should be recognized as binary.", GraphBinaryFormat.isBinary(bytes));
+
+        GraphBinaryFormat.Reader reader = new GraphBinaryFormat.Reader(NO_TYPES, bytes);
+        assertEquals("The journal sequence number should round-trip.", 42, reader.getJournalSeq());
+        assertEquals("Every node should be counted.", 4, reader.getNodeCount());
+        assertEquals("Every link should be counted.", 3, reader.getLinkCount());
+
+        assertSameGraph("Graphs should round-trip.", data, GraphBinaryFormat.toTag(reader));
+    }
+
+    @Test
+    public void reencodeTest() throws IOException {
+        NbtCompound data = testGraph();
+        NbtCompound decoded = GraphBinaryFormat.toTag(new GraphBinaryFormat.Reader(NO_TYPES,
+            GraphBinaryFormat.fromTag(data, 1)));
+
+        // raw data that could not be decoded must survive being written back out
+        NbtCompound again = GraphBinaryFormat.toTag(new GraphBinaryFormat.Reader(NO_TYPES,
+            GraphBinaryFormat.fromTag(decoded, 2)));
+        assertSameGraph("Decoded graphs should round-trip again.", data, again);
+    }
+
+    @Test
+    public void paletteTest() throws IOException {
+        byte[] bytes = GraphBinaryFormat.fromTag(testGraph(), 0);
+
+        assertEquals("Node types used more than once should be stored once.", 1, occurrences(bytes, "test:pipe"));
+        assertEquals("Entity types used more than once should be stored once.", 1,
+            occurrences(bytes, "test:node_entity"));
+
+        GraphBinaryFormat.Reader reader = new GraphBinaryFormat.Reader(NO_TYPES, bytes);
+        IntSet pipeTypes = new IntOpenHashSet();
+        for (int i = 0; i < reader.getNodeCount(); i++) {
+            GraphBinaryFormat.NodeEntry entry = reader.readNode();
+            if (reader.getId(entry.type()).equals(new Identifier("test:pipe"))) {
+                pipeTypes.add(entry.type());
+            }
+        }
+        assertEquals("Nodes of the same type should share a palette index.", 1, pipeTypes.size());
+    }
+
+    @Test
+    public void payloadsTest() throws IOException {
+        GraphBinaryFormat.Reader reader = new GraphBinaryFormat.Reader(NO_TYPES,
+            GraphBinaryFormat.fromTag(testGraph(), 0));
+
+        Map<BlockPos, GraphBinaryFormat.NodeEntry> nodes = new Object2ObjectOpenHashMap<>();
+        for (int i = 0; i < reader.getNodeCount(); i++) {
+            GraphBinaryFormat.NodeEntry entry = reader.readNode();
+            nodes.put(entry.pos(), entry);
+        }
+
+        GraphBinaryFormat.NodeEntry raw = nodes.get(new BlockPos(1, 70, 2));
+        assertArrayEquals("Raw node payloads should be read as raw.", new byte[]{4, 5, 6}, raw.raw());
+        assertNull("Raw node payloads should not be read as NBT.", raw.tag());
+        assertEquals("Node slots should be read.", 0, raw.slot());
+        assertEquals("Nodes without entities should have no entity type.", -1, raw.entityType());
+        assertEquals("Nodes without ticks should have no tick.", -1, raw.scheduledTick());
+
+        GraphBinaryFormat.NodeEntry nbt = nodes.get(new BlockPos(-3, -17, 60));
+        assertNull("NBT node payloads should not be read as raw.", nbt.raw());
+        assertEquals("NBT node payloads should be read as NBT.", value(1), nbt.tag());
+        assertEquals("Node entity types should be read.", new Identifier("test:node_entity"),
+            reader.getId(nbt.entityType()));
+        assertEquals("Node entities should be read.", value(2), nbt.entity());
+        assertEquals("Node ticks should be read.", 5, nbt.scheduledTick());
+
+        GraphBinaryFormat.NodeEntry empty = nodes.get(new BlockPos(15, 79, 15));
+        assertNull("Empty node payloads should not be read as raw.", empty.raw());
+        assertNull("Empty node payloads should not be read as NBT.", empty.tag());
+        assertEquals("Nodes without slots should have no slot.", -1, empty.slot());
+
+        GraphBinaryFormat.NodeEntry entityWithoutData = nodes.get(new BlockPos(-16, -32, 48));
+        assertTrue("Node entities without data should keep their type.", entityWithoutData.entityType() >= 0);
+        assertNull("Node entities without data should have no data.", entityWithoutData.entity());
+    }
+
+    @Test
+    public void segmentsTest() throws IOException {
+        GraphBinaryFormat.Reader reader = new GraphBinaryFormat.Reader(NO_TYPES,
+            GraphBinaryFormat.fromTag(testGraph(), 0));
+
+        List<GraphBinaryFormat.NodeEntry> nodes = new ObjectArrayList<>();
+        for (int i = 0; i < reader.getNodeCount(); i++) {
+            nodes.add(reader.readNode());
+        }
+
+        // nodes are read back one segment at a time, even though they were written alternating between sections
+        assertEquals("Nodes should be grouped by section.", List.of(SECTION_A, SECTION_A, SECTION_B, SECTION_B),
+            nodes.stream().map(entry -> sectionOf(entry.pos())).toList());
+
+        List<GraphBinaryFormat.LinkEntry> links = new ObjectArrayList<>();
+        for (int i = 0; i < reader.getLinkCount(); i++) {
+            links.add(reader.readLink());
+        }
+
+        for (GraphBinaryFormat.LinkEntry link : links.subList(0, 2)) {
+            assertEquals("Links within a section should come first.", sectionOf(nodes.get(link.first()).pos()),
+                sectionOf(nodes.get(link.second()).pos()));
+        }
+
+        // the link between sections is stored as a stub after every segment's links
+        GraphBinaryFormat.LinkEntry boundary = links.get(2);
+        assertEquals("Links between sections should keep their first end.", new BlockPos(-3, -17, 60),
+            nodes.get(boundary.first()).pos());
+        assertEquals("Links between sections should keep their second end.", new BlockPos(1, 70, 2),
+            nodes.get(boundary.second()).pos());
+        assertEquals("Links between sections should keep their keys.", value(4), boundary.tag());
+        assertEquals("Links between sections should keep their entities.", value(5), boundary.entity());
+        assertEquals("Links between sections should keep their ticks.", 0, boundary.scheduledTick());
+
+        assertEquals("Graph entities should be read after every link.", value(12),
+            reader.readGraphEntities().getCompound("test:counter"));
+    }
+
+    @Test
+    public void readNodesInTest() throws IOException {
+        NbtCompound data = testGraph();
+        byte[] bytes = GraphBinaryFormat.fromTag(data, 0);
+
+        for (boolean preload : new boolean[]{false, true}) {
+            GraphBinaryFormat.Reader reader = new GraphBinaryFormat.Reader(NO_TYPES, bytes);
+            if (preload) reader.preload();
+
+            List<GraphBinaryFormat.NodeEntry> read = new ObjectArrayList<>();
+            reader.readNodesIn(section -> section == SECTION_B, read::add);
+
+            assertEquals("Only nodes in the chosen section should be read.", 2, read.size());
+            Set<BlockPos> positions = new ObjectOpenHashSet<>();
+            for (GraphBinaryFormat.NodeEntry entry : read) {
+                assertEquals("Nodes should be in the chosen section.", SECTION_B, sectionOf(entry.pos()));
+                positions.add(entry.pos());
+            }
+            assertEquals("Node positions should round-trip.",
+                Set.of(new BlockPos(-3, -17, 60), new BlockPos(-16, -32, 48)), positions);
+
+            // skipping nodes must leave the reader at the links
+            for (int i = 0; i < reader.getLinkCount(); i++) {
+                reader.readLink();
+            }
+            assertEquals("Graph entities should be readable after skipped nodes.",
+                data.getCompound("graphEntities"), reader.readGraphEntities());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readNodesInAfterReadNodeTest() throws IOException {
+        GraphBinaryFormat.Reader reader = new GraphBinaryFormat.Reader(NO_TYPES,
+            GraphBinaryFormat.fromTag(testGraph(), 0));
+        reader.readNode();
+        reader.readNodesIn(section -> true, entry -> {});
+    }
+
+    @Test
+    public void preloadTest() throws IOException {
+        NbtCompound data = testGraph();
+        GraphBinaryFormat.Reader reader =
+            new GraphBinaryFormat.Reader(NO_TYPES, GraphBinaryFormat.fromTag(data, 0)).preload();
+        assertSameGraph("Preloaded graphs should round-trip.", data, GraphBinaryFormat.toTag(reader));
+    }
+
+    @Test
+    public void emptyGraphTest() throws IOException {
+        NbtCompound data = graph(new long[0], List.of(), List.of());
+        GraphBinaryFormat.Reader reader = new GraphBinaryFormat.Reader(NO_TYPES, GraphBinaryFormat.fromTag(data, 0));
+        assertEquals("Empty graphs should have no nodes.", 0, reader.getNodeCount());
+        assertSameGraph("Empty graphs should round-trip.", data, GraphBinaryFormat.toTag(reader));
+    }
+
+    @Test
+    public void legacyVersionTest() throws IOException {
+        NbtCompound graphEntities = new NbtCompound();
+        graphEntities.put("test:counter", value(12));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0x474C4742);
+            out.writeByte(1);
+            out.writeLong(7);
+
+            // palette
+            VarInts.writeUnsignedInt(out, 3);
+            out.writeUTF("test:wire");
+            out.writeUTF("test:pipe");
+            out.writeUTF("test:nbt_key");
+
+            // sections, the first of which is a chunk
+            VarInts.writeUnsignedInt(out, 2);
+            VarInts.writeUnsignedInt(out, 1);
+            out.writeLong(SECTION_A);
+            out.writeLong(SECTION_B);
+
+            VarInts.writeUnsignedInt(out, 2);
+            out.write(new byte[]{1, 2});
+
+            // nodes, each referring to its own section
+            VarInts.writeUnsignedInt(out, 2);
+
+            VarInts.writeUnsignedInt(out, 0);
+            VarInts.writeUnsignedInt(out, 0);
+            out.writeShort(1 << 8 | 6 << 4 | 2);
+            GraphBinaryFormat.writePayload(out, new byte[]{4, 5, 6}, null);
+            VarInts.writeOptionalInt(out, 0);
+            VarInts.writeOptionalInt(out, -1);
+            VarInts.writeOptionalInt(out, -1);
+
+            VarInts.writeUnsignedInt(out, 1);
+            VarInts.writeUnsignedInt(out, 1);
+            out.writeShort(13 << 8 | 15 << 4 | 12);
+            GraphBinaryFormat.writePayload(out, null, value(1));
+            VarInts.writeOptionalInt(out, -1);
+            VarInts.writeOptionalInt(out, -1);
+            VarInts.writeOptionalInt(out, 3);
+
+            // links, referring to nodes by index
+            VarInts.writeUnsignedInt(out, 1);
+            VarInts.writeUnsignedInt(out, 1);
+            VarInts.writeUnsignedInt(out, 0);
+            VarInts.writeUnsignedInt(out, 2);
+            GraphBinaryFormat.writePayload(out, null, value(4));
+            VarInts.writeOptionalInt(out, -1);
+            VarInts.writeOptionalInt(out, -1);
+
+            NbtIo.write(graphEntities, out);
+        }
+
+        NbtCompound first = node(1, 70, 2, "test:wire");
+        first.putByteArray("nodeRaw", new byte[]{4, 5, 6});
+        first.putInt("slot", 0);
+        NbtCompound second = node(-3, -17, 60, "test:pipe");
+        second.put("node", value(1));
+        second.putInt("scheduledTick", 3);
+        NbtCompound link = link(1, 0, "test:nbt_key");
+        link.put("key", value(4));
+
+        NbtCompound expected = graph(new long[]{SECTION_A}, List.of(first, second), List.of(link));
+        expected.putByteArray("slotGenerations", new byte[]{1, 2});
+
+        GraphBinaryFormat.Reader reader = new GraphBinaryFormat.Reader(NO_TYPES, bytes.toByteArray());
+        assertEquals("Legacy journal sequence numbers should be read.", 7, reader.getJournalSeq());
+        assertSameGraph("Legacy graphs should be read.", expected, GraphBinaryFormat.toTag(reader));
+
+        // legacy graphs are always read whole, but must still support partial reads
+        List<GraphBinaryFormat.NodeEntry> read = new ObjectArrayList<>();
+        new GraphBinaryFormat.Reader(NO_TYPES, bytes.toByteArray()).readNodesIn(section -> section == SECTION_A, read::add);
+        assertEquals("Partial reads of legacy graphs should filter by section.", 1, read.size());
+        assertEquals("Partial reads of legacy graphs should find nodes' positions.", new BlockPos(1, 70, 2),
+            read.get(0).pos());
+    }
+
+    @Test(expected = GraphBinaryFormat.UnsupportedVersionException.class)
+    public void unsupportedVersionTest() throws IOException {
+        byte[] bytes = GraphBinaryFormat.fromTag(testGraph(), 0);
+        bytes[4] = 3;
+        new GraphBinaryFormat.Reader(NO_TYPES, bytes);
+    }
+
+    @Test
+    public void notBinaryTest() {
+        assertFalse("Short arrays should not be recognized as binary.", GraphBinaryFormat.isBinary(new byte[]{0x47}));
+        assertFalse("Other data should not be recognized as binary.", GraphBinaryFormat.isBinary(new byte[8]));
+    }
+}
@@ -0,0 +1,299 @@
+package com.kneelawk.graphlib.impl.graph.simple;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtLong;
+import net.minecraft.util.math.ChunkSectionPos;
+
+import com.kneelawk.graphlib.api.util.NodeHandle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GraphJournalOpsTests {
+    private record Link(int first, int second, NbtCompound tag) {}
+
+    /**
+     * A node's key tag, as produced by {@link SimpleNodeWrapper#toTag()}.
+     */
+    private static NbtCompound key(int x, int y, int z, int color) {
+        NbtCompound com = new NbtCompound();
+        com.putInt("x", x);
+        com.putInt("y", y);
+        com.putInt("z", z);
+        NbtCompound node = new NbtCompound();
+        node.putInt("color", color);
+        com.put("node", node);
+        com.putString("type", "test:wire");
+        return com;
+    }
+
+    private static NbtCompound withSlot(NbtCompound key, int slot) {
+        NbtCompound com = key.copy();
+        com.putInt("slot", slot);
+        return com;
+    }
+
+    private static NbtCompound linkKey(int strength) {
+        NbtCompound com = new NbtCompound();
+        com.putString("keyType", "test:strength");
+        NbtCompound key = new NbtCompound();
+        key.putInt("strength", strength);
+        com.put("key", key);
+        return com;
+    }
+
+    /**
+     * A link tag for the journal, with its ends' key tags.
+     */
+    private static NbtCompound linkRef(NbtCompound first, NbtCompound second, NbtCompound linkKey) {
+        NbtCompound com = linkKey.copy();
+        com.put("first", first);
+        com.put("second", second);
+        return com;
+    }
+
+    private static NbtCompound entity(String type, int value) {
+        NbtCompound com = new NbtCompound();
+        com.putString("entityType", type);
+        NbtCompound entity = new NbtCompound();
+        entity.putInt("value", value);
+        com.put("entity", entity);
+        return com;
+    }
+
+    private static NbtCompound withEntity(NbtCompound tag, NbtCompound entity) {
+        NbtCompound com = tag.copy();
+        com.putString("entityType", entity.getString("entityType"));
+        com.put("entity", entity.get("entity"));
+        return com;
+    }
+
+    private static NbtCompound withTick(NbtCompound tag, int tick) {
+        NbtCompound com = tag.copy();
+        com.putInt("scheduledTick", tick);
+        return com;
+    }
+
+    private static NbtCompound counter(int value) {
+        NbtCompound graphEntities = new NbtCompound();
+        NbtCompound counter = new NbtCompound();
+        counter.putInt("value", value);
+        graphEntities.put("test:counter", counter);
+        return graphEntities;
+    }
+
+    /**
+     * Builds a graph in the form produced by {@link SimpleBlockGraph#toTag()}.
+     */
+    private static NbtCompound graph(List<NbtCompound> nodes, List<Link> links, byte[] slotGenerations,
+                                     NbtCompound graphEntities) {
+        NbtCompound data = new NbtCompound();
+
+        NbtList chunksTag = new NbtList();
+        Set<Long> chunks = new ObjectOpenHashSet<>();
+        NbtList nodesTag = new NbtList();
+        for (NbtCompound node : nodes) {
+            long chunk = ChunkSectionPos.asLong(ChunkSectionPos.getSectionCoord(node.getInt("x")),
+                ChunkSectionPos.getSectionCoord(node.getInt("y")), ChunkSectionPos.getSectionCoord(node.getInt("z")));
+            if (chunks.add(chunk)) {
+                chunksTag.add(NbtLong.of(chunk));
+            }
+            nodesTag.add(node);
+        }
+        data.put("chunks", chunksTag);
+        data.put("nodes", nodesTag);
+
+        data.putByteArray("slotGenerations", slotGenerations);
+
+        NbtList linksTag = new NbtList();
+        for (Link link : links) {
+            NbtCompound linkTag = link.tag().copy();
+            linkTag.putInt("first", link.first());
+            linkTag.putInt("second", link.second());
+            linksTag.add(linkTag);
+        }
+        data.put("links", linksTag);
+
+        data.put("graphEntities", graphEntities);
+
+        return data;
+    }
+
+    private static Set<NbtCompound> nodesOf(NbtCompound data) {
+        Set<NbtCompound> nodes = new ObjectOpenHashSet<>();
+        for (NbtElement node : data.getList("nodes", NbtElement.COMPOUND_TYPE)) {
+            nodes.add((NbtCompound) node);
+        }
+        return nodes;
+    }
+
+    /**
+     * Gets a graph's links with their node indices replaced by the nodes themselves, as node order is not kept.
+     */
+    private static Set<NbtCompound> linksOf(NbtCompound data) {
+        NbtList nodes = data.getList("nodes", NbtElement.COMPOUND_TYPE);
+        Set<NbtCompound> links = new ObjectOpenHashSet<>();
+        for (NbtElement element : data.getList("links", NbtElement.COMPOUND_TYPE)) {
+            NbtCompound link = ((NbtCompound) element).copy();
+            link.put("first", nodes.getCompound(link.getInt("first")));
+            link.put("second", nodes.getCompound(link.getInt("second")));
+            links.add(link);
+        }
+        return links;
+    }
+
+    private static Set<NbtElement> chunksOf(NbtCompound data) {
+        return new ObjectOpenHashSet<>(data.getList("chunks", NbtElement.LONG_TYPE));
+    }
+
+    private static void assertSameGraph(String message, NbtCompound expected, NbtCompound actual) {
+        assertEquals(message + " Chunks should match.", chunksOf(expected), chunksOf(actual));
+        assertEquals(message + " Nodes should match.", nodesOf(expected), nodesOf(actual));
+        assertEquals(message + " Node counts should match.", expected.getList("nodes", NbtElement.COMPOUND_TYPE).size(),
+            actual.getList("nodes", NbtElement.COMPOUND_TYPE).size());
+        assertEquals(message + " Links should match.", linksOf(expected), linksOf(actual));
+        assertEquals(message + " Link counts should match.", expected.getList("links", NbtElement.COMPOUND_TYPE).size(),
+            actual.getList("links", NbtElement.COMPOUND_TYPE).size());
+        assertArrayEquals(message + " Slot generations should match.", expected.getByteArray("slotGenerations"),
+            actual.getByteArray("slotGenerations"));
+        assertEquals(message + " Graph entities should match.", expected.getCompound("graphEntities"),
+            actual.getCompound("graphEntities"));
+    }
+
+    private static List<GraphJournalOps.Entry> entries(NbtCompound... ops) {
+        List<GraphJournalOps.Entry> entries = new ObjectArrayList<>();
+        for (int i = 0; i < ops.length; i++) {
+            entries.add(new GraphJournalOps.Entry(i + 1, ops[i]));
+        }
+        return entries;
+    }
+
+    @Test
+    public void replayMatchesMutatedGraphTest() {
+        NbtCompound a = key(0, 64, 0, 1);
+        NbtCompound b = key(1, 64, 0, 2);
+        NbtCompound c = key(-1, -5, 17, 3);
+        NbtCompound d = key(2, 64, 0, 4);
+        NbtCompound e = key(40, 64, 0, 5);
+
+        NbtCompound weak = linkKey(1);
+        NbtCompound strong = linkKey(2);
+
+        NbtCompound saved = graph(List.of(withSlot(a, 0), withSlot(b, 1), withSlot(c, 2)),
+            List.of(new Link(0, 1, weak), new Link(1, 2, strong), new Link(0, 2, weak)),
+            new byte[]{1, 1, 1}, counter(0));
+
+        NbtCompound nodeEntity = entity("test:node_entity", 6);
+        NbtCompound linkEntity = entity("test:link_entity", 7);
+
+        NbtList mergedNodes = new NbtList();
+        mergedNodes.add(withSlot(e, 4));
+        NbtList mergedLinks = new NbtList();
+        mergedLinks.add(linkRef(d, e, strong));
+
+        List<GraphJournalOps.Entry> entries = entries(
+            // already part of the saved graph
+            GraphJournalOps.removeNode(a),
+            GraphJournalOps.addNode(withSlot(d, 3)),
+            GraphJournalOps.link(linkRef(c, d, weak)),
+            // links are undirected, so unlinking works with the ends swapped
+            GraphJournalOps.unlink(linkRef(b, a, weak)),
+            // removing a node removes its links too
+            GraphJournalOps.removeNode(withSlot(b, 1)),
+            GraphJournalOps.nodeEntity(withEntity(c, nodeEntity)),
+            GraphJournalOps.linkEntity(withEntity(linkRef(c, d, weak), linkEntity)),
+            GraphJournalOps.nodeTick(d, 7),
+            GraphJournalOps.nodeTick(a, 4),
+            GraphJournalOps.nodeTick(a, 0),
+            GraphJournalOps.linkTick(linkRef(d, c, weak), 3),
+            GraphJournalOps.merge(mergedNodes, mergedLinks),
+            GraphJournalOps.graphEntities(counter(8))
+        );
+
+        // the same graph, with the same changes made directly
+        NbtCompound expected = graph(
+            List.of(withSlot(a, 0), withEntity(withSlot(c, 2), nodeEntity), withTick(withSlot(d, 3), 7),
+                withSlot(e, 4)),
+            List.of(new Link(0, 1, weak), new Link(1, 2, withTick(withEntity(weak, linkEntity), 3)),
+                new Link(2, 3, strong)),
+            new byte[]{1, (byte) NodeHandle.nextGeneration(1), 1, 1, 1}, counter(8));
+
+        NbtCompound replayed = GraphJournalOps.replay(saved, entries, 1);
+        assertNotNull("Graphs that were not destroyed should be replayed.", replayed);
+        assertSameGraph("Replaying should match mutating the graph directly.", expected, replayed);
+
+        assertEquals("Replaying should not modify the saved graph.", 3,
+            saved.getList("nodes", NbtElement.COMPOUND_TYPE).size());
+    }
+
+    @Test
+    public void replayAfterSeqTest() {
+        NbtCompound a = key(0, 0, 0, 1);
+        NbtCompound b = key(0, 1, 0, 1);
+        NbtCompound saved = graph(List.of(a), List.of(), new byte[0], counter(0));
+
+        List<GraphJournalOps.Entry> entries = entries(GraphJournalOps.addNode(b), GraphJournalOps.removeNode(a));
+
+        NbtCompound all = GraphJournalOps.replay(saved, entries, 0);
+        assertNotNull("Graphs that were not destroyed should be replayed.", all);
+        assertEquals("Every operation after the saved one should be replayed.", Set.of(b), nodesOf(all));
+
+        NbtCompound none = GraphJournalOps.replay(saved, entries, 2);
+        assertNotNull("Graphs that were not destroyed should be replayed.", none);
+        assertSameGraph("Operations the saved graph already includes should be skipped.", saved, none);
+    }
+
+    @Test
+    public void unknownTargetsTest() {
+        NbtCompound a = key(0, 0, 0, 1);
+        NbtCompound b = key(0, 1, 0, 1);
+        NbtCompound missing = key(9, 9, 9, 9);
+        NbtCompound saved = graph(List.of(a, b), List.of(new Link(0, 1, linkKey(1))), new byte[0], counter(0));
+
+        NbtCompound unknown = new NbtCompound();
+        unknown.putString("op", "fromTheFuture");
+
+        NbtCompound replayed = GraphJournalOps.replay(saved, entries(
+            GraphJournalOps.removeNode(missing),
+            GraphJournalOps.unlink(linkRef(a, b, linkKey(2))),
+            GraphJournalOps.nodeTick(missing, 5),
+            GraphJournalOps.linkTick(linkRef(a, missing, linkKey(1)), 5),
+            // links to nodes that don't exist are dropped when the graph is saved
+            GraphJournalOps.link(linkRef(a, missing, linkKey(1))),
+            unknown
+        ), 0);
+
+        assertNotNull("Graphs that were not destroyed should be replayed.", replayed);
+        assertSameGraph("Operations on things that don't exist should change nothing.", saved, replayed);
+    }
+
+    @Test
+    public void destroyTest() {
+        NbtCompound saved = graph(List.of(key(0, 0, 0, 1)), List.of(), new byte[0], counter(0));
+
+        List<GraphJournalOps.Entry> entries =
+            entries(GraphJournalOps.addNode(key(0, 1, 0, 1)), GraphJournalOps.destroy());
+        assertTrue("Graphs whose last operation destroys them should be destroyed.",
+            GraphJournalOps.isDestroyed(entries));
+        assertNull("Destroyed graphs should replay to nothing.", GraphJournalOps.replay(saved, entries, 0));
+
+        entries.add(new GraphJournalOps.Entry(3, GraphJournalOps.addNode(key(0, 2, 0, 1))));
+        assertFalse("Graphs changed after being destroyed should not be destroyed.",
+            GraphJournalOps.isDestroyed(entries));
+        assertFalse("Graphs with no operations should not be destroyed.", GraphJournalOps.isDestroyed(List.of()));
+    }
+}
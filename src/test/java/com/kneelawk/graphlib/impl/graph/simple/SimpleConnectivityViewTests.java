@@ -0,0 +1,358 @@
+package com.kneelawk.graphlib.impl.graph.simple;
+
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+
+import com.kneelawk.graphlib.api.graph.ConnectivityView;
+import com.kneelawk.graphlib.api.graph.NodeHolder;
+import com.kneelawk.graphlib.api.graph.user.BlockNode;
+import com.kneelawk.graphlib.api.graph.user.BlockNodeType;
+import com.kneelawk.graphlib.api.graph.user.LinkKey;
+import com.kneelawk.graphlib.api.graph.user.LinkKeyType;
+import com.kneelawk.graphlib.api.util.ConnectivityCategory;
+import com.kneelawk.graphlib.api.util.EmptyLinkKey;
+import com.kneelawk.graphlib.api.util.HalfLink;
+import com.kneelawk.graphlib.api.util.NodePos;
+import com.kneelawk.graphlib.api.util.graph.Graph;
+import com.kneelawk.graphlib.api.util.graph.Link;
+import com.kneelawk.graphlib.api.util.graph.Node;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SimpleConnectivityViewTests {
+    private static final BlockNodeType TEST_NODE_TYPE = BlockNodeType.of(new Identifier("test", "node"), nbt -> null);
+    private static final LinkKeyType COLOR_LINK_TYPE = LinkKeyType.of(new Identifier("test", "color"), nbt -> null);
+
+    // views only use the collection to give the holders they return a block world
+    private static final SimpleGraphCollection NO_WORLD = (SimpleGraphCollection) Proxy.newProxyInstance(
+        SimpleConnectivityViewTests.class.getClassLoader(), new Class<?>[]{SimpleGraphCollection.class},
+        (proxy, method, args) -> null);
+
+    private static final ConnectivityCategory<LinkKey> ALL = ConnectivityCategory.of(key -> true);
+    private static final ConnectivityCategory<ColorLinkKey> COLORED = ConnectivityCategory.of(ColorLinkKey.class);
+    private static final ConnectivityCategory<ColorLinkKey> RED =
+        ConnectivityCategory.of(ColorLinkKey.class, key -> key.color() == 0);
+
+    private static final ColorLinkKey RED_KEY = new ColorLinkKey(0);
+    private static final ColorLinkKey BLUE_KEY = new ColorLinkKey(1);
+
+    private record TestBlockNode(int id) implements BlockNode {
+        @Override
+        public @NotNull BlockNodeType getType() {
+            return TEST_NODE_TYPE;
+        }
+
+        @Override
+        public @Nullable NbtElement toTag() {
+            return null;
+        }
+
+        @Override
+        public @NotNull Collection<HalfLink> findConnections(@NotNull NodeHolder<BlockNode> self) {
+            return List.of();
+        }
+
+        @Override
+        public boolean canConnect(@NotNull NodeHolder<BlockNode> self, @NotNull HalfLink other) {
+            return false;
+        }
+
+        @Override
+        public void onConnectionsChanged(@NotNull NodeHolder<BlockNode> self) {}
+    }
+
+    private record ColorLinkKey(int color) implements LinkKey {
+        @Override
+        public @NotNull LinkKeyType getType() {
+            return COLOR_LINK_TYPE;
+        }
+
+        @Override
+        public @Nullable NbtElement toTag() {
+            return null;
+        }
+    }
+
+    /**
+     * Tells views about changes in the same order {@link SimpleBlockGraph} does.
+     */
+    private static class TestGraph {
+        final Graph<SimpleNodeWrapper, LinkKey> graph = new Graph<>();
+        final List<Node<SimpleNodeWrapper, LinkKey>> nodes = new ObjectArrayList<>();
+        final List<SimpleConnectivityView> views = new ObjectArrayList<>();
+
+        SimpleConnectivityView view(ConnectivityCategory<?> category) {
+            SimpleConnectivityView view = new SimpleConnectivityView(NO_WORLD, graph, category);
+            views.add(view);
+            return view;
+        }
+
+        Node<SimpleNodeWrapper, LinkKey> add() {
+            int id = nodes.size();
+            Node<SimpleNodeWrapper, LinkKey> node =
+                graph.add(new SimpleNodeWrapper(new BlockPos(id, 0, 0), new TestBlockNode(id), 0));
+            nodes.add(node);
+            for (SimpleConnectivityView view : views) {
+                view.onNodeAdded(node);
+            }
+            return node;
+        }
+
+        void link(int a, int b, LinkKey key) {
+            Link<SimpleNodeWrapper, LinkKey> link = new Link<>(nodes.get(a), nodes.get(b), key);
+            if (!graph.link(link)) return;
+            for (SimpleConnectivityView view : views) {
+                view.onLink(link);
+            }
+        }
+
+        void unlink(int a, int b, LinkKey key) {
+            if (!graph.unlink(nodes.get(a), nodes.get(b), key)) return;
+            for (SimpleConnectivityView view : views) {
+                view.onUnlink(nodes.get(a), nodes.get(b), key);
+            }
+        }
+
+        void remove(int id) {
+            Node<SimpleNodeWrapper, LinkKey> node = nodes.get(id);
+            graph.remove(node);
+            for (SimpleConnectivityView view : views) {
+                view.onNodeRemoved(node);
+            }
+        }
+    }
+
+    private static TestGraph testGraph(int nodeCount) {
+        TestGraph graph = new TestGraph();
+        for (int i = 0; i < nodeCount; i++) {
+            graph.add();
+        }
+        return graph;
+    }
+
+    private static NodePos pos(int id) {
+        return new NodePos(new BlockPos(id, 0, 0), new TestBlockNode(id));
+    }
+
+    private static Set<Integer> component(ConnectivityView view, int id) {
+        return view.getComponent(pos(id)).map(holder -> ((TestBlockNode) holder.getNode()).id())
+            .collect(Collectors.toSet());
+    }
+
+    /**
+     * Checks an incrementally updated view against a view built from scratch over the same graph.
+     */
+    private static void assertMatchesRebuilt(String when, TestGraph graph, ConnectivityView view) {
+        ConnectivityView rebuilt = new SimpleConnectivityView(NO_WORLD, graph.graph, view.getCategory());
+        assertEquals("The component count should match a rebuilt view " + when + ".", rebuilt.getComponentCount(),
+            view.getComponentCount());
+
+        for (int a = 0; a < graph.nodes.size(); a++) {
+            assertEquals("Node " + a + "'s component should match a rebuilt view " + when + ".", component(rebuilt, a),
+                component(view, a));
+            for (int b = a + 1; b < graph.nodes.size(); b++) {
+                assertEquals("Nodes " + a + " and " + b + " should be connected as in a rebuilt view " + when + ".",
+                    rebuilt.areConnected(pos(a), pos(b)), view.areConnected(pos(a), pos(b)));
+            }
+        }
+    }
+
+    @Test
+    public void componentTest() {
+        TestGraph graph = testGraph(6);
+        graph.link(0, 1, RED_KEY);
+        graph.link(1, 2, RED_KEY);
+        graph.link(3, 4, RED_KEY);
+        ConnectivityView view = graph.view(ALL);
+
+        assertSame("Views should keep their category.", ALL, view.getCategory());
+        assertEquals("Every separate group of nodes should be a component.", 3, view.getComponentCount());
+
+        assertTrue("Nodes linked through another node should be connected.", view.areConnected(pos(0), pos(2)));
+        assertTrue("Nodes should be connected to themselves.", view.areConnected(pos(5), pos(5)));
+        assertFalse("Nodes in different groups should not be connected.", view.areConnected(pos(2), pos(3)));
+        assertEquals("Connected nodes should share a component id.", view.getComponentId(pos(0)),
+            view.getComponentId(pos(2)));
+        assertNotEquals("Unconnected nodes should have different component ids.", view.getComponentId(pos(0)),
+            view.getComponentId(pos(3)));
+
+        assertEquals("A node's component should include every node connected to it.", Set.of(0, 1, 2),
+            component(view, 1));
+        assertEquals("A node without links should be a component by itself.", Set.of(5), component(view, 5));
+
+        assertEquals("Nodes outside the graph should have no component id.", -1, view.getComponentId(pos(6)));
+        assertEquals("Nodes outside the graph should have an empty component.", Set.of(), component(view, 6));
+        assertFalse("Nodes outside the graph should not be connected.", view.areConnected(pos(0), pos(6)));
+    }
+
+    @Test
+    public void linkKeyFilterTest() {
+        TestGraph graph = testGraph(5);
+        graph.link(0, 1, RED_KEY);
+        graph.link(1, 2, BLUE_KEY);
+        graph.link(2, 3, RED_KEY);
+        graph.link(3, 4, EmptyLinkKey.INSTANCE);
+        // a second link between the same nodes, only matching some categories
+        graph.link(0, 1, BLUE_KEY);
+
+        ConnectivityView all = graph.view(ALL);
+        ConnectivityView colored = graph.view(COLORED);
+        ConnectivityView red = graph.view(RED);
+
+        assertEquals("Views matching every link should see one component.", 1, all.getComponentCount());
+        assertTrue("Views matching every link should connect every node.", all.areConnected(pos(0), pos(4)));
+
+        assertEquals("Views should ignore links with keys of other classes.", 2, colored.getComponentCount());
+        assertTrue("Views should follow links with keys of their class.", colored.areConnected(pos(0), pos(3)));
+        assertFalse("Views should not follow links with keys of other classes.", colored.areConnected(pos(3), pos(4)));
+
+        assertEquals("Views should ignore links their predicate rejects.", 3, red.getComponentCount());
+        assertEquals("Views should follow links their predicate accepts.", Set.of(0, 1), component(red, 0));
+        assertEquals("Views should follow links their predicate accepts.", Set.of(2, 3), component(red, 3));
+        assertFalse("Views should not follow links their predicate rejects.", red.areConnected(pos(1), pos(2)));
+    }
+
+    @Test
+    public void categoryTest() {
+        assertTrue("Predicate-only categories should match any key they accept.", ALL.matches(EmptyLinkKey.INSTANCE));
+        assertTrue("Class-only categories should match any key of their class.", COLORED.matches(BLUE_KEY));
+        assertFalse("Class-only categories should not match keys of other classes.",
+            COLORED.matches(EmptyLinkKey.INSTANCE));
+        assertTrue("Categories should match keys of their class that their predicate accepts.", RED.matches(RED_KEY));
+        assertFalse("Categories should not match keys their predicate rejects.", RED.matches(BLUE_KEY));
+        assertFalse("Categories should not test keys of other classes against their predicate.",
+            RED.matches(EmptyLinkKey.INSTANCE));
+        assertSame("Categories should keep their key class.", ColorLinkKey.class, RED.getKeyClass());
+    }
+
+    @Test
+    public void addTest() {
+        TestGraph graph = testGraph(3);
+        ConnectivityView view = graph.view(RED);
+        assertEquals("Nodes without links should each be a component.", 3, view.getComponentCount());
+
+        graph.link(0, 1, RED_KEY);
+        assertTrue("Matching links should connect nodes after the view was built.", view.areConnected(pos(0), pos(1)));
+        graph.link(1, 2, BLUE_KEY);
+        assertFalse("Other links should not connect nodes after the view was built.",
+            view.areConnected(pos(1), pos(2)));
+
+        graph.add();
+        graph.link(3, 2, RED_KEY);
+        assertEquals("Added nodes should join the components they are linked to.", Set.of(2, 3), component(view, 3));
+        assertMatchesRebuilt("after additions", graph, view);
+    }
+
+    @Test
+    public void unlinkTest() {
+        // a loop 0-1-2-3-0 with a tail 3-4
+        TestGraph graph = testGraph(5);
+        graph.link(0, 1, RED_KEY);
+        graph.link(1, 2, RED_KEY);
+        graph.link(2, 3, RED_KEY);
+        graph.link(3, 0, RED_KEY);
+        graph.link(3, 4, RED_KEY);
+        graph.link(1, 4, BLUE_KEY);
+        ConnectivityView view = graph.view(RED);
+        assertEquals("The loop and its tail should be one component.", 1, view.getComponentCount());
+
+        graph.unlink(0, 1, RED_KEY);
+        assertEquals("Breaking a loop should not split its component.", 1, view.getComponentCount());
+        assertTrue("Nodes still linked the other way around a loop should stay connected.",
+            view.areConnected(pos(0), pos(1)));
+        assertMatchesRebuilt("after breaking a loop", graph, view);
+
+        graph.unlink(2, 3, RED_KEY);
+        assertEquals("Unlinking a bridge should split its component.", 2, view.getComponentCount());
+        assertEquals("The split-off nodes should form their own component.", Set.of(1, 2), component(view, 1));
+        assertEquals("The remaining nodes should keep their component.", Set.of(0, 3, 4), component(view, 4));
+        assertMatchesRebuilt("after unlinking a bridge", graph, view);
+
+        graph.unlink(1, 4, BLUE_KEY);
+        assertEquals("Unlinking other links should not change the view.", 2, view.getComponentCount());
+        assertMatchesRebuilt("after unlinking another link", graph, view);
+    }
+
+    @Test
+    public void removeTest() {
+        // a star around 0, with 1 and 2 also linked to each other
+        TestGraph graph = testGraph(6);
+        graph.link(0, 1, RED_KEY);
+        graph.link(0, 2, RED_KEY);
+        graph.link(0, 3, RED_KEY);
+        graph.link(0, 4, BLUE_KEY);
+        graph.link(1, 2, RED_KEY);
+        ConnectivityView view = graph.view(RED);
+        assertEquals("The star and the unlinked nodes should be components.", 3, view.getComponentCount());
+
+        graph.remove(0);
+        assertEquals("Removing a node should split its component.", 4, view.getComponentCount());
+        assertEquals("Removed nodes should have no component id.", -1, view.getComponentId(pos(0)));
+        assertEquals("Removed nodes should have an empty component.", Set.of(), component(view, 0));
+        assertEquals("Nodes linked without the removed node should stay connected.", Set.of(1, 2),
+            component(view, 2));
+        assertEquals("Nodes only linked through the removed node should be split off.", Set.of(3), component(view, 3));
+        assertMatchesRebuilt("after removing a linked node", graph, view);
+
+        graph.remove(5);
+        assertEquals("Removing a node without links should remove its component.", 3, view.getComponentCount());
+        assertMatchesRebuilt("after removing an unlinked node", graph, view);
+    }
+
+    @Test
+    public void randomChangesTest() {
+        // long enough for the stale elements left behind by removals to be reclaimed several times
+        Random random = new Random(0x6c696e6bL);
+        TestGraph graph = testGraph(24);
+        IntSet removed = new IntOpenHashSet();
+        List<ConnectivityView> views = List.of(graph.view(ALL), graph.view(COLORED), graph.view(RED));
+        LinkKey[] keys = {RED_KEY, BLUE_KEY, EmptyLinkKey.INSTANCE};
+
+        for (int step = 0; step < 400; step++) {
+            int a = random.nextInt(graph.nodes.size());
+            int b = random.nextInt(graph.nodes.size());
+            LinkKey key = keys[random.nextInt(keys.length)];
+            int op = random.nextInt(10);
+
+            if (op < 5) {
+                if (a != b && !removed.contains(a) && !removed.contains(b)) graph.link(a, b, key);
+            } else if (op < 9) {
+                graph.unlink(a, b, key);
+            } else if (!removed.contains(a)) {
+                graph.remove(a);
+                removed.add(a);
+                graph.add();
+            }
+
+            if (step % 20 == 0) {
+                for (ConnectivityView view : views) {
+                    assertMatchesRebuilt("after " + (step + 1) + " random changes", graph, view);
+                }
+            }
+        }
+
+        for (ConnectivityView view : views) {
+            assertMatchesRebuilt("after every random change", graph, view);
+        }
+    }
+}
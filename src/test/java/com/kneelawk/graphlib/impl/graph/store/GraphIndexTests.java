@@ -0,0 +1,92 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GraphIndexTests {
+    private static GraphIndex.Entry entry(int nodeCount, long... sections) {
+        GraphIndex.Box bounds = GraphIndex.Box.EMPTY;
+        for (long section : sections) {
+            bounds = bounds.include((int) section, 0, 0);
+        }
+        return new GraphIndex.Entry(sections, nodeCount, bounds);
+    }
+
+    @Test
+    public void saveLoadTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphindex");
+        Path path = dir.resolve("index.dat");
+        try {
+            GraphIndex index = GraphIndex.load(path, 0);
+            assertEquals("A missing index should load empty.", 0, index.size());
+
+            index.put(1, entry(5, 10, 11));
+            index.put(2, entry(0));
+            index.put(3, entry(1, 20));
+            index.remove(3);
+            assertTrue("Changed indices should be dirty.", index.isDirty());
+
+            index.save(path, 42);
+            assertFalse("Saved indices should not be dirty.", index.isDirty());
+
+            GraphIndex loaded = GraphIndex.load(path, 42);
+            assertEquals("Both entries should be loaded.", 2, loaded.size());
+            GraphIndex.Entry entry = loaded.get(1);
+            assertNotNull("Entries should be loaded.", entry);
+            assertEquals("Node counts should be kept.", 5, entry.nodeCount());
+            assertArrayEquals("Sections should be kept.", new long[]{10, 11}, entry.sections());
+            assertEquals("Bounds should be kept.", new GraphIndex.Box(10, 0, 0, 11, 0, 0), entry.bounds());
+            assertNull("Removed entries should not be loaded.", loaded.get(3));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void outOfDateTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphindex");
+        Path path = dir.resolve("index.dat");
+        try {
+            GraphIndex index = new GraphIndex();
+            index.put(1, entry(5, 10));
+            index.save(path, 42);
+
+            assertEquals("Indices saved after the journal's last reset should load.", 1,
+                GraphIndex.load(path, 40).size());
+            assertEquals("Indices saved before the journal's last reset should be discarded.", 0,
+                GraphIndex.load(path, 43).size());
+
+            Files.write(path, new byte[]{1, 2, 3});
+            assertEquals("Corrupt indices should be discarded.", 0, GraphIndex.load(path, 0).size());
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void intersectsTest() {
+        LongSet region = new LongOpenHashSet(new long[]{5, 6});
+        GraphIndex.Box bounds = GraphIndex.Box.EMPTY.include(5, 0, 0).include(6, 0, 0);
+
+        assertTrue("Graphs in the region should intersect it.", entry(1, 6, 30).intersects(region, bounds));
+        assertFalse("Graphs outside the region's bounds should not intersect it.",
+            entry(1, 10, 11).intersects(region, bounds));
+        assertFalse("Graphs inside the region's bounds but not its sections should not intersect it.",
+            entry(1, 4, 7).intersects(region, bounds));
+        assertFalse("Empty boxes should not intersect anything.", GraphIndex.Box.EMPTY.intersects(bounds));
+    }
+}
@@ -0,0 +1,219 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GraphJournalTests {
+    private record Entry(long graphId, long seq, byte[] payload) {}
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static GraphJournal open(Path path, List<Entry> entries) throws IOException {
+        return GraphJournal.open(path, 0, (graphId, seq, payload) -> entries.add(new Entry(graphId, seq, payload)));
+    }
+
+    @Test
+    public void replayTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphjournal");
+        Path path = dir.resolve("journal.gjl");
+        try {
+            List<Entry> entries = new ArrayList<>();
+            try (GraphJournal journal = open(path, entries)) {
+                assertEquals("A new journal should start at sequence 0.", 0, journal.append(3, bytes("first")));
+                assertEquals("Sequence numbers should increase.", 1, journal.append(7, bytes("second")));
+            }
+
+            try (GraphJournal journal = open(path, entries)) {
+                assertEquals("Both records should be replayed.", 2, entries.size());
+                assertEquals("Records should keep their graph id.", 3, entries.get(0).graphId());
+                assertArrayEquals("Records should keep their payload.", bytes("first"), entries.get(0).payload());
+                assertEquals("Records should keep their graph id.", 7, entries.get(1).graphId());
+                assertEquals("Records should keep their sequence number.", 1, entries.get(1).seq());
+                assertArrayEquals("Records should keep their payload.", bytes("second"), entries.get(1).payload());
+                assertEquals("Sequence numbers should continue after reopening.", 2, journal.getNextSeq());
+            }
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void tornWriteTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphjournal");
+        Path path = dir.resolve("journal.gjl");
+        try {
+            List<Entry> entries = new ArrayList<>();
+            try (GraphJournal journal = open(path, entries)) {
+                journal.append(1, bytes("complete"));
+                journal.append(2, bytes("torn"));
+            }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 2);
+            }
+
+            try (GraphJournal journal = open(path, entries)) {
+                assertEquals("Only the intact record should be replayed.", 1, entries.size());
+                assertArrayEquals("Intact records should survive.", bytes("complete"), entries.get(0).payload());
+                journal.append(3, bytes("after"));
+            }
+
+            entries.clear();
+            try (GraphJournal ignored = open(path, entries)) {
+                assertEquals("Records after truncation should be replayed.", 2, entries.size());
+                assertEquals("Records after truncation should keep their graph id.", 3, entries.get(1).graphId());
+                assertArrayEquals("Records after truncation should keep their payload.", bytes("after"),
+                    entries.get(1).payload());
+            }
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void minSeqTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphjournal");
+        Path path = dir.resolve("journal.gjl");
+        try {
+            try (GraphJournal journal = GraphJournal.open(path, 42, (graphId, seq, payload) -> {})) {
+                assertEquals("New journals should start at the minimum sequence number.", 42,
+                    journal.append(1, bytes("first")));
+            }
+
+            try (GraphJournal journal = GraphJournal.open(path, 7, (graphId, seq, payload) -> {})) {
+                assertEquals("Existing journals should ignore the minimum sequence number.", 43,
+                    journal.getNextSeq());
+            }
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void resetTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphjournal");
+        Path path = dir.resolve("journal.gjl");
+        try {
+            List<Entry> entries = new ArrayList<>();
+            try (GraphJournal journal = open(path, entries)) {
+                journal.append(1, bytes("old"));
+                journal.append(1, bytes("older"));
+                journal.flush(false);
+                long sizeBefore = journal.size();
+
+                journal.reset();
+                assertTrue("Resetting should shrink the journal.", journal.size() < sizeBefore);
+                assertEquals("Resetting should not reuse sequence numbers.", 2, journal.append(1, bytes("new")));
+            }
+
+            try (GraphJournal journal = open(path, entries)) {
+                assertEquals("Only records after the reset should be replayed.", 1, entries.size());
+                assertEquals("Replayed records should keep their sequence number.", 2, entries.get(0).seq());
+                assertEquals("Sequence numbers should continue after reopening.", 3, journal.getNextSeq());
+            }
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void rotateTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphjournal");
+        Path path = dir.resolve("journal.gjl");
+        try {
+            List<Entry> entries = new ArrayList<>();
+            List<GraphJournal.Segment> segments;
+            try (GraphJournal journal = open(path, entries)) {
+                journal.append(1, bytes("sealed"));
+                segments = journal.rotate();
+                assertEquals("Rotating should return the sealed segment.", 1, segments.size());
+                assertEquals("Rotating should not reuse sequence numbers.", 1, journal.append(2, bytes("current")));
+                assertEquals("Sealed segments should be kept until deleted.", 0, journal.getBaseSeq());
+            }
+
+            List<GraphJournal.Segment> recovered;
+            try (GraphJournal journal = open(path, entries)) {
+                assertEquals("Sealed segments should be replayed before the current file.", 2, entries.size());
+                assertArrayEquals("Sealed records should keep their payload.", bytes("sealed"),
+                    entries.get(0).payload());
+                assertArrayEquals("Current records should keep their payload.", bytes("current"),
+                    entries.get(1).payload());
+                assertEquals("Sequence numbers should continue after reopening.", 2, journal.getNextSeq());
+
+                journal.append(3, bytes("newer"));
+                recovered = journal.rotate();
+                assertEquals("Rotating should also return segments from before the journal was opened.", 2,
+                    recovered.size());
+                journal.deleteSealed(recovered);
+                assertEquals("Deleting sealed segments should move the base sequence number.", 3,
+                    journal.getBaseSeq());
+
+                journal.append(4, bytes("newest"));
+                assertEquals("Later rotations should only return the segment they sealed.", 1,
+                    journal.rotate().size());
+                journal.reset();
+                assertEquals("Resetting should delete every sealed segment.", 4, journal.getBaseSeq());
+            }
+
+            entries.clear();
+            try (GraphJournal ignored = open(path, entries)) {
+                assertTrue("Records in deleted segments should not be replayed.", entries.isEmpty());
+            }
+        } finally {
+            try (var children = Files.list(dir)) {
+                for (Path child : (Iterable<Path>) children::iterator) {
+                    Files.delete(child);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void exportTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphjournal");
+        Path path = dir.resolve("journal.gjl");
+        Path exported = dir.resolve("exported.gjl");
+        try {
+            List<Entry> entries = new ArrayList<>();
+            try (GraphJournal journal = open(path, entries)) {
+                journal.append(1, bytes("before"));
+                journal.flush(false);
+                long length = journal.size();
+
+                journal.append(2, bytes("after"));
+                journal.flush(false);
+
+                journal.exportTo(exported, length);
+            }
+
+            try (GraphJournal ignored = open(exported, entries)) {
+                assertEquals("Only records from before the export started should be exported.", 1, entries.size());
+                assertArrayEquals("Exported records should keep their payload.", bytes("before"),
+                    entries.get(0).payload());
+            }
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(exported);
+            Files.delete(dir);
+        }
+    }
+}
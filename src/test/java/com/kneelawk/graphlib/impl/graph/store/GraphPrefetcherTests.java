@@ -0,0 +1,155 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GraphPrefetcherTests {
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static GraphPrefetcher<String> prefetcher(GraphPrefetcher.Source source) {
+        return new GraphPrefetcher<>(source, (id, bytes) -> new String(bytes, StandardCharsets.UTF_8),
+            Runnable::run, "test reader");
+    }
+
+    private static Long2ObjectMap<String> installAll(GraphPrefetcher<String> prefetcher, int expected)
+        throws InterruptedException {
+        Long2ObjectMap<String> installed = new Long2ObjectOpenHashMap<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (installed.size() < expected && System.nanoTime() < deadline) {
+            prefetcher.installReady(Long.MAX_VALUE, installed::put);
+            Thread.sleep(1);
+        }
+        return installed;
+    }
+
+    @Test
+    public void installTest() throws Exception {
+        try (GraphPrefetcher<String> prefetcher = prefetcher(id -> bytes("graph " + id))) {
+            prefetcher.prefetch(1);
+            prefetcher.prefetch(2);
+            prefetcher.prefetch(2);
+            assertTrue("Prefetches should be tracked until installed.", prefetcher.isPrefetching(1));
+
+            Long2ObjectMap<String> installed = installAll(prefetcher, 2);
+            assertEquals("Both graphs should be installed.", 2, installed.size());
+            assertEquals("Graph 1 should be decoded.", "graph 1", installed.get(1));
+            assertEquals("Graph 2 should be decoded.", "graph 2", installed.get(2));
+            assertFalse("Installed graphs should no longer be prefetching.", prefetcher.isPrefetching(1));
+        }
+    }
+
+    @Test
+    public void claimQueuedTest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (GraphPrefetcher<String> prefetcher = prefetcher(id -> {
+            if (id == 0) {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            return bytes("graph " + id);
+        })) {
+            prefetcher.prefetch(0);
+            assertTrue("The blocking read should start.", started.await(10, TimeUnit.SECONDS));
+            prefetcher.prefetch(1);
+
+            assertNull("Claiming a prefetch that has not started should leave loading to the caller.",
+                prefetcher.claim(1));
+            assertFalse("Claimed graphs should no longer be prefetching.", prefetcher.isPrefetching(1));
+
+            release.countDown();
+            Long2ObjectMap<String> installed = installAll(prefetcher, 1);
+            assertEquals("Only the unclaimed graph should be installed.", 1, installed.size());
+            assertEquals("Graph 0 should be installed.", "graph 0", installed.get(0));
+        }
+    }
+
+    @Test
+    public void claimRunningTest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (GraphPrefetcher<String> prefetcher = prefetcher(id -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return bytes("graph " + id);
+        })) {
+            prefetcher.prefetch(3);
+            assertTrue("The read should start.", started.await(10, TimeUnit.SECONDS));
+
+            Thread releaser = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+                release.countDown();
+            });
+            releaser.start();
+
+            assertEquals("Claiming a running prefetch should wait for its result.", "graph 3", prefetcher.claim(3));
+
+            Thread.sleep(10);
+            Long2ObjectMap<String> installed = new Long2ObjectOpenHashMap<>();
+            prefetcher.installReady(Long.MAX_VALUE, installed::put);
+            assertTrue("Claimed graphs should not be installed again.", installed.isEmpty());
+        }
+    }
+
+    @Test
+    public void failureTest() throws Exception {
+        try (GraphPrefetcher<String> prefetcher = prefetcher(id -> {
+            if (id == 5) throw new IOException("Test failure");
+            return id == 6 ? null : bytes("graph " + id);
+        })) {
+            prefetcher.prefetch(5);
+            prefetcher.prefetch(6);
+
+            Long2ObjectMap<String> installed = installAll(prefetcher, 2);
+            assertEquals("Failed and missing graphs should still be handed over.", 2, installed.size());
+            assertTrue("The failed graph should be handed over.", installed.containsKey(5));
+            assertNull("Failed graphs should have no result.", installed.get(5));
+            assertNull("Missing graphs should have no result.", installed.get(6));
+        }
+    }
+
+    @Test
+    public void budgetTest() throws Exception {
+        try (GraphPrefetcher<String> prefetcher = prefetcher(id -> bytes("graph " + id))) {
+            for (int i = 0; i < 10; i++) {
+                prefetcher.prefetch(i);
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (prefetcher.isPrefetching(9) && System.nanoTime() < deadline) {
+                Long2ObjectMap<String> installed = new Long2ObjectOpenHashMap<>();
+                prefetcher.installReady(0, installed::put);
+                assertTrue("A zero budget should still install at most one graph.", installed.size() <= 1);
+                Thread.sleep(1);
+            }
+            assertFalse("All graphs should eventually be installed.", prefetcher.isPrefetching(9));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GraphWriteQueueTests {
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void coalesceTest() throws Exception {
+        MemoryStore store = new MemoryStore();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> encoded = Collections.synchronizedList(new ArrayList<>());
+
+        GraphWriteQueue<String> queue = new GraphWriteQueue<>(store, snapshot -> {
+            encoded.add(snapshot);
+            if (snapshot.equals("blocker")) {
+                started.countDown();
+                try {
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            return bytes(snapshot);
+        }, "test writer");
+
+        queue.write(0, "blocker");
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        queue.write(1, "first");
+        queue.write(1, "second");
+        queue.write(1, "third");
+
+        GraphWriteQueue.Pending<String> pending = queue.getPending(1);
+        assertNotNull("Queued writes should be visible.", pending);
+        assertEquals("The latest snapshot should be visible.", "third", pending.snapshot());
+
+        release.countDown();
+        queue.close();
+
+        assertEquals("Queued writes to the same graph should be coalesced.", List.of("blocker", "third"), encoded);
+        assertArrayEquals("The latest snapshot should be written.", bytes("third"), store.read(1));
+        assertNull("Nothing should be pending after closing.", queue.getPending(1));
+        assertTrue("Closing should flush the store.", store.flushed);
+    }
+
+    @Test
+    public void deleteTest() throws Exception {
+        MemoryStore store = new MemoryStore();
+        store.write(5, bytes("old"));
+
+        GraphWriteQueue<String> queue = new GraphWriteQueue<>(store, GraphWriteQueueTests::bytes, "test writer");
+        queue.write(5, "new");
+        queue.delete(5);
+
+        GraphWriteQueue.Pending<String> pending = queue.getPending(5);
+        if (pending != null) {
+            assertTrue("A delete after a write should win.", pending.isDelete());
+        }
+
+        queue.close();
+
+        assertFalse("The graph should have been deleted.", store.contains(5));
+    }
+
+    private static final class MemoryStore implements GraphStore {
+        private final Long2ObjectMap<byte[]> data = new Long2ObjectOpenHashMap<>();
+        volatile boolean flushed = false;
+
+        @Override
+        public synchronized boolean contains(long id) {
+            return data.containsKey(id);
+        }
+
+        @Override
+        public synchronized @Nullable byte[] read(long id) {
+            return data.get(id);
+        }
+
+        @Override
+        public synchronized void write(long id, @NotNull byte[] bytes) {
+            data.put(id, bytes);
+        }
+
+        @Override
+        public synchronized void delete(long id) {
+            data.remove(id);
+        }
+
+        @Override
+        public synchronized void forEachId(@NotNull LongConsumer consumer) {
+            data.keySet().forEach(consumer);
+        }
+
+        @Override
+        public synchronized int size() {
+            return data.size();
+        }
+
+        @Override
+        public void flush() {
+            flushed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SavePoolTests {
+    @Test
+    public void orderTest() {
+        List<Integer> inputs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            inputs.add(i);
+        }
+
+        List<Integer> results = SavePool.map(inputs, i -> i * 2);
+        assertEquals("There should be a result for every input.", inputs.size(), results.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals("Results should be in the same order as their inputs.", i * 2, (int) results.get(i));
+        }
+    }
+
+    @Test
+    public void emptyTest() {
+        assertTrue("Mapping nothing should give nothing.", SavePool.map(List.of(), i -> i).isEmpty());
+        assertEquals("Single inputs should still be mapped.", List.of("a!"), SavePool.map(List.of("a"), s -> s + "!"));
+    }
+
+    @Test
+    public void exceptionTest() {
+        List<Integer> inputs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            inputs.add(i);
+        }
+
+        try {
+            SavePool.map(inputs, i -> {
+                if (i == 50) throw new IllegalStateException("failed");
+                return i;
+            });
+            fail("Exceptions in the function should be rethrown.");
+        } catch (IllegalStateException e) {
+            assertEquals("The original exception should be rethrown.", "failed", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.kneelawk.graphlib.impl.graph.store;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentGraphStoreTests {
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void roundTripTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphstore");
+        try {
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir)) {
+                store.write(1, bytes("one"));
+                store.write(2, bytes("two"));
+                store.write(1, bytes("uno"));
+                store.delete(2);
+
+                assertArrayEquals("Reads should see the latest write.", bytes("uno"), store.read(1));
+                assertNull("Deleted graphs should not be readable.", store.read(2));
+                assertFalse("Deleted graphs should not exist.", store.contains(2));
+                assertEquals("Only one graph should be stored.", 1, store.size());
+            }
+
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir)) {
+                assertArrayEquals("Writes should survive reopening.", bytes("uno"), store.read(1));
+                assertFalse("Deletes should survive reopening.", store.contains(2));
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void tornWriteTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphstore");
+        try {
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir)) {
+                store.write(1, bytes("complete"));
+                store.write(2, bytes("torn"));
+            }
+
+            Path segment = dir.resolve("00000000.seg");
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 2);
+            }
+
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir)) {
+                assertArrayEquals("Intact records should survive.", bytes("complete"), store.read(1));
+                assertFalse("Torn records should be dropped.", store.contains(2));
+
+                store.write(3, bytes("after"));
+            }
+
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir)) {
+                assertArrayEquals("Writes after truncation should be readable.", bytes("after"), store.read(3));
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void compactionTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphstore");
+        try {
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir, 256)) {
+                for (int round = 0; round < 20; round++) {
+                    for (long id = 0; id < 4; id++) {
+                        store.write(id, bytes("graph " + id + " round " + round));
+                    }
+                }
+                store.write(100, bytes("deleted"));
+                store.delete(100);
+
+                store.awaitCompaction();
+
+                assertTrue("Superseded segments should have been compacted away.", store.getSegmentCount() <= 4);
+                for (long id = 0; id < 4; id++) {
+                    assertArrayEquals("Compaction should keep the latest data.", bytes("graph " + id + " round 19"),
+                        store.read(id));
+                }
+            }
+
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir, 256)) {
+                assertEquals("Compaction should not resurrect or lose graphs.", 4, store.size());
+                assertFalse("Compaction should not resurrect deleted graphs.", store.contains(100));
+                for (long id = 0; id < 4; id++) {
+                    assertArrayEquals("Compacted data should survive reopening.", bytes("graph " + id + " round 19"),
+                        store.read(id));
+                }
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void compactAllTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphstore");
+        try {
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir)) {
+                store.write(1, bytes("old one"));
+                store.write(2, bytes("two"));
+                store.write(1, bytes("new one"));
+                store.write(3, bytes("deleted"));
+                store.delete(3);
+
+                assertEquals("The only segment holds dead records, so it should be compacted.", 1,
+                    store.compactAll());
+                assertEquals("Compacting everything again should do nothing.", 0, store.compactAll());
+                assertArrayEquals("Compaction should keep the latest data.", bytes("new one"), store.read(1));
+                assertArrayEquals("Compaction should keep live graphs.", bytes("two"), store.read(2));
+            }
+
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir)) {
+                assertEquals("Compaction should not resurrect or lose graphs.", 2, store.size());
+                assertFalse("Compaction should not resurrect deleted graphs.", store.contains(3));
+                assertEquals("Only the compacted segment should be left.", 1, store.getSegmentCount());
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void snapshotTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphstore");
+        Path exported = Files.createTempDirectory("graphstore-snapshot");
+        try {
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir, 256)) {
+                store.write(1, bytes("one"));
+                store.write(2, bytes("two"));
+                store.write(3, bytes("three"));
+
+                Long2ObjectMap<byte[]> extra = new Long2ObjectOpenHashMap<>();
+                extra.put(2, bytes("pending two"));
+                extra.put(3, null);
+
+                try (SegmentGraphStore.Snapshot snapshot = store.snapshot()) {
+                    int segments = store.getSegmentCount();
+                    for (int round = 0; round < 20; round++) {
+                        store.write(1, bytes("changed one round " + round));
+                    }
+                    store.delete(2);
+                    store.awaitCompaction();
+                    assertTrue("Segments should not be compacted away while a snapshot is open.",
+                        store.getSegmentCount() > segments);
+
+                    snapshot.exportTo(exported, extra);
+                }
+
+                store.awaitCompaction();
+                assertTrue("Segments should be compacted once the snapshot closes.", store.getSegmentCount() <= 4);
+            }
+
+            try (SegmentGraphStore store = SegmentGraphStore.open(exported)) {
+                assertArrayEquals("Snapshots should not see later writes.", bytes("one"), store.read(1));
+                assertArrayEquals("Extra records should be applied on top.", bytes("pending two"), store.read(2));
+                assertFalse("Extra deletes should be applied on top.", store.contains(3));
+                assertEquals("Only the snapshotted graphs should be exported.", 2, store.size());
+            }
+        } finally {
+            deleteRecursively(dir);
+            deleteRecursively(exported);
+        }
+    }
+
+    @Test
+    public void migrationTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphstore");
+        try {
+            Files.write(dir.resolve(String.format("%016X.dat", 5L)), bytes("legacy five"));
+            Files.write(dir.resolve(String.format("%016X.dat", 0xFFFFFFFFFFL)), bytes("legacy big"));
+
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir)) {
+                assertEquals("Both legacy graphs should be migrated.", 2, store.migrateLegacyGraphs(dir));
+                assertArrayEquals("Legacy data should be copied verbatim.", bytes("legacy five"), store.read(5));
+                assertArrayEquals("Legacy data should be copied verbatim.", bytes("legacy big"),
+                    store.read(0xFFFFFFFFFFL));
+                assertFalse("Legacy files should be removed.", Files.exists(dir.resolve(String.format("%016X.dat", 5L))));
+                assertEquals("Migrating again should do nothing.", 0, store.migrateLegacyGraphs(dir));
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void concurrentFlushTest() throws Exception {
+        Path dir = Files.createTempDirectory("graphstore");
+        try {
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir, 256)) {
+                // overlapping flushes, while writes keep rotating segments
+                Thread[] threads = new Thread[4];
+                IOException[] errors = new IOException[threads.length];
+                for (int t = 0; t < threads.length; t++) {
+                    int thread = t;
+                    threads[t] = new Thread(() -> {
+                        try {
+                            for (int i = 0; i < 100; i++) {
+                                store.write(thread * 1000L + i, bytes("graph " + thread + " " + i));
+                                store.flush();
+                            }
+                        } catch (IOException e) {
+                            errors[thread] = e;
+                        }
+                    });
+                    threads[t].start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                for (IOException error : errors) {
+                    if (error != null) throw error;
+                }
+            }
+
+            try (SegmentGraphStore store = SegmentGraphStore.open(dir)) {
+                assertEquals("Every flushed graph should be stored.", 400, store.size());
+                for (int thread = 0; thread < 4; thread++) {
+                    for (int i = 0; i < 100; i++) {
+                        assertArrayEquals("Flushed graphs should survive reopening.",
+                            bytes("graph " + thread + " " + i), store.read(thread * 1000L + i));
+                    }
+                }
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.kneelawk.graphlib.impl.tool;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtLong;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+import com.kneelawk.graphlib.impl.graph.simple.ChunkSectionBinaryFormat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkIndexRegionsTests {
+    private static LongSet ids(long... ids) {
+        LongSet set = new LongLinkedOpenHashSet();
+        for (long id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+
+    private static NbtList longs(long... values) {
+        NbtList list = new NbtList();
+        for (long value : values) {
+            list.add(NbtLong.of(value));
+        }
+        return list;
+    }
+
+    private static NbtCompound legacyPos(int x, int y, int z) {
+        NbtCompound com = new NbtCompound();
+        com.putByte("x", (byte) x);
+        com.putByte("y", (byte) y);
+        com.putByte("z", (byte) z);
+        return com;
+    }
+
+    private static short local(int x, int y, int z) {
+        return ChunkSectionPos.packLocal(new BlockPos(x, y, z));
+    }
+
+    @Test
+    public void legacySectionTest() throws IOException {
+        NbtCompound nbt = new NbtCompound();
+        nbt.put("inChunk", longs(1, 2, 3));
+
+        NbtList inPos = new NbtList();
+
+        // the full form, with a block node -> graph lookup for each node
+        NbtCompound full = legacyPos(1, 2, 3);
+        NbtList nodes = new NbtList();
+        for (long id : new long[]{1, 2}) {
+            NbtCompound node = new NbtCompound();
+            node.putString("type", "test:wire");
+            node.putLong("id", id);
+            nodes.add(node);
+        }
+        full.put("nodes", nodes);
+        inPos.add(full);
+
+        // the id-only form
+        NbtCompound idOnly = legacyPos(15, 15, 15);
+        idOnly.put("ids", longs(2, 3));
+        inPos.add(idOnly);
+
+        nbt.put("inPos", inPos);
+
+        ChunkIndexRegions.Section section = ChunkIndexRegions.readSection(nbt);
+        assertEquals("Legacy sections' graphs should be read.", ids(1, 2, 3), section.inChunk);
+        assertEquals("Legacy sections' positions should be read.", 2, section.inPos.size());
+        assertEquals("Graphs of legacy positions with nodes should be read.", ids(1, 2),
+            section.inPos.get(local(1, 2, 3)));
+        assertEquals("Graphs of legacy id-only positions should be read.", ids(2, 3),
+            section.inPos.get(local(15, 15, 15)));
+    }
+
+    @Test
+    public void binarySectionTest() throws IOException {
+        ChunkSectionBinaryFormat.Section binary = new ChunkSectionBinaryFormat.Section();
+        binary.inChunk.addAll(ids(4, 5));
+        binary.graphsAt.put(local(0, 0, 0), ids(4, 5));
+        List<ChunkSectionBinaryFormat.NodeEntry> nodes = new ObjectArrayList<>();
+        nodes.add(new ChunkSectionBinaryFormat.NodeEntry(new Identifier("test:wire"), 5, new byte[]{1}, null));
+        nodes.add(new ChunkSectionBinaryFormat.NodeEntry(new Identifier("test:pipe"), 6, null, new NbtCompound()));
+        binary.nodesAt.put(local(3, 4, 5), nodes);
+
+        NbtCompound nbt = new NbtCompound();
+        nbt.putByteArray(ChunkSectionBinaryFormat.KEY, ChunkSectionBinaryFormat.encode(binary));
+
+        ChunkIndexRegions.Section section = ChunkIndexRegions.readSection(nbt);
+        assertEquals("Binary sections' graphs should be read.", ids(4, 5), section.inChunk);
+        assertEquals("Graphs of binary graph-only positions should be read.", ids(4, 5),
+            section.inPos.get(local(0, 0, 0)));
+        assertEquals("Graphs of binary positions with nodes should be read.", ids(5, 6),
+            section.inPos.get(local(3, 4, 5)));
+    }
+
+    @Test
+    public void rewriteTest() throws IOException {
+        NbtCompound legacy = new NbtCompound();
+        legacy.put("inChunk", longs(7));
+        NbtCompound pos = legacyPos(8, 9, 10);
+        pos.put("ids", longs(7, 8));
+        NbtList inPos = new NbtList();
+        inPos.add(pos);
+        legacy.put("inPos", inPos);
+
+        // the tool writes whatever it reads back out in the binary format
+        NbtCompound rewritten = ChunkIndexRegions.readSection(legacy).toNbt();
+        assertTrue("Rewritten sections should be in the binary format.",
+            rewritten.contains(ChunkSectionBinaryFormat.KEY));
+
+        ChunkIndexRegions.Section section = ChunkIndexRegions.readSection(rewritten);
+        assertEquals("Rewritten sections' graphs should be kept.", ids(7), section.inChunk);
+        assertEquals("Rewritten sections' positions should be kept.", ids(7, 8), section.inPos.get(local(8, 9, 10)));
+
+        assertTrue("Empty sections should read as empty.", ChunkIndexRegions.readSection(new NbtCompound()).isEmpty());
+    }
+}
@@ -0,0 +1,76 @@
+package com.kneelawk.graphlib.impl.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntUnionFindTests {
+    @Test
+    public void singletonTest() {
+        IntUnionFind uf = new IntUnionFind();
+
+        int a = uf.add();
+        int b = uf.add();
+
+        assertEquals("There should be two components.", 2, uf.componentCount());
+        assertFalse("A and B should not be connected.", uf.connected(a, b));
+        assertEquals("A should be its own representative.", a, uf.find(a));
+    }
+
+    @Test
+    public void unionTest() {
+        IntUnionFind uf = new IntUnionFind();
+
+        int a = uf.add();
+        int b = uf.add();
+        int c = uf.add();
+        int d = uf.add();
+
+        assertTrue("A and B should start out disjoint.", uf.union(a, b));
+        assertTrue("C and D should start out disjoint.", uf.union(c, d));
+        assertFalse("B and A should already be connected.", uf.union(b, a));
+
+        assertEquals("There should be two components.", 2, uf.componentCount());
+        assertTrue("A and B should be connected.", uf.connected(a, b));
+        assertFalse("A and C should not be connected.", uf.connected(a, c));
+
+        uf.union(b, d);
+
+        assertEquals("There should be one component.", 1, uf.componentCount());
+        assertTrue("A and C should be connected.", uf.connected(a, c));
+    }
+
+    @Test
+    public void growTest() {
+        IntUnionFind uf = new IntUnionFind(1);
+
+        int first = uf.add();
+        int prev = first;
+        for (int i = 0; i < 1000; i++) {
+            int next = uf.add();
+            uf.union(prev, next);
+            prev = next;
+        }
+
+        assertEquals("There should be 1001 elements.", 1001, uf.size());
+        assertEquals("There should be one component.", 1, uf.componentCount());
+        assertTrue("The first and last elements should be connected.", uf.connected(first, prev));
+    }
+
+    @Test
+    public void clearTest() {
+        IntUnionFind uf = new IntUnionFind();
+
+        uf.union(uf.add(), uf.add());
+        uf.clear();
+
+        assertEquals("There should be no elements.", 0, uf.size());
+        assertEquals("There should be no components.", 0, uf.componentCount());
+
+        int a = uf.add();
+        int b = uf.add();
+        assertFalse("Elements re-added after clearing should not be connected.", uf.connected(a, b));
+    }
+}
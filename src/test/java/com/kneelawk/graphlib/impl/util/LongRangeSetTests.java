@@ -0,0 +1,68 @@
+package com.kneelawk.graphlib.impl.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongRangeSetTests {
+    @Test
+    public void sequentialAddTest() {
+        LongRangeSet set = new LongRangeSet();
+        for (long i = 0; i < 1000; i++) {
+            assertTrue("New values should be added.", set.add(i));
+        }
+
+        assertEquals("Consecutive values should collapse into one range.", 1, set.rangeCount());
+        assertFalse("Existing values should not be added again.", set.add(500));
+        assertEquals("The next absent value should follow the range.", 1000, set.nextAbsent(0));
+    }
+
+    @Test
+    public void gapJoinTest() {
+        LongRangeSet set = new LongRangeSet();
+        set.add(1);
+        set.add(3);
+        assertEquals("Separated values should be separate ranges.", 2, set.rangeCount());
+        assertEquals("Gaps should be found.", 2, set.nextAbsent(1));
+        assertEquals("Values below all ranges should be absent.", 0, set.nextAbsent(0));
+
+        set.add(2);
+        assertEquals("Filling a gap should join ranges.", 1, set.rangeCount());
+        assertTrue("Joined values should be contained.", set.contains(2));
+        assertFalse("Values outside the range should not be contained.", set.contains(4));
+    }
+
+    @Test
+    public void addRangeTest() {
+        LongRangeSet set = new LongRangeSet();
+        set.addRange(10, 20);
+        set.addRange(30, 40);
+        set.addRange(50, 60);
+        set.addRange(21, 29);
+
+        assertArrayEquals("Touching ranges should merge.", new long[]{10, 40, 50, 60}, set.toRangeArray());
+
+        set.addRange(0, 100);
+        assertArrayEquals("Covering ranges should absorb everything.", new long[]{0, 100}, set.toRangeArray());
+
+        set.addRange(200, 300);
+        set.addRange(150, 160);
+        assertArrayEquals("Ranges should stay sorted.", new long[]{0, 100, 150, 160, 200, 300}, set.toRangeArray());
+    }
+
+    @Test
+    public void roundTripTest() {
+        LongRangeSet set = new LongRangeSet();
+        set.addRange(0, 5);
+        set.add(7);
+        set.addRange(100, 1000);
+
+        LongRangeSet copy = LongRangeSet.fromRangeArray(set.toRangeArray());
+        assertArrayEquals("Range arrays should round-trip.", set.toRangeArray(), copy.toRangeArray());
+        assertEquals("Round-tripped sets should behave the same.", 6, copy.nextAbsent(0));
+        assertEquals("Round-tripped sets should behave the same.", 8, copy.nextAbsent(7));
+    }
+}
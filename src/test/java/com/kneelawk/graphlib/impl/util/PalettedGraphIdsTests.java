@@ -0,0 +1,132 @@
+package com.kneelawk.graphlib.impl.util;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.shorts.Short2ObjectMap;
+import it.unimi.dsi.fastutil.shorts.Short2ObjectOpenHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PalettedGraphIdsTests {
+    @Test
+    public void addRemoveTest() {
+        PalettedGraphIds ids = new PalettedGraphIds();
+        assertTrue("New sections should be empty.", ids.isEmpty());
+        assertEquals("Empty sections should have no occupied positions.", -1, ids.nextOccupied(0));
+
+        assertTrue("New graphs should be added.", ids.add((short) 5, 100));
+        assertFalse("Existing graphs should not be added again.", ids.add((short) 5, 100));
+        assertTrue("Graphs should be at the positions they were added at.", ids.contains((short) 5, 100));
+        assertFalse("Graphs should not be at other positions.", ids.contains((short) 6, 100));
+        assertEquals("Occupied positions should be found.", 5, ids.nextOccupied(0));
+
+        assertTrue("Graphs should be removed.", ids.remove((short) 5, 100));
+        assertFalse("Removed graphs should not be removed again.", ids.remove((short) 5, 100));
+        assertTrue("Sections should be empty once everything is removed.", ids.isEmpty());
+        assertEquals("Removed graphs should leave the palette.", 0, ids.paletteSize());
+    }
+
+    @Test
+    public void multipleGraphsAtPositionTest() {
+        PalettedGraphIds ids = new PalettedGraphIds();
+        ids.add((short) 10, 1);
+        ids.add((short) 10, 2);
+        ids.add((short) 10, 3);
+
+        assertEquals("Every graph at a position should be returned.", LongSet.of(1, 2, 3), ids.get((short) 10));
+
+        assertTrue("The first graph at a position should be removed.", ids.remove((short) 10, 1));
+        assertEquals("The other graphs should remain after the first is removed.", LongSet.of(2, 3),
+            ids.get((short) 10));
+        assertTrue("Extra graphs should be removed.", ids.remove((short) 10, 3));
+        assertEquals("The remaining graph should be kept.", LongSet.of(2), ids.get((short) 10));
+        assertEquals("Only graphs still at a position should be in the palette.", 1, ids.paletteSize());
+    }
+
+    @Test
+    public void removeAllTest() {
+        PalettedGraphIds ids = new PalettedGraphIds();
+        for (int i = 0; i < 100; i++) {
+            ids.add((short) i, 7);
+        }
+        ids.add((short) 50, 8);
+        ids.add((short) 200, 8);
+        ids.add((short) 201, 9);
+        ids.add((short) 201, 7);
+
+        assertTrue("Graphs at positions should be removed everywhere.", ids.removeAll(7));
+        assertFalse("Removed graphs should not be removed again.", ids.removeAll(7));
+
+        assertEquals("Graphs sharing a position should be kept.", LongSet.of(8), ids.get((short) 50));
+        assertEquals("Graphs at other positions should be kept.", LongSet.of(8), ids.get((short) 200));
+        assertEquals("Extra graphs should be removed too.", LongSet.of(9), ids.get((short) 201));
+        assertTrue("Emptied positions should be empty.", ids.get((short) 0).isEmpty());
+        assertEquals("The first remaining position should be found.", 50, ids.nextOccupied(0));
+        assertEquals("Removed graphs should leave the palette.", 2, ids.paletteSize());
+    }
+
+    @Test
+    public void paletteGrowthTest() {
+        PalettedGraphIds ids = new PalettedGraphIds();
+        Short2ObjectMap<LongSet> expected = new Short2ObjectOpenHashMap<>();
+
+        // enough graphs to need an id -> index map and repack a few times
+        for (int i = 0; i < PalettedGraphIds.POSITIONS; i++) {
+            short pos = (short) i;
+            long id = 1000 + i % 300;
+            ids.add(pos, id);
+            expected.computeIfAbsent(pos, s -> new LongOpenHashSet()).add(id);
+            if (i % 7 == 0) {
+                ids.add(pos, 5000 + i);
+                expected.get(pos).add(5000 + i);
+            }
+        }
+
+        for (int i = 0; i < PalettedGraphIds.POSITIONS; i++) {
+            short pos = (short) i;
+            assertEquals("Every position should survive repacking.", expected.get(pos), ids.get(pos));
+        }
+        assertEquals("The palette should only hold first graphs at positions.", 300, ids.paletteSize());
+
+        for (int i = 0; i < 300; i += 2) {
+            ids.removeAll(1000 + i);
+        }
+
+        int emptied = 0;
+        int promoted = 0;
+        for (int i = 0; i < PalettedGraphIds.POSITIONS; i++) {
+            if (i % 300 % 2 == 0) {
+                if (i % 7 == 0) {
+                    promoted++;
+                } else {
+                    emptied++;
+                }
+            }
+        }
+        assertEquals("Removed graphs should leave the palette and extra graphs should join it.", 150 + promoted,
+            ids.paletteSize());
+
+        int occupied = 0;
+        for (int pos = ids.nextOccupied(0); pos >= 0; pos = ids.nextOccupied(pos + 1)) {
+            occupied++;
+        }
+        assertEquals("Positions whose graphs were all removed should be empty.", PalettedGraphIds.POSITIONS - emptied,
+            occupied);
+    }
+
+    @Test
+    public void clearTest() {
+        PalettedGraphIds ids = new PalettedGraphIds();
+        ids.add((short) 1, 1);
+        ids.add((short) 1, 2);
+        ids.clear();
+
+        assertTrue("Cleared sections should be empty.", ids.isEmpty());
+        assertTrue("Cleared positions should be empty.", ids.get((short) 1).isEmpty());
+        assertTrue("Cleared sections should still accept graphs.", ids.add((short) 1, 3));
+    }
+}
@@ -0,0 +1,102 @@
+package com.kneelawk.graphlib.impl.util;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PillarPresenceTests {
+    private static void writeHeader(Path file, int... presentIndices) throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        for (int index : presentIndices) {
+            // sector 2, 1 sector long
+            buf.putInt(index * 4, (2 << 8) | 1);
+        }
+        Files.write(file, buf.array());
+    }
+
+    @Test
+    public void missingRegionTest() throws Exception {
+        Path dir = Files.createTempDirectory("pillarpresence");
+        try {
+            PillarPresence presence = new PillarPresence(dir);
+            assertFalse("Pillars should not be known before their region is read.", presence.isKnownAbsent(3, 4));
+            assertTrue("Pillars in missing region files should have no data.", presence.isAbsent(3, 4));
+            assertTrue("Pillars in read regions should be known.", presence.isKnownAbsent(5, 6));
+
+            presence.markWritten(5, 6, true);
+            assertFalse("Written pillars should have data.", presence.isKnownAbsent(5, 6));
+            assertFalse("Written pillars should have data.", presence.isAbsent(5, 6));
+
+            presence.markWritten(5, 6, false);
+            assertTrue("Deleted pillars should have no data.", presence.isKnownAbsent(5, 6));
+        } finally {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void headerTest() throws Exception {
+        Path dir = Files.createTempDirectory("pillarpresence");
+        Path positive = dir.resolve("r.1.0.mca");
+        Path negative = dir.resolve("r.-1.-1.mca");
+        try {
+            writeHeader(positive, 2 + 3 * 32);
+            writeHeader(negative, 31 + 31 * 32);
+
+            PillarPresence presence = new PillarPresence(dir);
+            assertFalse("Pillars in the header should have data.", presence.isAbsent(32 + 2, 3));
+            assertTrue("Pillars missing from the header should have no data.", presence.isAbsent(32 + 3, 2));
+            assertFalse("Pillars in regions at negative coordinates should have data.", presence.isAbsent(-1, -1));
+            assertTrue("Pillars missing from the header should have no data.", presence.isAbsent(-32, -32));
+        } finally {
+            Files.deleteIfExists(positive);
+            Files.deleteIfExists(negative);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void writesBeforeReadTest() throws Exception {
+        Path dir = Files.createTempDirectory("pillarpresence");
+        Path file = dir.resolve("r.0.0.mca");
+        try {
+            writeHeader(file, 0, 1);
+
+            PillarPresence presence = new PillarPresence(dir);
+            presence.markWritten(0, 0, false);
+            presence.markWritten(2, 0, true);
+            assertTrue("Deleted pillars should be known before their region is read.", presence.isKnownAbsent(0, 0));
+            assertFalse("Unwritten pillars should not be known before their region is read.",
+                presence.isKnownAbsent(3, 0));
+
+            assertTrue("Deletes should win over an out-of-date header.", presence.isAbsent(0, 0));
+            assertFalse("Pillars in the header should have data.", presence.isAbsent(1, 0));
+            assertFalse("Writes should win over an out-of-date header.", presence.isAbsent(2, 0));
+            assertTrue("Pillars missing from the header should have no data.", presence.isAbsent(3, 0));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void truncatedHeaderTest() throws Exception {
+        Path dir = Files.createTempDirectory("pillarpresence");
+        Path file = dir.resolve("r.0.0.mca");
+        try {
+            Files.write(file, new byte[100]);
+
+            PillarPresence presence = new PillarPresence(dir);
+            assertFalse("Pillars in unreadable regions should be assumed to have data.", presence.isAbsent(7, 7));
+            assertFalse("Pillars in unreadable regions should be assumed to have data.", presence.isKnownAbsent(8, 8));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.kneelawk.graphlib.impl.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResidencyBudgetTests {
+    @Test
+    public void totalTest() {
+        ResidencyBudget budget = new ResidencyBudget(10);
+        budget.use(1, 4);
+        budget.use(2, 6);
+        assertFalse("A budget that is exactly used should not be exceeded.", budget.isOverBudget());
+
+        budget.use(1, 5);
+        assertEquals("Using a graph again should replace its weight.", 11, budget.getTotal());
+        assertTrue("The budget should be exceeded.", budget.isOverBudget());
+
+        budget.remove(2);
+        assertEquals("Removed graphs should not count.", 5, budget.getTotal());
+        budget.remove(2);
+        assertEquals("Removing a graph twice should not change anything.", 5, budget.getTotal());
+
+        budget.update(3, 100);
+        assertEquals("Updating an untracked graph should be ignored.", 5, budget.getTotal());
+        assertEquals("Only one graph should be tracked.", 1, budget.size());
+    }
+
+    @Test
+    public void orderTest() {
+        ResidencyBudget budget = new ResidencyBudget(0);
+        budget.use(1, 1);
+        budget.use(2, 1);
+        budget.use(3, 1);
+        assertEquals("The first graph used should be least recently used.", 1, budget.getLeastRecentlyUsed());
+
+        budget.use(1, 1);
+        assertEquals("Using a graph should make it most recently used.", 2, budget.getLeastRecentlyUsed());
+
+        budget.update(2, 5);
+        assertEquals("Updating a graph should not count as using it.", 2, budget.getLeastRecentlyUsed());
+
+        budget.remove(2);
+        assertEquals("Removed graphs should leave the order.", 3, budget.getLeastRecentlyUsed());
+    }
+}
@@ -0,0 +1,73 @@
+package com.kneelawk.graphlib.impl.util;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResidentGraphIndexTests {
+    @Test
+    public void referenceCountTest() {
+        ResidentGraphIndex index = new ResidentGraphIndex();
+        index.addGraph(1, LongArrayList.of(10, 11));
+        assertTrue("Graphs in no loaded sections should be unreferenced.", index.getUnreferencedGraphs().contains(1));
+
+        index.loadSection(10);
+        index.loadSection(11);
+        index.loadSection(11);
+        assertEquals("Loading a section twice should only count once.", 2, index.getLoadedSectionCount(1));
+        assertFalse("Graphs in loaded sections should be referenced.", index.getUnreferencedGraphs().contains(1));
+
+        index.unloadSection(10);
+        assertFalse("Graphs still in a loaded section should be referenced.",
+            index.getUnreferencedGraphs().contains(1));
+        index.unloadSection(11);
+        assertTrue("Graphs in no loaded sections should be unreferenced.", index.getUnreferencedGraphs().contains(1));
+        assertEquals("No sections should be counted.", 0, index.getLoadedSectionCount(1));
+    }
+
+    @Test
+    public void sectionChangeTest() {
+        ResidentGraphIndex index = new ResidentGraphIndex();
+        index.loadSection(10);
+        index.addGraph(1, LongArrayList.of());
+
+        index.addSection(1, 10);
+        index.addSection(1, 10);
+        assertEquals("Adding a section twice should only count once.", 1, index.getLoadedSectionCount(1));
+        assertTrue("The graph should be in its new section.", index.getGraphs(10).contains(1));
+
+        index.addSection(1, 20);
+        index.removeSection(1, 10);
+        assertTrue("Graphs that left all loaded sections should be unreferenced.",
+            index.getUnreferencedGraphs().contains(1));
+        assertTrue("Graphs should no longer be in sections they left.", index.getGraphs(10).isEmpty());
+
+        index.loadSection(20);
+        assertFalse("Loading a graph's section should reference it.", index.getUnreferencedGraphs().contains(1));
+    }
+
+    @Test
+    public void residencyTest() {
+        ResidentGraphIndex index = new ResidentGraphIndex();
+        index.loadSection(10);
+
+        index.addSection(1, 10);
+        assertTrue("Graphs that are not resident should be ignored.", index.getGraphs(10).isEmpty());
+
+        index.addGraph(1, LongArrayList.of(10));
+        index.addGraph(2, LongArrayList.of(10));
+        assertEquals("Both graphs should be in the section.", 2, index.getGraphs(10).size());
+
+        index.removeGraph(1, LongArrayList.of(10));
+        assertEquals("Removed graphs should leave their sections.", 1, index.getGraphs(10).size());
+        assertFalse("Removed graphs should not be unreferenced.", index.getUnreferencedGraphs().contains(1));
+
+        index.unloadSection(10);
+        assertTrue("The remaining graph should be unreferenced.", index.getUnreferencedGraphs().contains(2));
+        assertFalse("Removed graphs should stay gone.", index.getUnreferencedGraphs().contains(1));
+    }
+}
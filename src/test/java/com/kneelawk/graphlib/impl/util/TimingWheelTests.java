@@ -0,0 +1,93 @@
+package com.kneelawk.graphlib.impl.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTests {
+    private static void assertFiresAt(long start, long deadline) {
+        TimingWheel<String> wheel = new TimingWheel<>(start);
+        List<Long> fired = new ArrayList<>();
+
+        wheel.schedule("A", deadline);
+
+        for (long tick = start + 1; tick <= deadline; tick++) {
+            long current = tick;
+            wheel.advance(tick, value -> fired.add(current));
+        }
+
+        assertEquals("The value should have fired exactly once.", 1, fired.size());
+        assertEquals("The value should have fired on its deadline.", deadline, (long) fired.get(0));
+        assertEquals("The wheel should be empty.", 0, wheel.size());
+    }
+
+    @Test
+    public void shortDelayTest() {
+        assertFiresAt(0, 1);
+        assertFiresAt(0, 63);
+        assertFiresAt(10, 20);
+    }
+
+    @Test
+    public void cascadingDelayTest() {
+        assertFiresAt(0, 64);
+        assertFiresAt(10, 70);
+        assertFiresAt(63, 4096);
+        assertFiresAt(1000, 300000);
+    }
+
+    @Test
+    public void overflowDelayTest() {
+        assertFiresAt(5, (1L << 24) + 100);
+    }
+
+    @Test
+    public void pastDeadlineTest() {
+        TimingWheel<String> wheel = new TimingWheel<>(100);
+        List<String> fired = new ArrayList<>();
+
+        wheel.schedule("A", 50);
+        wheel.advance(101, fired::add);
+
+        assertEquals("Values scheduled in the past should fire on the next advance.", List.of("A"), fired);
+    }
+
+    @Test
+    public void bulkAdvanceTest() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(0);
+        List<Integer> fired = new ArrayList<>();
+
+        for (int i = 1; i <= 1000; i++) {
+            wheel.schedule(i, i * 7L);
+        }
+
+        wheel.advance(3500, fired::add);
+
+        assertEquals("Only values with reached deadlines should fire.", 500, fired.size());
+        for (int i = 0; i < fired.size(); i++) {
+            assertEquals("Values should fire in deadline order.", i + 1, (int) fired.get(i));
+        }
+        assertEquals("The rest should still be waiting.", 500, wheel.size());
+    }
+
+    @Test
+    public void emptySkipTest() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+
+        wheel.advance(1_000_000_000L, value -> {
+            throw new AssertionError("Nothing should fire.");
+        });
+
+        assertEquals("An empty wheel should skip straight to the target tick.", 1_000_000_000L,
+            wheel.getCurrentTick());
+
+        List<String> fired = new ArrayList<>();
+        wheel.schedule("A", 1_000_000_010L);
+        wheel.advance(1_000_000_010L, fired::add);
+        assertTrue("Values scheduled after skipping should still fire.", fired.contains("A"));
+    }
+}
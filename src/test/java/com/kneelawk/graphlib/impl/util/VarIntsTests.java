@@ -0,0 +1,69 @@
+package com.kneelawk.graphlib.impl.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VarIntsTests {
+    private static final int[] VALUES = {0, 1, 127, 128, 255, 16383, 16384, 1 << 21, Integer.MAX_VALUE, -1};
+
+    @Test
+    public void roundTripTest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int value : VALUES) {
+            VarInts.writeUnsignedInt(out, value);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int value : VALUES) {
+            assertEquals("Values should survive being written and read.", value, VarInts.readUnsignedInt(in));
+        }
+        assertEquals("All bytes should be read.", 0, in.available());
+    }
+
+    @Test
+    public void lengthTest() throws IOException {
+        assertEquals("Values below 128 should take one byte.", 1, length(127));
+        assertEquals("Values below 16384 should take two bytes.", 2, length(16383));
+        assertEquals("Large values should take five bytes.", 5, length(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void optionalTest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        VarInts.writeOptionalInt(out, -1);
+        VarInts.writeOptionalInt(out, 126);
+        assertEquals("Absent and small optional values should take one byte each.", 2, bytes.size());
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("Absent values should be read back.", -1, VarInts.readOptionalInt(in));
+        assertEquals("Present values should be read back.", 126, VarInts.readOptionalInt(in));
+    }
+
+    @Test
+    public void tooLongTest() {
+        byte[] bytes = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01};
+        boolean thrown = false;
+        try {
+            VarInts.readUnsignedInt(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            thrown = true;
+        }
+        assertTrue("Integers longer than five bytes should be rejected.", thrown);
+    }
+
+    private static int length(int value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        VarInts.writeUnsignedInt(new DataOutputStream(bytes), value);
+        return bytes.size();
+    }
+}